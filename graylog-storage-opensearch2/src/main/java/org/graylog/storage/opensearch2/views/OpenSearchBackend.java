@@ -16,6 +16,7 @@
  */
 package org.graylog.storage.opensearch2.views;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
 import com.google.inject.name.Named;
 import org.graylog.plugins.views.search.Filter;
@@ -26,6 +27,7 @@ import org.graylog.plugins.views.search.SearchJob;
 import org.graylog.plugins.views.search.SearchType;
 import org.graylog.plugins.views.search.elasticsearch.IndexLookup;
 import org.graylog.plugins.views.search.engine.BackendQuery;
+import org.graylog.plugins.views.search.engine.QueryExecutionStats;
 import org.graylog.plugins.views.search.engine.QueryBackend;
 import org.graylog.plugins.views.search.errors.SearchError;
 import org.graylog.plugins.views.search.errors.SearchTypeError;
@@ -60,6 +62,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -76,6 +79,7 @@ public class OpenSearchBackend implements QueryBackend<OSGeneratedQueryContext>
     private final OSGeneratedQueryContext.Factory queryContextFactory;
     private final UsedSearchFiltersToQueryStringsMapper usedSearchFiltersToQueryStringsMapper;
     private final boolean allowLeadingWildcard;
+    private final boolean mergeSearchTypeRequests;
 
     @Inject
     public OpenSearchBackend(Map<String, Provider<OSSearchTypeHandler<? extends SearchType>>> elasticsearchSearchTypeHandlers,
@@ -83,7 +87,8 @@ public class OpenSearchBackend implements QueryBackend<OSGeneratedQueryContext>
                              IndexLookup indexLookup,
                              OSGeneratedQueryContext.Factory queryContextFactory,
                              UsedSearchFiltersToQueryStringsMapper usedSearchFiltersToQueryStringsMapper,
-                             @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard) {
+                             @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard,
+                             @Named("views_merge_search_type_requests") boolean mergeSearchTypeRequests) {
         this.openSearchSearchTypeHandlers = elasticsearchSearchTypeHandlers;
         this.client = client;
         this.indexLookup = indexLookup;
@@ -91,6 +96,18 @@ public class OpenSearchBackend implements QueryBackend<OSGeneratedQueryContext>
         this.queryContextFactory = queryContextFactory;
         this.usedSearchFiltersToQueryStringsMapper = usedSearchFiltersToQueryStringsMapper;
         this.allowLeadingWildcard = allowLeadingWildcard;
+        this.mergeSearchTypeRequests = mergeSearchTypeRequests;
+    }
+
+    @VisibleForTesting
+    OpenSearchBackend(Map<String, Provider<OSSearchTypeHandler<? extends SearchType>>> elasticsearchSearchTypeHandlers,
+                      OpenSearchClient client,
+                      IndexLookup indexLookup,
+                      OSGeneratedQueryContext.Factory queryContextFactory,
+                      UsedSearchFiltersToQueryStringsMapper usedSearchFiltersToQueryStringsMapper,
+                      boolean allowLeadingWildcard) {
+        this(elasticsearchSearchTypeHandlers, client, indexLookup, queryContextFactory, usedSearchFiltersToQueryStringsMapper,
+                allowLeadingWildcard, false);
     }
 
     private QueryBuilder translateQueryString(String queryString) {
@@ -217,30 +234,36 @@ public class OpenSearchBackend implements QueryBackend<OSGeneratedQueryContext>
         final Map<String, SearchSourceBuilder> searchTypeQueries = queryContext.searchTypeQueries();
         final List<String> searchTypeIds = new ArrayList<>(searchTypeQueries.keySet());
 
-        final List<SearchRequest> searches = searchTypeIds
-                .stream()
-                .map(searchTypeId -> {
-                    final Set<String> affectedIndicesForSearchType = query.searchTypes().stream()
-                            .filter(s -> s.id().equalsIgnoreCase(searchTypeId)).findFirst()
-                            .flatMap(searchType -> {
-                                if (searchType.effectiveStreams().isEmpty()
-                                        && !query.globalOverride().flatMap(GlobalOverride::timerange).isPresent()
-                                        && !searchType.timerange().isPresent()) {
-                                    return Optional.empty();
-                                }
-                                return Optional.of(indexLookup.indexNamesForStreamsInTimeRange(query.effectiveStreams(searchType), query.effectiveTimeRange(searchType)));
-                            })
-                            .orElse(affectedIndices);
-
-                    Set<String> indices = affectedIndicesForSearchType.isEmpty() ? Collections.singleton("") : affectedIndicesForSearchType;
-                    return new SearchRequest()
-                            .source(searchTypeQueries.get(searchTypeId))
-                            .indices(indices.toArray(new String[0]))
-                            .indicesOptions(IndicesOptions.fromOptions(false, false, true, false));
-                })
-                .collect(Collectors.toList());
-
-        final List<MultiSearchResponse.Item> results = client.msearch(searches, "Unable to perform search query: ");
+        final Map<String, SearchRequest> searches = new LinkedHashMap<>();
+        searchTypeIds.forEach(searchTypeId -> {
+            final Set<String> affectedIndicesForSearchType = query.searchTypes().stream()
+                    .filter(s -> s.id().equalsIgnoreCase(searchTypeId)).findFirst()
+                    .flatMap(searchType -> {
+                        if (searchType.effectiveStreams().isEmpty()
+                                && !query.globalOverride().flatMap(GlobalOverride::timerange).isPresent()
+                                && !searchType.timerange().isPresent()) {
+                            return Optional.empty();
+                        }
+                        return Optional.of(indexLookup.indexNamesForStreamsInTimeRange(query.effectiveStreams(searchType), query.effectiveTimeRange(searchType)));
+                    })
+                    .orElse(affectedIndices);
+
+            Set<String> indices = affectedIndicesForSearchType.isEmpty() ? Collections.singleton("") : affectedIndicesForSearchType;
+            searches.put(searchTypeId, new SearchRequest()
+                    .source(searchTypeQueries.get(searchTypeId))
+                    .indices(indices.toArray(new String[0]))
+                    .indicesOptions(IndicesOptions.fromOptions(false, false, true, false)));
+        });
+
+        // search types which only differ in their aggregations can share a request, so the documents are only matched once
+        final SearchTypeRequests searchTypeRequests = mergeSearchTypeRequests
+                ? SearchTypeRequests.merged(searches)
+                : SearchTypeRequests.separate(searches);
+        if (searchTypeRequests.savedRequests() > 0) {
+            LOG.debug("Merged {} of {} search type requests of query {}", searchTypeRequests.savedRequests(), searches.size(), query.id());
+        }
+
+        final List<MultiSearchResponse.Item> results = client.msearch(searchTypeRequests.requests(), "Unable to perform search query: ");
 
         for (SearchType searchType : query.searchTypes()) {
             final String searchTypeId = searchType.id();
@@ -260,8 +283,7 @@ public class OpenSearchBackend implements QueryBackend<OSGeneratedQueryContext>
             // we create a new instance because some search type handlers might need to track information between generating the query and
             // processing its result, such as aggregations, which depend on the name and type
             final OSSearchTypeHandler<? extends SearchType> handler = handlerProvider.get();
-            final int searchTypeIndex = searchTypeIds.indexOf(searchTypeId);
-            final MultiSearchResponse.Item multiSearchResponse = results.get(searchTypeIndex);
+            final MultiSearchResponse.Item multiSearchResponse = searchTypeRequests.itemFor(searchTypeId, results);
             if (multiSearchResponse.isFailure()) {
                 ElasticsearchException e = new ElasticsearchException("Search type returned error: ", multiSearchResponse.getFailure());
                 queryContext.addError(SearchTypeErrorParser.parse(query, searchTypeId, e));
@@ -287,6 +309,7 @@ public class OpenSearchBackend implements QueryBackend<OSGeneratedQueryContext>
                 .query(query)
                 .searchTypes(resultsMap)
                 .errors(new HashSet<>(queryContext.errors()))
+                .executionStats(QueryExecutionStats.builder().deduplicatedRequests(searchTypeRequests.savedRequests()).build())
                 .build();
     }
 
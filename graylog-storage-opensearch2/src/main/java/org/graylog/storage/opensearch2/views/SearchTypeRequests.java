@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2.views;
+
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.MultiSearchResponse;
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.SearchRequest;
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.SearchResponse;
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.SearchResponseSections;
+import org.graylog.shaded.opensearch2.org.opensearch.index.query.QueryBuilders;
+import org.graylog.shaded.opensearch2.org.opensearch.search.aggregations.AggregationBuilders;
+import org.graylog.shaded.opensearch2.org.opensearch.search.aggregations.AggregatorFactories;
+import org.graylog.shaded.opensearch2.org.opensearch.search.aggregations.bucket.filter.Filter;
+import org.graylog.shaded.opensearch2.org.opensearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.graylog.shaded.opensearch2.org.opensearch.search.builder.SearchSourceBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The search requests of a query's search types and how their responses are assigned to them.
+ * <p>
+ * Search types with the same query, filters and indices which only differ in their aggregations can be merged into
+ * the request of another search type: their aggregations are wrapped in a {@code filter} aggregation matching all
+ * documents, named after the search type. Their response is then rebuilt out of that aggregation, so the search type
+ * handlers don't notice the difference.
+ */
+class SearchTypeRequests {
+    static final String MERGED_AGGREGATION_PREFIX = "searchtype-";
+
+    private final List<SearchRequest> requests = new ArrayList<>();
+    private final Map<String, Integer> requestIndexBySearchType = new HashMap<>();
+    private final Set<String> mergedSearchTypes = new HashSet<>();
+
+    private SearchTypeRequests() {
+    }
+
+    /**
+     * @return one request per search type
+     */
+    static SearchTypeRequests separate(Map<String, SearchRequest> requestsBySearchType) {
+        final SearchTypeRequests searchTypeRequests = new SearchTypeRequests();
+        requestsBySearchType.forEach(searchTypeRequests::add);
+        return searchTypeRequests;
+    }
+
+    /**
+     * Merges the requests of search types which only differ in their aggregations.
+     * <p>
+     * Note that the sources of the remaining requests are modified to include the aggregations of the merged ones.
+     */
+    static SearchTypeRequests merged(Map<String, SearchRequest> requestsBySearchType) {
+        final SearchTypeRequests searchTypeRequests = new SearchTypeRequests();
+        // search types returning hits can't be merged into others, so they are added first; sorting the ids keeps the
+        // generated requests stable
+        final List<String> searchTypeIds = requestsBySearchType.keySet().stream()
+                .sorted(Comparator.<String, Boolean>comparing(id -> canBeMerged(requestsBySearchType.get(id).source()))
+                        .thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+
+        for (String searchTypeId : searchTypeIds) {
+            final SearchRequest request = requestsBySearchType.get(searchTypeId);
+            final int target = canBeMerged(request.source()) ? searchTypeRequests.indexOfSameContext(request) : -1;
+            if (target < 0) {
+                searchTypeRequests.add(searchTypeId, request);
+            } else {
+                searchTypeRequests.merge(searchTypeId, request, target);
+            }
+        }
+        return searchTypeRequests;
+    }
+
+    private void add(String searchTypeId, SearchRequest request) {
+        requests.add(request);
+        requestIndexBySearchType.put(searchTypeId, requests.size() - 1);
+    }
+
+    private void merge(String searchTypeId, SearchRequest request, int target) {
+        final FilterAggregationBuilder wrapper = AggregationBuilders.filter(MERGED_AGGREGATION_PREFIX + searchTypeId, QueryBuilders.matchAllQuery());
+        final AggregatorFactories.Builder aggregations = request.source().aggregations();
+        if (aggregations != null) {
+            aggregations.getAggregatorFactories().forEach(wrapper::subAggregation);
+        }
+        requests.get(target).source().aggregation(wrapper);
+        requestIndexBySearchType.put(searchTypeId, target);
+        mergedSearchTypes.add(searchTypeId);
+    }
+
+    private int indexOfSameContext(SearchRequest request) {
+        for (int i = 0; i < requests.size(); i++) {
+            if (haveSameContext(requests.get(i), request)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean haveSameContext(SearchRequest request, SearchRequest other) {
+        return Set.copyOf(Arrays.asList(request.indices())).equals(Set.copyOf(Arrays.asList(other.indices())))
+                && Objects.equals(request.indicesOptions(), other.indicesOptions())
+                && Objects.equals(request.source().query(), other.source().query())
+                && Objects.equals(request.source().postFilter(), other.source().postFilter());
+    }
+
+    /**
+     * Only requests which are solely executed for their aggregations can be merged into other requests.
+     */
+    private static boolean canBeMerged(SearchSourceBuilder source) {
+        return source.size() == 0
+                && source.postFilter() == null
+                && (source.sorts() == null || source.sorts().isEmpty())
+                && source.highlighter() == null
+                && source.suggest() == null
+                && (source.aggregations() == null || source.aggregations().getPipelineAggregatorFactories().isEmpty());
+    }
+
+    List<SearchRequest> requests() {
+        return requests;
+    }
+
+    /**
+     * @return the number of requests saved by merging search types
+     */
+    int savedRequests() {
+        return mergedSearchTypes.size();
+    }
+
+    /**
+     * @param items the responses to the {@link #requests() requests}, in the same order
+     * @return the response for the given search type
+     */
+    MultiSearchResponse.Item itemFor(String searchTypeId, List<MultiSearchResponse.Item> items) {
+        final MultiSearchResponse.Item item = items.get(requestIndexBySearchType.get(searchTypeId));
+        if (!mergedSearchTypes.contains(searchTypeId) || item.isFailure() || item.getResponse() == null) {
+            return item;
+        }
+
+        final SearchResponse response = item.getResponse();
+        final Filter wrapper = response.getAggregations() == null ? null : response.getAggregations().get(MERGED_AGGREGATION_PREFIX + searchTypeId);
+        if (wrapper == null) {
+            return new MultiSearchResponse.Item(null, new IllegalStateException("Missing aggregations of merged search type " + searchTypeId));
+        }
+        final SearchResponseSections sections = new SearchResponseSections(response.getHits(), wrapper.getAggregations(),
+                null, response.isTimedOut(), response.isTerminatedEarly(), null, response.getNumReducePhases());
+        return new MultiSearchResponse.Item(new SearchResponse(sections, null, response.getTotalShards(), response.getSuccessfulShards(),
+                response.getSkippedShards(), response.getTook().millis(), response.getShardFailures(), response.getClusters()), null);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2.views.export;
+
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog.plugins.views.search.export.ExportException;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Bounded pool of threads fetching export pages in the background, shared by all exports of this node.
+ * <p>
+ * Every page fetcher occupies a thread until its export is done. Exports therefore reserve the threads for all of
+ * their fetchers up front, otherwise concurrent exports could each hold some of the threads and wait for each other.
+ * The thread of a fetcher is only handed back to the pool once the fetcher has finished, even if its export is done
+ * before.
+ */
+@Singleton
+public class ExportPageFetcherPool {
+    private final int size;
+    private final Executor executor;
+    private final Semaphore threads;
+
+    @Inject
+    public ExportPageFetcherPool(@Named("views_export_fetcher_threads") int size, MetricRegistry metricRegistry) {
+        this(size, new InstrumentedExecutorService(
+                Executors.newFixedThreadPool(size, new ThreadFactoryBuilder().setNameFormat("export-page-fetcher-%d").setDaemon(true).build()),
+                metricRegistry,
+                name(ExportPageFetcherPool.class, "executor-service")));
+    }
+
+    @VisibleForTesting
+    ExportPageFetcherPool(int size, Executor executor) {
+        this.size = size;
+        this.executor = executor;
+        this.threads = new Semaphore(size, true);
+    }
+
+    /**
+     * @return the maximum number of fetchers a single export can reserve
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Waits until the given number of threads is available and reserves them for an export.
+     *
+     * @param fetchers the number of fetchers of the export, at most {@link #size()}
+     * @return the reservation, which has to be closed when the export is done
+     */
+    Reservation reserve(int fetchers) {
+        try {
+            threads.acquire(fetchers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExportException("Interrupted while waiting for export page fetchers", e);
+        }
+        return new Reservation(fetchers);
+    }
+
+    class Reservation implements AutoCloseable {
+        // reserved threads which haven't been handed to a fetcher yet
+        private final AtomicInteger unused;
+
+        private Reservation(int fetchers) {
+            this.unused = new AtomicInteger(fetchers);
+        }
+
+        /**
+         * @return an executor for the fetchers of the export, every fetcher returns its thread when it has finished
+         */
+        Executor executor() {
+            return fetcher -> {
+                if (unused.getAndUpdate(count -> Math.max(0, count - 1)) == 0) {
+                    throw new IllegalStateException("All reserved export page fetchers are already running");
+                }
+                try {
+                    executor.execute(() -> {
+                        try {
+                            fetcher.run();
+                        } finally {
+                            threads.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    threads.release();
+                    throw e;
+                }
+            };
+        }
+
+        /**
+         * Releases the threads which haven't been used by fetchers. Running fetchers keep their threads until they
+         * have finished.
+         */
+        @Override
+        public void close() {
+            final int remaining = unused.getAndSet(0);
+            if (remaining > 0) {
+                threads.release(remaining);
+            }
+        }
+    }
+}
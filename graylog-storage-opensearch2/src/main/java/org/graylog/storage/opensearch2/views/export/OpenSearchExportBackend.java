@@ -38,13 +38,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
@@ -62,28 +63,91 @@ public class OpenSearchExportBackend implements ExportBackend {
     private final IndexLookup indexLookup;
     private final RequestStrategy requestStrategy;
     private final boolean allowLeadingWildcard;
+    private final ExportClient client;
+    private final ExportPageFetcherPool fetcherPool;
+    private final int slices;
+    private final int pagesInFlight;
 
     @Inject
-    public OpenSearchExportBackend(IndexLookup indexLookup, RequestStrategy requestStrategy, @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard) {
+    public OpenSearchExportBackend(IndexLookup indexLookup,
+                                   RequestStrategy requestStrategy,
+                                   @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard,
+                                   ExportClient client,
+                                   ExportPageFetcherPool fetcherPool,
+                                   @Named("views_export_slices") int slices,
+                                   @Named("views_export_pages_in_flight") int pagesInFlight) {
         this.indexLookup = indexLookup;
         this.requestStrategy = requestStrategy;
         this.allowLeadingWildcard = allowLeadingWildcard;
+        this.client = client;
+        this.fetcherPool = fetcherPool;
+        if (slices > fetcherPool.size()) {
+            LOG.warn("Limiting export slices to the {} export page fetcher threads", fetcherPool.size());
+        }
+        this.slices = Math.min(slices, fetcherPool.size());
+        this.pagesInFlight = pagesInFlight;
     }
 
     @Override
     public void run(ExportMessagesCommand command, Consumer<SimpleMessageChunk> chunkCollector) {
+        // closing the page sources cancels the requests of their fetchers, which return their threads when they are done
+        try (ExportPageFetcherPool.Reservation reservation = fetcherPool.reserve(fetchers());
+             PageSource pages = pagesFor(command, reservation.executor())) {
+            publishPages(pages, command, chunkCollector);
+        }
+    }
+
+    private int fetchers() {
+        if (slices > 1) {
+            return slices;
+        }
+        return pagesInFlight > 1 ? 1 : 0;
+    }
+
+    private PageSource pagesFor(ExportMessagesCommand command, Executor executor) {
+        if (slices > 1) {
+            return slicedPagesFor(command, executor);
+        }
+        final PageSource searchAfterPages = () -> search(command);
+        return pagesInFlight > 1
+                ? new PagePrefetcher(List.of(searchAfterPages), pagesInFlight - 1, executor)
+                : searchAfterPages;
+    }
+
+    /**
+     * Splits the export into parallel scroll slices. Unsorted exports pass on pages of all slices in the order they
+     * arrive, sorted exports merge the individually sorted slices.
+     */
+    private PageSource slicedPagesFor(ExportMessagesCommand command, Executor executor) {
+        final List<ScrollSlice> scrollSlices = new ArrayList<>(slices);
+        for (int sliceId = 0; sliceId < slices; sliceId++) {
+            scrollSlices.add(new ScrollSlice(client, prepareSlicedSearchRequest(command), sliceId, slices));
+        }
+
+        if (!command.sorted()) {
+            return new PagePrefetcher(scrollSlices, Math.max(1, pagesInFlight - 1), executor);
+        }
+
+        final List<PagePrefetcher> prefetchedSlices = new ArrayList<>(slices);
+        for (ScrollSlice slice : scrollSlices) {
+            prefetchedSlices.add(new PagePrefetcher(List.of(slice), 1, executor));
+        }
+        return new SortedMergePageSource(prefetchedSlices, command.chunkSize());
+    }
+
+    private void publishPages(PageSource pages, ExportMessagesCommand command, Consumer<SimpleMessageChunk> chunkCollector) {
         boolean isFirstChunk = true;
         int totalCount = 0;
 
         while (true) {
-            List<SearchHit> hits = search(command);
+            List<SearchHit> hits = pages.nextPage();
 
             if (hits.isEmpty()) {
-                publishChunk(chunkCollector, hits, command.fieldsInOrder(), command.timeZone(), SimpleMessageChunk.ChunkOrder.LAST);
+                publishChunk(chunkCollector, hits, command, SimpleMessageChunk.ChunkOrder.LAST);
                 return;
             }
 
-            boolean success = publishChunk(chunkCollector, hits, command.fieldsInOrder(), command.timeZone(), isFirstChunk ? SimpleMessageChunk.ChunkOrder.FIRST : SimpleMessageChunk.ChunkOrder.INTERMEDIATE);
+            boolean success = publishChunk(chunkCollector, hits, command, isFirstChunk ? SimpleMessageChunk.ChunkOrder.FIRST : SimpleMessageChunk.ChunkOrder.INTERMEDIATE);
             if (!success) {
                 return;
             }
@@ -91,7 +155,7 @@ public class OpenSearchExportBackend implements ExportBackend {
             totalCount += hits.size();
             if (command.limit().isPresent() && totalCount >= command.limit().getAsInt()) {
                 LOG.info("Limit of {} reached. Stopping message retrieval.", command.limit().getAsInt());
-                publishChunk(chunkCollector, Collections.emptyList(), command.fieldsInOrder(), command.timeZone(), SimpleMessageChunk.ChunkOrder.LAST);
+                publishChunk(chunkCollector, Collections.emptyList(), command, SimpleMessageChunk.ChunkOrder.LAST);
                 return;
             }
 
@@ -115,6 +179,26 @@ public class OpenSearchExportBackend implements ExportBackend {
                 .indicesOptions(IndicesOptions.fromOptions(false, false, true, false));
     }
 
+    private SearchRequest prepareSlicedSearchRequest(ExportMessagesCommand command) {
+        SearchSourceBuilder ssb = new SearchSourceBuilder()
+                .query(queryFrom(command))
+                .size(command.chunkSize());
+        projectSourceFields(ssb, command);
+
+        if (command.sorted()) {
+            ssb.sort(Message.FIELD_TIMESTAMP, SortOrder.ASC)
+                    .sort(SearchAfter.DEFAULT_TIEBREAKER_FIELD, SortOrder.ASC);
+        } else {
+            ssb.sort("_doc");
+        }
+
+        Set<String> indices = indicesFor(command);
+        return new SearchRequest()
+                .source(ssb)
+                .indices(indices.toArray(new String[0]))
+                .indicesOptions(IndicesOptions.fromOptions(false, false, true, false));
+    }
+
     private SearchSourceBuilder searchSourceBuilderFrom(ExportMessagesCommand command) {
         QueryBuilder query = queryFrom(command);
 
@@ -122,10 +206,20 @@ public class OpenSearchExportBackend implements ExportBackend {
                 .query(query)
                 .size(command.chunkSize())
                 .sort(Message.FIELD_TIMESTAMP, SortOrder.ASC);
+        projectSourceFields(ssb, command);
 
         return requestStrategy.configure(ssb);
     }
 
+    /**
+     * Decorators may rely on any field of a message, otherwise only the exported fields need to be fetched.
+     */
+    private void projectSourceFields(SearchSourceBuilder ssb, ExportMessagesCommand command) {
+        if (command.decorators().isEmpty()) {
+            ssb.fetchSource(command.fieldsInOrder().toArray(new String[0]), null);
+        }
+    }
+
     private QueryBuilder queryFrom(ExportMessagesCommand command) {
         return boolQuery()
                 .filter(queryStringFilter(command))
@@ -152,8 +246,8 @@ public class OpenSearchExportBackend implements ExportBackend {
         return indexLookup.indexNamesForStreamsInTimeRange(command.streams(), command.timeRange());
     }
 
-    private boolean publishChunk(Consumer<SimpleMessageChunk> chunkCollector, List<SearchHit> hits, LinkedHashSet<String> desiredFieldsInOrder, DateTimeZone timeZone, SimpleMessageChunk.ChunkOrder chunkOrder) {
-        SimpleMessageChunk chunk = chunkFrom(hits, desiredFieldsInOrder, timeZone, chunkOrder);
+    private boolean publishChunk(Consumer<SimpleMessageChunk> chunkCollector, List<SearchHit> hits, ExportMessagesCommand command, SimpleMessageChunk.ChunkOrder chunkOrder) {
+        SimpleMessageChunk chunk = chunkFrom(hits, command.fieldsInOrder(), command.timeZone(), chunkOrder);
 
         try {
             chunkCollector.accept(chunk);
@@ -176,11 +270,11 @@ public class OpenSearchExportBackend implements ExportBackend {
 
     private LinkedHashSet<SimpleMessage> messagesFrom(List<SearchHit> hits, DateTimeZone timeZone) {
         return hits.stream()
-                .map(h -> buildHitWithAllFields(h.getSourceAsMap(), h.getIndex(), timeZone))
+                .map(h -> buildHitWithAllFields(h.getSourceAsMap(), h.getIndex(), h.getId(), timeZone))
                 .collect(toCollection(LinkedHashSet::new));
     }
 
-    private SimpleMessage buildHitWithAllFields(Map source, String index, DateTimeZone timeZone) {
+    private SimpleMessage buildHitWithAllFields(Map source, String index, String id, DateTimeZone timeZone) {
         LinkedHashMap<String, Object> fields = new LinkedHashMap<>();
 
         for (Object key : source.keySet()) {
@@ -189,8 +283,9 @@ public class OpenSearchExportBackend implements ExportBackend {
             fields.put(name, value);
         }
 
-        // _id is needed, because the old decorators implementation relies on it
-        fields.put("_id", UUID.randomUUID().toString());
+        // _id is needed, because the old decorators implementation relies on it. It also keeps hits whose exported
+        // fields are equal apart, because messages are collected in a set.
+        fields.put("_id", id);
 
         return SimpleMessage.from(index, fields);
     }
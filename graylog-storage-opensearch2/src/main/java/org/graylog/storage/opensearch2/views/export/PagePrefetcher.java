@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2.views.export;
+
+import org.graylog.plugins.views.search.export.ExportException;
+import org.graylog.shaded.opensearch2.org.opensearch.search.SearchHit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches pages from one or more sources in the background, while the consumer is busy writing the previous pages.
+ * Pages of different sources are returned in the order they arrive. At most {@code capacity} pages are buffered.
+ * <p>
+ * Every source occupies a thread of the executor until it is exhausted or the prefetcher is closed. Closing the
+ * prefetcher interrupts the requests which are still running.
+ */
+class PagePrefetcher implements PageSource {
+    private static final Logger LOG = LoggerFactory.getLogger(PagePrefetcher.class);
+    private static final Page END = new Page(Collections.emptyList(), null);
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private final BlockingQueue<Page> queue;
+    private final AtomicInteger activeProducers;
+    private final CountDownLatch producersDone;
+    // threads of the producers which are still fetching pages
+    private final Set<Thread> fetchingThreads = new HashSet<>();
+    private volatile boolean closed = false;
+    private boolean finished = false;
+
+    PagePrefetcher(List<? extends PageSource> sources, int capacity, Executor executor) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.activeProducers = new AtomicInteger(sources.size());
+        this.producersDone = new CountDownLatch(sources.size());
+        sources.forEach(source -> executor.execute(() -> produce(source)));
+    }
+
+    private void produce(PageSource source) {
+        synchronized (fetchingThreads) {
+            fetchingThreads.add(Thread.currentThread());
+        }
+        try {
+            while (!closed) {
+                final List<SearchHit> hits = source.nextPage();
+                if (hits.isEmpty() || !offer(new Page(hits, null))) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            offer(new Page(Collections.emptyList(), e));
+        } finally {
+            synchronized (fetchingThreads) {
+                fetchingThreads.remove(Thread.currentThread());
+            }
+            // an interrupted request must not prevent the source from cleaning up, e.g. clearing its scroll context
+            Thread.interrupted();
+            source.close();
+            if (activeProducers.decrementAndGet() == 0) {
+                offer(END);
+            }
+            producersDone.countDown();
+        }
+    }
+
+    private boolean offer(Page page) {
+        try {
+            while (!closed) {
+                if (queue.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public List<SearchHit> nextPage() {
+        if (finished) {
+            return Collections.emptyList();
+        }
+        final Page page;
+        try {
+            page = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExportException("Interrupted while waiting for the next page of the export", e);
+        }
+        if (page.error != null) {
+            finished = true;
+            throw page.error instanceof ExportException
+                    ? (ExportException) page.error
+                    : new ExportException("Unable to complete export: ", page.error);
+        }
+        if (page == END) {
+            finished = true;
+        }
+        return page.hits;
+    }
+
+    /**
+     * Stops fetching, cancels the requests which are still running and waits for the sources to be closed, so they
+     * can release their resources (e.g. scroll contexts).
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        queue.clear();
+        synchronized (fetchingThreads) {
+            fetchingThreads.forEach(Thread::interrupt);
+        }
+        try {
+            if (!producersDone.await(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                // the fetchers keep their threads of the pool until they have finished
+                LOG.warn("Export page fetchers didn't finish within {} seconds", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Page {
+        private final List<SearchHit> hits;
+        private final RuntimeException error;
+
+        private Page(List<SearchHit> hits, RuntimeException error) {
+            this.hits = hits;
+            this.error = error;
+        }
+    }
+}
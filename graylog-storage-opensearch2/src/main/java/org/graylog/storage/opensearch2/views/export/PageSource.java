@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2.views.export;
+
+import org.graylog.shaded.opensearch2.org.opensearch.search.SearchHit;
+
+import java.util.List;
+
+/**
+ * A source of consecutive result pages. An empty page signals that the source is exhausted.
+ */
+interface PageSource extends AutoCloseable {
+    List<SearchHit> nextPage();
+
+    @Override
+    default void close() {
+    }
+}
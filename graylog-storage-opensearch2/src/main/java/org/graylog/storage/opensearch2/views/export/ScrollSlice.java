@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2.views.export;
+
+import com.google.common.collect.Streams;
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.ClearScrollRequest;
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.SearchRequest;
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.SearchResponse;
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.SearchScrollRequest;
+import org.graylog.shaded.opensearch2.org.opensearch.common.unit.TimeValue;
+import org.graylog.shaded.opensearch2.org.opensearch.search.SearchHit;
+import org.graylog.shaded.opensearch2.org.opensearch.search.slice.SliceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Pages through one slice of a sliced scroll. The scroll context is cleared when the slice is closed.
+ */
+class ScrollSlice implements PageSource {
+    private static final Logger LOG = LoggerFactory.getLogger(ScrollSlice.class);
+    private static final TimeValue KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    private final ExportClient client;
+    private final SearchRequest initialRequest;
+    private String scrollId = null;
+    private boolean exhausted = false;
+
+    ScrollSlice(ExportClient client, SearchRequest request, int sliceId, int maxSlices) {
+        this.client = client;
+        request.source().slice(new SliceBuilder(sliceId, maxSlices));
+        this.initialRequest = request.scroll(KEEP_ALIVE);
+    }
+
+    @Override
+    public List<SearchHit> nextPage() {
+        if (exhausted) {
+            return Collections.emptyList();
+        }
+        final SearchResponse response = scrollId == null
+                ? client.singleSearch(initialRequest, "Failed to execute sliced scroll request")
+                : client.execute((c, requestOptions) -> c.scroll(new SearchScrollRequest(scrollId).scroll(KEEP_ALIVE), requestOptions),
+                "Failed to continue sliced scroll request");
+        this.scrollId = response.getScrollId();
+
+        final List<SearchHit> hits = Streams.stream(response.getHits()).collect(Collectors.toList());
+        this.exhausted = hits.isEmpty();
+        return hits;
+    }
+
+    @Override
+    public void close() {
+        if (scrollId == null) {
+            return;
+        }
+        final ClearScrollRequest request = new ClearScrollRequest();
+        request.addScrollId(scrollId);
+        try {
+            client.execute((c, requestOptions) -> c.clearScroll(request, requestOptions), "Unable to clear sliced scroll");
+        } catch (Exception e) {
+            LOG.debug("Unable to clear scroll context of export slice, it will expire on its own.", e);
+        }
+        this.scrollId = null;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2.views.export;
+
+import org.graylog.shaded.opensearch2.org.opensearch.search.SearchHit;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges individually sorted page sources into pages of a single sorted sequence, comparing the sort values of hits.
+ */
+class SortedMergePageSource implements PageSource {
+    private static final Comparator<SearchHit> BY_SORT_VALUES = (left, right) -> compareSortValues(left.getSortValues(), right.getSortValues());
+
+    private final List<? extends PageSource> sources;
+    private final int pageSize;
+    private final PriorityQueue<Cursor> cursors = new PriorityQueue<>(Comparator.comparing(Cursor::current, BY_SORT_VALUES));
+    private boolean initialized = false;
+
+    SortedMergePageSource(List<? extends PageSource> sources, int pageSize) {
+        this.sources = sources;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public List<SearchHit> nextPage() {
+        if (!initialized) {
+            sources.stream()
+                    .map(Cursor::new)
+                    .filter(Cursor::hasCurrent)
+                    .forEach(cursors::add);
+            initialized = true;
+        }
+
+        final List<SearchHit> page = new ArrayList<>(pageSize);
+        while (page.size() < pageSize && !cursors.isEmpty()) {
+            final Cursor cursor = cursors.poll();
+            page.add(cursor.current());
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public void close() {
+        sources.forEach(PageSource::close);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareSortValues(Object[] left, Object[] right) {
+        for (int i = 0; i < Math.min(left.length, right.length); i++) {
+            final Object l = left[i];
+            final Object r = right[i];
+            final int result;
+            if (l == null || r == null) {
+                // documents missing a sort value are sorted last
+                result = l == r ? 0 : (l == null ? 1 : -1);
+            } else if (l instanceof Number && r instanceof Number && l.getClass() != r.getClass()) {
+                result = Double.compare(((Number) l).doubleValue(), ((Number) r).doubleValue());
+            } else {
+                result = ((Comparable) l).compareTo(r);
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(left.length, right.length);
+    }
+
+    private static class Cursor {
+        private final PageSource source;
+        private List<SearchHit> page;
+        private int position = 0;
+
+        Cursor(PageSource source) {
+            this.source = source;
+            this.page = source.nextPage();
+        }
+
+        boolean hasCurrent() {
+            return position < page.size();
+        }
+
+        SearchHit current() {
+            return page.get(position);
+        }
+
+        boolean advance() {
+            position++;
+            if (!hasCurrent()) {
+                page = source.nextPage();
+                position = 0;
+            }
+            return hasCurrent();
+        }
+    }
+}
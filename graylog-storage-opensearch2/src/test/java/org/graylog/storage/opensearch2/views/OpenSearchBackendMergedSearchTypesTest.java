@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2.views;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Average;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.MultiSearchResponse;
+import org.graylog.shaded.opensearch2.org.opensearch.action.search.SearchRequest;
+import org.graylog.shaded.opensearch2.org.opensearch.search.aggregations.AggregationBuilder;
+import org.graylog.storage.opensearch2.testing.TestMultisearchResponse;
+import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+public class OpenSearchBackendMergedSearchTypesTest extends OpenSearchBackendGeneratedRequestTestBase {
+    private final Pivot pivot1 = Pivot.builder()
+            .id("pivot1")
+            .series(Collections.singletonList(Average.builder().field("field1").build()))
+            .rollup(true)
+            .build();
+    private final Pivot pivot2 = Pivot.builder()
+            .id("pivot2")
+            .series(Collections.singletonList(Max.builder().field("field2").build()))
+            .rollup(true)
+            .build();
+
+    @Before
+    public void setUpMergingBackend() {
+        this.openSearchBackend = new OpenSearchBackend(elasticSearchTypeHandlers,
+                client,
+                indexLookup,
+                (elasticsearchBackend, ssb, errors) -> new OSGeneratedQueryContext(elasticsearchBackend, ssb, errors, fieldTypesLookup),
+                usedSearchFilters -> Collections.emptySet(),
+                false,
+                true);
+    }
+
+    @Test
+    public void searchTypesWithSameContextShareOneRequest() throws Exception {
+        final Query query = query(pivot1, pivot2);
+        mockResponse("mergedMultiSearchResponse.json");
+
+        final OSGeneratedQueryContext queryContext = this.openSearchBackend.generate(query, Collections.emptySet());
+        final List<SearchRequest> generatedRequests = run(searchJobForQuery(query), query, queryContext, Collections.emptySet());
+
+        assertThat(generatedRequests).hasSize(1);
+        assertThat(generatedRequests.get(0).source().aggregations().getAggregatorFactories())
+                .extracting(AggregationBuilder::getName)
+                .contains("pivot1-series-avg(field1)", "searchtype-pivot2");
+    }
+
+    @Test
+    public void responseOfMergedRequestIsSplitIntoSearchTypes() throws Exception {
+        final Query query = query(pivot1, pivot2);
+        mockResponse("mergedMultiSearchResponse.json");
+        final SearchJob searchJob = searchJobForQuery(query);
+
+        final OSGeneratedQueryContext queryContext = this.openSearchBackend.generate(query, Collections.emptySet());
+        final QueryResult queryResult = this.openSearchBackend.doRun(searchJob, query, queryContext);
+
+        assertThat(queryResult.errors()).isEmpty();
+        assertThat(queryResult.executionStats().deduplicatedRequests()).isEqualTo(1);
+        assertThat(((PivotResult) queryResult.searchTypes().get("pivot1")).rows().get(0)).isEqualTo(
+                PivotResult.Row.builder().key(ImmutableList.of()).source("leaf").addValue(
+                        PivotResult.Value.create(Collections.singletonList("avg(field1)"), 27220.273504273504, true, "row-leaf")
+                ).build()
+        );
+        final PivotResult pivot2Result = (PivotResult) queryResult.searchTypes().get("pivot2");
+        assertThat(pivot2Result.total()).isEqualTo(2499L);
+        assertThat(pivot2Result.rows().get(0)).isEqualTo(
+                PivotResult.Row.builder().key(ImmutableList.of()).source("leaf").addValue(
+                        PivotResult.Value.create(Collections.singletonList("max(field2)"), 42.0, true, "row-leaf")
+                ).build()
+        );
+    }
+
+    @Test
+    public void searchTypesWithDifferentTimeRangesAreNotMerged() throws Exception {
+        final Query query = query(pivot1, pivot2.toBuilder().timerange(RelativeRange.create(300)).build());
+        mockResponse("successfulMultiSearchResponse.json");
+
+        final OSGeneratedQueryContext queryContext = this.openSearchBackend.generate(query, Collections.emptySet());
+        final List<SearchRequest> generatedRequests = run(searchJobForQuery(query), query, queryContext, Collections.emptySet());
+
+        assertThat(generatedRequests).hasSize(2);
+    }
+
+    private void mockResponse(String fixture) throws Exception {
+        final MultiSearchResponse response = TestMultisearchResponse.fromFixture(fixture);
+        final List<MultiSearchResponse.Item> items = Arrays.stream(response.getResponses())
+                .collect(Collectors.toList());
+        when(client.msearch(any(), any())).thenReturn(items);
+    }
+
+    private Query query(Pivot... pivots) {
+        return Query.builder()
+                .id("query1")
+                .searchTypes(ImmutableSet.copyOf(pivots))
+                .query(ElasticsearchQueryString.of("*"))
+                .timerange(timeRangeForTest())
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2.views.export;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExportPageFetcherPoolTest {
+    private final ExportPageFetcherPool pool = new ExportPageFetcherPool(4, MoreExecutors.directExecutor());
+
+    @Test
+    void exportsWaitUntilAllOfTheirFetchersCanRun() throws Exception {
+        final ExportPageFetcherPool.Reservation first = pool.reserve(3);
+
+        final CompletableFuture<ExportPageFetcherPool.Reservation> second = CompletableFuture.supplyAsync(() -> pool.reserve(2));
+        assertThatThrownBy(() -> second.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        first.close();
+        assertThat(second.get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    @Test
+    void closingReservationTwiceReleasesThreadsOnce() throws Exception {
+        final ExportPageFetcherPool.Reservation reservation = pool.reserve(4);
+        reservation.close();
+        reservation.close();
+
+        final ExportPageFetcherPool.Reservation all = pool.reserve(4);
+        final CompletableFuture<ExportPageFetcherPool.Reservation> other = CompletableFuture.supplyAsync(() -> pool.reserve(1));
+        assertThatThrownBy(() -> other.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        all.close();
+        assertThat(other.get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    @Test
+    void runningFetchersKeepTheirThreadsAfterReservationIsClosed() throws Exception {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final ExportPageFetcherPool pool = new ExportPageFetcherPool(1, executor);
+            final CountDownLatch fetcherDone = new CountDownLatch(1);
+            final ExportPageFetcherPool.Reservation reservation = pool.reserve(1);
+            reservation.executor().execute(() -> Uninterruptibles.awaitUninterruptibly(fetcherDone));
+            reservation.close();
+
+            final CompletableFuture<ExportPageFetcherPool.Reservation> other = CompletableFuture.supplyAsync(() -> pool.reserve(1));
+            assertThatThrownBy(() -> other.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+            fetcherDone.countDown();
+            assertThat(other.get(5, TimeUnit.SECONDS)).isNotNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsMoreFetchersThanReserved() {
+        final ExportPageFetcherPool.Reservation reservation = pool.reserve(1);
+        reservation.executor().execute(() -> {});
+
+        assertThatThrownBy(() -> reservation.executor().execute(() -> {}))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
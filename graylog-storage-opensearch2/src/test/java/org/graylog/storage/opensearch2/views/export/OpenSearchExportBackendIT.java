@@ -16,6 +16,7 @@
  */
 package org.graylog.storage.opensearch2.views.export;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
@@ -28,6 +29,7 @@ import org.graylog.plugins.views.search.export.TestData;
 import org.graylog.storage.opensearch2.testing.OpenSearchInstance;
 import org.graylog.testing.elasticsearch.ElasticsearchBaseTest;
 import org.graylog.testing.elasticsearch.SearchServerInstance;
+import org.graylog2.decorators.Decorator;
 import org.graylog2.indexer.ElasticsearchException;
 import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
 import org.graylog2.plugin.indexer.searches.timeranges.InvalidRangeParametersException;
@@ -37,6 +39,7 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -63,12 +66,9 @@ public class OpenSearchExportBackendIT extends ElasticsearchBaseTest {
     public void setUp() {
         indexLookup = mock(IndexLookup.class);
 
-        sut = new OpenSearchExportBackend(indexLookup, requestStrategy(), false);
-    }
-
-    private RequestStrategy requestStrategy() {
         final ExportClient exportClient = new ExportClient(openSearchInstance.openSearchClient());
-        return new SearchAfter(exportClient);
+        sut = new OpenSearchExportBackend(indexLookup, new SearchAfter(exportClient), false, exportClient,
+                new ExportPageFetcherPool(1, new MetricRegistry()), 1, 1);
     }
 
     @Test
@@ -180,11 +180,47 @@ public class OpenSearchExportBackendIT extends ElasticsearchBaseTest {
     }
 
     @Test
-    public void resultsHaveAllMessageFields() {
+    public void resultsOnlyHaveExportedFieldsWithoutDecorators() {
+        importFixture("messages.json");
+
+        ExportMessagesCommand command = commandBuilderWithAllStreams()
+                .fieldsInOrder("timestamp", "message")
+                .build();
+
+        LinkedHashSet<SimpleMessageChunk> allChunks = collectChunksFor(command);
+        SimpleMessageChunk totalResult = allChunks.iterator().next();
+
+        Set<String> allFieldsInResult = actualFieldNamesFrom(totalResult);
+
+        assertThat(allFieldsInResult).containsExactlyInAnyOrder(
+                "message",
+                "timestamp",
+                "_id");
+    }
+
+    @Test
+    public void keepsMessagesWithEqualExportedFields() {
+        importFixture("messages.json");
+
+        // Two of the messages have the same source and are stored in the same index
+        ExportMessagesCommand command = commandBuilderWithAllStreams()
+                .fieldsInOrder("source")
+                .build();
+
+        int exportedRows = collectChunksFor(command).stream()
+                .mapToInt(SimpleMessageChunk::size)
+                .sum();
+
+        assertThat(exportedRows).isEqualTo(4);
+    }
+
+    @Test
+    public void resultsHaveAllMessageFieldsForDecorators() {
         importFixture("messages.json");
 
         ExportMessagesCommand command = commandBuilderWithAllStreams()
                 .fieldsInOrder("timestamp", "message")
+                .decorators(Collections.singletonList(mock(Decorator.class)))
                 .build();
 
         LinkedHashSet<SimpleMessageChunk> allChunks = collectChunksFor(command);
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2.views.export;
+
+import org.graylog.plugins.views.search.export.ExportException;
+import org.graylog.shaded.opensearch2.org.opensearch.search.DocValueFormat;
+import org.graylog.shaded.opensearch2.org.opensearch.search.SearchHit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SlicedPageSourcesTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void prefetcherReturnsPagesOfAllSources() {
+        final PagePrefetcher prefetcher = new PagePrefetcher(List.of(pages(page(1, 2), page(3)), pages(page(4))), 1, executor);
+
+        final List<Long> timestamps = new ArrayList<>();
+        for (List<SearchHit> page = prefetcher.nextPage(); !page.isEmpty(); page = prefetcher.nextPage()) {
+            timestamps.addAll(timestampsOf(page));
+        }
+
+        assertThat(timestamps).containsExactlyInAnyOrder(1L, 2L, 3L, 4L);
+        assertThat(prefetcher.nextPage()).isEmpty();
+    }
+
+    @Test
+    void prefetcherRethrowsFailuresOfSources() {
+        final PageSource failing = () -> {
+            throw new IllegalStateException("boom");
+        };
+        final PagePrefetcher prefetcher = new PagePrefetcher(List.of(failing), 1, executor);
+
+        assertThatThrownBy(prefetcher::nextPage)
+                .isInstanceOf(ExportException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void closingPrefetcherCancelsInFlightRequests() throws Exception {
+        final CountDownLatch requestStarted = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+        final AtomicBoolean closedWhileInterrupted = new AtomicBoolean(true);
+        final AtomicBoolean sourceClosed = new AtomicBoolean(false);
+        final PageSource hangingSource = new PageSource() {
+            @Override
+            public List<SearchHit> nextPage() {
+                requestStarted.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    throw new ExportException("Request was interrupted", e);
+                }
+                return page(1);
+            }
+
+            @Override
+            public void close() {
+                closedWhileInterrupted.set(Thread.currentThread().isInterrupted());
+                sourceClosed.set(true);
+            }
+        };
+        final PagePrefetcher prefetcher = new PagePrefetcher(List.of(hangingSource), 1, executor);
+        assertThat(requestStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture.runAsync(prefetcher::close).get(5, TimeUnit.SECONDS);
+
+        assertThat(interrupted).isTrue();
+        assertThat(sourceClosed).isTrue();
+        // the source has to be able to clean up, e.g. clear its scroll context
+        assertThat(closedWhileInterrupted).isFalse();
+    }
+
+    @Test
+    void mergeReturnsHitsOfSortedSourcesInOrder() {
+        final SortedMergePageSource merge = new SortedMergePageSource(List.of(
+                pages(page(1, 4), page(6)),
+                pages(page(2, 3), page(5, 7))
+        ), 3);
+
+        assertThat(timestampsOf(merge.nextPage())).containsExactly(1L, 2L, 3L);
+        assertThat(timestampsOf(merge.nextPage())).containsExactly(4L, 5L, 6L);
+        assertThat(timestampsOf(merge.nextPage())).containsExactly(7L);
+        assertThat(merge.nextPage()).isEmpty();
+    }
+
+    @Test
+    void comparesSortValuesWithTiebreakerAndMissingValuesLast() {
+        assertThat(SortedMergePageSource.compareSortValues(new Object[]{1L, "a"}, new Object[]{1L, "b"})).isNegative();
+        assertThat(SortedMergePageSource.compareSortValues(new Object[]{2L, "a"}, new Object[]{1, "b"})).isPositive();
+        assertThat(SortedMergePageSource.compareSortValues(new Object[]{1L, null}, new Object[]{1L, "b"})).isPositive();
+        assertThat(SortedMergePageSource.compareSortValues(new Object[]{1L, "a"}, new Object[]{1L, "a"})).isZero();
+    }
+
+    @SafeVarargs
+    private static PageSource pages(List<SearchHit>... pages) {
+        final Iterator<List<SearchHit>> iterator = Arrays.asList(pages).iterator();
+        return () -> iterator.hasNext() ? iterator.next() : Collections.emptyList();
+    }
+
+    private static List<SearchHit> page(long... timestamps) {
+        return Arrays.stream(timestamps)
+                .mapToObj(SlicedPageSourcesTest::hit)
+                .collect(Collectors.toList());
+    }
+
+    private static SearchHit hit(long timestamp) {
+        final SearchHit hit = new SearchHit((int) timestamp);
+        hit.sortValues(new Object[]{timestamp}, new DocValueFormat[]{DocValueFormat.RAW});
+        return hit;
+    }
+
+    private static List<Long> timestampsOf(List<SearchHit> hits) {
+        return hits.stream()
+                .map(hit -> (Long) hit.getSortValues()[0])
+                .collect(Collectors.toList());
+    }
+}
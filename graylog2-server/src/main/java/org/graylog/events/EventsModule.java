@@ -29,6 +29,7 @@ import org.graylog.events.fields.EventFieldSpecEngine;
 import org.graylog.events.fields.providers.LookupTableFieldValueProvider;
 import org.graylog.events.fields.providers.TemplateFieldValueProvider;
 import org.graylog.events.indices.EventIndexer;
+import org.graylog.events.indices.EventIndexingBuffer;
 import org.graylog.events.legacy.LegacyAlarmCallbackEventNotification;
 import org.graylog.events.legacy.LegacyAlarmCallbackEventNotificationConfig;
 import org.graylog.events.legacy.V20190722150700_LegacyAlertConditionMigration;
@@ -40,6 +41,8 @@ import org.graylog.events.notifications.types.EmailEventNotificationConfig;
 import org.graylog.events.notifications.types.HTTPEventNotification;
 import org.graylog.events.notifications.types.HTTPEventNotificationConfig;
 import org.graylog.events.periodicals.EventNotificationStatusCleanUp;
+import org.graylog.events.periodicals.StreamingFilterCoverageUpdate;
+import org.graylog.events.periodicals.StreamingFilterEventsRefresh;
 import org.graylog.events.processor.DefaultEventResolver;
 import org.graylog.events.processor.EventProcessorEngine;
 import org.graylog.events.processor.EventProcessorExecutionJob;
@@ -83,6 +86,7 @@ public class EventsModule extends PluginModule {
         bind(EventStorageHandlerEngine.class).asEagerSingleton();
         bind(EventFieldSpecEngine.class).asEagerSingleton();
         bind(EventIndexer.class).asEagerSingleton();
+        addInitializer(EventIndexingBuffer.class);
         bind(NotificationGracePeriodService.class).asEagerSingleton();
         bind(EventProcessorExecutionMetrics.class).asEagerSingleton();
         bind(EventNotificationExecutionMetrics.class).asEagerSingleton();
@@ -100,6 +104,8 @@ public class EventsModule extends PluginModule {
         addSystemRestResource(SystemNotificationRenderResource.class);
 
         addPeriodical(EventNotificationStatusCleanUp.class);
+        addPeriodical(StreamingFilterEventsRefresh.class);
+        addPeriodical(StreamingFilterCoverageUpdate.class);
 
         addEntityFacade(ModelTypes.EVENT_DEFINITION_V1, EventDefinitionFacade.class);
         addEntityFacade(ModelTypes.NOTIFICATION_V1, NotificationFacade.class);
@@ -53,15 +53,23 @@ public class EventIndexer {
     }
 
     public void write(List<EventWithContext> eventsWithContext) {
-        if (eventsWithContext.isEmpty()) {
+        index(eventsWithContext.stream().map(EventWithContext::event).collect(Collectors.toList()));
+    }
+
+    /**
+     * Synchronously indexes the given events into the index sets of their streams.
+     *
+     * @param events the events to index
+     */
+    public void index(List<Event> events) {
+        if (events.isEmpty()) {
             return;
         }
 
         // Pre-load all write index targets of all events to avoid looking them up for every event when building the bulk request
-        final Set<String> streamIds = streamIdsForEvents(eventsWithContext);
+        final Set<String> streamIds = streamIdsForEvents(events);
         final Map<String, IndexSet> streamIndices = indexSetsForStreams(streamIds);
-        final List<IndexingRequest> requests = eventsWithContext.stream()
-                .map(EventWithContext::event)
+        final List<IndexingRequest> requests = events.stream()
                 // Collect a set of indices for the event to avoid writing to the same index set twice if
                 // multiple streams use the same index set.
                 .flatMap(event -> assignEventsToTargetIndices(event, streamIndices))
@@ -75,9 +83,8 @@ public class EventIndexer {
             .collect(Collectors.toMap(Persisted::getId, org.graylog2.plugin.streams.Stream::getIndexSet));
     }
 
-    private Set<String> streamIdsForEvents(List<EventWithContext> eventsWithContext) {
-        return eventsWithContext.stream()
-            .map(EventWithContext::event)
+    private Set<String> streamIdsForEvents(List<Event> events) {
+        return events.stream()
             .flatMap(event -> event.getStreams().stream())
             .collect(Collectors.toSet());
     }
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.indices;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.graylog.events.event.Event;
+import org.graylog.events.event.EventDto;
+import org.graylog.events.event.EventWithContext;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.LocalKafkaJournal;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Decouples the indexing of events from the execution of event processors.
+ * <p>
+ * Events are written to a dedicated journal and the caller returns right away. A single reader thread reads the events
+ * from the journal in batches, so events of all event processors are bulk indexed together, and only marks them as
+ * committed once they got indexed. Failed batches are retried until they succeed, events which are still in the journal
+ * on shutdown are indexed after the next start.
+ * <p>
+ * If the buffer is disabled, not running or holds too many pending events, events are indexed synchronously by the
+ * {@link EventIndexer}, which slows down the event processors instead of dropping events.
+ */
+@Singleton
+public class EventIndexingBuffer extends AbstractIdleService {
+    private static final Logger LOG = LoggerFactory.getLogger(EventIndexingBuffer.class);
+
+    private static final long IDLE_WAIT_MS = 100;
+    private static final long MAX_RETRY_WAIT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final boolean enabled;
+    private final Path journalDirectory;
+    private final Size journalMaxSize;
+    private final int batchSize;
+    private final long maxPendingEvents;
+    private final EventIndexer eventIndexer;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService scheduler;
+    private final MetricRegistry metricRegistry;
+    private final ServerStatus serverStatus;
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final Object newEvents = new Object();
+
+    private volatile LocalKafkaJournal journal;
+    private volatile boolean shuttingDown = false;
+    private ExecutorService readerExecutor;
+
+    @Inject
+    public EventIndexingBuffer(@Named("events_indexing_buffer_enabled") boolean enabled,
+                               @Named("events_indexing_journal_dir") Path journalDirectory,
+                               @Named("events_indexing_journal_max_size") Size journalMaxSize,
+                               @Named("events_indexing_batch_size") int batchSize,
+                               @Named("events_indexing_buffer_max_pending") int maxPendingEvents,
+                               EventIndexer eventIndexer,
+                               ObjectMapper objectMapper,
+                               @Named("daemonScheduler") ScheduledExecutorService scheduler,
+                               MetricRegistry metricRegistry,
+                               ServerStatus serverStatus) {
+        this.enabled = enabled;
+        this.journalDirectory = journalDirectory;
+        this.journalMaxSize = journalMaxSize;
+        this.batchSize = batchSize;
+        this.maxPendingEvents = maxPendingEvents;
+        this.eventIndexer = eventIndexer;
+        this.objectMapper = objectMapper;
+        this.scheduler = scheduler;
+        this.metricRegistry = metricRegistry;
+        this.serverStatus = serverStatus;
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        final LocalKafkaJournal journal = new LocalKafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(Math.max(1L, Math.min(100L, journalMaxSize.toMegabytes() / 10))),
+                Duration.standardHours(1L),
+                journalMaxSize,
+                Duration.standardHours(12L),
+                1_000_000L,
+                Duration.standardMinutes(1L),
+                LocalKafkaJournal.THRESHOLD_THROTTLING_DISABLED,
+                metricRegistry,
+                serverStatus,
+                name(EventIndexingBuffer.class, "journal"));
+        journal.startAsync().awaitRunning();
+        pendingEvents.set(uncommittedEntries(journal));
+        metricRegistry.register(name(EventIndexingBuffer.class, "pending-events"), (Gauge<Long>) pendingEvents::get);
+
+        this.journal = journal;
+        this.readerExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("event-indexing-buffer-%d")
+                .setDaemon(true)
+                .build());
+        readerExecutor.execute(this::readEvents);
+        LOG.info("Started event indexing buffer with {} pending events in <{}>", pendingEvents.get(), journalDirectory);
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        if (journal == null) {
+            return;
+        }
+        shuttingDown = true;
+        synchronized (newEvents) {
+            newEvents.notifyAll();
+        }
+        readerExecutor.shutdown();
+        if (!readerExecutor.awaitTermination(MAX_RETRY_WAIT_MS, TimeUnit.MILLISECONDS)) {
+            LOG.warn("Event indexing buffer didn't finish in time, pending events will be indexed after the next start");
+            readerExecutor.shutdownNow();
+        }
+        journal.flush();
+        journal.stopAsync().awaitTerminated();
+    }
+
+    /**
+     * Hands the given events over for indexing. The events are indexed synchronously if the buffer can't take them.
+     *
+     * @param eventsWithContext the events to index
+     */
+    public void write(List<EventWithContext> eventsWithContext) {
+        if (eventsWithContext.isEmpty()) {
+            return;
+        }
+        final LocalKafkaJournal journal = this.journal;
+        if (journal == null || shuttingDown || pendingEvents.get() + eventsWithContext.size() > maxPendingEvents) {
+            eventIndexer.write(eventsWithContext);
+            return;
+        }
+
+        final List<Journal.Entry> entries = new ArrayList<>(eventsWithContext.size());
+        try {
+            for (final EventWithContext eventWithContext : eventsWithContext) {
+                final Event event = eventWithContext.event();
+                entries.add(journal.createEntry(event.getId().getBytes(StandardCharsets.UTF_8),
+                        objectMapper.writeValueAsBytes(event.toDto())));
+            }
+        } catch (IOException e) {
+            LOG.warn("Couldn't serialize events for the event indexing buffer, indexing them directly", e);
+            eventIndexer.write(eventsWithContext);
+            return;
+        }
+
+        journal.write(entries);
+        pendingEvents.addAndGet(entries.size());
+        synchronized (newEvents) {
+            newEvents.notifyAll();
+        }
+    }
+
+    private void readEvents() {
+        while (!shuttingDown) {
+            try {
+                if (!readAndIndexBatch()) {
+                    return;
+                }
+            } catch (Exception e) {
+                LOG.error("Couldn't read events from the event indexing buffer", e);
+                Uninterruptibles.sleepUninterruptibly(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * @return false if the reader should stop
+     */
+    private boolean readAndIndexBatch() {
+        final List<Journal.JournalReadEntry> entries = journal.read(batchSize);
+        if (entries.isEmpty()) {
+            synchronized (newEvents) {
+                try {
+                    newEvents.wait(IDLE_WAIT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        final List<Event> events = decode(entries);
+        if (!indexWithRetries(events)) {
+            // Shutting down, the events stay uncommitted and are read again after the next start
+            return false;
+        }
+        journal.markJournalOffsetCommitted(entries.get(entries.size() - 1).getOffset());
+        pendingEvents.addAndGet(-entries.size());
+        return true;
+    }
+
+    private List<Event> decode(List<Journal.JournalReadEntry> entries) {
+        // Events can be read twice after an unclean shutdown, they only need to be indexed once
+        final Map<String, Event> events = new LinkedHashMap<>(entries.size());
+        for (final Journal.JournalReadEntry entry : entries) {
+            try {
+                final Event event = Event.fromDto(objectMapper.readValue(entry.getPayload(), EventDto.class));
+                events.put(event.getId(), event);
+            } catch (IOException e) {
+                LOG.error("Couldn't read event from the event indexing buffer at offset <{}>, skipping it", entry.getOffset(), e);
+            }
+        }
+        return new ArrayList<>(events.values());
+    }
+
+    private boolean indexWithRetries(List<Event> events) {
+        long attempt = 0;
+        while (true) {
+            try {
+                eventIndexer.index(events);
+                return true;
+            } catch (Exception e) {
+                final long waitMs = Math.min(MAX_RETRY_WAIT_MS, 500L << Math.min(attempt++, 10));
+                LOG.warn("Couldn't index {} events, retrying in {} ms", events.size(), waitMs, e);
+                if (shuttingDown) {
+                    return false;
+                }
+                Uninterruptibles.sleepUninterruptibly(waitMs, TimeUnit.MILLISECONDS);
+                if (shuttingDown) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private static long uncommittedEntries(LocalKafkaJournal journal) {
+        if (journal.size() == 0) {
+            return 0;
+        }
+        if (journal.getCommittedReadOffset() == LocalKafkaJournal.DEFAULT_COMMITTED_OFFSET) {
+            return journal.getLogEndOffset() - journal.getLogStartOffset();
+        }
+        return Math.max(0, journal.getLogEndOffset() - 1 - journal.getCommittedReadOffset());
+    }
+}
@@ -17,6 +17,8 @@
 package org.graylog.events.legacy;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import org.graylog.events.event.EventDto;
 import org.graylog.events.notifications.EventNotification;
 import org.graylog.events.notifications.EventNotificationContext;
 import org.graylog.events.notifications.EventNotificationService;
@@ -51,7 +53,6 @@ public class LegacyAlarmCallbackEventNotification implements EventNotification {
     @Override
     public void execute(EventNotificationContext ctx) throws PermanentEventNotificationException {
         final LegacyAlarmCallbackEventNotificationConfig config = (LegacyAlarmCallbackEventNotificationConfig) ctx.notificationConfig();
-        final ImmutableList<MessageSummary> messagesForEvent = notificationCallbackService.getBacklogForEvent(ctx);
         final Optional<EventDefinitionDto> optionalEventDefinition = ctx.eventDefinition();
 
         if (!optionalEventDefinition.isPresent()) {
@@ -60,12 +61,25 @@ public class LegacyAlarmCallbackEventNotification implements EventNotification {
             throw new PermanentEventNotificationException(msg);
         }
 
+        // Legacy alarm callbacks only know about a single event, so every event of a batch is sent on its own
+        for (final EventDto event : Iterables.concat(ImmutableList.of(ctx.event()), ctx.batchedEvents())) {
+            final EventNotificationContext eventCtx = ctx.toBuilder()
+                    .event(event)
+                    .batchedEvents(ImmutableList.of())
+                    .build();
+            send(config, optionalEventDefinition.get(), event, notificationCallbackService.getBacklogForEvent(eventCtx));
+        }
+    }
+
+    private void send(LegacyAlarmCallbackEventNotificationConfig config,
+                      EventDefinitionDto eventDefinition,
+                      EventDto event,
+                      ImmutableList<MessageSummary> messagesForEvent) throws PermanentEventNotificationException {
         try {
-            alarmCallbackSender.send(config, optionalEventDefinition.get(), ctx.event(), messagesForEvent);
+            alarmCallbackSender.send(config, eventDefinition, event, messagesForEvent);
         } catch (Exception e) {
             // TODO: Is there a case where we want to retry? (and are able to detect when to do it)
             throw new PermanentEventNotificationException("Couldn't send legacy notification - legacy notifications cannot be retried!", e);
         }
-
     }
 }
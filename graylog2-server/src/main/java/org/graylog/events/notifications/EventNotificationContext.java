@@ -18,11 +18,13 @@ package org.graylog.events.notifications;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import org.graylog.events.event.EventDto;
 import org.graylog.events.processor.EventDefinitionDto;
 import org.graylog.scheduler.JobTriggerDto;
 
 import javax.annotation.Nullable;
+import java.util.List;
 import java.util.Optional;
 
 @AutoValue
@@ -33,6 +35,11 @@ public abstract class EventNotificationContext {
 
     public abstract EventDto event();
 
+    /**
+     * @return further events of the same event definition which are delivered together with {@link #event()}
+     */
+    public abstract ImmutableList<EventDto> batchedEvents();
+
     public abstract Optional<EventDefinitionDto> eventDefinition();
 
     public abstract Optional<JobTriggerDto> jobTrigger();
@@ -47,7 +54,8 @@ public abstract class EventNotificationContext {
     public static abstract class Builder {
         @JsonCreator
         public static Builder create() {
-            return new AutoValue_EventNotificationContext.Builder();
+            return new AutoValue_EventNotificationContext.Builder()
+                    .batchedEvents(ImmutableList.of());
         }
 
         public abstract Builder notificationId(String notificationId);
@@ -56,6 +64,8 @@ public abstract class EventNotificationContext {
 
         public abstract Builder event(EventDto event);
 
+        public abstract Builder batchedEvents(List<EventDto> batchedEvents);
+
         public abstract Builder eventDefinition(@Nullable EventDefinitionDto eventDefinition);
 
         public abstract Builder jobTrigger(JobTriggerDto jobTrigger);
@@ -17,10 +17,12 @@
 package org.graylog.events.notifications;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.assistedinject.Assisted;
 import org.graylog.events.configuration.EventsConfigurationProvider;
 import org.graylog.events.event.EventDto;
@@ -35,11 +37,14 @@ import org.graylog.scheduler.JobTriggerData;
 import org.graylog.scheduler.JobTriggerDto;
 import org.graylog.scheduler.JobTriggerUpdate;
 import org.graylog2.database.NotFoundException;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.validation.constraints.NotBlank;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
@@ -91,6 +96,7 @@ public class EventNotificationExecutionJob implements Job {
                     trigger, JobTriggerUpdate.withoutNextTime());
         }
         final Data data = optionalData.get();
+        // All events of a trigger belong to the same event definition
         final EventDto eventDto = data.eventDto();
 
         final NotificationDto notification = notificationService.get(jobConfig.notificationId())
@@ -115,21 +121,22 @@ public class EventNotificationExecutionJob implements Job {
             optionalEventDefinition = Optional.empty();
         }
 
+        final List<EventDto> events = eventsOutsideGracePeriod(data.allEvents(), gracePeriodInMS);
+        if (events.isEmpty()) {
+            LOG.debug("Notification <{}> triggered but it's in grace period.", jobConfig.notificationId());
+            metrics.markInGrace(eventNotification, notification);
+            return ctx.jobTriggerUpdates().scheduleNextExecution();
+        }
+
         EventNotificationContext notificationContext = EventNotificationContext.builder()
                 .notificationId(notification.id())
                 .notificationConfig(notification.config())
-                .event(eventDto)
+                .event(events.get(0))
+                .batchedEvents(events.subList(1, events.size()))
                 .eventDefinition(optionalEventDefinition.get())
                 .jobTrigger(trigger)
                 .build();
 
-        updateTriggerStatus(eventDto, gracePeriodInMS);
-        if (inGrace(eventDto, gracePeriodInMS)) {
-            LOG.debug("Notification <{}> triggered but it's in grace period.", jobConfig.notificationId());
-            metrics.markInGrace(eventNotification, notification);
-            return ctx.jobTriggerUpdates().scheduleNextExecution();
-        }
-
         try {
             metrics.markExecution(eventNotification, notification);
             eventNotification.execute(notificationContext);
@@ -166,7 +173,7 @@ public class EventNotificationExecutionJob implements Job {
                     ctx.jobTriggerUpdates().scheduleNextExecution(),
                     e);
         }
-        updateNotifiedStatus(eventDto, gracePeriodInMS);
+        events.forEach(event -> updateNotifiedStatus(event, gracePeriodInMS));
         return ctx.jobTriggerUpdates().scheduleNextExecution();
     }
 
@@ -211,11 +218,24 @@ public class EventNotificationExecutionJob implements Job {
     @JsonTypeName(EventNotificationExecutionJob.TYPE_NAME)
     @JsonDeserialize(builder = Data.Builder.class)
     public static abstract class Data implements JobTriggerData {
-        private static final String FIELD_EVENT_DTO = "event_dto";
+        public static final String FIELD_EVENT_DTO = "event_dto";
+        public static final String FIELD_BATCHED_EVENTS = "batched_events";
 
         @JsonProperty(FIELD_EVENT_DTO)
         public abstract EventDto eventDto();
 
+        /**
+         * Further events of the same event definition which got coalesced into this trigger and are delivered together
+         * with {@link #eventDto()}.
+         */
+        @JsonProperty(FIELD_BATCHED_EVENTS)
+        public abstract ImmutableList<EventDto> batchedEvents();
+
+        @JsonIgnore
+        public List<EventDto> allEvents() {
+            return ImmutableList.<EventDto>builder().add(eventDto()).addAll(batchedEvents()).build();
+        }
+
         public static Builder builder() {
             return Builder.create();
         }
@@ -227,12 +247,16 @@ public class EventNotificationExecutionJob implements Job {
             @JsonCreator
             public static Builder create() {
                 return new AutoValue_EventNotificationExecutionJob_Data.Builder()
-                        .type(TYPE_NAME);
+                        .type(TYPE_NAME)
+                        .batchedEvents(ImmutableList.of());
             }
 
             @JsonProperty(FIELD_EVENT_DTO)
             public abstract Builder eventDto(EventDto dto);
 
+            @JsonProperty(FIELD_BATCHED_EVENTS)
+            public abstract Builder batchedEvents(List<EventDto> batchedEvents);
+
             abstract Data autoBuild();
 
             public Data build() {
@@ -249,6 +273,28 @@ public class EventNotificationExecutionJob implements Job {
                 new NotFoundException("Could not find event definition <" + eventDto.eventDefinitionId() + ">"));
     }
 
+    private List<EventDto> eventsOutsideGracePeriod(List<EventDto> events, long gracePeriodInMS) {
+        final ImmutableList.Builder<EventDto> result = ImmutableList.builder();
+        // Batched events with the same key are only notified once within the grace period
+        final Map<String, DateTime> notifiedKeys = new HashMap<>();
+
+        for (final EventDto event : events) {
+            updateTriggerStatus(event, gracePeriodInMS);
+            if (inGrace(event, gracePeriodInMS)) {
+                continue;
+            }
+            if (gracePeriodInMS > 0) {
+                final DateTime notifiedAt = notifiedKeys.get(event.key());
+                if (notifiedAt != null && notifiedAt.isAfter(event.eventTimestamp().minus(gracePeriodInMS))) {
+                    continue;
+                }
+                notifiedKeys.put(event.key(), event.eventTimestamp());
+            }
+            result.add(event);
+        }
+        return result.build();
+    }
+
     private void updateTriggerStatus(EventDto eventDto, long gracePeriodInMS) {
         if (eventDto != null) {
             notificationGracePeriodService.updateTriggerStatus(
@@ -19,25 +19,36 @@ package org.graylog.events.notifications;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.github.joschi.jadconfig.util.Duration;
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import org.graylog.events.contentpack.entities.EventNotificationHandlerConfigEntity;
 import org.graylog.events.event.Event;
+import org.graylog.events.event.EventDto;
 import org.graylog.events.event.EventWithContext;
 import org.graylog.events.processor.EventDefinition;
 import org.graylog.scheduler.DBJobDefinitionService;
 import org.graylog.scheduler.DBJobTriggerService;
 import org.graylog.scheduler.JobDefinitionDto;
+import org.graylog.scheduler.JobTriggerData;
 import org.graylog.scheduler.JobTriggerDto;
+import org.graylog.scheduler.clock.JobSchedulerClock;
 import org.graylog.scheduler.schedule.OnceJobSchedule;
 import org.graylog2.contentpacks.ContentPackable;
 import org.graylog2.contentpacks.EntityDescriptorIds;
 import org.graylog2.contentpacks.model.ModelTypes;
 import org.graylog2.contentpacks.model.entities.references.ValueReference;
+import org.joda.time.DateTime;
+import org.mongojack.DBQuery;
+import org.mongojack.DBQuery.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -48,16 +59,25 @@ public class EventNotificationHandler {
     private final DBJobTriggerService jobTriggerService;
     private final DBNotificationService notificationService;
     private final NotificationGracePeriodService notificationGracePeriodService;
+    private final JobSchedulerClock clock;
+    private final Duration batchWindow;
+    private final int batchMaxEvents;
 
     @Inject
     public EventNotificationHandler(DBJobDefinitionService jobDefinitionService,
                                     DBJobTriggerService jobTriggerService,
                                     DBNotificationService notificationService,
-                                    NotificationGracePeriodService notificationGracePeriodService) {
+                                    NotificationGracePeriodService notificationGracePeriodService,
+                                    JobSchedulerClock clock,
+                                    @Named("events_notification_batch_window") Duration batchWindow,
+                                    @Named("events_notification_batch_max_events") int batchMaxEvents) {
         this.jobDefinitionService = jobDefinitionService;
         this.jobTriggerService = jobTriggerService;
         this.notificationService = notificationService;
         this.notificationGracePeriodService = notificationGracePeriodService;
+        this.clock = clock;
+        this.batchWindow = batchWindow;
+        this.batchMaxEvents = batchMaxEvents;
     }
 
     public void handleEvents(EventDefinition definition, List<EventWithContext> eventsWithContext) {
@@ -78,24 +98,89 @@ public class EventNotificationHandler {
             final EventNotificationConfig notificationConfig = notificationDto.get().config();
             // TODO: The job trigger data needs information about the events and how to re-run the query to create the backlog
 
+            final List<Event> events = new ArrayList<>(eventsWithContext.size());
             for (EventWithContext eventWithContext : eventsWithContext) {
                 final Event event = eventWithContext.event();
-                if (notificationGracePeriodService.inGracePeriod(definition, config.notificationId(), event)) {
-                    continue;
+                if (!notificationGracePeriodService.inGracePeriod(definition, config.notificationId(), event)) {
+                    events.add(event);
                 }
-                try {
-                    final JobTriggerDto trigger = jobTriggerService.create(JobTriggerDto.builder()
-                            .jobDefinitionType(EventNotificationExecutionJob.TYPE_NAME)
-                            .jobDefinitionId(jobDefinition.get().id())
-                            .schedule(OnceJobSchedule.create())
-                            .data(notificationConfig.toJobTriggerData(event.toDto()))
-                            .build());
-                    LOG.debug("Scheduled job <{}> for notification <{}> - event <{}/{}>", trigger.id(), config.notificationId(), event.getId(), event.getMessage());
-                    // TODO: The trigger ID needs to be added to the "triggered_tasks" list of the event
-                } catch (Exception e) {
-                    LOG.error("Couldn't create job trigger for notification <{}> and event: {}", config.notificationId(), event, e);
+            }
+
+            if (batchWindow.toMilliseconds() > 0) {
+                scheduleBatches(jobDefinition.get(), config.notificationId(), notificationConfig, events);
+            } else {
+                for (Event event : events) {
+                    scheduleTrigger(jobDefinition.get(), config.notificationId(), notificationConfig.toJobTriggerData(event.toDto()), clock.nowUTC(), event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the events to the pending trigger of the notification which is due within the batch window, so they are
+     * delivered together. A new trigger is created for the remaining events if there is no pending trigger or it's full.
+     */
+    private void scheduleBatches(JobDefinitionDto jobDefinition, String notificationId, EventNotificationConfig notificationConfig, List<Event> events) {
+        final DateTime now = clock.nowUTC();
+        final Iterator<Event> iterator = events.iterator();
+
+        while (iterator.hasNext()) {
+            final Event event = iterator.next();
+            final EventDto eventDto = event.toDto();
+            final JobTriggerData triggerData = notificationConfig.toJobTriggerData(eventDto);
+            if (!(triggerData instanceof EventNotificationExecutionJob.Data)) {
+                // Notification types with their own trigger data don't know about batched events
+                scheduleTrigger(jobDefinition, notificationId, triggerData, now, event);
+                continue;
+            }
+
+            try {
+                if (batchMaxEvents > 1 && jobTriggerService.addToPendingTriggerData(jobDefinition.id(), pendingBatchQuery(eventDto), now.plus(batchWindow.toMilliseconds()),
+                        EventNotificationExecutionJob.Data.FIELD_BATCHED_EVENTS, eventDto)) {
+                    LOG.debug("Added event <{}/{}> to pending batch of notification <{}>", event.getId(), event.getMessage(), notificationId);
+                    continue;
                 }
+            } catch (Exception e) {
+                LOG.error("Couldn't add event to pending batch of notification <{}>, creating a new one: {}", notificationId, event, e);
             }
+
+            // Start a new batch with the event and as many of the following events as fit into it
+            final ImmutableList.Builder<EventDto> batchedEvents = ImmutableList.builder();
+            for (int i = 1; i < batchMaxEvents && iterator.hasNext(); i++) {
+                batchedEvents.add(iterator.next().toDto());
+            }
+            final EventNotificationExecutionJob.Data batchData = ((EventNotificationExecutionJob.Data) triggerData).toBuilder()
+                    .batchedEvents(batchedEvents.build())
+                    .build();
+            scheduleTrigger(jobDefinition, notificationId, batchData, now.plus(batchWindow.toMilliseconds()), event);
+        }
+    }
+
+    private Query pendingBatchQuery(EventDto eventDto) {
+        final String dataPrefix = JobTriggerDto.FIELD_DATA + ".";
+        return DBQuery.and(
+                DBQuery.is(dataPrefix + JobTriggerData.TYPE_FIELD, EventNotificationExecutionJob.TYPE_NAME),
+                // Batches only contain events of one event definition, the grace period and backlog depend on it
+                DBQuery.is(dataPrefix + EventNotificationExecutionJob.Data.FIELD_EVENT_DTO + "." + EventDto.FIELD_EVENT_DEFINITION_ID,
+                        eventDto.eventDefinitionId()),
+                // The first event is stored outside of the batched events
+                DBQuery.notExists(dataPrefix + EventNotificationExecutionJob.Data.FIELD_BATCHED_EVENTS + "." + (batchMaxEvents - 2))
+        );
+    }
+
+    private void scheduleTrigger(JobDefinitionDto jobDefinition, String notificationId, JobTriggerData triggerData, DateTime nextTime, Event event) {
+        try {
+            final JobTriggerDto trigger = jobTriggerService.create(JobTriggerDto.builderWithClock(clock)
+                    .jobDefinitionType(EventNotificationExecutionJob.TYPE_NAME)
+                    .jobDefinitionId(jobDefinition.id())
+                    .schedule(OnceJobSchedule.create())
+                    .nextTime(nextTime)
+                    .data(triggerData)
+                    .build());
+            LOG.debug("Scheduled job <{}> for notification <{}> - event <{}/{}>", trigger.id(), notificationId, event.getId(), event.getMessage());
+            // TODO: The trigger ID needs to be added to the "triggered_tasks" list of the event
+        } catch (Exception e) {
+            LOG.error("Couldn't create job trigger for notification <{}> and event: {}", notificationId, event, e);
         }
     }
 
@@ -55,11 +55,15 @@ public abstract class EventNotificationModelData {
     @JsonProperty("event")
     public abstract EventDto event();
 
+    @JsonProperty("batched_events")
+    public abstract ImmutableList<EventDto> batchedEvents();
+
     @JsonProperty("backlog")
     public abstract ImmutableList<MessageSummary> backlog();
 
     public static Builder builder() {
-        return new AutoValue_EventNotificationModelData.Builder();
+        return new AutoValue_EventNotificationModelData.Builder()
+                .batchedEvents(ImmutableList.of());
     }
 
     public abstract Builder toBuilder();
@@ -80,6 +84,8 @@ public abstract class EventNotificationModelData {
 
         public abstract Builder event(EventDto event);
 
+        public abstract Builder batchedEvents(List<EventDto> batchedEvents);
+
         public abstract Builder backlog(List<MessageSummary> backlog);
 
         public abstract EventNotificationModelData build();
@@ -97,6 +103,7 @@ public abstract class EventNotificationModelData {
                 .jobDefinitionId(jobTriggerDto.map(JobTriggerDto::jobDefinitionId).orElse(UNKNOWN))
                 .jobTriggerId(jobTriggerDto.map(JobTriggerDto::id).orElse(UNKNOWN))
                 .event(ctx.event())
+                .batchedEvents(ctx.batchedEvents())
                 .backlog(backlog)
                 .build();
     }
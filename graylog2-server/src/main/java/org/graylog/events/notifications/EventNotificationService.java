@@ -17,7 +17,9 @@
 package org.graylog.events.notifications;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import org.graylog.events.configuration.EventsConfigurationProvider;
+import org.graylog.events.event.EventDto;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.plugin.MessageSummary;
 import org.slf4j.Logger;
@@ -39,21 +41,29 @@ public class EventNotificationService {
     }
 
     public ImmutableList<MessageSummary> getBacklogForEvent(EventNotificationContext ctx) {
-        final ImmutableList<MessageSummary> backlog;
-        try {
-            if (ctx.eventDefinition().isPresent()) {
-                final long backlogSize = ctx.eventDefinition().get().notificationSettings().backlogSize();
-                if (backlogSize <= 0) {
-                    return ImmutableList.of();
-                }
-                backlog = eventBacklogService.getMessagesForEvent(ctx.event(), backlogSize);
-            } else {
-                backlog = eventBacklogService.getMessagesForEvent(ctx.event(), configurationProvider.get().eventNotificationsBacklog());
-            }
-        } catch (NotFoundException e) {
-            LOG.error("Failed to fetch backlog for event {}", ctx.event().id());
+        final long backlogSize = ctx.eventDefinition()
+                .map(eventDefinition -> eventDefinition.notificationSettings().backlogSize())
+                .orElseGet(() -> configurationProvider.get().eventNotificationsBacklog());
+        if (backlogSize <= 0) {
             return ImmutableList.of();
         }
-        return backlog;
+
+        // The backlog size is shared by all events of a batch, starting with the first one
+        final ImmutableList.Builder<MessageSummary> backlog = ImmutableList.builder();
+        long remaining = backlogSize;
+        for (final EventDto event : Iterables.concat(ImmutableList.of(ctx.event()), ctx.batchedEvents())) {
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                final ImmutableList<MessageSummary> messages = eventBacklogService.getMessagesForEvent(event, remaining);
+                backlog.addAll(messages);
+                remaining -= messages.size();
+            } catch (NotFoundException e) {
+                LOG.error("Failed to fetch backlog for event {}", event.id());
+                break;
+            }
+        }
+        return backlog.build();
     }
 }
@@ -63,6 +63,13 @@ public abstract class EmailEventNotificationConfig implements EventNotificationC
             "Fields:\n" +
             "${foreach event.fields field}  ${field.key}: ${field.value}\n" +
             "${end}\n" +
+            "${if batched_events}\n" +
+            "--- [Batched Events] -----------------------------\n" +
+            "Further events delivered with this notification:\n" +
+            "${foreach batched_events batched_event}\n" +
+            "${batched_event.timestamp}: ${batched_event.message} (Key: ${batched_event.key})\n" +
+            "${end}\n" +
+            "${end}\n" +
             "${if backlog}\n" +
             "--- [Backlog] ------------------------------------\n" +
             "Last messages accounting for this alert:\n" +
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.periodicals;
+
+import org.graylog.events.processor.aggregation.DBStreamingFilterCoverageService;
+import org.graylog.events.processor.aggregation.StreamingFilterEvents;
+import org.graylog2.plugin.periodical.Periodical;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+
+/**
+ * Queues a checkpoint for {@link StreamingFilterEvents} and stores the time up to which this node emitted the events
+ * of all processed messages.
+ */
+public class StreamingFilterCoverageUpdate extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingFilterCoverageUpdate.class);
+
+    private final StreamingFilterEvents streamingFilterEvents;
+    private final DBStreamingFilterCoverageService coverageService;
+
+    @Inject
+    public StreamingFilterCoverageUpdate(StreamingFilterEvents streamingFilterEvents,
+                                         DBStreamingFilterCoverageService coverageService) {
+        this.streamingFilterEvents = streamingFilterEvents;
+        this.coverageService = coverageService;
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean leaderOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return streamingFilterEvents.isEnabled();
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 1;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return 1;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+
+    @Override
+    public void doRun() {
+        // The coverage of this checkpoint is stored by the next run, once the events before it have been emitted
+        coverageService.save(streamingFilterEvents.coverage());
+        streamingFilterEvents.checkpoint();
+    }
+}
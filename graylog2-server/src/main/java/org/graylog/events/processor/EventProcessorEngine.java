@@ -106,7 +106,11 @@ public class EventProcessorEngine {
         }
     }
 
-    private void emitEvents(EventProcessor eventProcessor, EventDefinition eventDefinition, List<EventWithContext> eventsWithContext) throws EventProcessorException {
+    /**
+     * Runs the field spec, notifications and storage handlers of the given definition for the given events. This is
+     * also used for events which are created while processing messages instead of by a scheduled execution.
+     */
+    public void emitEvents(EventProcessor eventProcessor, EventDefinition eventDefinition, List<EventWithContext> eventsWithContext) throws EventProcessorException {
         if (eventsWithContext.isEmpty()) {
             return;
         }
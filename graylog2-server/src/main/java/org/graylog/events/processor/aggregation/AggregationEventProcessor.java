@@ -40,6 +40,7 @@ import org.graylog.events.processor.EventProcessorException;
 import org.graylog.events.processor.EventProcessorParameters;
 import org.graylog.events.processor.EventProcessorPreconditionException;
 import org.graylog.events.processor.EventStreamService;
+import org.graylog.events.processor.aggregation.StreamingFilterCoverageDto.Coverage;
 import org.graylog.events.search.MoreSearch;
 import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
 import org.graylog.plugins.views.search.errors.ParameterExpansionError;
@@ -85,6 +86,7 @@ public class AggregationEventProcessor implements EventProcessor {
     private final MoreSearch moreSearch;
     private final EventStreamService eventStreamService;
     private final Messages messages;
+    private final DBStreamingFilterCoverageService streamingFilterCoverageService;
 
     @Inject
     public AggregationEventProcessor(@Assisted EventDefinition eventDefinition,
@@ -93,7 +95,8 @@ public class AggregationEventProcessor implements EventProcessor {
                                      DBEventProcessorStateService stateService,
                                      MoreSearch moreSearch,
                                      EventStreamService eventStreamService,
-                                     Messages messages) {
+                                     Messages messages,
+                                     DBStreamingFilterCoverageService streamingFilterCoverageService) {
         this.eventDefinition = eventDefinition;
         this.config = (AggregationEventProcessorConfig) eventDefinition.config();
         this.aggregationSearchFactory = aggregationSearchFactory;
@@ -102,6 +105,7 @@ public class AggregationEventProcessor implements EventProcessor {
         this.moreSearch = moreSearch;
         this.eventStreamService = eventStreamService;
         this.messages = messages;
+        this.streamingFilterCoverageService = streamingFilterCoverageService;
     }
 
     @Override
@@ -213,32 +217,67 @@ public class AggregationEventProcessor implements EventProcessor {
                               EventConsumer<List<EventWithContext>> eventsConsumer) throws EventProcessorException {
         final Set<String> streams = getStreams(parameters);
 
+        TimeRange timerange = parameters.timerange();
+        // Once all processing nodes evaluate the definition while processing messages, the events of newer messages
+        // have already been created. Only the time range before that has to be searched. (e.g. after a restart)
+        // Like the dependency check, this assumes that message timestamps are close to the time they are processed.
+        final Optional<Coverage> coverage = parameters.streams().isEmpty() && eventDefinition.id() != null
+                ? streamingFilterCoverageService.clusterCoverage(eventDefinition.id())
+                : Optional.empty();
+        if (coverage.isPresent() && coverage.get().since().isBefore(timerange.getTo())) {
+            if (coverage.get().coveredUntil().isBefore(timerange.getTo())) {
+                final String msg = String.format(Locale.ROOT, "Couldn't run filter <%s/%s> for timerange <%s to %s> because events of processed messages haven't been emitted, yet.",
+                        eventDefinition.title(), eventDefinition.id(), timerange.getFrom(), timerange.getTo());
+                throw new EventProcessorPreconditionException(msg, eventDefinition);
+            }
+            if (!coverage.get().since().isAfter(timerange.getFrom())) {
+                LOG.debug("Skipping search for <{}/{}> because it's evaluated while processing messages since <{}>",
+                        eventDefinition.title(), eventDefinition.id(), coverage.get().since());
+                return;
+            }
+            timerange = AbsoluteRange.create(timerange.getFrom(), coverage.get().since());
+        }
+
         final MoreSearch.ScrollCallback callback = (messages, continueScrolling) -> {
             final ImmutableList.Builder<EventWithContext> eventsWithContext = ImmutableList.builder();
 
             for (final ResultMessage resultMessage : messages) {
-                final Message msg = resultMessage.getMessage();
-                final Event event = eventFactory.createEvent(eventDefinition, msg.getTimestamp(), eventDefinition.title());
-                event.setOriginContext(EventOriginContext.elasticsearchMessage(resultMessage.getIndex(), msg.getId()));
-
-                // Ensure the event has values in the "source_streams" field for permission checks to work
-                eventStreamService.buildEventSourceStreams(getStreams(parameters), ImmutableSet.copyOf(msg.getStreamIds()))
-                        .forEach(event::addSourceStream);
-
-                event.setReplayInfo(EventReplayInfo.builder()
-                        .timerangeStart(parameters.timerange().getFrom())
-                        .timerangeEnd(parameters.timerange().getTo())
-                        .query(config.query())
-                        .streams(event.getSourceStreams())
-                        .build());
-
-                eventsWithContext.add(EventWithContext.create(event, msg));
+                eventsWithContext.add(eventFromMessage(eventFactory, resultMessage.getIndex(), resultMessage.getMessage(),
+                        streams, parameters.timerange()));
             }
 
             eventsConsumer.accept(eventsWithContext.build());
         };
 
-        moreSearch.scrollQuery(config.query(), streams, config.queryParameters(), parameters.timerange(), parameters.batchSize(), callback);
+        moreSearch.scrollQuery(config.query(), streams, config.queryParameters(), timerange, parameters.batchSize(), callback);
+    }
+
+    /**
+     * Creates the event for a message matching the query of a definition without series.
+     *
+     * @param eventFactory the event factory
+     * @param index        the index containing the message
+     * @param msg          the message
+     * @param streams      the streams of the definition
+     * @param timerange    the time range the message has been found in
+     * @return the event with the message as context
+     */
+    EventWithContext eventFromMessage(EventFactory eventFactory, String index, Message msg, Set<String> streams, TimeRange timerange) {
+        final Event event = eventFactory.createEvent(eventDefinition, msg.getTimestamp(), eventDefinition.title());
+        event.setOriginContext(EventOriginContext.elasticsearchMessage(index, msg.getId()));
+
+        // Ensure the event has values in the "source_streams" field for permission checks to work
+        eventStreamService.buildEventSourceStreams(streams, ImmutableSet.copyOf(msg.getStreamIds()))
+                .forEach(event::addSourceStream);
+
+        event.setReplayInfo(EventReplayInfo.builder()
+                .timerangeStart(timerange.getFrom())
+                .timerangeEnd(timerange.getTo())
+                .query(config.query())
+                .streams(event.getSourceStreams())
+                .build());
+
+        return EventWithContext.create(event, msg);
     }
 
     private void aggregatedSearch(EventFactory eventFactory, AggregationEventProcessorParameters parameters,
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.mongodb.BasicDBObject;
+import org.bson.types.ObjectId;
+import org.graylog.events.processor.aggregation.StreamingFilterCoverageDto.Coverage;
+import org.graylog.scheduler.clock.JobSchedulerClock;
+import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.database.MongoDBUpsertRetryer;
+import org.graylog2.plugin.system.NodeId;
+import org.graylog2.system.processing.DBProcessingStatusService;
+import org.graylog2.system.processing.ProcessingStatusDto;
+import org.joda.time.DateTime;
+import org.mongojack.DBCursor;
+import org.mongojack.DBQuery;
+import org.mongojack.JacksonDBCollection;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.graylog.events.processor.aggregation.StreamingFilterCoverageDto.FIELD_NODE_ID;
+import static org.graylog.events.processor.aggregation.StreamingFilterCoverageDto.FIELD_UPDATED_AT;
+
+/**
+ * Manages the database collection in which every node stores the event definitions it evaluates while processing
+ * messages. Scheduled executions use it to find the time every processing node in the cluster has covered.
+ */
+public class DBStreamingFilterCoverageService {
+    static final String COLLECTION_NAME = "event_streaming_filter_coverage";
+
+    private final String nodeId;
+    private final JobSchedulerClock clock;
+    private final Duration updateThreshold;
+    private final DBProcessingStatusService processingStatusService;
+    private final JacksonDBCollection<StreamingFilterCoverageDto, ObjectId> db;
+
+    @Inject
+    public DBStreamingFilterCoverageService(MongoConnection mongoConnection,
+                                            MongoJackObjectMapperProvider mapper,
+                                            NodeId nodeId,
+                                            JobSchedulerClock clock,
+                                            @Named("processing_status_update_threshold") Duration updateThreshold,
+                                            DBProcessingStatusService processingStatusService) {
+        this.nodeId = nodeId.getNodeId();
+        this.clock = clock;
+        this.updateThreshold = updateThreshold;
+        this.processingStatusService = processingStatusService;
+        this.db = JacksonDBCollection.wrap(mongoConnection.getDatabase().getCollection(COLLECTION_NAME),
+                StreamingFilterCoverageDto.class,
+                ObjectId.class,
+                mapper.get());
+
+        db.createIndex(new BasicDBObject(FIELD_NODE_ID, 1), new BasicDBObject("unique", true));
+    }
+
+    /**
+     * Replaces the coverage of the calling node.
+     *
+     * @param definitions the coverage of each evaluated event definition, keyed by event definition ID
+     */
+    public void save(Map<String, Coverage> definitions) {
+        final StreamingFilterCoverageDto dto = StreamingFilterCoverageDto.builder()
+                .nodeId(nodeId)
+                .updatedAt(clock.nowUTC())
+                .definitions(definitions)
+                .build();
+        MongoDBUpsertRetryer.run(() -> db.findAndModify(
+                DBQuery.is(FIELD_NODE_ID, nodeId),
+                null,
+                null,
+                false,
+                dto,
+                false,
+                true));
+    }
+
+    /**
+     * Combines the coverage of the given event definition of all nodes which are currently processing messages. The
+     * result starts with the latest and ends with the earliest coverage of any node.
+     *
+     * @param eventDefinitionId the event definition ID
+     * @return the coverage of the whole cluster, empty if any processing node doesn't evaluate the definition
+     */
+    public Optional<Coverage> clusterCoverage(String eventDefinitionId) {
+        final DateTime updateThresholdTimestamp = clock.nowUTC().minus(updateThreshold.toMilliseconds());
+
+        final Map<String, Coverage> coverageByNode = new HashMap<>();
+        try (DBCursor<StreamingFilterCoverageDto> cursor = db.find(DBQuery.greaterThan(FIELD_UPDATED_AT, updateThresholdTimestamp))) {
+            while (cursor.hasNext()) {
+                final StreamingFilterCoverageDto dto = cursor.next();
+                final Coverage coverage = dto.definitions().get(eventDefinitionId);
+                if (coverage != null) {
+                    coverageByNode.put(dto.nodeId(), coverage);
+                }
+            }
+        }
+        if (coverageByNode.isEmpty()) {
+            return Optional.empty();
+        }
+
+        DateTime since = null;
+        DateTime coveredUntil = null;
+        for (final ProcessingStatusDto processingStatus : processingStatusService.all()) {
+            if (!processingStatus.updatedAt().isAfter(updateThresholdTimestamp)) {
+                continue;
+            }
+            final Coverage coverage = coverageByNode.get(processingStatus.nodeId());
+            if (coverage == null) {
+                // The messages of this node are not evaluated, so every execution has to search them
+                return Optional.empty();
+            }
+            since = since == null || coverage.since().isAfter(since) ? coverage.since() : since;
+            coveredUntil = coveredUntil == null || coverage.coveredUntil().isBefore(coveredUntil) ? coverage.coveredUntil() : coveredUntil;
+        }
+        return since == null ? Optional.empty() : Optional.of(Coverage.create(since, coveredUntil));
+    }
+}
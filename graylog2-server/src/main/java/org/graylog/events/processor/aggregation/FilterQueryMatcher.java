@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Doubles;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.BytesRef;
+import org.graylog.plugins.views.search.validation.LuceneQueryParser;
+import org.graylog.plugins.views.search.validation.ParsedTerm;
+import org.graylog2.plugin.Message;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Compiles the search query and streams of filter event definitions into a predicate which can be evaluated against
+ * messages before they are indexed.
+ * <p>
+ * Only queries with the same result as the search are compiled: terms, phrases, wildcards and numeric ranges on
+ * keyword fields, {@code _exists_} checks and boolean combinations of them. Queries on analyzed fields like
+ * {@code message}, on the default field or with query parameters are not supported and keep being searched.
+ */
+public class FilterQueryMatcher implements Predicate<Message> {
+    private static final String EXISTS_FIELD = "_exists_";
+    private static final Set<String> UNSUPPORTED_FIELDS = ImmutableSet.of(ParsedTerm.DEFAULT_FIELD, "_all",
+            Message.FIELD_MESSAGE, Message.FIELD_FULL_MESSAGE, Message.FIELD_TIMESTAMP);
+
+    private final Predicate<Message> queryPredicate;
+    private final Set<String> streams;
+
+    private FilterQueryMatcher(Predicate<Message> queryPredicate, Set<String> streams) {
+        this.queryPredicate = queryPredicate;
+        this.streams = streams;
+    }
+
+    /**
+     * @return the matcher for the given config, empty if the query of the config isn't supported
+     */
+    public static Optional<FilterQueryMatcher> compile(AggregationEventProcessorConfig config) {
+        if (!config.series().isEmpty() || !config.queryParameters().isEmpty()) {
+            return Optional.empty();
+        }
+        return compileQuery(config.query())
+                .map(predicate -> new FilterQueryMatcher(predicate, ImmutableSet.copyOf(config.streams())));
+    }
+
+    @Override
+    public boolean test(Message message) {
+        return (streams.isEmpty() || message.getStreamIds().stream().anyMatch(streams::contains))
+                && queryPredicate.test(message);
+    }
+
+    private static Optional<Predicate<Message>> compileQuery(String query) {
+        if (isNullOrEmpty(query) || query.trim().isEmpty() || "*".equals(query.trim())) {
+            return Optional.of(message -> true);
+        }
+        final QueryParser parser = new QueryParser(ParsedTerm.DEFAULT_FIELD, LuceneQueryParser.ANALYZER);
+        parser.setSplitOnWhitespace(true);
+        parser.setAllowLeadingWildcard(true);
+        try {
+            return compile(parser.parse(query));
+        } catch (ParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<Predicate<Message>> compile(Query query) {
+        if (query instanceof BoostQuery) {
+            return compile(((BoostQuery) query).getQuery());
+        }
+        if (query instanceof MatchAllDocsQuery) {
+            return Optional.of(message -> true);
+        }
+        if (query instanceof BooleanQuery) {
+            return compileBoolean((BooleanQuery) query);
+        }
+        if (query instanceof TermQuery) {
+            final Term term = ((TermQuery) query).getTerm();
+            if (EXISTS_FIELD.equals(term.field())) {
+                return isSupportedField(term.text()) ? Optional.of(message -> message.hasField(term.text())) : Optional.empty();
+            }
+            // ">=500" and similar ranges are only understood by the search server
+            if (term.text().startsWith(">") || term.text().startsWith("<")) {
+                return Optional.empty();
+            }
+            return fieldPredicate(term.field(), value -> termEquals(value, term.text()));
+        }
+        if (query instanceof PhraseQuery) {
+            final PhraseQuery phraseQuery = (PhraseQuery) query;
+            final String phrase = Arrays.stream(phraseQuery.getTerms()).map(Term::text).collect(Collectors.joining(" "));
+            return phraseQuery.getSlop() == 0 ? fieldPredicate(phraseQuery.getField(), value -> value.toString().equals(phrase)) : Optional.empty();
+        }
+        if (query instanceof PrefixQuery) {
+            final Term prefix = ((PrefixQuery) query).getPrefix();
+            return fieldPredicate(prefix.field(), value -> value.toString().startsWith(prefix.text()));
+        }
+        if (query instanceof WildcardQuery) {
+            final Term term = ((WildcardQuery) query).getTerm();
+            if (term.text().contains("\\")) {
+                return Optional.empty();
+            }
+            final Pattern pattern = wildcardPattern(term.text());
+            return fieldPredicate(term.field(), value -> pattern.matcher(value.toString()).matches());
+        }
+        if (query instanceof TermRangeQuery) {
+            return compileRange((TermRangeQuery) query);
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<Predicate<Message>> compileBoolean(BooleanQuery query) {
+        final ImmutableList.Builder<Predicate<Message>> required = ImmutableList.builder();
+        final ImmutableList.Builder<Predicate<Message>> optional = ImmutableList.builder();
+        final ImmutableList.Builder<Predicate<Message>> prohibited = ImmutableList.builder();
+        for (final BooleanClause clause : query.clauses()) {
+            final Optional<Predicate<Message>> predicate = compile(clause.getQuery());
+            if (!predicate.isPresent()) {
+                return Optional.empty();
+            }
+            switch (clause.getOccur()) {
+                case MUST:
+                case FILTER:
+                    required.add(predicate.get());
+                    break;
+                case SHOULD:
+                    optional.add(predicate.get());
+                    break;
+                case MUST_NOT:
+                    prohibited.add(predicate.get());
+                    break;
+            }
+        }
+        final List<Predicate<Message>> must = required.build();
+        final List<Predicate<Message>> should = optional.build();
+        final List<Predicate<Message>> mustNot = prohibited.build();
+        // Optional clauses only have to match if there are no required clauses
+        final int minimumShouldMatch = must.isEmpty() && !should.isEmpty()
+                ? Math.max(1, query.getMinimumNumberShouldMatch())
+                : query.getMinimumNumberShouldMatch();
+
+        return Optional.of(message -> must.stream().allMatch(p -> p.test(message))
+                && mustNot.stream().noneMatch(p -> p.test(message))
+                && should.stream().filter(p -> p.test(message)).limit(minimumShouldMatch).count() >= minimumShouldMatch);
+    }
+
+    private static Optional<Predicate<Message>> compileRange(TermRangeQuery query) {
+        final Optional<Double> lower = rangeBound(query.getLowerTerm());
+        final Optional<Double> upper = rangeBound(query.getUpperTerm());
+        // Only numeric ranges are compiled, ranges on strings and dates depend on the field type in the index
+        if ((query.getLowerTerm() != null && !lower.isPresent()) || (query.getUpperTerm() != null && !upper.isPresent())) {
+            return Optional.empty();
+        }
+        if (!isSupportedField(query.getField())) {
+            return Optional.empty();
+        }
+        final String field = query.getField();
+        return Optional.of(message -> {
+            final Object value = message.getField(field);
+            if (!(value instanceof Number)) {
+                return false;
+            }
+            final double number = ((Number) value).doubleValue();
+            return lower.map(bound -> query.includesLower() ? number >= bound : number > bound).orElse(true)
+                    && upper.map(bound -> query.includesUpper() ? number <= bound : number < bound).orElse(true);
+        });
+    }
+
+    private static Optional<Double> rangeBound(BytesRef term) {
+        return Optional.ofNullable(term).map(BytesRef::utf8ToString).map(Doubles::tryParse);
+    }
+
+    private static boolean termEquals(Object value, String term) {
+        if (value instanceof Number) {
+            // Numeric fields match terms with the same number, e.g. 500.0 matches "500"
+            final Double number = Doubles.tryParse(term);
+            return number != null && number == ((Number) value).doubleValue();
+        }
+        return value.toString().equals(term);
+    }
+
+    private static Optional<Predicate<Message>> fieldPredicate(String field, Predicate<Object> valuePredicate) {
+        if (!isSupportedField(field)) {
+            return Optional.empty();
+        }
+        if (Message.FIELD_STREAMS.equals(field)) {
+            return Optional.of(message -> message.getStreamIds().stream().anyMatch(valuePredicate));
+        }
+        return Optional.of(message -> {
+            final Object value = message.getField(field);
+            if (value instanceof Collection) {
+                return ((Collection<?>) value).stream().anyMatch(element -> element != null && valuePredicate.test(element));
+            }
+            return value != null && valuePredicate.test(value);
+        });
+    }
+
+    private static boolean isSupportedField(String field) {
+        return !UNSUPPORTED_FIELDS.contains(field) && !field.contains("*");
+    }
+
+    private static Pattern wildcardPattern(String wildcard) {
+        final StringBuilder regex = new StringBuilder();
+        final StringBuilder literal = new StringBuilder();
+        for (final char c : wildcard.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
@@ -34,6 +34,7 @@ import org.graylog.plugins.views.search.SearchType;
 import org.graylog.plugins.views.search.db.SearchJobService;
 import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
 import org.graylog.plugins.views.search.engine.QueryEngine;
+import org.graylog.plugins.views.search.engine.QueryExecutionPriority;
 import org.graylog.plugins.views.search.errors.EmptyParameterError;
 import org.graylog.plugins.views.search.errors.QueryError;
 import org.graylog.plugins.views.search.errors.SearchError;
@@ -50,6 +51,7 @@ import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Values;
 import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
 import org.graylog2.notifications.Notification;
 import org.graylog2.notifications.NotificationService;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
 import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
 import org.graylog2.plugin.streams.Stream;
 import org.joda.time.DateTime;
@@ -60,8 +62,12 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -92,6 +98,8 @@ public class PivotAggregationSearch implements AggregationSearch {
     private final MoreSearch moreSearch;
     private final PermittedStreams permittedStreams;
     private final NotificationService notificationService;
+    private final SharedAggregationSearches sharedSearches;
+    private final RollingAggregationPartials rollingPartials;
 
     @Inject
     public PivotAggregationSearch(@Assisted AggregationEventProcessorConfig config,
@@ -103,7 +111,9 @@ public class PivotAggregationSearch implements AggregationSearch {
                                   EventsConfigurationProvider configProvider,
                                   MoreSearch moreSearch,
                                   PermittedStreams permittedStreams,
-                                  NotificationService notificationService) {
+                                  NotificationService notificationService,
+                                  SharedAggregationSearches sharedSearches,
+                                  RollingAggregationPartials rollingPartials) {
         this.config = config;
         this.parameters = parameters;
         this.searchOwner = searchOwner;
@@ -114,19 +124,90 @@ public class PivotAggregationSearch implements AggregationSearch {
         this.moreSearch = moreSearch;
         this.permittedStreams = permittedStreams;
         this.notificationService = notificationService;
+        this.sharedSearches = sharedSearches;
+        this.rollingPartials = rollingPartials;
     }
 
-    private String metricName(AggregationSeries series) {
+    private static String metricName(AggregationSeries series) {
         return String.format(Locale.ROOT, "metric/%s/%s/%s",
                 series.function().toString().toLowerCase(Locale.ROOT), series.field().orElse("<no-field>"), series.id());
     }
 
     @Override
     public AggregationResult doSearch() throws EventProcessorException {
-        final SearchJob searchJob = getSearchJob(parameters, searchOwner, config.searchWithinMs(), config.executeEveryMs());
+        final Set<String> streams = getStreams(parameters);
+        // Sliding window aggregations might only need to search the newest execution interval
+        if (rollingPartials.supports(eventDefinition.id(), config, parameters)) {
+            return doRollingSearch(streams);
+        }
+        // Event definitions with the same search parameters might be able to share a single search
+        final Optional<SearchJob> sharedSearchJob = sharedSearches.search(eventDefinition.id(), config, streams,
+                parameters.timerange(), pivots -> getSearchJob(parameters, streams, pivots, false));
+        final String pivotId = sharedSearchJob.isPresent() ? SharedAggregationSearches.pivotId(eventDefinition.id()) : PIVOT_ID;
+        final SearchJob searchJob = sharedSearchJob.isPresent()
+                ? sharedSearchJob.get()
+                : getSearchJob(parameters, streams, Collections.singletonMap(PIVOT_ID, config), false);
         final QueryResult queryResult = searchJob.results().get(QUERY_ID);
         final QueryResult streamQueryResult = searchJob.results().get(STREAMS_QUERY_ID);
 
+        if (hasOnlyEmptyParameterErrors(queryResult, streamQueryResult)) {
+            return AggregationResult.empty();
+        }
+
+        final PivotResult pivotResult = (PivotResult) queryResult.searchTypes().get(pivotId);
+        final PivotResult streamsResult = (PivotResult) streamQueryResult.searchTypes().get(STREAMS_PIVOT_ID);
+
+        return AggregationResult.builder()
+                .keyResults( extractValues(pivotResult))
+                .effectiveTimerange(pivotResult.effectiveTimerange())
+                .totalAggregatedMessages(pivotResult.total())
+                .sourceStreams(extractSourceStreams(streamsResult))
+                .build();
+    }
+
+    /**
+     * Searches the execution intervals of the window which haven't been aggregated by previous executions, each of
+     * them in its own date range bucket, and combines them with the partials of the other intervals.
+     */
+    private AggregationResult doRollingSearch(Set<String> streams) throws EventProcessorException {
+        final String definitionId = eventDefinition.id();
+        final Optional<AbsoluteRange> missingRange = rollingPartials.missingRange(definitionId, config, streams, parameters.timerange());
+
+        long totalAggregatedMessages = 0;
+        if (missingRange.isPresent()) {
+            // Date range buckets of the size of the execution interval
+            final AggregationEventProcessorConfig intervalConfig = config.toBuilder()
+                    .searchWithinMs(config.executeEveryMs())
+                    .build();
+            final AggregationEventProcessorParameters intervalParameters = parameters.toBuilder()
+                    .timerange(missingRange.get())
+                    .build();
+            final SearchJob searchJob = getSearchJob(intervalParameters, streams, Collections.singletonMap(PIVOT_ID, intervalConfig), true);
+            final QueryResult queryResult = searchJob.results().get(QUERY_ID);
+            final QueryResult streamQueryResult = searchJob.results().get(STREAMS_QUERY_ID);
+
+            if (hasOnlyEmptyParameterErrors(queryResult, streamQueryResult)) {
+                return AggregationResult.empty();
+            }
+
+            final PivotResult pivotResult = (PivotResult) queryResult.searchTypes().get(PIVOT_ID);
+            final PivotResult streamsResult = (PivotResult) streamQueryResult.searchTypes().get(STREAMS_PIVOT_ID);
+
+            rollingPartials.store(definitionId, config, streams, missingRange.get(), extractValues(pivotResult),
+                    extractSourceStreamsByInterval(streamsResult));
+            // Only the messages of the missing intervals have been aggregated by this execution
+            totalAggregatedMessages = pivotResult.total();
+        }
+
+        return rollingPartials.combine(definitionId, config, streams, parameters.timerange(), totalAggregatedMessages);
+    }
+
+    /**
+     * Logs the errors of the search and throws an exception if there are errors other than empty parameter errors.
+     *
+     * @return true if the search failed only because of empty parameters, false if there are no errors
+     */
+    private boolean hasOnlyEmptyParameterErrors(QueryResult queryResult, QueryResult streamQueryResult) throws EventProcessorException {
         final Set<SearchError> aggregationErrors = firstNonNull(queryResult.errors(), Collections.emptySet());
         final Set<SearchError> streamErrors = firstNonNull(streamQueryResult.errors(), Collections.emptySet());
 
@@ -149,9 +230,9 @@ public class PivotAggregationSearch implements AggregationSearch {
                 }
             });
 
-            // If we have only EmptyParameterErrors, just return an empty Result
+            // If we have only EmptyParameterErrors, the search just returns an empty result
             if (errors.stream().allMatch(e -> e instanceof EmptyParameterError)) {
-                return AggregationResult.empty();
+                return true;
             }
 
             final String description = f("Event definition %s (%s) failed: %s",
@@ -172,16 +253,7 @@ public class PivotAggregationSearch implements AggregationSearch {
                 throw new EventProcessorException(errors.iterator().next().description(), false, eventDefinition);
             }
         }
-
-        final PivotResult pivotResult = (PivotResult) queryResult.searchTypes().get(PIVOT_ID);
-        final PivotResult streamsResult = (PivotResult) streamQueryResult.searchTypes().get(STREAMS_PIVOT_ID);
-
-        return AggregationResult.builder()
-                .keyResults( extractValues(pivotResult))
-                .effectiveTimerange(pivotResult.effectiveTimerange())
-                .totalAggregatedMessages(pivotResult.total())
-                .sourceStreams(extractSourceStreams(streamsResult))
-                .build();
+        return false;
     }
 
     private ImmutableSet<String> extractSourceStreams(PivotResult pivotResult) {
@@ -193,6 +265,17 @@ public class PivotAggregationSearch implements AggregationSearch {
             .collect(ImmutableSet.toImmutableSet());
     }
 
+    private Map<DateTime, Set<String>> extractSourceStreamsByInterval(PivotResult pivotResult) {
+        final Map<DateTime, Set<String>> sourceStreams = new HashMap<>();
+        pivotResult.rows().stream()
+                .filter(row -> "leaf".equals(row.source()) && row.key().size() > 1)
+                // The first key value is the date range bucket of the interval, followed by the stream
+                .forEach(row -> sourceStreams
+                        .computeIfAbsent(DateTime.parse(row.key().get(0)).withZone(DateTimeZone.UTC), k -> new HashSet<>())
+                        .add(row.key().get(1)));
+        return sourceStreams;
+    }
+
     @VisibleForTesting
     ImmutableList<AggregationKeyResult> extractValues(PivotResult pivotResult) throws EventProcessorException {
         final ImmutableList.Builder<AggregationKeyResult> results = ImmutableList.builder();
@@ -354,17 +437,21 @@ public class PivotAggregationSearch implements AggregationSearch {
         return results.build();
     }
 
-    private SearchJob getSearchJob(AggregationEventProcessorParameters parameters, String username,
-                                   long searchWithinMs, long executeEveryMs) throws EventProcessorException {
+    private SearchJob getSearchJob(AggregationEventProcessorParameters parameters, Set<String> streams,
+                                   Map<String, AggregationEventProcessorConfig> pivots,
+                                   boolean sourceStreamsByInterval) throws EventProcessorException {
+        final Query sourceStreamsQuery = sourceStreamsByInterval
+                ? getSourceStreamsQuery(parameters, streams, config.executeEveryMs())
+                : getSourceStreamsQuery(parameters, streams);
         Search search = Search.builder()
-                .queries(ImmutableSet.of(getAggregationQuery(parameters, searchWithinMs, executeEveryMs), getSourceStreamsQuery(parameters)))
+                .queries(ImmutableSet.of(getAggregationQuery(parameters, streams, pivots), sourceStreamsQuery))
                 .parameters(config.queryParameters())
                 .build();
         // This adds all streams if none were provided
         // TODO: Once we introduce "EventProcessor owners" this should only load the permitted streams of the
         //       user who created this EventProcessor.
         search = search.addStreamsToQueriesWithoutStreams(() -> permittedStreams.load((streamId) -> true));
-        final SearchJob searchJob = queryEngine.execute(searchJobService.create(search, username), Collections.emptySet());
+        final SearchJob searchJob = queryEngine.execute(searchJobService.create(search, searchOwner), Collections.emptySet(), QueryExecutionPriority.BACKGROUND);
         try {
             Uninterruptibles.getUninterruptibly(
                 searchJob.getResultFuture(),
@@ -385,13 +472,33 @@ public class PivotAggregationSearch implements AggregationSearch {
      * Returns the query to compute the sources streams for the aggregation.
      *
      * @param parameters processor parameters
+     * @param streams    the streams to search in
+     * @return source streams query
+     */
+    private Query getSourceStreamsQuery(AggregationEventProcessorParameters parameters, Set<String> streams) {
+        return getSourceStreamsQuery(parameters, streams,
+                ImmutableList.of(Values.builder().limit(Integer.MAX_VALUE).field("streams").build()));
+    }
+
+    /**
+     * Returns the query to compute the source streams for every execution interval of the time range.
+     *
+     * @param parameters processor parameters
+     * @param streams    the streams to search in
+     * @param intervalMs the size of the execution intervals
      * @return source streams query
      */
-    private Query getSourceStreamsQuery(AggregationEventProcessorParameters parameters) {
+    private Query getSourceStreamsQuery(AggregationEventProcessorParameters parameters, Set<String> streams, long intervalMs) {
+        return getSourceStreamsQuery(parameters, streams, ImmutableList.of(
+                buildDateRangeBuckets(parameters.timerange(), intervalMs, intervalMs),
+                Values.builder().limit(Integer.MAX_VALUE).field("streams").build()));
+    }
+
+    private Query getSourceStreamsQuery(AggregationEventProcessorParameters parameters, Set<String> streams, List<BucketSpec> rowGroups) {
         final Pivot pivot = Pivot.builder()
             .id(STREAMS_PIVOT_ID)
             .rollup(true)
-            .rowGroups(ImmutableList.of(Values.builder().limit(Integer.MAX_VALUE).field("streams").build()))
+            .rowGroups(rowGroups)
             .series(ImmutableList.of(Count.builder().id(STREAMS_PIVOT_COUNT_ID).build()))
             .build();
 
@@ -402,7 +509,6 @@ public class PivotAggregationSearch implements AggregationSearch {
             .query(ElasticsearchQueryString.of(config.query()))
             .timerange(parameters.timerange());
 
-        final Set<String> streams = getStreams(parameters);
         if (!streams.isEmpty()) {
             queryBuilder.filter(filteringForStreamIds(streams));
         }
@@ -411,16 +517,43 @@ public class PivotAggregationSearch implements AggregationSearch {
     }
 
     /**
-     * Returns the query to compute the aggregation.
+     * Returns the query to compute the aggregations.
      *
      * @param parameters processor parameters
-     * @param searchWithinMs processor search within period. Used to build the date range buckets
-     * @param executeEveryMs
+     * @param streams    the streams to search in
+     * @param pivots     the configs of the aggregations to compute by pivot ID
      * @return aggregation query
      */
-    private Query getAggregationQuery(AggregationEventProcessorParameters parameters, long searchWithinMs, long executeEveryMs) {
+    private Query getAggregationQuery(AggregationEventProcessorParameters parameters, Set<String> streams,
+                                      Map<String, AggregationEventProcessorConfig> pivots) {
+        final Set<SearchType> searchTypes = pivots.entrySet().stream()
+                .map(pivot -> getAggregationPivot(pivot.getKey(), pivot.getValue(), parameters.timerange()))
+                .collect(toSet());
+
+        final Query.Builder queryBuilder = Query.builder()
+                .id(QUERY_ID)
+                .searchTypes(searchTypes)
+                .query(ElasticsearchQueryString.of(config.query()))
+                .timerange(parameters.timerange());
+
+        if (!streams.isEmpty()) {
+            queryBuilder.filter(filteringForStreamIds(streams));
+        }
+
+        return queryBuilder.build();
+    }
+
+    /**
+     * Returns the pivot to compute the aggregation of the given config.
+     *
+     * @param pivotId   the ID of the pivot
+     * @param config    the config of the aggregation
+     * @param timerange the time range used to build the date range buckets
+     * @return aggregation pivot
+     */
+    private static Pivot getAggregationPivot(String pivotId, AggregationEventProcessorConfig config, TimeRange timerange) {
         final Pivot.Builder pivotBuilder = Pivot.builder()
-                .id(PIVOT_ID)
+                .id(pivotId)
                 .rollup(true);
 
         final ImmutableList<SeriesSpec> series = config.series().stream()
@@ -436,7 +569,7 @@ public class PivotAggregationSearch implements AggregationSearch {
         // the time ranges will overlap.
         // This allows us to run aggregations over larger time ranges than the searchWithin time.
         // The results will be received in time buckets of the searchWithin time size.
-        final DateRangeBucket dateRangeBucket = buildDateRangeBuckets(parameters.timerange(), searchWithinMs, executeEveryMs);
+        final DateRangeBucket dateRangeBucket = buildDateRangeBuckets(timerange, config.searchWithinMs(), config.executeEveryMs());
         final List<BucketSpec> groupBy = new ArrayList<>();
 
         // The first bucket must be the date range!
@@ -470,20 +603,7 @@ public class PivotAggregationSearch implements AggregationSearch {
         // We always have row groups because of the date range buckets
         pivotBuilder.rowGroups(groupBy);
 
-        final Set<SearchType> searchTypes = Collections.singleton(pivotBuilder.build());
-
-        final Query.Builder queryBuilder = Query.builder()
-                .id(QUERY_ID)
-                .searchTypes(searchTypes)
-                .query(ElasticsearchQueryString.of(config.query()))
-                .timerange(parameters.timerange());
-
-        final Set<String> streams = getStreams(parameters);
-        if (!streams.isEmpty()) {
-            queryBuilder.filter(filteringForStreamIds(streams));
-        }
-
-        return queryBuilder.build();
+        return pivotBuilder.build();
     }
 
     private Filter filteringForStreamIds(Set<String> streamIds) {
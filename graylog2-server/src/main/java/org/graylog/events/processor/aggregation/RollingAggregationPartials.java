@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps the partial aggregations of the execution intervals of sliding window aggregation event definitions, so
+ * every execution only has to search the newest interval and can combine it with the partials of the rest of the
+ * window.
+ * <p>
+ * This only works for series which can be computed from the series values of the intervals (count, sum, min, max)
+ * and if the search window consists of whole execution intervals.
+ */
+@Singleton
+public class RollingAggregationPartials {
+    private static final Set<AggregationFunction> DECOMPOSABLE_FUNCTIONS = EnumSet.of(
+            AggregationFunction.COUNT,
+            AggregationFunction.SUM,
+            AggregationFunction.MIN,
+            AggregationFunction.MAX
+    );
+
+    private final boolean enabled;
+    private final Cache<String, DefinitionPartials> partials;
+    private final Counter searchedIntervals;
+    private final Counter reusedIntervals;
+
+    @Inject
+    public RollingAggregationPartials(@Named("events_rolling_aggregations_enabled") boolean enabled,
+                                      MetricRegistry metricRegistry) {
+        this.enabled = enabled;
+        // Partials of definitions which didn't run for a while are outside of their window, so they are only
+        // removed to free memory
+        this.partials = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofDays(1))
+                .build();
+        this.searchedIntervals = metricRegistry.counter(MetricRegistry.name(RollingAggregationPartials.class, "searched-intervals"));
+        this.reusedIntervals = metricRegistry.counter(MetricRegistry.name(RollingAggregationPartials.class, "reused-intervals"));
+    }
+
+    /**
+     * Checks if the aggregation of the given definition and time range can be computed from interval partials.
+     * Catch-up executions with larger time ranges and executions with custom streams always run a full search.
+     *
+     * @param definitionId the ID of the event definition
+     * @param config       the config of the event definition
+     * @param parameters   the parameters of the execution
+     * @return true if the aggregation can be computed from interval partials, false otherwise
+     */
+    public boolean supports(@Nullable String definitionId,
+                            AggregationEventProcessorConfig config,
+                            AggregationEventProcessorParameters parameters) {
+        if (!enabled || definitionId == null || !parameters.streams().isEmpty()) {
+            return false;
+        }
+        // The values of query parameters can change between executions, which would invalidate the partials
+        if (!config.queryParameters().isEmpty() || config.series().isEmpty()) {
+            return false;
+        }
+        if (!config.series().stream().allMatch(series -> DECOMPOSABLE_FUNCTIONS.contains(series.function()))) {
+            return false;
+        }
+        final long interval = config.executeEveryMs();
+        final long window = config.searchWithinMs();
+        final TimeRange timerange = parameters.timerange();
+        // Date range buckets are built in steps of whole seconds
+        return interval > 0 && interval % 1000 == 0 && window > interval && window % interval == 0
+                && timerange.getTo().getMillis() - timerange.getFrom().getMillis() == window;
+    }
+
+    /**
+     * Returns the time range covering all intervals of the window without stored partials.
+     *
+     * @param definitionId the ID of the event definition
+     * @param config       the config of the event definition
+     * @param streams      the streams to search in
+     * @param window       the time range of the execution
+     * @return the time range to search, empty if the partials of all intervals are available
+     */
+    public Optional<AbsoluteRange> missingRange(String definitionId,
+                                                AggregationEventProcessorConfig config,
+                                                Set<String> streams,
+                                                TimeRange window) {
+        final NavigableMap<Long, IntervalPartial> intervals = definitionPartials(definitionId, config, streams).intervals();
+        final long interval = config.executeEveryMs();
+
+        Long firstMissingEnd = null;
+        Long lastMissingEnd = null;
+        for (long end = window.getFrom().getMillis() + interval; end <= window.getTo().getMillis(); end += interval) {
+            if (!intervals.containsKey(end)) {
+                firstMissingEnd = firstMissingEnd == null ? end : firstMissingEnd;
+                lastMissingEnd = end;
+            }
+        }
+        if (firstMissingEnd == null) {
+            return Optional.empty();
+        }
+        return Optional.of(AbsoluteRange.create(new DateTime(firstMissingEnd - interval, window.getTo().getZone()),
+                new DateTime(lastMissingEnd, window.getTo().getZone())));
+    }
+
+    /**
+     * Stores the partials of all intervals in the searched time range.
+     *
+     * @param definitionId    the ID of the event definition
+     * @param config          the config of the event definition
+     * @param streams         the streams to search in
+     * @param searchedRange   the searched time range, as returned by {@link #missingRange}
+     * @param keyResults      the results of the search, with one date range bucket per interval
+     * @param sourceStreams   the source streams of the search by interval end time
+     */
+    public void store(String definitionId,
+                      AggregationEventProcessorConfig config,
+                      Set<String> streams,
+                      AbsoluteRange searchedRange,
+                      List<AggregationKeyResult> keyResults,
+                      Map<DateTime, Set<String>> sourceStreams) {
+        final NavigableMap<Long, IntervalPartial> intervals = definitionPartials(definitionId, config, streams).intervals();
+        final long interval = config.executeEveryMs();
+
+        final Map<Long, ImmutableList.Builder<AggregationKeyResult>> resultsByInterval = new HashMap<>();
+        for (final AggregationKeyResult keyResult : keyResults) {
+            keyResult.timestamp().ifPresent(end -> resultsByInterval
+                    .computeIfAbsent(end.getMillis(), k -> ImmutableList.builder())
+                    .add(keyResult));
+        }
+        final Map<Long, Set<String>> streamsByInterval = new HashMap<>();
+        sourceStreams.forEach((end, intervalStreams) -> streamsByInterval.put(end.getMillis(), intervalStreams));
+
+        // Intervals without results still need a partial, otherwise they would be searched again
+        for (long end = searchedRange.getFrom().getMillis() + interval; end <= searchedRange.getTo().getMillis(); end += interval) {
+            final ImmutableList<AggregationKeyResult> results = Optional.ofNullable(resultsByInterval.get(end))
+                    .map(ImmutableList.Builder::build)
+                    .orElse(ImmutableList.of());
+            intervals.put(end, IntervalPartial.create(results, streamsByInterval.getOrDefault(end, ImmutableSet.of())));
+            searchedIntervals.inc();
+        }
+    }
+
+    /**
+     * Combines the stored partials of all intervals of the window. All intervals need to be stored, see
+     * {@link #missingRange}.
+     *
+     * @param definitionId            the ID of the event definition
+     * @param config                  the config of the event definition
+     * @param streams                 the streams to search in
+     * @param window                  the time range of the execution
+     * @param totalAggregatedMessages the number of messages aggregated by the search of the missing intervals
+     * @return the aggregation result of the window
+     */
+    public AggregationResult combine(String definitionId,
+                                     AggregationEventProcessorConfig config,
+                                     Set<String> streams,
+                                     TimeRange window,
+                                     long totalAggregatedMessages) {
+        final NavigableMap<Long, IntervalPartial> intervals = definitionPartials(definitionId, config, streams).intervals();
+        // Partials before the window are never used again
+        intervals.headMap(window.getFrom().getMillis(), true).clear();
+
+        final Map<ImmutableList<String>, Map<String, Double>> valuesByKey = new LinkedHashMap<>();
+        final ImmutableSet.Builder<String> sourceStreams = ImmutableSet.builder();
+
+        final NavigableMap<Long, IntervalPartial> windowIntervals = intervals.subMap(window.getFrom().getMillis(), false,
+                window.getTo().getMillis(), true);
+        for (final IntervalPartial partial : windowIntervals.values()) {
+            sourceStreams.addAll(partial.sourceStreams());
+            for (final AggregationKeyResult keyResult : partial.keyResults()) {
+                final Map<String, Double> values = valuesByKey.computeIfAbsent(keyResult.key(), k -> new HashMap<>());
+                for (final AggregationSeriesValue seriesValue : keyResult.seriesValues()) {
+                    values.merge(seriesValue.series().id(), seriesValue.value(),
+                            (a, b) -> combine(seriesValue.series().function(), a, b));
+                }
+            }
+        }
+        reusedIntervals.inc(Math.max(0, windowIntervals.size() - 1));
+
+        final ImmutableList.Builder<AggregationKeyResult> keyResults = ImmutableList.builder();
+        valuesByKey.forEach((key, values) -> {
+            final ImmutableList<AggregationSeriesValue> seriesValues = config.series().stream()
+                    .filter(series -> values.containsKey(series.id()))
+                    .map(series -> AggregationSeriesValue.builder()
+                            .series(series)
+                            .key(key)
+                            .value(values.get(series.id()))
+                            .build())
+                    .collect(ImmutableList.toImmutableList());
+            keyResults.add(AggregationKeyResult.builder()
+                    .key(key)
+                    .timestamp(window.getTo())
+                    .seriesValues(seriesValues)
+                    .build());
+        });
+
+        return AggregationResult.builder()
+                .keyResults(keyResults.build())
+                .effectiveTimerange(AbsoluteRange.create(window.getFrom(), window.getTo()))
+                .totalAggregatedMessages(totalAggregatedMessages)
+                .sourceStreams(sourceStreams.build())
+                .build();
+    }
+
+    private static double combine(AggregationFunction function, double a, double b) {
+        // Min and max of an interval without values for the field are NaN
+        if (Double.isNaN(a)) {
+            return b;
+        }
+        if (Double.isNaN(b)) {
+            return a;
+        }
+        switch (function) {
+            case COUNT:
+            case SUM:
+                return a + b;
+            case MIN:
+                return Math.min(a, b);
+            case MAX:
+                return Math.max(a, b);
+            default:
+                throw new IllegalArgumentException("Function <" + function + "> can't be combined from partials");
+        }
+    }
+
+    private DefinitionPartials definitionPartials(String definitionId, AggregationEventProcessorConfig config, Set<String> streams) {
+        final PartialsKey key = PartialsKey.create(config, ImmutableSet.copyOf(streams));
+        // Changing the definition or its streams invalidates all partials
+        return partials.asMap().compute(definitionId, (id, existing) ->
+                existing != null && existing.key().equals(key) ? existing : new DefinitionPartials(key));
+    }
+
+    @VisibleForTesting
+    long searchedIntervals() {
+        return searchedIntervals.getCount();
+    }
+
+    @VisibleForTesting
+    long reusedIntervals() {
+        return reusedIntervals.getCount();
+    }
+
+    private static class DefinitionPartials {
+        private final PartialsKey key;
+        // Interval partials by the end time of the interval
+        private final NavigableMap<Long, IntervalPartial> intervals = new ConcurrentSkipListMap<>();
+
+        DefinitionPartials(PartialsKey key) {
+            this.key = key;
+        }
+
+        PartialsKey key() {
+            return key;
+        }
+
+        NavigableMap<Long, IntervalPartial> intervals() {
+            return intervals;
+        }
+    }
+
+    @AutoValue
+    abstract static class PartialsKey {
+        abstract AggregationEventProcessorConfig config();
+
+        abstract ImmutableSet<String> streams();
+
+        static PartialsKey create(AggregationEventProcessorConfig config, ImmutableSet<String> streams) {
+            return new AutoValue_RollingAggregationPartials_PartialsKey(config, streams);
+        }
+    }
+
+    @AutoValue
+    abstract static class IntervalPartial {
+        abstract ImmutableList<AggregationKeyResult> keyResults();
+
+        abstract ImmutableSet<String> sourceStreams();
+
+        static IntervalPartial create(List<AggregationKeyResult> keyResults, Set<String> sourceStreams) {
+            return new AutoValue_RollingAggregationPartials_IntervalPartial(ImmutableList.copyOf(keyResults),
+                    ImmutableSet.copyOf(sourceStreams));
+        }
+    }
+}
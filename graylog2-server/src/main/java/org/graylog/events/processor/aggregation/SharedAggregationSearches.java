@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.events.configuration.EventsConfigurationProvider;
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog.events.processor.EventProcessorExecutionJob;
+import org.graylog.plugins.views.search.Parameter;
+import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.scheduler.DBJobDefinitionService;
+import org.graylog.scheduler.DBJobTriggerService;
+import org.graylog.scheduler.JobDefinitionDto;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lets aggregation event definitions with the same query, streams, query parameters and search window share a single
+ * search, which computes the aggregations of all of them at once.
+ * <p>
+ * Whenever an event definition runs, the definitions of the same group which are due for the same time range are
+ * looked up from their previous executions. The first of them to run executes one search with a pivot for each of
+ * them, the others use its result when they run. Only definitions whose job triggers are locked by this node are
+ * included, definitions running on other nodes compute their aggregations there.
+ */
+@Singleton
+public class SharedAggregationSearches {
+    private static final Logger LOG = LoggerFactory.getLogger(SharedAggregationSearches.class);
+
+    public interface SearchRunner {
+        /**
+         * @param pivots the configs of the aggregations to compute by pivot ID
+         */
+        SearchJob run(Map<String, AggregationEventProcessorConfig> pivots) throws EventProcessorException;
+    }
+
+    private final boolean enabled;
+    private final EventsConfigurationProvider configurationProvider;
+    private final DBJobDefinitionService jobDefinitionService;
+    private final DBJobTriggerService jobTriggerService;
+    private final Cache<String, Member> members;
+    private final Cache<SearchKey, SharedSearch> searches;
+    private final Counter executedSearches;
+    private final Counter savedSearches;
+
+    @Inject
+    public SharedAggregationSearches(@Named("events_shared_aggregation_searches_enabled") boolean enabled,
+                                     EventsConfigurationProvider configurationProvider,
+                                     DBJobDefinitionService jobDefinitionService,
+                                     DBJobTriggerService jobTriggerService,
+                                     MetricRegistry metricRegistry) {
+        this.enabled = enabled;
+        this.configurationProvider = configurationProvider;
+        this.jobDefinitionService = jobDefinitionService;
+        this.jobTriggerService = jobTriggerService;
+        // Members which didn't run for a while are never due again, so they are only removed to free memory
+        this.members = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofDays(1))
+                .build();
+        this.searches = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(5))
+                .maximumSize(1000)
+                .build();
+        this.executedSearches = metricRegistry.counter(MetricRegistry.name(SharedAggregationSearches.class, "executed-searches"));
+        this.savedSearches = metricRegistry.counter(MetricRegistry.name(SharedAggregationSearches.class, "saved-searches"));
+    }
+
+    public static String pivotId(String definitionId) {
+        return "pivot-" + definitionId;
+    }
+
+    /**
+     * Returns a search job containing the aggregation of the given event definition in the pivot with the
+     * {@link #pivotId(String) pivot ID} of the definition.
+     *
+     * @param definitionId the ID of the event definition
+     * @param config       the config of the event definition
+     * @param streams      the streams to search in
+     * @param timerange    the time range to search in
+     * @param runner       runs the search for the aggregations of all definitions sharing the search
+     * @return the search job, empty if the definition has to run its own search
+     */
+    public Optional<SearchJob> search(@Nullable String definitionId,
+                                      AggregationEventProcessorConfig config,
+                                      Set<String> streams,
+                                      TimeRange timerange,
+                                      SearchRunner runner) throws EventProcessorException {
+        if (!enabled || definitionId == null) {
+            return Optional.empty();
+        }
+        final SearchGroup group = SearchGroup.create(config, streams);
+        final SearchKey key = SearchKey.create(group, timerange.getFrom().getMillis(), timerange.getTo().getMillis());
+
+        final SharedSearch planned = new SharedSearch(pivotsDueFor(definitionId, config, key));
+        members.put(definitionId, Member.create(key, config));
+
+        final SharedSearch existing = searches.asMap().putIfAbsent(key, planned);
+        if (existing == null) {
+            return Optional.of(execute(key, planned, runner));
+        }
+        if (!existing.includes(definitionId, config)) {
+            // The definition hasn't been due when the search was planned or has been changed since
+            return Optional.empty();
+        }
+        final Optional<SearchJob> searchJob = existing.await(configurationProvider.get().eventsSearchTimeout());
+        searchJob.ifPresent(job -> savedSearches.inc());
+        return searchJob;
+    }
+
+    private Map<String, AggregationEventProcessorConfig> pivotsDueFor(String definitionId,
+                                                                      AggregationEventProcessorConfig config,
+                                                                      SearchKey key) {
+        final Map<String, AggregationEventProcessorConfig> dueMembers = new HashMap<>();
+        members.asMap().forEach((memberId, member) -> {
+            if (!memberId.equals(definitionId) && member.isDueFor(key)) {
+                dueMembers.put(memberId, member.config());
+            }
+        });
+
+        final ImmutableMap.Builder<String, AggregationEventProcessorConfig> pivots = ImmutableMap.builder();
+        pivots.put(pivotId(definitionId), config);
+        if (!dueMembers.isEmpty()) {
+            // Members are only known from previous executions on this node, but the next execution could be on any node
+            final Set<String> lockedMembers = lockedByThisNode(dueMembers.keySet());
+            dueMembers.forEach((memberId, memberConfig) -> {
+                if (lockedMembers.contains(memberId)) {
+                    pivots.put(pivotId(memberId), memberConfig);
+                }
+            });
+        }
+        return pivots.build();
+    }
+
+    private Set<String> lockedByThisNode(Set<String> definitionIds) {
+        final Map<String, String> definitionIdsByJobId = new HashMap<>();
+        jobDefinitionService.getAllByConfigField(EventProcessorExecutionJob.Config.FIELD_EVENT_DEFINITION_ID, definitionIds)
+                .forEach((definitionId, jobDefinitions) -> jobDefinitions.stream()
+                        .map(JobDefinitionDto::id)
+                        .forEach(jobId -> definitionIdsByJobId.put(jobId, definitionId)));
+
+        return jobTriggerService.getJobDefinitionIdsLockedByThisNode(definitionIdsByJobId.keySet()).stream()
+                .map(definitionIdsByJobId::get)
+                .collect(ImmutableSet.toImmutableSet());
+    }
+
+    private SearchJob execute(SearchKey key, SharedSearch search, SearchRunner runner) throws EventProcessorException {
+        try {
+            final SearchJob searchJob = runner.run(search.pivots());
+            executedSearches.inc();
+            LOG.debug("Executed shared aggregation search for {} event definitions", search.pivots().size());
+            search.complete(searchJob);
+            return searchJob;
+        } catch (EventProcessorException | RuntimeException e) {
+            // The other definitions run their own searches
+            searches.invalidate(key);
+            search.fail(e);
+            throw e;
+        }
+    }
+
+    @VisibleForTesting
+    long executedSearches() {
+        return executedSearches.getCount();
+    }
+
+    @VisibleForTesting
+    long savedSearches() {
+        return savedSearches.getCount();
+    }
+
+    private static class SharedSearch {
+        private final Map<String, AggregationEventProcessorConfig> pivots;
+        private final CompletableFuture<SearchJob> searchJob = new CompletableFuture<>();
+
+        SharedSearch(Map<String, AggregationEventProcessorConfig> pivots) {
+            this.pivots = pivots;
+        }
+
+        Map<String, AggregationEventProcessorConfig> pivots() {
+            return pivots;
+        }
+
+        boolean includes(String definitionId, AggregationEventProcessorConfig config) {
+            return Objects.equals(pivots.get(pivotId(definitionId)), config);
+        }
+
+        void complete(SearchJob searchJob) {
+            this.searchJob.complete(searchJob);
+        }
+
+        void fail(Exception e) {
+            this.searchJob.completeExceptionally(e);
+        }
+
+        Optional<SearchJob> await(long timeoutMs) {
+            try {
+                return Optional.of(searchJob.get(timeoutMs, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            } catch (ExecutionException | TimeoutException e) {
+                LOG.debug("Shared aggregation search didn't complete, running own search", e);
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * The parameters which have to be equal for definitions to share a search.
+     */
+    @AutoValue
+    abstract static class SearchGroup {
+        abstract String query();
+
+        abstract ImmutableSet<String> streams();
+
+        abstract ImmutableSet<Parameter> queryParameters();
+
+        abstract long searchWithinMs();
+
+        abstract long executeEveryMs();
+
+        static SearchGroup create(AggregationEventProcessorConfig config, Set<String> streams) {
+            return new AutoValue_SharedAggregationSearches_SearchGroup(config.query(), ImmutableSet.copyOf(streams),
+                    config.queryParameters(), config.searchWithinMs(), config.executeEveryMs());
+        }
+    }
+
+    @AutoValue
+    abstract static class SearchKey {
+        abstract SearchGroup group();
+
+        abstract long fromMillis();
+
+        abstract long toMillis();
+
+        static SearchKey create(SearchGroup group, long fromMillis, long toMillis) {
+            return new AutoValue_SharedAggregationSearches_SearchKey(group, fromMillis, toMillis);
+        }
+    }
+
+    @AutoValue
+    abstract static class Member {
+        /**
+         * The key of the previous execution of the definition.
+         */
+        abstract SearchKey previous();
+
+        abstract AggregationEventProcessorConfig config();
+
+        /**
+         * Event processors are scheduled in hops of {@link SearchGroup#executeEveryMs()}, so the next execution
+         * covers the previous time range moved by one hop. Catch-up executions with larger time ranges never match.
+         */
+        boolean isDueFor(SearchKey key) {
+            final long hop = key.group().executeEveryMs();
+            return previous().group().equals(key.group())
+                    && previous().fromMillis() + hop == key.fromMillis()
+                    && previous().toMillis() + hop == key.toMillis();
+        }
+
+        static Member create(SearchKey previous, AggregationEventProcessorConfig config) {
+            return new AutoValue_SharedAggregationSearches_Member(previous, config);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.auto.value.AutoValue;
+import org.joda.time.DateTime;
+import org.mongojack.Id;
+import org.mongojack.ObjectId;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * The event definitions a node evaluates while processing messages, see {@link StreamingFilterEvents}.
+ */
+@AutoValue
+@JsonDeserialize(builder = StreamingFilterCoverageDto.Builder.class)
+public abstract class StreamingFilterCoverageDto {
+    private static final String FIELD_ID = "id";
+    static final String FIELD_NODE_ID = "node_id";
+    static final String FIELD_UPDATED_AT = "updated_at";
+    private static final String FIELD_DEFINITIONS = "definitions";
+
+    @Id
+    @ObjectId
+    @Nullable
+    @JsonProperty(FIELD_ID)
+    public abstract String id();
+
+    @JsonProperty(FIELD_NODE_ID)
+    public abstract String nodeId();
+
+    @JsonProperty(FIELD_UPDATED_AT)
+    public abstract DateTime updatedAt();
+
+    /**
+     * The coverage of each evaluated event definition, keyed by event definition ID.
+     */
+    @JsonProperty(FIELD_DEFINITIONS)
+    public abstract Map<String, Coverage> definitions();
+
+    public static Builder builder() {
+        return Builder.create();
+    }
+
+    @AutoValue.Builder
+    public static abstract class Builder {
+        @JsonCreator
+        public static Builder create() {
+            return new AutoValue_StreamingFilterCoverageDto.Builder();
+        }
+
+        @Id
+        @ObjectId
+        @JsonProperty(FIELD_ID)
+        public abstract Builder id(String id);
+
+        @JsonProperty(FIELD_NODE_ID)
+        public abstract Builder nodeId(String nodeId);
+
+        @JsonProperty(FIELD_UPDATED_AT)
+        public abstract Builder updatedAt(DateTime updatedAt);
+
+        @JsonProperty(FIELD_DEFINITIONS)
+        public abstract Builder definitions(Map<String, Coverage> definitions);
+
+        public abstract StreamingFilterCoverageDto build();
+    }
+
+    /**
+     * The events of all messages a node processed between {@link #since()} and {@link #coveredUntil()} have been
+     * emitted. Both are processing times of the node, not message timestamps.
+     */
+    @AutoValue
+    public static abstract class Coverage {
+        private static final String FIELD_SINCE = "since";
+        private static final String FIELD_COVERED_UNTIL = "covered_until";
+
+        @JsonProperty(FIELD_SINCE)
+        public abstract DateTime since();
+
+        @JsonProperty(FIELD_COVERED_UNTIL)
+        public abstract DateTime coveredUntil();
+
+        @JsonCreator
+        public static Coverage create(@JsonProperty(FIELD_SINCE) DateTime since,
+                                      @JsonProperty(FIELD_COVERED_UNTIL) DateTime coveredUntil) {
+            return new AutoValue_StreamingFilterCoverageDto_Coverage(since, coveredUntil);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog.events.event.EventFactory;
+import org.graylog.events.event.EventProcessorEventFactory;
+import org.graylog.events.event.EventWithContext;
+import org.graylog.events.processor.DBEventDefinitionService;
+import org.graylog.events.processor.EventDefinitionDto;
+import org.graylog.events.processor.EventProcessorEngine;
+import org.graylog.events.processor.EventProcessorExecutionJob;
+import org.graylog.events.processor.aggregation.StreamingFilterCoverageDto.Coverage;
+import org.graylog.scheduler.DBJobDefinitionService;
+import org.graylog.scheduler.clock.JobSchedulerClock;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.streams.Stream;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Evaluates enabled event definitions without series against messages once all message processors ran, so their
+ * events are created right away instead of by searching for the messages on every execution.
+ * <p>
+ * Only definitions with queries supported by {@link FilterQueryMatcher} are evaluated. The messages are evaluated in
+ * the state they are written to the index in, but before they are indexed. The origin context of the events therefore
+ * references the current write index of the message's first stream, which might be wrong if the index is rotated in
+ * between.
+ * <p>
+ * Every {@link #checkpoint()} records the time up to which the events of all processed messages have been emitted.
+ * The resulting {@link #coverage()} is stored with {@link DBStreamingFilterCoverageService}, scheduled executions only
+ * skip the time all processing nodes in the cluster have covered. Events which weren't emitted before a restart are
+ * outside of the stored coverage and are created by the next scheduled executions.
+ */
+@Singleton
+public class StreamingFilterEvents {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingFilterEvents.class);
+
+    private static final int QUEUE_SIZE = 10_000;
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private final boolean enabled;
+    private final DBEventDefinitionService definitionService;
+    private final DBJobDefinitionService jobDefinitionService;
+    private final AggregationEventProcessor.Factory processorFactory;
+    private final EventFactory eventFactory;
+    private final Provider<EventProcessorEngine> engineProvider;
+    private final JobSchedulerClock clock;
+    private final BlockingQueue<PendingEvent> pendingEvents = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    // Messages are evaluated while holding the read lock, a checkpoint is queued while holding the write lock. This
+    // ensures all events of messages processed before a checkpoint are queued before it.
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final ExecutorService emitExecutor;
+
+    private volatile Map<String, StreamedDefinition> definitions = ImmutableMap.of();
+    private boolean emitting = false;
+
+    @Inject
+    public StreamingFilterEvents(@Named("events_streaming_filter_definitions_enabled") boolean enabled,
+                                 DBEventDefinitionService definitionService,
+                                 DBJobDefinitionService jobDefinitionService,
+                                 AggregationEventProcessor.Factory processorFactory,
+                                 EventProcessorEventFactory eventFactory,
+                                 Provider<EventProcessorEngine> engineProvider,
+                                 JobSchedulerClock clock) {
+        this.enabled = enabled;
+        this.definitionService = definitionService;
+        this.jobDefinitionService = jobDefinitionService;
+        this.processorFactory = processorFactory;
+        this.eventFactory = eventFactory;
+        this.engineProvider = engineProvider;
+        this.clock = clock;
+        this.emitExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("streaming-filter-events-%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(new Tools.LogUncaughtExceptionHandler(LOG))
+                .build());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isActive() {
+        return !definitions.isEmpty();
+    }
+
+    /**
+     * @return the coverage of all definitions which are evaluated on this node, keyed by event definition ID
+     */
+    public Map<String, Coverage> coverage() {
+        final ImmutableMap.Builder<String, Coverage> coverage = ImmutableMap.builder();
+        definitions.forEach((id, definition) -> {
+            final Coverage definitionCoverage = definition.coverage();
+            if (definitionCoverage != null) {
+                coverage.put(id, definitionCoverage);
+            }
+        });
+        return coverage.build();
+    }
+
+    /**
+     * Loads the enabled event definitions which can be evaluated while processing messages.
+     */
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        final List<EventDefinitionDto> candidates;
+        try (final java.util.stream.Stream<EventDefinitionDto> eventDefinitions = definitionService.streamAll()) {
+            candidates = eventDefinitions
+                    .filter(definition -> definition.config() instanceof AggregationEventProcessorConfig)
+                    .filter(definition -> ((AggregationEventProcessorConfig) definition.config()).series().isEmpty())
+                    .collect(Collectors.toList());
+        }
+        // Only definitions with a job definition are enabled
+        final Set<String> scheduled = jobDefinitionService.getAllByConfigField(EventProcessorExecutionJob.Config.FIELD_EVENT_DEFINITION_ID,
+                candidates.stream().map(EventDefinitionDto::id).collect(Collectors.toSet())).keySet();
+
+        final Map<String, StreamedDefinition> previous = definitions;
+        final ImmutableMap.Builder<String, StreamedDefinition> streamed = ImmutableMap.builder();
+        for (final EventDefinitionDto definition : candidates) {
+            if (!scheduled.contains(definition.id())) {
+                continue;
+            }
+            final StreamedDefinition existing = previous.get(definition.id());
+            if (existing != null && existing.definition().equals(definition)) {
+                streamed.put(definition.id(), existing);
+                continue;
+            }
+            FilterQueryMatcher.compile((AggregationEventProcessorConfig) definition.config())
+                    .ifPresent(matcher -> streamed.put(definition.id(), new StreamedDefinition(definition, matcher,
+                            processorFactory.create(definition))));
+        }
+        this.definitions = streamed.build();
+        LOG.debug("Evaluating {} event definitions while processing messages", definitions.size());
+
+        if (!emitting && !definitions.isEmpty()) {
+            emitExecutor.execute(this::emitEvents);
+            emitting = true;
+        }
+    }
+
+    /**
+     * Queues a checkpoint behind the events of all messages which have been processed so far. Once it has been reached,
+     * the coverage of all current definitions extends up to the time of the checkpoint. Definitions which are not
+     * covered yet start to be covered at that time.
+     */
+    public void checkpoint() {
+        final Collection<StreamedDefinition> currentDefinitions = definitions.values();
+        if (currentDefinitions.isEmpty()) {
+            return;
+        }
+        checkpointLock.writeLock().lock();
+        try {
+            pendingEvents.put(PendingEvent.checkpoint(clock.nowUTC(), currentDefinitions));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Queues the events of all definitions matching the given message. Blocks if too many events are waiting to be
+     * emitted.
+     */
+    public void process(Message message) {
+        checkpointLock.readLock().lock();
+        try {
+            for (final StreamedDefinition definition : definitions.values()) {
+                if (definition.matcher().test(message)) {
+                    // The message will be written to the current write index of its first stream's index set
+                    final IndexSet indexSet = message.getStreams().stream()
+                            .map(Stream::getIndexSet)
+                            .filter(Objects::nonNull)
+                            .findFirst()
+                            .orElse(null);
+                    // Outputs might still change the message
+                    final Message copy = new Message(message.getFields());
+                    pendingEvents.put(PendingEvent.event(definition, copy, indexSet));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while creating events for message <{}>", message.getId());
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    private void emitEvents() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final List<PendingEvent> batch = new ArrayList<>();
+            try {
+                batch.add(pendingEvents.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pendingEvents.drainTo(batch, MAX_BATCH_SIZE - 1);
+            emitBatch(batch);
+        }
+    }
+
+    private void emitBatch(List<PendingEvent> batch) {
+        final Map<IndexSet, String> writeIndices = new HashMap<>();
+        final Map<StreamedDefinition, List<EventWithContext>> eventsByDefinition = new LinkedHashMap<>();
+        for (final PendingEvent pendingEvent : batch) {
+            if (pendingEvent.isCheckpoint()) {
+                // Everything before the checkpoint has to be emitted before the coverage can be extended
+                emit(eventsByDefinition);
+                eventsByDefinition.clear();
+                pendingEvent.checkpointDefinitions().forEach(definition -> definition.extendCoverage(pendingEvent.checkpoint()));
+                continue;
+            }
+            final StreamedDefinition definition = pendingEvent.definition();
+            final Message message = pendingEvent.message();
+            final DateTime timestamp = message.getTimestamp();
+            final String index = writeIndices.computeIfAbsent(pendingEvent.indexSet(), StreamingFilterEvents::writeIndex);
+            try {
+                eventsByDefinition.computeIfAbsent(definition, d -> new ArrayList<>())
+                        .add(definition.processor().eventFromMessage(eventFactory, index, message,
+                                definition.config().streams(), AbsoluteRange.create(timestamp, timestamp)));
+            } catch (Exception e) {
+                LOG.error("Couldn't create event for <{}/{}>", definition.definition().title(), definition.definition().id(), e);
+                definition.resetCoverage();
+            }
+        }
+        emit(eventsByDefinition);
+    }
+
+    private void emit(Map<StreamedDefinition, List<EventWithContext>> eventsByDefinition) {
+        if (eventsByDefinition.isEmpty()) {
+            return;
+        }
+        final EventProcessorEngine engine = engineProvider.get();
+        eventsByDefinition.forEach((definition, events) -> {
+            try {
+                engine.emitEvents(definition.processor(), definition.definition(), events);
+            } catch (Exception e) {
+                LOG.error("Couldn't emit {} events for <{}/{}>", events.size(), definition.definition().title(), definition.definition().id(), e);
+                // The events are lost, scheduled executions have to search for them again
+                definition.resetCoverage();
+            }
+        });
+    }
+
+    private static String writeIndex(@Nullable IndexSet indexSet) {
+        if (indexSet == null) {
+            return "";
+        }
+        try {
+            final String activeWriteIndex = indexSet.getActiveWriteIndex();
+            if (activeWriteIndex != null) {
+                return activeWriteIndex;
+            }
+        } catch (Exception e) {
+            LOG.debug("Couldn't resolve write index of index set <{}>", indexSet.getConfig().id(), e);
+        }
+        return indexSet.getWriteIndexAlias();
+    }
+
+    private static class StreamedDefinition {
+        private final EventDefinitionDto definition;
+        private final FilterQueryMatcher matcher;
+        private final AggregationEventProcessor processor;
+        // Only changed by the emitting thread
+        private volatile Coverage coverage;
+
+        StreamedDefinition(EventDefinitionDto definition, FilterQueryMatcher matcher, AggregationEventProcessor processor) {
+            this.definition = definition;
+            this.matcher = matcher;
+            this.processor = processor;
+        }
+
+        EventDefinitionDto definition() {
+            return definition;
+        }
+
+        AggregationEventProcessorConfig config() {
+            return (AggregationEventProcessorConfig) definition.config();
+        }
+
+        FilterQueryMatcher matcher() {
+            return matcher;
+        }
+
+        AggregationEventProcessor processor() {
+            return processor;
+        }
+
+        @Nullable
+        Coverage coverage() {
+            return coverage;
+        }
+
+        void extendCoverage(DateTime checkpoint) {
+            coverage = coverage == null ? Coverage.create(checkpoint, checkpoint) : Coverage.create(coverage.since(), checkpoint);
+        }
+
+        void resetCoverage() {
+            coverage = null;
+        }
+    }
+
+    private static class PendingEvent {
+        private final StreamedDefinition definition;
+        private final Message message;
+        private final IndexSet indexSet;
+        private final DateTime checkpoint;
+        private final Collection<StreamedDefinition> checkpointDefinitions;
+
+        private PendingEvent(@Nullable StreamedDefinition definition, @Nullable Message message, @Nullable IndexSet indexSet,
+                             @Nullable DateTime checkpoint, Collection<StreamedDefinition> checkpointDefinitions) {
+            this.definition = definition;
+            this.message = message;
+            this.indexSet = indexSet;
+            this.checkpoint = checkpoint;
+            this.checkpointDefinitions = checkpointDefinitions;
+        }
+
+        static PendingEvent event(StreamedDefinition definition, Message message, @Nullable IndexSet indexSet) {
+            return new PendingEvent(definition, message, indexSet, null, Collections.emptyList());
+        }
+
+        static PendingEvent checkpoint(DateTime checkpoint, Collection<StreamedDefinition> definitions) {
+            return new PendingEvent(null, null, null, checkpoint, definitions);
+        }
+
+        boolean isCheckpoint() {
+            return checkpoint != null;
+        }
+
+        StreamedDefinition definition() {
+            return definition;
+        }
+
+        Message message() {
+            return message;
+        }
+
+        @Nullable
+        IndexSet indexSet() {
+            return indexSet;
+        }
+
+        DateTime checkpoint() {
+            return checkpoint;
+        }
+
+        Collection<StreamedDefinition> checkpointDefinitions() {
+            return checkpointDefinitions;
+        }
+    }
+}
@@ -16,7 +16,9 @@
  */
 package org.graylog.plugins.netflow;
 
+import com.google.inject.assistedinject.FactoryModuleBuilder;
 import org.graylog.plugins.netflow.codecs.NetFlowCodec;
+import org.graylog.plugins.netflow.codecs.NetflowV9CodecAggregator;
 import org.graylog.plugins.netflow.inputs.NetFlowUdpInput;
 import org.graylog.plugins.netflow.transport.NetFlowUdpTransport;
 import org.graylog2.plugin.PluginConfigBean;
@@ -33,6 +35,7 @@ public class NetFlowPluginModule extends PluginModule {
 
     @Override
     protected void configure() {
+        install(new FactoryModuleBuilder().build(NetflowV9CodecAggregator.Factory.class));
         addMessageInput(NetFlowUdpInput.class);
         addCodec("netflow", NetFlowCodec.class);
         addTransport("netflow-udp", NetFlowUdpTransport.class);
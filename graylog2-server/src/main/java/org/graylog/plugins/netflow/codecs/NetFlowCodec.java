@@ -17,17 +17,25 @@
 package org.graylog.plugins.netflow.codecs;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.inject.assistedinject.Assisted;
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import org.graylog.plugins.netflow.flows.CompiledFlowTemplate;
+import org.graylog.plugins.netflow.flows.CorruptFlowPacketException;
 import org.graylog.plugins.netflow.flows.FlowException;
 import org.graylog.plugins.netflow.flows.NetFlowFormatter;
+import org.graylog.plugins.netflow.ipfix.IpfixHeader;
+import org.graylog.plugins.netflow.ipfix.IpfixParser;
 import org.graylog.plugins.netflow.v5.NetFlowV5Packet;
 import org.graylog.plugins.netflow.v5.NetFlowV5Parser;
 import org.graylog.plugins.netflow.v9.NetFlowV9FieldTypeRegistry;
+import org.graylog.plugins.netflow.v9.NetFlowV9Header;
 import org.graylog.plugins.netflow.v9.NetFlowV9Journal;
 import org.graylog.plugins.netflow.v9.NetFlowV9OptionTemplate;
 import org.graylog.plugins.netflow.v9.NetFlowV9Packet;
@@ -38,6 +46,7 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.BooleanField;
 import org.graylog2.plugin.configuration.fields.ConfigurationField;
 import org.graylog2.plugin.configuration.fields.TextField;
 import org.graylog2.plugin.inputs.annotations.Codec;
@@ -59,9 +68,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Codec(name = "netflow", displayName = "NetFlow")
@@ -75,16 +86,45 @@ public class NetFlowCodec extends AbstractCodec implements MultiMessageCodec {
      * It contains all necessary template flows before any data flows and can be completely parsed without a template cache.
      */
     public static final byte ORDERED_V9_MARKER = 0x01;
+    /**
+     * Marker byte which signals that the contained netflow v9 or IPFIX packets are stored in the compact format, which
+     * like {@link #ORDERED_V9_MARKER} contains all necessary templates before the packets:
+     *
+     * <pre>
+     * | version        | 2 bytes, 9 or 10                                                         |
+     * | template_count | 2 bytes                                                                  |
+     * | flags          | 1 byte, per template, {@link #COMPACT_OPTION_TEMPLATE_FLAG} or 0         |
+     * | length         | 2 bytes, per template                                                    |
+     * | template       | per template, the template record as received, starting with its id     |
+     * | packet_count   | 2 bytes                                                                  |
+     * | length         | 2 bytes, per packet                                                      |
+     * | packet         | per packet, the complete export packet as received                       |
+     * </pre>
+     */
+    public static final byte COMPACT_FLOW_MARKER = 0x02;
+    /**
+     * Flag for templates in the compact format which describe option records, these are not turned into messages.
+     */
+    public static final byte COMPACT_OPTION_TEMPLATE_FLAG = 0x01;
     @VisibleForTesting
     static final String CK_NETFLOW9_DEFINITION_PATH = "netflow9_definitions_Path";
+    @VisibleForTesting
+    static final String CK_COMPACT_JOURNAL_ENCODING = "compact_journal_encoding";
     private static final Logger LOG = LoggerFactory.getLogger(NetFlowCodec.class);
     private final NetFlowV9FieldTypeRegistry typeRegistry;
     private final NetflowV9CodecAggregator netflowV9CodecAggregator;
+    // templates are compiled once and reused for every journal entry which contains the same template record
+    private final Cache<ByteBuf, CompiledFlowTemplate> compiledV9Templates = CacheBuilder.newBuilder()
+            .maximumSize(5000)
+            .build();
+    private final Cache<ByteBuf, CompiledFlowTemplate> compiledIpfixTemplates = CacheBuilder.newBuilder()
+            .maximumSize(5000)
+            .build();
 
     @Inject
-    protected NetFlowCodec(@Assisted Configuration configuration, NetflowV9CodecAggregator netflowV9CodecAggregator) throws IOException {
+    protected NetFlowCodec(@Assisted Configuration configuration, NetflowV9CodecAggregator.Factory netflowV9CodecAggregatorFactory) throws IOException {
         super(configuration);
-        this.netflowV9CodecAggregator = netflowV9CodecAggregator;
+        this.netflowV9CodecAggregator = netflowV9CodecAggregatorFactory.create(configuration.getBoolean(CK_COMPACT_JOURNAL_ENCODING));
 
         final String netFlow9DefinitionsPath = configuration.getString(CK_NETFLOW9_DEFINITION_PATH);
         if (netFlow9DefinitionsPath == null || netFlow9DefinitionsPath.trim().isEmpty()) {
@@ -133,6 +173,9 @@ public class NetFlowCodec extends AbstractCodec implements MultiMessageCodec {
                 case ORDERED_V9_MARKER:
                     // our "custom" netflow v9 that has all the templates in the same packet
                     return decodeV9(sender, buffer);
+                case COMPACT_FLOW_MARKER:
+                    // netflow v9 or IPFIX packets with all the templates in front, without protobuf encoding
+                    return decodeCompact(sender, buffer);
                 default:
                     final List<RawMessage.SourceNode> sourceNodes = rawMessage.getSourceNodes();
                     final RawMessage.SourceNode sourceNode = sourceNodes.isEmpty() ? null : sourceNodes.get(sourceNodes.size() - 1);
@@ -188,6 +231,71 @@ public class NetFlowCodec extends AbstractCodec implements MultiMessageCodec {
                 .collect(Collectors.toList());
     }
 
+    @VisibleForTesting
+    Collection<Message> decodeCompact(@Nullable InetSocketAddress sender, ByteBuf buffer) {
+        final int version = buffer.readUnsignedShort();
+        final int templateCount = buffer.readUnsignedShort();
+        final Map<Integer, CompiledFlowTemplate> templates = Maps.newHashMapWithExpectedSize(templateCount);
+        for (int i = 0; i < templateCount; i++) {
+            final short flags = buffer.readUnsignedByte();
+            final ByteBuf template = buffer.readSlice(buffer.readUnsignedShort());
+            // option records are never turned into messages, data flow sets using an option template are skipped
+            if ((flags & COMPACT_OPTION_TEMPLATE_FLAG) == 0) {
+                final CompiledFlowTemplate compiledTemplate = compiledTemplate(version, template);
+                templates.put(compiledTemplate.templateId(), compiledTemplate);
+            }
+        }
+
+        final List<Message> messages = new ArrayList<>();
+        final int packetCount = buffer.readUnsignedShort();
+        for (int i = 0; i < packetCount; i++) {
+            final ByteBuf packet = buffer.readSlice(buffer.readUnsignedShort());
+            if (version == IpfixParser.VERSION) {
+                final IpfixHeader header = IpfixParser.parseHeader(packet);
+                final int end = IpfixParser.messageEnd(packet, header);
+                parseDataFlowSets(packet, end, templates,
+                        fields -> messages.add(NetFlowFormatter.toMessage(header, NetFlowV9Record.create(fields), sender)));
+            } else {
+                final NetFlowV9Header header = NetFlowV9Parser.parseHeader(packet);
+                parseDataFlowSets(packet, packet.writerIndex(), templates,
+                        fields -> messages.add(NetFlowFormatter.toMessage(header, NetFlowV9Record.create(fields), sender)));
+            }
+        }
+        return messages;
+    }
+
+    private CompiledFlowTemplate compiledTemplate(int version, ByteBuf template) {
+        final boolean ipfix = version == IpfixParser.VERSION;
+        final Cache<ByteBuf, CompiledFlowTemplate> cache = ipfix ? compiledIpfixTemplates : compiledV9Templates;
+        CompiledFlowTemplate compiledTemplate = cache.getIfPresent(template);
+        if (compiledTemplate == null) {
+            compiledTemplate = ipfix
+                    ? CompiledFlowTemplate.compileIpfix(template, typeRegistry)
+                    : CompiledFlowTemplate.compileV9(template, typeRegistry);
+            // the template is only a slice of the journal entry, keep a copy of it as the cache key
+            cache.put(Unpooled.copiedBuffer(template), compiledTemplate);
+        }
+        return compiledTemplate;
+    }
+
+    private static void parseDataFlowSets(ByteBuf packet, int end, Map<Integer, CompiledFlowTemplate> templates, Consumer<ImmutableMap<String, Object>> records) {
+        while (end - packet.readerIndex() >= 4) {
+            final int flowSetStart = packet.readerIndex();
+            final int flowSetId = packet.readUnsignedShort();
+            final int length = packet.readUnsignedShort();
+            final int flowSetEnd = flowSetStart + length;
+            if (length < 4 || flowSetEnd > end) {
+                throw new CorruptFlowPacketException("Invalid length " + length + " for flow set " + flowSetId);
+            }
+            // template flow sets never match, the templates are part of the journal entry
+            final CompiledFlowTemplate template = templates.get(flowSetId);
+            if (template != null) {
+                template.parseRecords(packet, packet.readerIndex(), flowSetEnd).forEach(records);
+            }
+            packet.readerIndex(flowSetEnd);
+        }
+    }
+
     @FactoryClass
     public interface Factory extends AbstractCodec.Factory<NetFlowCodec> {
         @Override
@@ -210,6 +318,7 @@ public class NetFlowCodec extends AbstractCodec implements MultiMessageCodec {
         public ConfigurationRequest getRequestedConfiguration() {
             final ConfigurationRequest configuration = super.getRequestedConfiguration();
             configuration.addField(new TextField(CK_NETFLOW9_DEFINITION_PATH, "Netflow 9 field definitions", "", "Path to the YAML file containing Netflow 9 field definitions", ConfigurationField.Optional.OPTIONAL));
+            configuration.addField(new BooleanField(CK_COMPACT_JOURNAL_ENCODING, "Compact journal encoding", false, "Store NetFlow 9 packets in a compact binary format in the journal and decode them with precompiled templates. Also enables IPFIX support."));
             return configuration;
         }
     }
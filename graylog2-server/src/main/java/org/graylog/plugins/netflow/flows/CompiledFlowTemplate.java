@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.netflow.flows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import org.graylog.plugins.netflow.v9.NetFlowV9FieldType;
+import org.graylog.plugins.netflow.v9.NetFlowV9FieldTypeRegistry;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static com.google.common.base.Strings.emptyToNull;
+
+/**
+ * A flow template compiled into a field offset table.
+ * <p>
+ * Field names, value types and the offset of every field within a record are resolved once when the template is
+ * compiled, so data records can be read with absolute index access instead of walking the field definitions
+ * for every record. The same engine is used for NetFlow v9 and IPFIX (v10) templates, the latter may contain
+ * enterprise specific and variable length fields.
+ */
+public final class CompiledFlowTemplate {
+    /**
+     * IPFIX field length which signals a variable length field, see RFC 7011, section 7.
+     */
+    public static final int VARIABLE_LENGTH = 65535;
+    private static final int ENTERPRISE_BIT = 0x8000;
+
+    private final int templateId;
+    private final String[] names;
+    private final NetFlowV9FieldType.ValueType[] valueTypes;
+    private final int[] lengths;
+    // offset of each field from the start of a record, -1 for fields following a variable length field
+    private final int[] offsets;
+    // the length of a record, or the minimum length of a record if it contains variable length fields
+    private final int recordLength;
+    private final boolean fixedLength;
+
+    private CompiledFlowTemplate(int templateId, ImmutableList<Field> fields) {
+        this.templateId = templateId;
+        this.names = new String[fields.size()];
+        this.valueTypes = new NetFlowV9FieldType.ValueType[fields.size()];
+        this.lengths = new int[fields.size()];
+        this.offsets = new int[fields.size()];
+
+        int offset = 0;
+        int minimumLength = 0;
+        boolean variable = false;
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            names[i] = field.name;
+            valueTypes[i] = field.valueType;
+            lengths[i] = field.length;
+            offsets[i] = variable ? -1 : offset;
+            if (field.length == VARIABLE_LENGTH) {
+                variable = true;
+                // at least the one byte length prefix
+                minimumLength += 1;
+            } else {
+                offset += field.length;
+                minimumLength += field.length;
+            }
+        }
+        this.recordLength = minimumLength;
+        this.fixedLength = !variable;
+    }
+
+    /**
+     * Compiles a NetFlow v9 template record, starting with the template id.
+     *
+     * @see org.graylog.plugins.netflow.v9.NetFlowV9Parser#parseTemplate(ByteBuf, NetFlowV9FieldTypeRegistry)
+     */
+    public static CompiledFlowTemplate compileV9(ByteBuf template, NetFlowV9FieldTypeRegistry typeRegistry) {
+        final ByteBuf bb = template.duplicate();
+        final int templateId = bb.readUnsignedShort();
+        final int fieldCount = bb.readUnsignedShort();
+        final ImmutableList.Builder<Field> fields = ImmutableList.builderWithExpectedSize(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            final int fieldType = bb.readUnsignedShort();
+            final int fieldLength = bb.readUnsignedShort();
+            fields.add(Field.of(typeRegistry.get(fieldType), "field_" + fieldType, fieldLength));
+        }
+        return new CompiledFlowTemplate(templateId, fields.build());
+    }
+
+    /**
+     * Compiles an IPFIX template record, starting with the template id.
+     * Enterprise specific information elements which aren't known are named {@code field_<enterprise>_<id>}.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc7011#section-3.4.1">RFC 7011 - Template Record Format</a>
+     */
+    public static CompiledFlowTemplate compileIpfix(ByteBuf template, NetFlowV9FieldTypeRegistry typeRegistry) {
+        final ByteBuf bb = template.duplicate();
+        final int templateId = bb.readUnsignedShort();
+        final int fieldCount = bb.readUnsignedShort();
+        final ImmutableList.Builder<Field> fields = ImmutableList.builderWithExpectedSize(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            final int informationElement = bb.readUnsignedShort();
+            final int fieldLength = bb.readUnsignedShort();
+            if ((informationElement & ENTERPRISE_BIT) != 0) {
+                final long enterpriseNumber = bb.readUnsignedInt();
+                final int fieldType = informationElement & ~ENTERPRISE_BIT;
+                fields.add(Field.of(null, "field_" + enterpriseNumber + "_" + fieldType, fieldLength));
+            } else {
+                fields.add(Field.of(typeRegistry.get(informationElement), "field_" + informationElement, fieldLength));
+            }
+        }
+        return new CompiledFlowTemplate(templateId, fields.build());
+    }
+
+    public int templateId() {
+        return templateId;
+    }
+
+    /**
+     * Parses all data records of a data flow set.
+     *
+     * @param bb    the buffer containing the flow set, its reader index is not modified
+     * @param start the index of the first record, directly after the flow set header
+     * @param end   the end of the flow set, remaining bytes which cannot hold another record are treated as padding
+     * @return the fields of each record in the flow set
+     */
+    public ImmutableList<ImmutableMap<String, Object>> parseRecords(ByteBuf bb, int start, int end) {
+        if (recordLength == 0) {
+            return ImmutableList.of();
+        }
+        final ImmutableList.Builder<ImmutableMap<String, Object>> records = ImmutableList.builder();
+        int index = start;
+        while (end - index >= recordLength) {
+            final ImmutableMap.Builder<String, Object> fields = ImmutableMap.builderWithExpectedSize(names.length);
+            if (fixedLength) {
+                for (int i = 0; i < names.length; i++) {
+                    putValue(fields, i, readValue(bb, index + offsets[i], valueTypes[i], lengths[i]));
+                }
+                index += recordLength;
+            } else {
+                index = parseVariableRecord(bb, index, end, fields);
+            }
+            records.add(fields.build());
+        }
+        return records.build();
+    }
+
+    private int parseVariableRecord(ByteBuf bb, int start, int end, ImmutableMap.Builder<String, Object> fields) {
+        int index = start;
+        for (int i = 0; i < names.length; i++) {
+            int length = lengths[i];
+            if (length == VARIABLE_LENGTH) {
+                length = bb.getUnsignedByte(index);
+                index += 1;
+                if (length == 255) {
+                    length = bb.getUnsignedShort(index);
+                    index += 2;
+                }
+            }
+            if (index + length > end) {
+                throw new CorruptFlowPacketException("Flow record of template " + templateId + " exceeds its flow set");
+            }
+            if (length > 0 && (isUnsignedNumber(valueTypes[i]) || length >= valueTypes[i].getDefaultLength())) {
+                putValue(fields, i, readValue(bb, index, valueTypes[i], length));
+            }
+            index += length;
+        }
+        return index;
+    }
+
+    private void putValue(ImmutableMap.Builder<String, Object> fields, int field, @Nullable Object value) {
+        if (value != null) {
+            fields.put(names[field], value);
+        }
+    }
+
+    /**
+     * Reads a single value the same way {@link org.graylog.plugins.netflow.v9.NetFlowV9FieldDef#parse(ByteBuf)} does,
+     * but with absolute index access.
+     */
+    @Nullable
+    private static Object readValue(ByteBuf bb, int index, NetFlowV9FieldType.ValueType valueType, int fieldLength) {
+        final int len = fieldLength != 0 ? fieldLength : valueType.getDefaultLength();
+        switch (valueType) {
+            case UINT8:
+            case UINT16:
+            case UINT24:
+            case UINT32:
+            case UINT64:
+                return readUnsignedNumber(bb, index, len);
+            case INT8:
+                return bb.getByte(index);
+            case INT16:
+                return bb.getShort(index);
+            case INT24:
+                return bb.getMedium(index);
+            case INT32:
+                return bb.getInt(index);
+            case INT64:
+                return bb.getLong(index);
+            case IPV4:
+                return (bb.getUnsignedByte(index)) + "." + (bb.getUnsignedByte(index + 1)) + "." +
+                        (bb.getUnsignedByte(index + 2)) + "." + (bb.getUnsignedByte(index + 3));
+            case IPV6:
+                final byte[] address = new byte[16];
+                bb.getBytes(index, address);
+                try {
+                    return InetAddress.getByAddress(address).getHostAddress();
+                } catch (UnknownHostException e) {
+                    return null;
+                }
+            case MAC:
+                return String.format(Locale.ROOT, "%02x:%02x:%02x:%02x:%02x:%02x",
+                        bb.getByte(index), bb.getByte(index + 1), bb.getByte(index + 2),
+                        bb.getByte(index + 3), bb.getByte(index + 4), bb.getByte(index + 5));
+            case STRING:
+                return emptyToNull(bb.toString(index, len, StandardCharsets.UTF_8).trim());
+            case SKIP:
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isUnsignedNumber(NetFlowV9FieldType.ValueType valueType) {
+        switch (valueType) {
+            case UINT8:
+            case UINT16:
+            case UINT24:
+            case UINT32:
+            case UINT64:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Object readUnsignedNumber(ByteBuf bb, int index, int length) {
+        switch (length) {
+            case 1:
+                return bb.getUnsignedByte(index);
+            case 2:
+                return bb.getUnsignedShort(index);
+            case 3:
+                return bb.getUnsignedMedium(index);
+            case 4:
+                return bb.getUnsignedInt(index);
+            case 8:
+                return bb.getLong(index);
+            default:
+                final byte[] bytes = new byte[length];
+                bb.getBytes(index, bytes);
+                return new BigInteger(bytes);
+        }
+    }
+
+    private static class Field {
+        private final String name;
+        private final NetFlowV9FieldType.ValueType valueType;
+        private final int length;
+
+        private Field(String name, NetFlowV9FieldType.ValueType valueType, int length) {
+            this.name = name;
+            this.valueType = valueType;
+            this.length = length;
+        }
+
+        static Field of(@Nullable NetFlowV9FieldType registeredType, String unknownName, int length) {
+            if (registeredType == null) {
+                // Unknown/invalid field type
+                return new Field(unknownName, NetFlowV9FieldType.ValueType.byLength(length), length);
+            }
+            final NetFlowV9FieldType.ValueType valueType = registeredType.valueType();
+            if (length != VARIABLE_LENGTH && valueType.getDefaultLength() > length) {
+                // never read beyond the field, its offset table entry only covers the announced length
+                return new Field(registeredType.name().toLowerCase(Locale.ROOT), NetFlowV9FieldType.ValueType.byLength(length), length);
+            }
+            return new Field(registeredType.name().toLowerCase(Locale.ROOT), valueType, length);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.graylog.plugins.netflow.flows;
 
 import com.google.common.collect.ImmutableMap;
+import org.graylog.plugins.netflow.ipfix.IpfixHeader;
 import org.graylog.plugins.netflow.utils.ByteBufUtils;
 import org.graylog.plugins.netflow.utils.Protocol;
 import org.graylog.plugins.netflow.v5.NetFlowV5Header;
@@ -66,7 +67,7 @@ public class NetFlowFormatter {
                 record.protocol(), record.packetCount(), record.octetCount());
     }
 
-    private static String toMessageString(NetFlowV9BaseRecord record) {
+    private static String toMessageString(String prefix, NetFlowV9BaseRecord record) {
         final ImmutableMap<String, Object> fields = record.fields();
         final long packetCount = (long) fields.getOrDefault("in_pkts", 0L);
         long octetCount = (long) fields.getOrDefault("in_bytes", 0L);
@@ -79,7 +80,8 @@ public class NetFlowFormatter {
         final Integer dstPort = (Integer) fields.get("l4_dst_port");
         final Short protocol = (Short) fields.get("protocol");
 
-        return String.format(Locale.ROOT, "NetFlowV9 [%s]:%d <> [%s]:%d proto:%d pkts:%d bytes:%d",
+        return String.format(Locale.ROOT, "%s [%s]:%d <> [%s]:%d proto:%d pkts:%d bytes:%d",
+                prefix,
                 srcAddr, srcPort,
                 dstAddr, dstPort,
                 protocol, packetCount, octetCount);
@@ -134,13 +136,44 @@ public class NetFlowFormatter {
     public static Message toMessage(NetFlowV9Header header,
                                     NetFlowV9BaseRecord record,
                                     @Nullable InetSocketAddress sender) {
+        return toMessage("NetFlowV9", 9, header.unixSecs(), header.sequence(), header.sysUptime(), record, sender);
+    }
+
+    /**
+     * IPFIX records are formatted like NetFlow v9 records. There is no system uptime in IPFIX messages, so the
+     * flow start and end are only set for the absolute {@code flow_start_msec} and {@code flow_end_msec} fields.
+     */
+    public static Message toMessage(IpfixHeader header,
+                                    NetFlowV9BaseRecord record,
+                                    @Nullable InetSocketAddress sender) {
+        final Message message = toMessage("IPFIX", 10, header.exportTime(), header.sequence(), null, record, sender);
+
+        final Object flowStart = record.fields().get("flow_start_msec");
+        final Object flowEnd = record.fields().get("flow_end_msec");
+        if (flowStart instanceof Long) {
+            message.addField(MF_START, new DateTime((long) flowStart, DateTimeZone.UTC));
+        }
+        if (flowEnd instanceof Long) {
+            message.addField(MF_STOP, new DateTime((long) flowEnd, DateTimeZone.UTC));
+        }
+
+        return message;
+    }
+
+    private static Message toMessage(String prefix,
+                                     int version,
+                                     long unixSecs,
+                                     long sequence,
+                                     @Nullable Long sysUptime,
+                                     NetFlowV9BaseRecord record,
+                                     @Nullable InetSocketAddress sender) {
         final String source = sender == null ? null : sender.getAddress().getHostAddress();
-        final long timestamp = header.unixSecs() * 1000L;
-        final Message message = new Message(toMessageString(record), source, new DateTime(timestamp, DateTimeZone.UTC));
+        final long timestamp = unixSecs * 1000L;
+        final Message message = new Message(toMessageString(prefix, record), source, new DateTime(timestamp, DateTimeZone.UTC));
 
         final Map<String, Object> fields = record.fields();
 
-        message.addField(MF_VERSION, 9);
+        message.addField(MF_VERSION, version);
         fields.forEach((key, value) -> message.addField("nf_" + key, value));
 
         final String srcAddr = (String) fields.get("ipv4_src_addr");
@@ -151,7 +184,7 @@ public class NetFlowFormatter {
         final Long first = (Long) fields.get("first_switched");
         final Long last = (Long) fields.get("last_switched");
 
-        message.addField(MF_FLOW_PACKET_ID, header.sequence());
+        message.addField(MF_FLOW_PACKET_ID, sequence);
         message.addField(MF_TOS, fields.get("ip_tos"));
         message.addField(MF_SRC_TOS, fields.get("ip_src_tos"));
         message.addField(MF_DST_TOS, fields.get("ip_dst_tos"));
@@ -179,12 +212,12 @@ public class NetFlowFormatter {
         }
         message.addField(MF_TCP_FLAGS, fields.get("tcp_flags"));
 
-        if (first != null && first > 0) {
-            long start = timestamp - (header.sysUptime() - first);
+        if (sysUptime != null && first != null && first > 0) {
+            long start = timestamp - (sysUptime - first);
             message.addField(MF_START, new DateTime(start, DateTimeZone.UTC));
         }
-        if (last != null && last > 0) {
-            long stop = timestamp - (header.sysUptime() - last);
+        if (sysUptime != null && last != null && last > 0) {
+            long stop = timestamp - (sysUptime - last);
             message.addField(MF_STOP, new DateTime(stop, DateTimeZone.UTC));
         }
         message.addField(MF_BYTES, fields.get("in_bytes"));
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.netflow.ipfix;
+
+import com.google.auto.value.AutoValue;
+
+@AutoValue
+public abstract class IpfixHeader {
+    // 2bytes, 10
+    public abstract int version();
+
+    // 2bytes, total length of the IPFIX message including this header
+    public abstract int length();
+
+    // 4bytes, seconds since 0000 Coordinated Universal Time (UTC) 1970
+    public abstract long exportTime();
+
+    // 4bytes, incremental sequence counter of all data records sent in the current stream
+    public abstract long sequence();
+
+    // 4bytes, the equivalent of the NetFlow v9 source id
+    public abstract long observationDomainId();
+
+    public static IpfixHeader create(int version, int length, long exportTime, long sequence, long observationDomainId) {
+        return new AutoValue_IpfixHeader(version, length, exportTime, sequence, observationDomainId);
+    }
+}
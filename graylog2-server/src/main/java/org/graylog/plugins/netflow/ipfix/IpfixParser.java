@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.netflow.ipfix;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.graylog.plugins.netflow.flows.CorruptFlowPacketException;
+import org.graylog.plugins.netflow.flows.InvalidFlowVersionException;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shallow parsing of IPFIX messages.
+ * Data records are parsed by {@link org.graylog.plugins.netflow.flows.CompiledFlowTemplate}, which is shared with NetFlow v9.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7011">RFC 7011 - IPFIX Protocol Specification</a>
+ */
+public class IpfixParser {
+    public static final int VERSION = 10;
+    public static final int HEADER_LENGTH = 16;
+    public static final int TEMPLATE_SET_ID = 2;
+    public static final int OPTIONS_TEMPLATE_SET_ID = 3;
+    private static final int SET_HEADER_LENGTH = 4;
+    private static final int MIN_DATA_SET_ID = 256;
+    private static final int ENTERPRISE_BIT = 0x8000;
+
+    /**
+     * Message Header Format
+     *
+     * <pre>
+     * |  0-1  | version               | Version of IPFIX to which this message conforms, 10                     |
+     * |  2-3  | length                | Total length of the IPFIX message, including the message header        |
+     * |  4-7  | export_time           | Seconds since 0000 UTC 1970 at which the message left the exporter      |
+     * |  8-11 | sequence_number       | Incremental sequence counter of all data records sent by the exporter  |
+     * | 12-15 | observation_domain_id | Identifier of the observation domain, unique to the exporting process  |
+     * </pre>
+     */
+    public static IpfixHeader parseHeader(ByteBuf bb) {
+        final int version = bb.readUnsignedShort();
+        if (version != VERSION) {
+            throw new InvalidFlowVersionException(version);
+        }
+
+        final int length = bb.readUnsignedShort();
+        final long exportTime = bb.readUnsignedInt();
+        final long sequence = bb.readUnsignedInt();
+        final long observationDomainId = bb.readUnsignedInt();
+
+        return IpfixHeader.create(version, length, exportTime, sequence, observationDomainId);
+    }
+
+    /**
+     * The end of the message in the given buffer, which starts after the already parsed header.
+     */
+    public static int messageEnd(ByteBuf bb, IpfixHeader header) {
+        return Math.min(bb.readerIndex() - HEADER_LENGTH + header.length(), bb.writerIndex());
+    }
+
+    /**
+     * Only retrieves the raw bytes of all (options) template records, starting with their template id, the ids of all
+     * withdrawn templates and the ids of all templates used by data sets in the message.
+     */
+    public static RawIpfixPacket parsePacketShallow(ByteBuf bb) {
+        final ByteBuf buf = bb.duplicate();
+
+        final IpfixHeader header = parseHeader(buf);
+        final int end = messageEnd(buf, header);
+        final Map<Integer, byte[]> templates = Maps.newHashMap();
+        final Map<Integer, byte[]> optionTemplates = Maps.newHashMap();
+        final Set<Integer> withdrawnTemplates = Sets.newHashSet();
+        final Set<Integer> usedTemplates = Sets.newHashSet();
+
+        while (end - buf.readerIndex() >= SET_HEADER_LENGTH) {
+            final int setStart = buf.readerIndex();
+            final int setId = buf.readUnsignedShort();
+            final int setLength = buf.readUnsignedShort();
+            final int setEnd = setStart + setLength;
+            if (setLength < SET_HEADER_LENGTH || setEnd > end) {
+                throw new CorruptFlowPacketException("Invalid IPFIX set length " + setLength + " for set " + setId);
+            }
+
+            if (setId == TEMPLATE_SET_ID) {
+                parseTemplatesShallow(buf, setId, setEnd, templates, withdrawnTemplates);
+            } else if (setId == OPTIONS_TEMPLATE_SET_ID) {
+                parseTemplatesShallow(buf, setId, setEnd, optionTemplates, withdrawnTemplates);
+            } else if (setId >= MIN_DATA_SET_ID) {
+                usedTemplates.add(setId);
+            }
+            buf.readerIndex(setEnd);
+        }
+
+        return RawIpfixPacket.create(header, templates, optionTemplates, withdrawnTemplates, usedTemplates);
+    }
+
+    /**
+     * Template Record Format, options template records additionally contain the scope field count after the field count.
+     *
+     * <pre>
+     * | template_id          | 2 bytes, greater than 255                                                    |
+     * | field_count          | 2 bytes, 0 withdraws the template                                            |
+     * | information_element  | 2 bytes, the highest bit signals an enterprise specific information element  |
+     * | field_length         | 2 bytes, 65535 signals a variable length field                               |
+     * | enterprise_number    | 4 bytes, only present for enterprise specific information elements           |
+     * </pre>
+     * <p>
+     * Withdrawal records only consist of the template id and a field count of 0. A template id equal to the set id
+     * withdraws all (options) templates of the observation domain, see RFC 7011, section 8.1.
+     */
+    private static void parseTemplatesShallow(ByteBuf buf, int setId, int setEnd, Map<Integer, byte[]> templates, Set<Integer> withdrawnTemplates) {
+        while (setEnd - buf.readerIndex() >= SET_HEADER_LENGTH) {
+            final int start = buf.readerIndex();
+            final int templateId = buf.readUnsignedShort();
+            final int fieldCount = buf.readUnsignedShort();
+            if (fieldCount == 0 && (templateId == setId || templateId >= MIN_DATA_SET_ID)) {
+                withdrawnTemplates.add(templateId);
+                continue;
+            }
+            if (templateId < MIN_DATA_SET_ID) {
+                // padding
+                break;
+            }
+            if (setId == OPTIONS_TEMPLATE_SET_ID) {
+                // scope field count
+                buf.skipBytes(2);
+            }
+            for (int i = 0; i < fieldCount; i++) {
+                final int informationElement = buf.readUnsignedShort();
+                buf.skipBytes(2);
+                if ((informationElement & ENTERPRISE_BIT) != 0) {
+                    buf.skipBytes(4);
+                }
+            }
+            if (buf.readerIndex() > setEnd) {
+                throw new CorruptFlowPacketException("IPFIX template " + templateId + " exceeds its template set");
+            }
+            templates.put(templateId, ByteBufUtil.getBytes(buf, start, buf.readerIndex() - start));
+        }
+    }
+}
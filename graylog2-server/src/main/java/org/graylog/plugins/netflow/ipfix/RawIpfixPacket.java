@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.netflow.ipfix;
+
+import com.google.auto.value.AutoValue;
+
+import java.util.Map;
+import java.util.Set;
+
+@AutoValue
+public abstract class RawIpfixPacket {
+
+    public abstract IpfixHeader header();
+
+    public abstract Map<Integer, byte[]> templates();
+
+    public abstract Map<Integer, byte[]> optionTemplates();
+
+    /**
+     * The ids of withdrawn templates. {@link IpfixParser#TEMPLATE_SET_ID} and {@link IpfixParser#OPTIONS_TEMPLATE_SET_ID}
+     * withdraw all templates or all options templates of the observation domain.
+     */
+    public abstract Set<Integer> withdrawnTemplates();
+
+    public abstract Set<Integer> usedTemplates();
+
+    public static RawIpfixPacket create(IpfixHeader header, Map<Integer, byte[]> templates, Map<Integer, byte[]> optionTemplates, Set<Integer> withdrawnTemplates, Set<Integer> usedTemplates) {
+        return new AutoValue_RawIpfixPacket(header, templates, optionTemplates, withdrawnTemplates, usedTemplates);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.functions.lookup;
+
+import com.google.inject.Inject;
+import com.google.inject.TypeLiteral;
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
+import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog2.lookup.LookupTableService;
+import org.graylog2.plugin.lookup.LookupResult;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.object;
+import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.string;
+import static org.graylog2.plugin.lookup.LookupResult.SINGLE_VALUE_KEY;
+
+public class LookupMany extends AbstractFunction<Map<Object, Object>> {
+
+    public static final String NAME = "lookup_many";
+
+    private final ParameterDescriptor<String, LookupTableService.Function> lookupTableParam;
+    @SuppressWarnings("rawtypes")
+    private final ParameterDescriptor<List, List> keysParam;
+    private final ParameterDescriptor<Object, Object> defaultParam;
+
+    @Inject
+    public LookupMany(LookupTableService lookupTableService) {
+        lookupTableParam = string("lookup_table", LookupTableService.Function.class)
+                .description("The existing lookup table to use to lookup the given keys")
+                .transform(tableName -> lookupTableService.newBuilder().lookupTable(tableName).build())
+                .build();
+        keysParam = ParameterDescriptor.type("keys", List.class)
+                .description("The keys to lookup in the table")
+                .build();
+        defaultParam = object("default")
+                .description("The default multi value that should be used for keys without a lookup result")
+                .optional()
+                .build();
+    }
+
+    @Override
+    public Map<Object, Object> evaluate(FunctionArgs args, EvaluationContext context) {
+        @SuppressWarnings("unchecked") final List<Object> keys = keysParam.required(args, context);
+        if (keys == null) {
+            return Collections.emptyMap();
+        }
+        LookupTableService.Function table = lookupTableParam.required(args, context);
+        if (table == null) {
+            return Collections.emptyMap();
+        }
+        final Map<Object, Object> defaultValue = Collections.singletonMap(SINGLE_VALUE_KEY, defaultParam.optional(args, context).orElse(null));
+
+        final List<Object> distinctKeys = keys.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        final Map<Object, LookupResult> results = table.lookupAll(distinctKeys);
+
+        final Map<Object, Object> values = new LinkedHashMap<>();
+        for (final Object key : distinctKeys) {
+            final LookupResult result = results.get(key);
+            if (result == null || result.isEmpty()) {
+                values.put(key, defaultValue);
+            } else {
+                values.put(key, result.multiValue());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public FunctionDescriptor<Map<Object, Object>> descriptor() {
+        //noinspection unchecked
+        return FunctionDescriptor.<Map<Object, Object>>builder()
+                .name(NAME)
+                .description("Looks up the multi values of several keys at once in the named lookup table. Returns a map from each key to its multi value.")
+                .params(lookupTableParam, keysParam, defaultParam)
+                .returnType((Class<? extends Map<Object, Object>>) new TypeLiteral<Map<Object, Object>>() {}.getRawType())
+                .build();
+    }
+}
@@ -25,11 +25,12 @@ import com.google.auto.value.AutoValue;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
+import com.google.common.net.InetAddresses;
 import com.google.inject.assistedinject.Assisted;
-import org.apache.commons.net.util.SubnetUtils;
 import org.graylog.autovalue.WithBeanGetter;
 import org.graylog.plugins.threatintel.PluginConfigService;
 import org.graylog.plugins.threatintel.tools.AdapterDisabledException;
+import org.graylog2.lookup.CidrTrie;
 import org.graylog2.lookup.adapters.dsvhttp.HTTPFileRetriever;
 import org.graylog2.plugin.lookup.LookupCachePurge;
 import org.graylog2.plugin.lookup.LookupDataAdapter;
@@ -43,6 +44,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.validation.constraints.Min;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -63,7 +65,7 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
     // the current cache-control header says max-age 14400 seconds
     private static final Duration REFRESH_INTERVAL = Duration.standardHours(4);
 
-    private final AtomicReference<Map<String, Map<SubnetUtils.SubnetInfo, String>>> subnets = new AtomicReference<>(Collections.emptyMap());
+    private final AtomicReference<Map<String, CidrTrie<String>>> subnets = new AtomicReference<>(Collections.emptyMap());
     private final HTTPFileRetriever httpFileRetriever;
     private final PluginConfigService pluginConfigService;
 
@@ -84,9 +86,9 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
         if (!pluginConfigService.config().getCurrent().spamhausEnabled()) {
             throw new AdapterDisabledException("Spamhaus service is disabled, not starting (E)DROP adapter. To enable it please go to System / Configurations.");
         }
-        final ImmutableMap.Builder<String, Map<SubnetUtils.SubnetInfo, String>> builder = ImmutableMap.builder();
+        final ImmutableMap.Builder<String, CidrTrie<String>> builder = ImmutableMap.builder();
         for (String list : lists) {
-            final Map<SubnetUtils.SubnetInfo, String> subnetMap = fetchSubnetsFromEDROPLists(list);
+            final CidrTrie<String> subnetMap = fetchSubnetsFromEDROPLists(list);
             if (subnetMap != null) {
                 builder.put(list, subnetMap);
             }
@@ -113,10 +115,10 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
             throw new AdapterDisabledException("Spamhaus service is disabled, not refreshing (E)DROP adapter. To enable it please go to System / Configurations.");
         }
         // keep the old results, which will get overridden if we can fetch new lists
-        final Map<String, Map<SubnetUtils.SubnetInfo, String>> result = new HashMap<>(this.subnets.get());
+        final Map<String, CidrTrie<String>> result = new HashMap<>(this.subnets.get());
         boolean hasUpdates = false;
         for (String list : lists) {
-            final Map<SubnetUtils.SubnetInfo, String> newList = fetchSubnetsFromEDROPLists(list);
+            final CidrTrie<String> newList = fetchSubnetsFromEDROPLists(list);
             if (newList != null) {
                 result.put(list, newList);
                 hasUpdates = true;
@@ -130,8 +132,8 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
         cachePurge.purgeAll();
     }
 
-    private Map<SubnetUtils.SubnetInfo, String> fetchSubnetsFromEDROPLists(String list) {
-        final ImmutableMap.Builder<SubnetUtils.SubnetInfo, String> builder = ImmutableMap.builder();
+    private CidrTrie<String> fetchSubnetsFromEDROPLists(String list) {
+        final CidrTrie<String> listSubnets = new CidrTrie<>();
         try {
             final Optional<String> body = httpFileRetriever.fetchFileIfNotModified(list);
             if (body.isPresent()) {
@@ -142,8 +144,7 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
                         if (!line.isEmpty() && !line.startsWith(";") && line.contains(";")) {
                             final String[] parts = line.split(";");
 
-                            final SubnetUtils su = new SubnetUtils(parts[0].trim());
-                            builder.put(su.getInfo(), parts.length > 1 ? parts[1].trim() : "N/A");
+                            listSubnets.put(parts[0].trim(), parts.length > 1 ? parts[1].trim() : "N/A");
                         }
                     }
                 }
@@ -155,7 +156,7 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
             return null;
         }
 
-        return builder.build();
+        return listSubnets;
     }
 
     @Override
@@ -166,23 +167,26 @@ public class SpamhausEDROPDataAdapter extends LookupDataAdapter {
             return LookupResult.empty();
         }
 
-        // TODO potentially use a RangeMap here instead of doing linear searches all the time
-        // We should be able to use ranges of the integer values of lowAddress and highAddress as keys
-        final Optional<Map.Entry<SubnetUtils.SubnetInfo, String>> match;
+        final InetAddress address;
         try {
-            match = subnets.get().values()
-                           .stream()
-                           .flatMap(list -> list.entrySet().stream())
-                           .filter(entry -> entry.getKey().isInRange(ip))
-                           .findFirst();
+            address = InetAddresses.forString(ip);
         } catch (IllegalArgumentException e) {
             // Gracefully handle the case when a blank or invalid IP is supplied.
             LOG.debug("[{}] is an invalid IP address. Lookup aborted. {}", ip, ExceptionUtils.getRootCauseMessage(e));
             return LookupResult.empty();
         }
 
-        return match.map(entry -> LookupResult.multi(true,
-                ImmutableMap.of("sbl_id", entry.getValue(), "subnet", entry.getKey().getCidrSignature())
+        // (E)DROP lists whole netblocks, so the network and broadcast addresses of a listed subnet match as well.
+        Optional<CidrTrie.Match<String>> match = Optional.empty();
+        for (final CidrTrie<String> list : subnets.get().values()) {
+            match = list.longestPrefixMatch(address);
+            if (match.isPresent()) {
+                break;
+            }
+        }
+
+        return match.map(m -> LookupResult.multi(true,
+                ImmutableMap.of("sbl_id", m.value(), "subnet", m.cidr())
         )).orElse(LookupResult.single(false));
     }
 
@@ -17,6 +17,7 @@
 package org.graylog.plugins.views;
 
 import com.github.joschi.jadconfig.Parameter;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import org.graylog2.plugin.PluginConfigBean;
 import org.joda.time.Duration;
 
@@ -24,7 +25,80 @@ public class ViewsConfig implements PluginConfigBean {
     private static final Duration DEFAULT_MAXIMUM_AGE_FOR_SEARCHES = Duration.standardDays(4);
     private static final String PREFIX = "views_";
     private static final String MAX_SEARCH_AGE = PREFIX + "maximum_search_age";
+    private static final String RESULT_CACHE_ENABLED = PREFIX + "search_result_cache_enabled";
+    private static final String RESULT_CACHE_STALENESS = PREFIX + "search_result_cache_staleness";
+    private static final String RESULT_CACHE_MAX_ENTRIES = PREFIX + "search_result_cache_max_entries";
+    private static final String INCREMENTAL_REFRESH_ENABLED = PREFIX + "incremental_pivot_refresh_enabled";
+    private static final String INCREMENTAL_REFRESH_MAX_ENTRIES = PREFIX + "incremental_pivot_refresh_max_entries";
+    private static final String INCREMENTAL_REFRESH_MAX_AGE = PREFIX + "incremental_pivot_refresh_max_age";
+    private static final String QUERY_POOL_SIZE = PREFIX + "query_pool_size";
+    private static final String QUERY_QUEUE_SIZE = PREFIX + "query_queue_size";
+    private static final String EXPORT_SLICES = PREFIX + "export_slices";
+    private static final String EXPORT_PAGES_IN_FLIGHT = PREFIX + "export_pages_in_flight";
+    private static final String EXPORT_FETCHER_THREADS = PREFIX + "export_fetcher_threads";
+    private static final String MERGE_SEARCH_TYPE_REQUESTS = PREFIX + "merge_search_type_requests";
+    private static final String DOWNSAMPLING_ENABLED = PREFIX + "pivot_downsampling_enabled";
+    private static final String DOWNSAMPLING_TARGET_POINTS = PREFIX + "pivot_downsampling_target_points";
+    private static final String PROGRESSIVE_SEARCH_ENABLED = PREFIX + "progressive_search_enabled";
+    private static final String PROGRESSIVE_SEARCH_SLICES = PREFIX + "progressive_search_slices";
 
     @Parameter(MAX_SEARCH_AGE)
     private Duration maxSearchAge = DEFAULT_MAXIMUM_AGE_FOR_SEARCHES;
+
+    @Parameter(RESULT_CACHE_ENABLED)
+    private boolean searchResultCacheEnabled = false;
+
+    // how long results for time ranges relative to "now" are reused
+    @Parameter(RESULT_CACHE_STALENESS)
+    private Duration searchResultCacheStaleness = Duration.standardSeconds(10);
+
+    @Parameter(value = RESULT_CACHE_MAX_ENTRIES, validators = PositiveIntegerValidator.class)
+    private int searchResultCacheMaxEntries = 1000;
+
+    @Parameter(INCREMENTAL_REFRESH_ENABLED)
+    private boolean incrementalPivotRefreshEnabled = false;
+
+    @Parameter(value = INCREMENTAL_REFRESH_MAX_ENTRIES, validators = PositiveIntegerValidator.class)
+    private int incrementalPivotRefreshMaxEntries = 1000;
+
+    // how long incremental refreshes are based on a full execution, picks up messages arriving later than one bucket
+    @Parameter(INCREMENTAL_REFRESH_MAX_AGE)
+    private Duration incrementalPivotRefreshMaxAge = Duration.standardMinutes(5);
+
+    // number of queries executed concurrently on this node
+    @Parameter(value = QUERY_POOL_SIZE, validators = PositiveIntegerValidator.class)
+    private int queryPoolSize = 4;
+
+    @Parameter(value = QUERY_QUEUE_SIZE, validators = PositiveIntegerValidator.class)
+    private int queryQueueSize = 1000;
+
+    // number of parallel scroll slices used for message exports, 1 disables sliced exports
+    @Parameter(value = EXPORT_SLICES, validators = PositiveIntegerValidator.class)
+    private int exportSlices = 1;
+
+    // pages of a message export fetched but not yet written, including the page currently written
+    @Parameter(value = EXPORT_PAGES_IN_FLIGHT, validators = PositiveIntegerValidator.class)
+    private int exportPagesInFlight = 2;
+
+    // threads fetching export pages in the background, shared by all exports of this node
+    @Parameter(value = EXPORT_FETCHER_THREADS, validators = PositiveIntegerValidator.class)
+    private int exportFetcherThreads = 8;
+
+    @Parameter(DOWNSAMPLING_ENABLED)
+    private boolean pivotDownsamplingEnabled = false;
+
+    // maximum number of time buckets per pivot
+    @Parameter(value = DOWNSAMPLING_TARGET_POINTS, validators = PositiveIntegerValidator.class)
+    private int pivotDownsamplingTargetPoints = 500;
+
+    // run search types with the same query, filters and time range as a single backend request
+    @Parameter(MERGE_SEARCH_TYPE_REQUESTS)
+    private boolean mergeSearchTypeRequests = false;
+
+    @Parameter(PROGRESSIVE_SEARCH_ENABLED)
+    private boolean progressiveSearchEnabled = false;
+
+    // maximum number of time slices, aligned to index boundaries, a query is executed in
+    @Parameter(value = PROGRESSIVE_SEARCH_SLICES, validators = PositiveIntegerValidator.class)
+    private int progressiveSearchSlices = 4;
 }
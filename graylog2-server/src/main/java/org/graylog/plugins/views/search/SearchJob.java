@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @JsonAutoDetect
 // execution must come before results, as it signals the overall "done" state
@@ -45,6 +46,14 @@ public class SearchJob implements ParameterProvider {
 
     private final Map<String, CompletableFuture<QueryResult>> queryResults = Maps.newHashMap();
 
+    // merged results of the time slices which have been executed so far, for queries which are executed progressively
+    private final Map<String, QueryResult> partialResults = new ConcurrentHashMap<>();
+
+    private volatile boolean stopRequested = false;
+
+    // previous search job of the same owner whose queued queries are cancelled when this job is executed
+    private String supersededSearchJobId;
+
     private Set<SearchError> errors = Sets.newHashSet();
 
     public SearchJob(String id, Search search, String owner) {
@@ -91,12 +100,48 @@ public class SearchJob implements ParameterProvider {
     @JsonProperty("results")
     public Map<String, QueryResult> results() {
         return EntryStream.of(queryResults)
-                .mapValues(future -> future.getNow(QueryResult.incomplete()))
                 .filterKeys(queryId -> !queryId.isEmpty()) // the root query result is meaningless, so we don't include it here
-                .filterValues(r -> (r.state() == QueryResult.State.COMPLETED) || (r.state() == QueryResult.State.FAILED))
+                // queries which are still running are only included if they have published a partial result
+                .mapToValue((queryId, future) -> future.isDone() ? future.getNow(QueryResult.incomplete()) : partialResults.get(queryId))
+                .nonNullValues()
                 .toMap();
     }
 
+    /**
+     * Publishes the intermediate result of a query which is still running. It is reported instead of the final result
+     * until the query is done.
+     */
+    public void publishPartialResult(String queryId, QueryResult partialResult) {
+        partialResults.put(queryId, partialResult);
+    }
+
+    /**
+     * Asks progressively executed queries to stop after the time slice they are currently running, the merged results
+     * of the slices executed so far become the final results.
+     */
+    public void requestStop() {
+        this.stopRequested = true;
+    }
+
+    @JsonIgnore
+    public boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    /**
+     * Marks a previous search job of the same owner as superseded by this one, e.g. because a dashboard is refreshed
+     * before the previous refresh has finished. Its queries which are still waiting for execution are cancelled when
+     * this job is executed.
+     */
+    public void supersede(String searchJobId) {
+        this.supersededSearchJobId = searchJobId;
+    }
+
+    @JsonIgnore
+    public Optional<String> getSupersededSearchJobId() {
+        return Optional.ofNullable(supersededSearchJobId);
+    }
+
     @JsonProperty("execution")
     public ExecutionInfo execution() {
         final boolean isDone = resultFuture != null && resultFuture.isDone();
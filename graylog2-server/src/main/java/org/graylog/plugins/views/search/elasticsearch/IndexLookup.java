@@ -52,6 +52,13 @@ public class IndexLookup {
 
     public Set<String> indexNamesForStreamsInTimeRange(final Set<String> streamIds,
                                                        final TimeRange timeRange) {
+        return indexRangesForStreamsInTimeRange(streamIds, timeRange).stream()
+                .map(IndexRange::indexName)
+                .collect(Collectors.toSet());
+    }
+
+    public Set<IndexRange> indexRangesForStreamsInTimeRange(final Set<String> streamIds,
+                                                            final TimeRange timeRange) {
         if (streamIds.isEmpty()) {
             return Collections.emptySet();
         }
@@ -61,7 +68,6 @@ public class IndexLookup {
 
         return candidateIndices.stream()
                 .filter(i -> indexRangeContainsOneOfStreams.test(i, usedStreams))
-                .map(IndexRange::indexName)
                 .collect(Collectors.toSet());
     }
 
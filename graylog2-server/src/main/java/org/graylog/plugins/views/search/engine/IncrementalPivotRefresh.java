@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.graylog.plugins.views.search.GlobalOverride;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.searchtypes.pivot.BucketSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.DateInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.TimeUnitInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Average;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Min;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Sum;
+import org.graylog2.indexer.indices.events.IndicesClosedEvent;
+import org.graylog2.indexer.indices.events.IndicesDeletedEvent;
+import org.graylog2.indexer.indices.events.IndicesReopenedEvent;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+
+import static org.joda.time.DateTimeZone.UTC;
+
+/**
+ * Refreshes pivots which are bucketed by time over a time range relative to "now" incrementally.
+ * <p>
+ * The previous result of such a pivot is kept. When it is executed again, only the first bucket (which is now only
+ * partially covered by the time range) and the buckets starting with the last complete bucket of the previous result
+ * are queried. All other buckets are taken from the previous result. Messages which arrive later than one bucket
+ * interval are only picked up by a full execution, which happens once the last full execution is older than the
+ * configured maximum age.
+ * <p>
+ * The rollup row and the total are derived from the merged buckets, which is why only decomposable series are
+ * supported: count, sum, min, max and avg, which is computed from hidden sum and count series.
+ */
+@Singleton
+public class IncrementalPivotRefresh {
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalPivotRefresh.class);
+
+    private static final String HIDDEN_SERIES_PREFIX = "incremental-";
+    private static final String DOC_COUNT_SERIES_ID = HIDDEN_SERIES_PREFIX + "count()";
+    private static final Set<String> DECOMPOSABLE_SERIES = ImmutableSet.of(Count.NAME, Sum.NAME, Min.NAME, Max.NAME, Average.NAME);
+    // calendar intervals of these units are aligned the same way as fixed intervals in UTC
+    private static final Map<String, Long> INTERVAL_UNIT_MILLIS = ImmutableMap.of(
+            "s", 1000L,
+            "m", 60_000L,
+            "h", 3_600_000L,
+            "d", 86_400_000L
+    );
+
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final SearchTypeFingerprint fingerprint;
+    private final Cache<String, PreviousResult> previousResults;
+
+    @Inject
+    public IncrementalPivotRefresh(@Named("views_incremental_pivot_refresh_enabled") boolean enabled,
+                                   @Named("views_incremental_pivot_refresh_max_entries") int maxEntries,
+                                   @Named("views_incremental_pivot_refresh_max_age") Duration maxAge,
+                                   ObjectMapper objectMapper,
+                                   EventBus serverEventBus) {
+        this.enabled = enabled;
+        this.maxAge = maxAge;
+        this.fingerprint = new SearchTypeFingerprint(objectMapper);
+        this.previousResults = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .build();
+
+        serverEventBus.register(this);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return how to execute the search type or an empty optional if it can't be refreshed incrementally
+     */
+    public Optional<Plan> planFor(Search search, Query query, SearchType searchType) {
+        if (!enabled || !(searchType instanceof Pivot)) {
+            return Optional.empty();
+        }
+        final Pivot pivot = (Pivot) searchType;
+        if (!hasDecomposableSeries(pivot) || !pivot.columnGroups().isEmpty() || !pivot.sort().isEmpty()) {
+            return Optional.empty();
+        }
+        final Optional<RelativeRange> relativeRange = relativeRange(query, pivot);
+        final Optional<DateInterval> interval = relativeRange.flatMap(range -> fixedInterval(query, pivot));
+        if (!relativeRange.isPresent() || !interval.isPresent()) {
+            return Optional.empty();
+        }
+
+        final String key;
+        try {
+            key = fingerprint.digest(search, query, pivot, null);
+        } catch (JsonProcessingException e) {
+            LOG.debug("Unable to fingerprint pivot <{}>, not refreshing it incrementally", pivot.id(), e);
+            return Optional.empty();
+        }
+
+        final DateTime to = Tools.nowUTC();
+        final DateTime from = to.minusSeconds(relativeRange.get().getRange());
+        final Plan plan = new Plan(key, pivot, withHiddenSeries(pivot), interval.get(), from, to, null);
+
+        final PreviousResult previous = previousResults.getIfPresent(key);
+        if (previous == null || !previous.to().isBefore(to) || previous.fullyComputedAt().plus(maxAge).isBefore(to)) {
+            // late messages in buckets before the last one are only picked up by a full execution
+            return Optional.of(plan);
+        }
+        final Plan incrementalPlan = new Plan(key, pivot, plan.searchType(), interval.get(), from, to, previous);
+        // without buckets to reuse there is no point in splitting the query
+        return Optional.of(incrementalPlan.tailStart() > incrementalPlan.headEnd() ? incrementalPlan : plan);
+    }
+
+    /**
+     * @return a copy of the query which only runs the given slices of incrementally refreshed pivots
+     */
+    public Query sliceQuery(Query query, Collection<SearchType> slices) {
+        // an overridden time range would take precedence over the time ranges of the slices
+        final GlobalOverride globalOverride = query.globalOverride()
+                .flatMap(GlobalOverride::query)
+                .map(overriddenQuery -> GlobalOverride.builder().query(overriddenQuery).build())
+                .orElse(null);
+        return query.toBuilder()
+                .globalOverride(globalOverride)
+                .searchTypes(ImmutableSet.copyOf(slices))
+                .build();
+    }
+
+    /**
+     * Builds the result of the planned pivot out of the backend results and keeps it for the next refresh.
+     *
+     * @param results    the results of the backend, containing either the full result or the results of the slices
+     * @param successful whether the backend reported no errors, only then the result is kept
+     * @return the result of the pivot or an empty optional if the backend didn't return the necessary results
+     */
+    public Optional<PivotResult> complete(Plan plan, Map<String, SearchType.Result> results, boolean successful) {
+        final Optional<PivotResult> result = plan.isIncremental()
+                ? pivotResult(results, plan.headId()).flatMap(head -> pivotResult(results, plan.tailId()).flatMap(tail -> merge(plan, head, tail)))
+                : pivotResult(results, plan.searchTypeId());
+
+        final Optional<NavigableMap<Long, PivotResult.Row>> buckets = result.flatMap(IncrementalPivotRefresh::bucketsOf);
+        if (successful && buckets.isPresent()) {
+            final DateTime fullyComputedAt = plan.isIncremental() ? plan.previous().fullyComputedAt() : plan.to();
+            previousResults.put(plan.key(), new PreviousResult(plan.to(), fullyComputedAt, buckets.get()));
+        } else {
+            previousResults.invalidate(plan.key());
+        }
+
+        return result.map(IncrementalPivotRefresh::withoutHiddenSeries);
+    }
+
+    private Optional<PivotResult> merge(Plan plan, PivotResult head, PivotResult tail) {
+        final Optional<NavigableMap<Long, PivotResult.Row>> headBuckets = bucketsOf(head);
+        final Optional<NavigableMap<Long, PivotResult.Row>> tailBuckets = bucketsOf(tail);
+        if (!headBuckets.isPresent() || !tailBuckets.isPresent()) {
+            return Optional.empty();
+        }
+
+        final NavigableMap<Long, PivotResult.Row> buckets = new TreeMap<>(plan.previous().buckets().subMap(plan.headEnd(), true, plan.tailStart(), false));
+        Optional.ofNullable(headBuckets.get().get(plan.headStart())).ifPresent(row -> buckets.put(plan.headStart(), row));
+        buckets.putAll(tailBuckets.get().tailMap(plan.tailStart(), true));
+
+        final Pivot pivot = plan.searchType();
+        final PivotResult.Builder resultBuilder = PivotResult.builder()
+                .id(plan.searchTypeId())
+                .effectiveTimerange(AbsoluteRange.create(plan.from(), plan.to()))
+                .total(totalOf(buckets.values()))
+                .addAllRows(new ArrayList<>(buckets.values()));
+        pivot.name().ifPresent(resultBuilder::name);
+        if (pivot.rollup()) {
+            resultBuilder.addRow(rollupRow(pivot, buckets.values()));
+        }
+
+        return Optional.of(resultBuilder.build());
+    }
+
+    private static long totalOf(Collection<PivotResult.Row> rows) {
+        return rows.stream()
+                .flatMap(row -> row.values().stream())
+                .filter(value -> DOC_COUNT_SERIES_ID.equals(seriesIdOf(value)))
+                .map(PivotResult.Value::value)
+                .filter(value -> value instanceof Number)
+                .mapToLong(value -> ((Number) value).longValue())
+                .sum();
+    }
+
+    private static PivotResult.Row rollupRow(Pivot pivot, Collection<PivotResult.Row> rows) {
+        final Map<String, List<Number>> valuesBySeries = new HashMap<>();
+        rows.forEach(row -> row.values().forEach(value -> {
+            if (value.value() instanceof Number) {
+                valuesBySeries.computeIfAbsent(seriesIdOf(value), id -> new ArrayList<>()).add((Number) value.value());
+            }
+        }));
+
+        final Map<String, Object> rollups = new LinkedHashMap<>();
+        pivot.series().stream()
+                .filter(series -> !Average.NAME.equals(series.type()))
+                .forEach(series -> rollups.put(series.id(), rollup(series, valuesBySeries.getOrDefault(series.id(), ImmutableList.of()))));
+        pivot.series().stream()
+                .filter(series -> Average.NAME.equals(series.type()))
+                .forEach(series -> rollups.put(series.id(), average(rollups.get(hiddenSumId(series.field())), rollups.get(hiddenCountId(series.field())))));
+
+        final PivotResult.Row.Builder rowBuilder = PivotResult.Row.builder()
+                .key(ImmutableList.of())
+                .source("non-leaf");
+        pivot.series().forEach(series -> rowBuilder.addValue(PivotResult.Value.create(ImmutableList.of(series.id()), rollups.get(series.id()), true, "row-inner")));
+        return rowBuilder.build();
+    }
+
+    @Nullable
+    private static Object rollup(SeriesSpec series, List<Number> values) {
+        switch (series.type()) {
+            case Count.NAME:
+                return values.stream().mapToLong(Number::longValue).sum();
+            case Sum.NAME:
+                return values.stream().mapToDouble(Number::doubleValue).sum();
+            case Min.NAME:
+                // empty min and max aggregations are reported as infinity by the backend as well
+                return finiteValues(values).min().orElse(Double.POSITIVE_INFINITY);
+            case Max.NAME:
+                return finiteValues(values).max().orElse(Double.NEGATIVE_INFINITY);
+            default:
+                throw new IllegalArgumentException("Series " + series.type() + " can't be rolled up incrementally");
+        }
+    }
+
+    private static DoubleStream finiteValues(List<Number> values) {
+        return values.stream().mapToDouble(Number::doubleValue).filter(Double::isFinite);
+    }
+
+    @Nullable
+    private static Object average(@Nullable Object sum, @Nullable Object count) {
+        if (!(sum instanceof Number) || !(count instanceof Number) || ((Number) count).longValue() == 0) {
+            return null;
+        }
+        return ((Number) sum).doubleValue() / ((Number) count).longValue();
+    }
+
+    private static Optional<PivotResult> pivotResult(Map<String, SearchType.Result> results, String id) {
+        return Optional.ofNullable(results.get(id))
+                .filter(result -> result instanceof PivotResult)
+                .map(result -> (PivotResult) result);
+    }
+
+    /**
+     * @return the leaf rows of the result by the start of their bucket or an empty optional if a key isn't a timestamp
+     */
+    @VisibleForTesting
+    static Optional<NavigableMap<Long, PivotResult.Row>> bucketsOf(PivotResult result) {
+        final NavigableMap<Long, PivotResult.Row> buckets = new TreeMap<>();
+        for (PivotResult.Row row : result.rows()) {
+            if (row.key().isEmpty()) {
+                // the rollup row is recomputed from the buckets
+                continue;
+            }
+            try {
+                buckets.put(DateTime.parse(row.key().get(0)).getMillis(), row);
+            } catch (IllegalArgumentException e) {
+                LOG.debug("Unexpected bucket key <{}> in result of pivot <{}>", row.key(), result.id());
+                return Optional.empty();
+            }
+        }
+        return Optional.of(buckets);
+    }
+
+    private static PivotResult withoutHiddenSeries(PivotResult result) {
+        final PivotResult.Builder resultBuilder = PivotResult.builder()
+                .id(result.id())
+                .total(result.total())
+                .effectiveTimerange(result.effectiveTimerange())
+                .effectiveInterval(result.effectiveInterval());
+        result.name().ifPresent(resultBuilder::name);
+        result.rows().forEach(row -> resultBuilder.addRow(PivotResult.Row.builder()
+                .key(row.key())
+                .source(row.source())
+                .addAllValues(row.values().stream()
+                        .filter(value -> !seriesIdOf(value).startsWith(HIDDEN_SERIES_PREFIX))
+                        .collect(Collectors.toList()))
+                .build()));
+        return resultBuilder.build();
+    }
+
+    private static String seriesIdOf(PivotResult.Value value) {
+        return value.key().isEmpty() ? "" : value.key().get(value.key().size() - 1);
+    }
+
+    private static boolean hasDecomposableSeries(Pivot pivot) {
+        return pivot.series().stream()
+                .allMatch(series -> DECOMPOSABLE_SERIES.contains(series.type())
+                        && !Objects.requireNonNullElse(series.id(), "").startsWith(HIDDEN_SERIES_PREFIX));
+    }
+
+    private static Optional<RelativeRange> relativeRange(Query query, Pivot pivot) {
+        if (pivot.timerange().isPresent()) {
+            return Optional.empty();
+        }
+        final TimeRange timeRange = query.globalOverride().flatMap(GlobalOverride::timerange).orElse(query.timerange());
+        if (!(timeRange instanceof RelativeRange)) {
+            return Optional.empty();
+        }
+        final RelativeRange relativeRange = (RelativeRange) timeRange;
+        return relativeRange.range().isPresent() && !relativeRange.isAllMessages()
+                ? Optional.of(relativeRange)
+                : Optional.empty();
+    }
+
+    private static Optional<DateInterval> fixedInterval(Query query, Pivot pivot) {
+        if (pivot.rowGroups().size() != 1) {
+            return Optional.empty();
+        }
+        final BucketSpec bucketSpec = pivot.rowGroups().get(0);
+        if (!(bucketSpec instanceof Time) || ((Time) bucketSpec).fields().size() != 1) {
+            return Optional.empty();
+        }
+        // the interval only depends on the length of the time range, which doesn't change between refreshes
+        final DateInterval interval = ((Time) bucketSpec).interval().toDateInterval(query.effectiveTimeRange(pivot));
+        return INTERVAL_UNIT_MILLIS.containsKey(interval.getUnit()) && interval.getQuantity().longValue() > 0
+                ? Optional.of(interval)
+                : Optional.empty();
+    }
+
+    private static Pivot withHiddenSeries(Pivot pivot) {
+        final Map<String, SeriesSpec> series = new LinkedHashMap<>();
+        pivot.series().forEach(spec -> series.put(spec.id(), spec));
+        series.put(DOC_COUNT_SERIES_ID, Count.builder().id(DOC_COUNT_SERIES_ID).build());
+        pivot.series().stream()
+                .filter(spec -> Average.NAME.equals(spec.type()))
+                .forEach(average -> {
+                    series.put(hiddenSumId(average.field()), Sum.builder().id(hiddenSumId(average.field())).field(average.field()).build());
+                    series.put(hiddenCountId(average.field()), Count.builder().id(hiddenCountId(average.field())).field(average.field()).build());
+                });
+        return pivot.toBuilder().series(ImmutableList.copyOf(series.values())).build();
+    }
+
+    private static String hiddenSumId(String field) {
+        return HIDDEN_SERIES_PREFIX + Sum.NAME + "(" + field + ")";
+    }
+
+    private static String hiddenCountId(String field) {
+        return HIDDEN_SERIES_PREFIX + Count.NAME + "(" + field + ")";
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndicesDeleted(IndicesDeletedEvent event) {
+        previousResults.invalidateAll();
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndicesClosed(IndicesClosedEvent event) {
+        previousResults.invalidateAll();
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndicesReopened(IndicesReopenedEvent event) {
+        previousResults.invalidateAll();
+    }
+
+    public static class Plan {
+        private final String key;
+        private final Pivot pivot;
+        private final Pivot searchType;
+        private final DateInterval interval;
+        private final DateTime from;
+        private final DateTime to;
+        @Nullable
+        private final PreviousResult previous;
+
+        Plan(String key, Pivot pivot, Pivot searchType, DateInterval interval, DateTime from, DateTime to, @Nullable PreviousResult previous) {
+            this.key = key;
+            this.pivot = pivot;
+            this.searchType = searchType;
+            this.interval = interval;
+            this.from = from;
+            this.to = to;
+            this.previous = previous;
+        }
+
+        public String searchTypeId() {
+            return pivot.id();
+        }
+
+        /**
+         * @return whether only slices of the pivot have to be executed
+         */
+        public boolean isIncremental() {
+            return previous != null;
+        }
+
+        /**
+         * @return the pivot to execute if the plan is not incremental, including hidden series needed for later refreshes
+         */
+        public Pivot searchType() {
+            return searchType;
+        }
+
+        public List<SearchType> sliceSearchTypes() {
+            return ImmutableList.of(
+                    slice(headId(), from, new DateTime(headEnd() - 1, UTC)),
+                    slice(tailId(), new DateTime(tailStart(), UTC), to)
+            );
+        }
+
+        private Pivot slice(String id, DateTime sliceFrom, DateTime sliceTo) {
+            final Time time = (Time) searchType.rowGroups().get(0);
+            // slices have shorter time ranges, so an automatic interval must not be computed again
+            final Time fixedTime = Time.builder()
+                    .fields(time.fields())
+                    .interval(TimeUnitInterval.Builder.builder().timeunit(interval.toString()).build())
+                    .build();
+            return searchType.toBuilder()
+                    .id(id)
+                    .rowGroups(fixedTime)
+                    .timerange(AbsoluteRange.create(sliceFrom, sliceTo))
+                    .build();
+        }
+
+        String key() {
+            return key;
+        }
+
+        DateTime from() {
+            return from;
+        }
+
+        DateTime to() {
+            return to;
+        }
+
+        PreviousResult previous() {
+            return Objects.requireNonNull(previous);
+        }
+
+        String headId() {
+            return searchTypeId() + "-incremental-head";
+        }
+
+        String tailId() {
+            return searchTypeId() + "-incremental-tail";
+        }
+
+        long intervalMillis() {
+            return interval.getQuantity().longValue() * INTERVAL_UNIT_MILLIS.get(interval.getUnit());
+        }
+
+        long headStart() {
+            return from.getMillis() - Math.floorMod(from.getMillis(), intervalMillis());
+        }
+
+        long headEnd() {
+            return headStart() + intervalMillis();
+        }
+
+        long tailStart() {
+            final long previousTo = previous().to().getMillis();
+            // the last complete bucket is queried again to pick up messages which arrived late
+            return previousTo - Math.floorMod(previousTo, intervalMillis()) - intervalMillis();
+        }
+    }
+
+    @VisibleForTesting
+    static class PreviousResult {
+        private final DateTime to;
+        private final DateTime fullyComputedAt;
+        private final NavigableMap<Long, PivotResult.Row> buckets;
+
+        PreviousResult(DateTime to, DateTime fullyComputedAt, NavigableMap<Long, PivotResult.Row> buckets) {
+            this.to = to;
+            this.fullyComputedAt = fullyComputedAt;
+            this.buckets = buckets;
+        }
+
+        DateTime to() {
+            return to;
+        }
+
+        /**
+         * @return the end of the time range of the last full execution the buckets are based on
+         */
+        DateTime fullyComputedAt() {
+            return fullyComputedAt;
+        }
+
+        NavigableMap<Long, PivotResult.Row> buckets() {
+            return buckets;
+        }
+    }
+}
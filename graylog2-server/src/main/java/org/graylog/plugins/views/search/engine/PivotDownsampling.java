@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.searchtypes.pivot.BucketSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.AutoInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.DateInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.TimeUnitInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Average;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Latest;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Min;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Percentile;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.StdDev;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Variance;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Limits the number of time buckets pivots return to a target number of points.
+ * <p>
+ * Before a query is executed, automatic intervals of time buckets which would result in more buckets than the target
+ * are replaced by the smallest fixed interval which doesn't. After it has been executed, the leaf rows of pivots that
+ * are only bucketed by time and whose series can be shown as a line (e.g. avg or max, but not count) are reduced to
+ * the target number using the largest-triangle-three-buckets algorithm. The interval that was used for the buckets is
+ * reported in the result.
+ */
+@Singleton
+public class PivotDownsampling {
+    private static final Logger LOG = LoggerFactory.getLogger(PivotDownsampling.class);
+
+    // a single bucket of these series can be dropped without changing the meaning of the remaining ones
+    private static final Set<String> REDUCIBLE_SERIES = ImmutableSet.of(Average.NAME, Min.NAME, Max.NAME, Latest.NAME,
+            Percentile.NAME, StdDev.NAME, Variance.NAME);
+    private static final Map<String, Long> INTERVAL_UNIT_MILLIS = ImmutableMap.<String, Long>builder()
+            .put("ms", 1L)
+            .put("s", 1000L)
+            .put("m", 60_000L)
+            .put("h", 3_600_000L)
+            .put("d", 86_400_000L)
+            .put("w", 7 * 86_400_000L)
+            .put("M", 30 * 86_400_000L)
+            .build();
+    // fixed intervals are aligned the same way for all time zones, calendar intervals are only used up to days
+    private static final List<DateInterval> FIXED_INTERVALS = ImmutableList.of(
+            DateInterval.seconds(1), DateInterval.seconds(2), DateInterval.seconds(5), DateInterval.seconds(10),
+            DateInterval.seconds(15), DateInterval.seconds(30),
+            DateInterval.minutes(1), DateInterval.minutes(2), DateInterval.minutes(5), DateInterval.minutes(10),
+            DateInterval.minutes(15), DateInterval.minutes(30),
+            DateInterval.hours(1), DateInterval.hours(2), DateInterval.hours(3), DateInterval.hours(4),
+            DateInterval.hours(6), DateInterval.hours(12),
+            DateInterval.days(1), DateInterval.days(2), DateInterval.days(3), DateInterval.days(7),
+            DateInterval.days(14), DateInterval.days(30)
+    );
+
+    private final boolean enabled;
+    private final int targetPoints;
+
+    @Inject
+    public PivotDownsampling(@Named("views_pivot_downsampling_enabled") boolean enabled,
+                             @Named("views_pivot_downsampling_target_points") int targetPoints) {
+        this.enabled = enabled;
+        // the first and the last point are always kept
+        this.targetPoints = Math.max(targetPoints, 3);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return a copy of the query in which automatic intervals of pivots are limited to the target number of buckets
+     */
+    public Query downsample(Query query) {
+        if (!enabled) {
+            return query;
+        }
+        boolean changed = false;
+        final ImmutableSet.Builder<SearchType> searchTypes = ImmutableSet.builder();
+        for (SearchType searchType : query.searchTypes()) {
+            final SearchType downsampled = searchType instanceof Pivot ? downsample(query, (Pivot) searchType) : searchType;
+            changed |= downsampled != searchType;
+            searchTypes.add(downsampled);
+        }
+        return changed ? query.toBuilder().searchTypes(searchTypes.build()).build() : query;
+    }
+
+    private Pivot downsample(Query query, Pivot pivot) {
+        final TimeRange timeRange = query.effectiveTimeRange(pivot);
+        final List<BucketSpec> rowGroups = downsample(pivot.rowGroups(), timeRange);
+        final List<BucketSpec> columnGroups = downsample(pivot.columnGroups(), timeRange);
+        if (rowGroups == pivot.rowGroups() && columnGroups == pivot.columnGroups()) {
+            return pivot;
+        }
+        LOG.debug("Limiting time buckets of pivot <{}> to {}", pivot.id(), targetPoints);
+        return pivot.toBuilder()
+                .rowGroups(rowGroups)
+                .columnGroups(columnGroups)
+                .build();
+    }
+
+    private List<BucketSpec> downsample(List<BucketSpec> groups, TimeRange timeRange) {
+        final List<BucketSpec> downsampled = groups.stream()
+                .map(group -> isAutoTime(group) ? downsample((Time) group, timeRange) : group)
+                .collect(Collectors.toList());
+        return downsampled.equals(groups) ? groups : downsampled;
+    }
+
+    private Time downsample(Time time, TimeRange timeRange) {
+        final long rangeMillis = timeRange.getTo().getMillis() - timeRange.getFrom().getMillis();
+        final DateInterval interval = time.interval().toDateInterval(timeRange);
+        if (rangeMillis <= 0 || interval == null || rangeMillis / millisOf(interval) <= targetPoints) {
+            return time;
+        }
+        return Time.builder()
+                .fields(time.fields())
+                .interval(TimeUnitInterval.Builder.builder().timeunit(fixedIntervalFor(rangeMillis, targetPoints).toString()).build())
+                .build();
+    }
+
+    /**
+     * @return the smallest fixed interval that divides the given range into at most the given number of buckets
+     */
+    @VisibleForTesting
+    static DateInterval fixedIntervalFor(long rangeMillis, int targetPoints) {
+        final long minimumMillis = (rangeMillis + targetPoints - 1) / targetPoints;
+        return FIXED_INTERVALS.stream()
+                .filter(interval -> millisOf(interval) >= minimumMillis)
+                .findFirst()
+                .orElseGet(() -> DateInterval.days((int) ((minimumMillis + INTERVAL_UNIT_MILLIS.get("d") - 1) / INTERVAL_UNIT_MILLIS.get("d"))));
+    }
+
+    /**
+     * Reports the effective intervals of the pivots of the query and reduces the rows of the ones that still exceed
+     * the target number of points.
+     *
+     * @param query the query as returned by {@link #downsample(Query)}
+     */
+    public QueryResult reduce(Query query, QueryResult result) {
+        if (!enabled) {
+            return result;
+        }
+        final Map<String, SearchType.Result> results = new HashMap<>(result.searchTypes());
+        query.searchTypes().stream()
+                .filter(searchType -> searchType instanceof Pivot)
+                .map(searchType -> (Pivot) searchType)
+                .forEach(pivot -> Optional.ofNullable(results.get(pivot.id()))
+                        .filter(searchTypeResult -> searchTypeResult instanceof PivotResult)
+                        .ifPresent(pivotResult -> results.put(pivot.id(), reduce(query, pivot, (PivotResult) pivotResult))));
+        return result.toBuilder().searchTypes(results).build();
+    }
+
+    private PivotResult reduce(Query query, Pivot pivot, PivotResult result) {
+        final Optional<Time> time = pivot.rowGroups().stream()
+                .filter(group -> group instanceof Time)
+                .map(group -> (Time) group)
+                .findFirst();
+        if (time.isEmpty()) {
+            return result;
+        }
+        final DateInterval effectiveInterval = time.get().interval().toDateInterval(query.effectiveTimeRange(pivot));
+        final List<PivotResult.Row> rows = isReducible(pivot) ? reduceRows(pivot, result) : result.rows();
+
+        final PivotResult.Builder resultBuilder = PivotResult.builder()
+                .id(result.id())
+                .total(result.total())
+                .effectiveTimerange(result.effectiveTimerange())
+                .addAllRows(rows);
+        result.name().ifPresent(resultBuilder::name);
+        // The interval is unknown if it cannot be derived from the time range of the pivot
+        if (effectiveInterval != null) {
+            resultBuilder.effectiveInterval(effectiveInterval.toString());
+        }
+        return resultBuilder.build();
+    }
+
+    private List<PivotResult.Row> reduceRows(Pivot pivot, PivotResult result) {
+        final List<PivotResult.Row> leafRows = result.rows().stream()
+                .filter(row -> !row.key().isEmpty())
+                .collect(Collectors.toList());
+        if (leafRows.size() <= targetPoints) {
+            return result.rows();
+        }
+
+        final double[] timestamps = new double[leafRows.size()];
+        for (int i = 0; i < leafRows.size(); i++) {
+            try {
+                timestamps[i] = DateTime.parse(leafRows.get(i).key().get(0)).getMillis();
+            } catch (IllegalArgumentException e) {
+                LOG.debug("Unexpected bucket key <{}> in result of pivot <{}>", leafRows.get(i).key(), pivot.id());
+                return result.rows();
+            }
+        }
+
+        // the points of every series are selected separately, so no series loses its peaks
+        final BitSet selected = new BitSet(leafRows.size());
+        pivot.series().forEach(series -> {
+            // buckets without a value can't be selected for a series
+            final List<Integer> candidates = new ArrayList<>();
+            final List<Double> values = new ArrayList<>();
+            for (int i = 0; i < leafRows.size(); i++) {
+                final int index = i;
+                valueOf(leafRows.get(i), series.id()).ifPresent(value -> {
+                    candidates.add(index);
+                    values.add(value);
+                });
+            }
+            final double[] x = candidates.stream().mapToDouble(i -> timestamps[i]).toArray();
+            final double[] y = values.stream().mapToDouble(Double::doubleValue).toArray();
+            for (int index : largestTriangleThreeBuckets(x, y, targetPoints)) {
+                selected.set(candidates.get(index));
+            }
+        });
+
+        final List<PivotResult.Row> rows = new ArrayList<>(selected.cardinality() + 1);
+        selected.stream().forEach(i -> rows.add(leafRows.get(i)));
+        // the rollup row covers all buckets and stays as it is
+        result.rows().stream()
+                .filter(row -> row.key().isEmpty())
+                .forEach(rows::add);
+        LOG.debug("Reduced {} buckets of pivot <{}> to {}", leafRows.size(), pivot.id(), selected.cardinality());
+        return rows;
+    }
+
+    private static Optional<Double> valueOf(PivotResult.Row row, String seriesId) {
+        return row.values().stream()
+                .filter(value -> !value.key().isEmpty() && seriesId.equals(value.key().get(value.key().size() - 1)))
+                .map(PivotResult.Value::value)
+                .filter(value -> value instanceof Number)
+                .map(value -> ((Number) value).doubleValue())
+                .filter(Double::isFinite)
+                .findFirst();
+    }
+
+    /**
+     * Selects the indices of the given number of points which preserve the visual shape of the series best, using the
+     * largest-triangle-three-buckets algorithm.
+     *
+     * @param x ascending x values of the points
+     * @param y y values of the points
+     * @return the selected indices in ascending order
+     */
+    @VisibleForTesting
+    static int[] largestTriangleThreeBuckets(double[] x, double[] y, int threshold) {
+        final int length = x.length;
+        if (threshold >= length || threshold < 3) {
+            final int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        final int[] selected = new int[threshold];
+        // the first and the last point are always kept, the others are split into threshold - 2 buckets
+        final double bucketSize = (double) (length - 2) / (threshold - 2);
+        int previous = 0;
+        selected[0] = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            final int start = (int) Math.floor(bucket * bucketSize) + 1;
+            final int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+
+            // the third corner of the triangles is the average point of the next bucket
+            final int nextStart = end;
+            final int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, length);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= (nextEnd - nextStart);
+            averageY /= (nextEnd - nextStart);
+
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                final double area = Math.abs((x[previous] - averageX) * (y[i] - y[previous])
+                        - (x[previous] - x[i]) * (averageY - y[previous]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+            selected[bucket + 1] = maxIndex;
+            previous = maxIndex;
+        }
+        selected[threshold - 1] = length - 1;
+        return selected;
+    }
+
+    private static boolean isAutoTime(BucketSpec group) {
+        return group instanceof Time && ((Time) group).interval() instanceof AutoInterval;
+    }
+
+    private static boolean isReducible(Pivot pivot) {
+        return pivot.rowGroups().size() == 1
+                && pivot.rowGroups().get(0) instanceof Time
+                && pivot.columnGroups().isEmpty()
+                && !pivot.series().isEmpty()
+                && pivot.series().stream().allMatch(series -> REDUCIBLE_SERIES.contains(series.type()));
+    }
+
+    private static long millisOf(DateInterval interval) {
+        return interval.getQuantity().longValue() * INTERVAL_UNIT_MILLIS.getOrDefault(interval.getUnit(), 1L);
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import org.graylog.plugins.views.search.GlobalOverride;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.elasticsearch.IndexLookup;
+import org.graylog.plugins.views.search.errors.SearchError;
+import org.graylog.plugins.views.search.searchtypes.MessageList;
+import org.graylog.plugins.views.search.searchtypes.Sort;
+import org.graylog.plugins.views.search.searchtypes.pivot.BucketSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.TimeUnitInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Min;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Sum;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Executes queries over long time ranges as a sequence of time slices, newest first.
+ * <p>
+ * The slices are aligned to the time ranges of the indices the query targets, so every slice only hits a group of
+ * indices. After each slice the results of the slices executed so far are merged and published to the search job,
+ * which allows clients polling the job to show results before the whole time range has been searched and to stop the
+ * execution early.
+ * <p>
+ * Only queries whose search types can be merged from the results of disjoint time ranges are executed progressively:
+ * message lists sorted by timestamp in descending order without an offset and pivots without column groups, which are
+ * bucketed by fixed time intervals at most and only use count, sum, min or max series.
+ */
+@Singleton
+public class ProgressiveSearchExecution {
+    private static final Logger LOG = LoggerFactory.getLogger(ProgressiveSearchExecution.class);
+
+    private static final Set<String> DECOMPOSABLE_SERIES = ImmutableSet.of(Count.NAME, Sum.NAME, Min.NAME, Max.NAME);
+
+    private final boolean enabled;
+    private final int slices;
+    private final IndexLookup indexLookup;
+
+    @Inject
+    public ProgressiveSearchExecution(@Named("views_progressive_search_enabled") boolean enabled,
+                                      @Named("views_progressive_search_slices") int slices,
+                                      IndexLookup indexLookup) {
+        this.enabled = enabled;
+        this.slices = slices;
+        this.indexLookup = indexLookup;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the time slices the query should be executed in, newest first, or an empty optional if the query can't
+     * or doesn't need to be executed progressively
+     */
+    public Optional<List<AbsoluteRange>> planFor(Query query) {
+        if (!enabled || slices < 2 || query.searchTypes().isEmpty()
+                || !query.searchTypes().stream().allMatch(searchType -> isMergeable(searchType))) {
+            return Optional.empty();
+        }
+        final TimeRange timeRange = query.timerange();
+        if (timeRange.getFrom() == null || timeRange.getTo() == null) {
+            return Optional.empty();
+        }
+
+        final AbsoluteRange range = AbsoluteRange.create(timeRange.getFrom(), timeRange.getTo());
+        final Set<IndexRange> indexRanges = indexLookup.indexRangesForStreamsInTimeRange(query.usedStreamIds(), range);
+        final List<AbsoluteRange> timeSlices = slicesFor(range, indexRanges, slices);
+        if (timeSlices.size() < 2) {
+            return Optional.empty();
+        }
+        LOG.debug("[{}] Executing query progressively in {} slices over {} indices", query.id(), timeSlices.size(), indexRanges.size());
+        return Optional.of(timeSlices);
+    }
+
+    /**
+     * @return a copy of the query which only runs over the given time slice
+     */
+    public Query sliceQuery(Query query, AbsoluteRange slice) {
+        // an overridden time range would take precedence over the time range of the slice
+        final GlobalOverride globalOverride = query.globalOverride()
+                .flatMap(GlobalOverride::query)
+                .map(overriddenQuery -> GlobalOverride.builder().query(overriddenQuery).build())
+                .orElse(null);
+        return query.toBuilder()
+                .timerange(slice)
+                .globalOverride(globalOverride)
+                .build();
+    }
+
+    /**
+     * Merges the result of an older time slice into the merged result of the newer slices.
+     */
+    public QueryResult merge(Query query, QueryResult newer, QueryResult older) {
+        final Map<String, SearchType.Result> results = new LinkedHashMap<>(newer.searchTypes());
+        query.searchTypes().forEach(searchType -> {
+            final SearchType.Result olderResult = older.searchTypes().get(searchType.id());
+            if (olderResult != null) {
+                results.merge(searchType.id(), olderResult, (newerResult, o) -> merge(searchType, newerResult, o));
+            }
+        });
+
+        final Set<SearchError> errors = new HashSet<>();
+        Optional.ofNullable(newer.errors()).ifPresent(errors::addAll);
+        Optional.ofNullable(older.errors()).ifPresent(errors::addAll);
+
+        return newer.toBuilder()
+                .searchTypes(results)
+                .errors(errors.isEmpty() ? newer.errors() : errors)
+                .state(newer.state() == QueryResult.State.COMPLETED ? older.state() : newer.state())
+                .executionStats(newer.executionStats().toBuilder()
+                        .duration(newer.executionStats().duration() + older.executionStats().duration())
+                        .effectiveTimeRange(span(newer.executionStats().effectiveTimeRange(), older.executionStats().effectiveTimeRange()))
+                        .deduplicatedRequests(newer.executionStats().deduplicatedRequests() + older.executionStats().deduplicatedRequests())
+                        .build())
+                .build();
+    }
+
+    /**
+     * Splits the time range into at most the given number of slices, newest first. The boundaries of the slices are
+     * the start times of indices, chosen so that every slice covers roughly the same number of indices.
+     */
+    @VisibleForTesting
+    static List<AbsoluteRange> slicesFor(AbsoluteRange range, Collection<IndexRange> indexRanges, int slices) {
+        final List<DateTime> boundaries = indexRanges.stream()
+                .map(IndexRange::begin)
+                .filter(begin -> begin.isAfter(range.getFrom()) && begin.isBefore(range.getTo()))
+                .distinct()
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+        final int groups = Math.min(slices, boundaries.size() + 1);
+        if (groups < 2) {
+            return Collections.singletonList(range);
+        }
+
+        final List<AbsoluteRange> result = new ArrayList<>(groups);
+        DateTime to = range.getTo();
+        for (int group = 1; group < groups; group++) {
+            final DateTime from = boundaries.get(group * (boundaries.size() + 1) / groups - 1);
+            result.add(AbsoluteRange.create(from, to));
+            // both ends of a time range are inclusive
+            to = from.minusMillis(1);
+        }
+        result.add(AbsoluteRange.create(range.getFrom(), to));
+        return result;
+    }
+
+    private static SearchType.Result merge(SearchType searchType, SearchType.Result newer, SearchType.Result older) {
+        if (searchType instanceof MessageList && newer instanceof MessageList.Result && older instanceof MessageList.Result) {
+            return merge((MessageList) searchType, (MessageList.Result) newer, (MessageList.Result) older);
+        }
+        if (searchType instanceof Pivot && newer instanceof PivotResult && older instanceof PivotResult) {
+            return merge((Pivot) searchType, (PivotResult) newer, (PivotResult) older);
+        }
+        return newer;
+    }
+
+    private static MessageList.Result merge(MessageList messageList, MessageList.Result newer, MessageList.Result older) {
+        final MessageList.Result.Builder resultBuilder = MessageList.Result.result(newer.id())
+                .messages(ImmutableList.copyOf(Iterables.limit(Iterables.concat(newer.messages(), older.messages()), messageList.limit())))
+                .totalResults(newer.totalResults() + older.totalResults())
+                .effectiveTimerange(span(newer.effectiveTimerange(), older.effectiveTimerange()));
+        newer.name().ifPresent(resultBuilder::name);
+        newer.decorationStats().ifPresent(resultBuilder::decorationStats);
+        return resultBuilder.build();
+    }
+
+    private static PivotResult merge(Pivot pivot, PivotResult newer, PivotResult older) {
+        final Map<String, String> seriesTypes = pivot.series().stream()
+                .collect(Collectors.toMap(SeriesSpec::id, SeriesSpec::type, (type1, type2) -> type1));
+
+        // older buckets come first, as rows are sorted by time in ascending order
+        final Map<List<String>, PivotResult.Row> rows = new LinkedHashMap<>();
+        final Map<List<String>, PivotResult.Row> rollupRows = new LinkedHashMap<>();
+        for (PivotResult.Row row : Iterables.concat(older.rows(), newer.rows())) {
+            final Map<List<String>, PivotResult.Row> target = row.key().isEmpty() ? rollupRows : rows;
+            target.merge(row.key(), row, (previous, next) -> merge(seriesTypes, previous, next));
+        }
+
+        final PivotResult.Builder resultBuilder = PivotResult.builder()
+                .id(newer.id())
+                .total(newer.total() + older.total())
+                .effectiveTimerange(span(newer.effectiveTimerange(), older.effectiveTimerange()))
+                .effectiveInterval(newer.effectiveInterval())
+                .addAllRows(new ArrayList<>(rows.values()));
+        rollupRows.values().forEach(resultBuilder::addRow);
+        newer.name().ifPresent(resultBuilder::name);
+        return resultBuilder.build();
+    }
+
+    private static PivotResult.Row merge(Map<String, String> seriesTypes, PivotResult.Row previous, PivotResult.Row next) {
+        final Map<List<String>, PivotResult.Value> values = previous.values().stream()
+                .collect(Collectors.toMap(PivotResult.Value::key, Function.identity(), (value1, value2) -> value1, LinkedHashMap::new));
+        next.values().forEach(value -> values.merge(value.key(), value, (v1, v2) -> PivotResult.Value.create(
+                v1.key(), combine(seriesTypes.get(seriesIdOf(v1)), v1.value(), v2.value()), v1.rollup(), v1.source())));
+
+        return PivotResult.Row.builder()
+                .key(previous.key())
+                .source(previous.source())
+                .addAllValues(new ArrayList<>(values.values()))
+                .build();
+    }
+
+    @Nullable
+    private static Object combine(@Nullable String seriesType, @Nullable Object value1, @Nullable Object value2) {
+        if (!(value1 instanceof Number)) {
+            return value2;
+        }
+        if (!(value2 instanceof Number)) {
+            return value1;
+        }
+        final Number number1 = (Number) value1;
+        final Number number2 = (Number) value2;
+        if (Count.NAME.equals(seriesType)) {
+            return number1.longValue() + number2.longValue();
+        }
+        if (Sum.NAME.equals(seriesType)) {
+            return number1.doubleValue() + number2.doubleValue();
+        }
+        // empty min and max aggregations are reported as infinity by the backend
+        if (Min.NAME.equals(seriesType)) {
+            return Math.min(number1.doubleValue(), number2.doubleValue());
+        }
+        if (Max.NAME.equals(seriesType)) {
+            return Math.max(number1.doubleValue(), number2.doubleValue());
+        }
+        throw new IllegalArgumentException("Series " + seriesType + " can't be merged");
+    }
+
+    private static String seriesIdOf(PivotResult.Value value) {
+        return value.key().isEmpty() ? "" : value.key().get(value.key().size() - 1);
+    }
+
+    private static AbsoluteRange span(AbsoluteRange range1, AbsoluteRange range2) {
+        final DateTime from = range1.getFrom().isBefore(range2.getFrom()) ? range1.getFrom() : range2.getFrom();
+        final DateTime to = range1.getTo().isAfter(range2.getTo()) ? range1.getTo() : range2.getTo();
+        return AbsoluteRange.create(from, to);
+    }
+
+    private static boolean isMergeable(SearchType searchType) {
+        // search types with their own time range or streams would need a plan of their own
+        if (searchType.timerange().isPresent() || !searchType.streams().isEmpty()) {
+            return false;
+        }
+        if (searchType instanceof MessageList) {
+            return isMergeable((MessageList) searchType);
+        }
+        if (searchType instanceof Pivot) {
+            return isMergeable((Pivot) searchType);
+        }
+        return false;
+    }
+
+    private static boolean isMergeable(MessageList messageList) {
+        final List<Sort> sort = messageList.sort();
+        final boolean newestFirst = sort == null || sort.isEmpty()
+                || (sort.size() == 1 && Message.FIELD_TIMESTAMP.equals(sort.get(0).field()) && sort.get(0).order() == Sort.Order.DESC);
+        return newestFirst && messageList.offset() == 0;
+    }
+
+    private static boolean isMergeable(Pivot pivot) {
+        return pivot.columnGroups().isEmpty()
+                && pivot.sort().isEmpty()
+                && pivot.rowGroups().stream().allMatch(ProgressiveSearchExecution::isFixedTimeBucket)
+                && pivot.series().stream().allMatch(series -> DECOMPOSABLE_SERIES.contains(series.type()));
+    }
+
+    // automatic intervals depend on the length of the time range, so they would differ between the slices
+    private static boolean isFixedTimeBucket(BucketSpec bucketSpec) {
+        return bucketSpec instanceof Time && ((Time) bucketSpec).interval() instanceof TimeUnitInterval;
+    }
+}
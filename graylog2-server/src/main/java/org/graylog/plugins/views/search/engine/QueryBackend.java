@@ -87,6 +87,7 @@ public interface QueryBackend<T extends GeneratedQueryContext> {
                     .executionStats(
                             statsBuilder.duration(stopwatch.elapsed(TimeUnit.MILLISECONDS))
                                     .effectiveTimeRange(effectiveTimeRangeForResult(query, result))
+                                    .deduplicatedRequests(result.executionStats().deduplicatedRequests())
                                     .build())
                     .build();
         } catch (Exception e) {
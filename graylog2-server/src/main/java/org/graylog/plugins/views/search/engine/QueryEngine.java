@@ -16,27 +16,34 @@
  */
 package org.graylog.plugins.views.search.engine;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.collect.ImmutableSet;
 import org.graylog.plugins.views.search.Query;
 import org.graylog.plugins.views.search.QueryMetadata;
 import org.graylog.plugins.views.search.QueryMetadataDecorator;
 import org.graylog.plugins.views.search.QueryResult;
 import org.graylog.plugins.views.search.Search;
 import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.plugins.views.search.SearchType;
 import org.graylog.plugins.views.search.errors.QueryError;
 import org.graylog.plugins.views.search.errors.SearchError;
 import org.graylog.plugins.views.search.errors.SearchException;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.defaultIfEmpty;
@@ -48,17 +55,30 @@ public class QueryEngine {
     private final Set<QueryMetadataDecorator> queryMetadataDecorators;
     private final QueryParser queryParser;
 
-    // TODO proper thread pool with tunable settings
-    private final Executor queryPool = Executors.newFixedThreadPool(4, new ThreadFactoryBuilder().setNameFormat("query-engine-%d").build());
+    private final QueryExecutionScheduler queryScheduler;
     private final QueryBackend<? extends GeneratedQueryContext> backend;
+    private final SearchResultCache resultCache;
+    private final IncrementalPivotRefresh incrementalRefresh;
+    private final PivotDownsampling downsampling;
+    private final ProgressiveSearchExecution progressiveExecution;
 
     @Inject
     public QueryEngine(QueryBackend<? extends GeneratedQueryContext> backend,
                        Set<QueryMetadataDecorator> queryMetadataDecorators,
-                       QueryParser queryParser) {
+                       QueryParser queryParser,
+                       SearchResultCache resultCache,
+                       IncrementalPivotRefresh incrementalRefresh,
+                       PivotDownsampling downsampling,
+                       ProgressiveSearchExecution progressiveExecution,
+                       QueryExecutionScheduler queryScheduler) {
         this.backend = backend;
         this.queryMetadataDecorators = queryMetadataDecorators;
         this.queryParser = queryParser;
+        this.resultCache = resultCache;
+        this.incrementalRefresh = incrementalRefresh;
+        this.downsampling = downsampling;
+        this.progressiveExecution = progressiveExecution;
+        this.queryScheduler = queryScheduler;
     }
 
     public QueryMetadata parse(Search search, Query query) {
@@ -71,6 +91,40 @@ public class QueryEngine {
     }
 
     public SearchJob execute(SearchJob searchJob, Set<SearchError> validationErrors) {
+        return execute(searchJob, validationErrors, QueryExecutionPriority.INTERACTIVE);
+    }
+
+    public SearchJob execute(SearchJob searchJob, Set<SearchError> validationErrors, QueryExecutionPriority priority) {
+        final SearchJob submittedJob = submit(searchJob, validationErrors, priority);
+
+        submittedJob.getSearch().queries().forEach(query -> {
+            final CompletableFuture<QueryResult> queryResultFuture = submittedJob.getQueryResultFuture(query.id());
+            if (queryResultFuture == null) {
+                return;
+            }
+            if (!queryResultFuture.isDone()) {
+                // this is not going to throw an exception, because we will always replace it with a placeholder "FAILED" result above
+                queryResultFuture.join();
+            } else {
+                LOG.debug("[{}] Not generating query for query {}", defaultIfEmpty(query.id(), "root"), query);
+            }
+        });
+
+        LOG.debug("Search job {} executing", submittedJob.getId());
+        return submittedJob;
+    }
+
+    /**
+     * @return whether queries are executed progressively, publishing partial results to the search job while they run
+     */
+    public boolean isProgressive() {
+        return progressiveExecution.isEnabled();
+    }
+
+    /**
+     * Submits the queries of the search job for execution without waiting for their results.
+     */
+    public SearchJob submit(SearchJob searchJob, Set<SearchError> validationErrors, QueryExecutionPriority priority) {
         final Set<Query> validQueries = searchJob.getSearch().queries()
                 .stream()
                 .filter(query -> !isQueryWithError(validationErrors, query))
@@ -79,7 +133,8 @@ public class QueryEngine {
         validQueries.forEach(query -> searchJob.addQueryResultFuture(query.id(),
                 // generate and run each query, making sure we never let an exception escape
                 // if need be we default to an empty result with a failed state and the wrapped exception
-                CompletableFuture.supplyAsync(() -> prepareAndRun(searchJob, query, validationErrors), queryPool)
+                queryScheduler.submit(searchJob.getOwner(), priority, searchJob.getId(), searchJob.getSupersededSearchJobId().orElse(null),
+                                () -> prepareAndRun(searchJob, query, validationErrors))
                         .handle((queryResult, throwable) -> {
                             if (throwable != null) {
                                 final Throwable cause = throwable.getCause();
@@ -97,22 +152,149 @@ public class QueryEngine {
                         })
         ));
 
-        validQueries.forEach(query -> {
-            final CompletableFuture<QueryResult> queryResultFuture = searchJob.getQueryResultFuture(query.id());
-            if (!queryResultFuture.isDone()) {
-                // this is not going to throw an exception, because we will always replace it with a placeholder "FAILED" result above
-                final QueryResult result = queryResultFuture.join();
+        return searchJob.seal();
+    }
+
+    private QueryResult prepareAndRun(SearchJob searchJob, Query query, Set<SearchError> validationErrors) {
+        if (!downsampling.isEnabled()) {
+            return run(searchJob, query, validationErrors);
+        }
+        final Query downsampledQuery = downsampling.downsample(query);
+        final QueryResult result = run(searchJob, downsampledQuery, validationErrors);
+        return downsampling.reduce(downsampledQuery, result).toBuilder()
+                .query(query)
+                .build();
+    }
+
+    private QueryResult run(SearchJob searchJob, Query query, Set<SearchError> validationErrors) {
+        final Optional<List<AbsoluteRange>> slices = progressiveExecution.planFor(query);
+        return slices.isPresent()
+                ? runProgressively(searchJob, query, slices.get(), validationErrors)
+                : runWithCachedResults(searchJob, query, validationErrors);
+    }
+
+    private QueryResult runProgressively(SearchJob searchJob, Query query, List<AbsoluteRange> slices, Set<SearchError> validationErrors) {
+        QueryResult mergedResult = null;
+        for (int i = 0; i < slices.size(); i++) {
+            final ExecutedQuery executedQuery = generateAndRun(searchJob, progressiveExecution.sliceQuery(query, slices.get(i)), validationErrors);
+            mergedResult = mergedResult == null
+                    ? executedQuery.result()
+                    : progressiveExecution.merge(query, mergedResult, executedQuery.result());
+
+            final boolean lastSlice = i == slices.size() - 1;
+            if (!executedQuery.successful() || lastSlice) {
+                break;
+            }
+            if (searchJob.isStopRequested()) {
+                LOG.debug("[{}] Stopping progressive execution after {} of {} slices", query.id(), i + 1, slices.size());
+                break;
+            }
+            searchJob.publishPartialResult(query.id(), mergedResult.toBuilder()
+                    .query(query)
+                    .state(QueryResult.State.INCOMPLETE)
+                    .build());
+        }
+        return mergedResult.toBuilder()
+                .query(query)
+                .build();
+    }
+
+    private QueryResult runWithCachedResults(SearchJob searchJob, Query query, Set<SearchError> validationErrors) {
+        if (!resultCache.isEnabled() && !incrementalRefresh.isEnabled()) {
+            return generateAndRun(searchJob, query, validationErrors).result();
+        }
 
+        final Search search = searchJob.getSearch();
+        final Map<String, SearchResultCache.Key> cacheKeys = new HashMap<>();
+        final Map<String, SearchType.Result> results = new LinkedHashMap<>();
+        final List<IncrementalPivotRefresh.Plan> refreshPlans = new ArrayList<>();
+        final Set<SearchType> searchTypesToRun = new HashSet<>();
+        final Set<SearchType> slicesToRun = new HashSet<>();
+        for (SearchType searchType : query.searchTypes()) {
+            final Optional<SearchResultCache.Key> cacheKey = resultCache.keyFor(search, query, searchType);
+            cacheKey.ifPresent(key -> cacheKeys.put(searchType.id(), key));
+            final Optional<SearchType.Result> cachedResult = cacheKey.flatMap(resultCache::get);
+            if (cachedResult.isPresent()) {
+                results.put(searchType.id(), cachedResult.get());
+                continue;
+            }
+
+            final Optional<IncrementalPivotRefresh.Plan> refreshPlan = incrementalRefresh.planFor(search, query, searchType);
+            if (refreshPlan.isPresent()) {
+                refreshPlans.add(refreshPlan.get());
+                if (refreshPlan.get().isIncremental()) {
+                    slicesToRun.addAll(refreshPlan.get().sliceSearchTypes());
+                } else {
+                    searchTypesToRun.add(refreshPlan.get().searchType());
+                }
             } else {
-                LOG.debug("[{}] Not generating query for query {}", defaultIfEmpty(query.id(), "root"), query);
+                searchTypesToRun.add(searchType);
             }
-        });
+        }
 
-        LOG.debug("Search job {} executing", searchJob.getId());
-        return searchJob.seal();
+        if (searchTypesToRun.isEmpty() && slicesToRun.isEmpty()) {
+            LOG.debug("[{}] Using cached results for all search types", query.id());
+            final QueryResult cachedResult = QueryResult.builder()
+                    .query(query)
+                    .searchTypes(results)
+                    .build();
+            return cachedResult.toBuilder()
+                    .executionStats(QueryExecutionStats.builderWithCurrentTime()
+                            .effectiveTimeRange(backend.effectiveTimeRangeForResult(query, cachedResult))
+                            .build())
+                    .build();
+        }
+
+        final List<ExecutedQuery> executedQueries = new ArrayList<>(2);
+        if (!searchTypesToRun.isEmpty()) {
+            // only the search types without cached results need to be sent to the backend
+            executedQueries.add(generateAndRun(searchJob, query.toBuilder().searchTypes(ImmutableSet.copyOf(searchTypesToRun)).build(), validationErrors));
+        }
+        if (!slicesToRun.isEmpty()) {
+            LOG.debug("[{}] Refreshing {} pivots incrementally", query.id(), slicesToRun.size() / 2);
+            executedQueries.add(generateAndRun(searchJob, incrementalRefresh.sliceQuery(query, slicesToRun), validationErrors));
+        }
+
+        final boolean successful = executedQueries.stream().allMatch(ExecutedQuery::successful);
+        final Map<String, SearchType.Result> backendResults = new HashMap<>();
+        executedQueries.forEach(executedQuery -> backendResults.putAll(executedQuery.result().searchTypes()));
+
+        for (IncrementalPivotRefresh.Plan refreshPlan : refreshPlans) {
+            incrementalRefresh.complete(refreshPlan, backendResults, successful)
+                    .ifPresent(result -> backendResults.put(refreshPlan.searchTypeId(), result));
+        }
+
+        query.searchTypes().stream()
+                .map(SearchType::id)
+                .filter(backendResults::containsKey)
+                .forEach(searchTypeId -> {
+                    final SearchType.Result result = backendResults.get(searchTypeId);
+                    results.put(searchTypeId, result);
+                    // partial results must never end up in the result cache
+                    if (successful && cacheKeys.containsKey(searchTypeId)) {
+                        resultCache.put(cacheKeys.get(searchTypeId), result);
+                    }
+                });
+
+        final QueryResult firstResult = executedQueries.get(0).result();
+        final Set<SearchError> errors = executedQueries.stream()
+                .map(executedQuery -> executedQuery.result().errors())
+                .filter(Objects::nonNull)
+                .flatMap(Collection::stream)
+                .collect(Collectors.toSet());
+        return firstResult.toBuilder()
+                .query(query)
+                .searchTypes(results)
+                .errors(errors.isEmpty() ? firstResult.errors() : errors)
+                .state(executedQueries.stream()
+                        .map(executedQuery -> executedQuery.result().state())
+                        .filter(state -> state != QueryResult.State.COMPLETED)
+                        .findFirst()
+                        .orElse(QueryResult.State.COMPLETED))
+                .build();
     }
 
-    private QueryResult prepareAndRun(SearchJob searchJob, Query query, Set<SearchError> validationErrors) {
+    private ExecutedQuery generateAndRun(SearchJob searchJob, Query query, Set<SearchError> validationErrors) {
         LOG.debug("[{}] Using {} to generate query", query.id(), backend);
         // with all the results done, we can execute the current query and eventually complete our own result
         // if any of this throws an exception, the handle in #execute will convert it to an error and return a "failed" result instead
@@ -124,7 +306,10 @@ public class QueryEngine {
         if (!generatedQueryContext.errors().isEmpty()) {
             generatedQueryContext.errors().forEach(searchJob::addError);
         }
-        return result;
+        final boolean successful = generatedQueryContext.errors().isEmpty()
+                && result.state() == QueryResult.State.COMPLETED
+                && (result.errors() == null || result.errors().isEmpty());
+        return new ExecutedQuery(result, successful);
     }
 
     private boolean isQueryWithError(Collection<SearchError> validationErrors, Query query) {
@@ -134,4 +319,22 @@ public class QueryEngine {
                 .map(QueryError::queryId)
                 .anyMatch(id -> Objects.equals(id, query.id()));
     }
+
+    private static class ExecutedQuery {
+        private final QueryResult result;
+        private final boolean successful;
+
+        ExecutedQuery(QueryResult result, boolean successful) {
+            this.result = result;
+            this.successful = successful;
+        }
+
+        QueryResult result() {
+            return result;
+        }
+
+        boolean successful() {
+            return successful;
+        }
+    }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.graylog2.shared.metrics.MetricUtils.safelyRegister;
+
+/**
+ * Schedules the execution of queries on a bounded pool of query threads.
+ * <p>
+ * Queued queries are executed by priority. Within a priority, the users which are waiting for queries are served in a
+ * round-robin fashion, so a single user with many expensive queries (e.g. a large dashboard) can't block the queries
+ * of everyone else.
+ * <p>
+ * A search job can supersede a previous search job of the same user, e.g. if a dashboard is refreshed before the
+ * previous refresh has finished. The queued queries of the superseded search job are cancelled then. Search jobs
+ * which don't name a superseded search job never cancel other queries, even of the same search.
+ */
+@Singleton
+public class QueryExecutionScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryExecutionScheduler.class);
+
+    private final int maxQueueSize;
+    private final Executor workers;
+    private final Map<QueryExecutionPriority, LinkedHashMap<String, Deque<Task<?>>>> queues = new EnumMap<>(QueryExecutionPriority.class);
+    private final Map<QueryExecutionPriority, Timer> waitTimers = new EnumMap<>(QueryExecutionPriority.class);
+    private final Meter rejectedQueries;
+    private final Meter supersededQueries;
+    private int queueSize = 0;
+
+    @Inject
+    public QueryExecutionScheduler(@Named("views_query_pool_size") int poolSize,
+                                   @Named("views_query_queue_size") int maxQueueSize,
+                                   MetricRegistry metricRegistry) {
+        this(maxQueueSize, new InstrumentedExecutorService(
+                Executors.newFixedThreadPool(poolSize, new ThreadFactoryBuilder().setNameFormat("query-engine-%d").setDaemon(true).build()),
+                metricRegistry,
+                name(QueryExecutionScheduler.class, "executor-service")), metricRegistry);
+    }
+
+    @VisibleForTesting
+    QueryExecutionScheduler(int maxQueueSize, Executor workers, MetricRegistry metricRegistry) {
+        this.maxQueueSize = maxQueueSize;
+        this.workers = workers;
+        for (QueryExecutionPriority priority : QueryExecutionPriority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+            waitTimers.put(priority, metricRegistry.timer(name(QueryExecutionScheduler.class, priority.name().toLowerCase(Locale.ENGLISH), "wait-time")));
+        }
+        this.rejectedQueries = metricRegistry.meter(name(QueryExecutionScheduler.class, "rejected"));
+        this.supersededQueries = metricRegistry.meter(name(QueryExecutionScheduler.class, "superseded"));
+        safelyRegister(metricRegistry, name(QueryExecutionScheduler.class, "queue-size"), (Gauge<Integer>) this::queueSize);
+    }
+
+    /**
+     * Queues a query for execution.
+     *
+     * @param user                  the user executing the query, used for fair queuing
+     * @param searchJobId           the search job the query belongs to
+     * @param supersededSearchJobId a previous search job of the same user whose queued queries are cancelled, or
+     *                              {@code null} to not cancel any queries
+     * @return a future which is completed with the result of the query, or exceptionally if it was rejected because
+     * the queue is full or cancelled because it was superseded
+     */
+    public <T> CompletableFuture<T> submit(String user,
+                                           QueryExecutionPriority priority,
+                                           String searchJobId,
+                                           @Nullable String supersededSearchJobId,
+                                           Supplier<T> query) {
+        final Task<T> task = new Task<>(priority, searchJobId, query);
+        final List<Task<?>> superseded;
+        synchronized (this) {
+            superseded = supersededSearchJobId == null || supersededSearchJobId.equals(searchJobId)
+                    ? Collections.emptyList()
+                    : removeQueued(user, supersededSearchJobId);
+            queueSize -= superseded.size();
+            if (queueSize >= maxQueueSize) {
+                rejectedQueries.mark();
+                task.future.completeExceptionally(new CompletionException(new QueryExecutionRejectedException(
+                        "Too many queries are waiting for execution (" + maxQueueSize + "), please try again later.")));
+                return task.future;
+            }
+            queues.get(priority).computeIfAbsent(user, u -> new ArrayDeque<>()).addLast(task);
+            queueSize++;
+        }
+
+        superseded.forEach(supersededTask -> {
+            LOG.debug("Cancelling queued query of search job <{}>, it was superseded by search job <{}>", supersededTask.searchJobId, searchJobId);
+            supersededQueries.mark();
+            supersededTask.future.completeExceptionally(new CompletionException(
+                    new CancellationException("Query was superseded by search job <" + searchJobId + ">")));
+        });
+
+        // every submitted task gets one worker run, which executes the next task in line
+        workers.execute(this::runNext);
+        return task.future;
+    }
+
+    private List<Task<?>> removeQueued(String user, String searchJobId) {
+        final List<Task<?>> removed = new ArrayList<>();
+        queues.values().forEach(userQueues -> {
+            // only the user's own search jobs can be superseded
+            final Deque<Task<?>> userQueue = userQueues.get(user);
+            if (userQueue == null) {
+                return;
+            }
+            userQueue.removeIf(task -> {
+                final boolean isOfSearchJob = task.searchJobId.equals(searchJobId);
+                if (isOfSearchJob) {
+                    removed.add(task);
+                }
+                return isOfSearchJob;
+            });
+            if (userQueue.isEmpty()) {
+                userQueues.remove(user);
+            }
+        });
+        return removed;
+    }
+
+    private void runNext() {
+        final Task<?> task = nextTask();
+        if (task != null) {
+            waitTimers.get(task.priority).update(System.nanoTime() - task.enqueuedAt, TimeUnit.NANOSECONDS);
+            task.run();
+        }
+    }
+
+    private synchronized Task<?> nextTask() {
+        for (QueryExecutionPriority priority : QueryExecutionPriority.values()) {
+            final LinkedHashMap<String, Deque<Task<?>>> userQueues = queues.get(priority);
+            final Iterator<Map.Entry<String, Deque<Task<?>>>> iterator = userQueues.entrySet().iterator();
+            if (!iterator.hasNext()) {
+                continue;
+            }
+            final Map.Entry<String, Deque<Task<?>>> next = iterator.next();
+            final Task<?> task = next.getValue().pollFirst();
+            // move the user to the end of the line
+            iterator.remove();
+            if (!next.getValue().isEmpty()) {
+                userQueues.put(next.getKey(), next.getValue());
+            }
+            queueSize--;
+            return task;
+        }
+        return null;
+    }
+
+    @VisibleForTesting
+    synchronized int queueSize() {
+        return queueSize;
+    }
+
+    private static class Task<T> {
+        private final QueryExecutionPriority priority;
+        private final String searchJobId;
+        private final Supplier<T> query;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+
+        Task(QueryExecutionPriority priority, String searchJobId, Supplier<T> query) {
+            this.priority = priority;
+            this.searchJobId = searchJobId;
+            this.query = query;
+        }
+
+        void run() {
+            try {
+                future.complete(query.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(new CompletionException(t));
+            }
+        }
+    }
+}
@@ -37,6 +37,12 @@ public abstract class QueryExecutionStats {
     @JsonProperty("effective_timerange")
     public abstract AbsoluteRange effectiveTimeRange();
 
+    /**
+     * Number of search type requests the backend saved by running search types with the same query context as one.
+     */
+    @JsonProperty("deduplicated_requests")
+    public abstract int deduplicatedRequests();
+
     public static QueryExecutionStats empty() {
         return builder().build();
     }
@@ -58,7 +64,8 @@ public abstract class QueryExecutionStats {
             return new AutoValue_QueryExecutionStats.Builder()
                     .timestamp(DateTime.now(UTC))
                     .effectiveTimeRange(AbsoluteRange.create(DateTime.now(UTC), DateTime.now(UTC)))
-                    .duration(0L);
+                    .duration(0L)
+                    .deduplicatedRequests(0);
         }
 
         @JsonProperty("duration")
@@ -70,6 +77,9 @@ public abstract class QueryExecutionStats {
         @JsonProperty("effective_timerange")
         public abstract Builder effectiveTimeRange(AbsoluteRange effectiveTimeRange);
 
+        @JsonProperty("deduplicated_requests")
+        public abstract Builder deduplicatedRequests(int deduplicatedRequests);
+
         public abstract QueryExecutionStats build();
     }
 }
@@ -32,6 +32,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotFoundException;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -66,6 +67,27 @@ public class SearchExecutor {
     }
 
     public SearchJob execute(Search search, SearchUser searchUser, ExecutionState executionState) {
+        return execute(search, searchUser, executionState, QueryExecutionPriority.INTERACTIVE);
+    }
+
+    /**
+     * Executes the search without waiting for its results if queries are executed progressively, so clients can poll
+     * the search job for partial results. Otherwise, this is the same as {@link #execute(String, SearchUser, ExecutionState)}.
+     */
+    public SearchJob executeInBackground(String searchId, SearchUser searchUser, ExecutionState executionState) {
+        if (!queryEngine.isProgressive()) {
+            return execute(searchId, searchUser, executionState);
+        }
+        return searchDomain.getForUser(searchId, searchUser)
+                .map(s -> execute(s, searchUser, executionState, QueryExecutionPriority.INTERACTIVE, false))
+                .orElseThrow(() -> new NotFoundException("No search found with id <" + searchId + ">."));
+    }
+
+    public SearchJob execute(Search search, SearchUser searchUser, ExecutionState executionState, QueryExecutionPriority priority) {
+        return execute(search, searchUser, executionState, priority, true);
+    }
+
+    private SearchJob execute(Search search, SearchUser searchUser, ExecutionState executionState, QueryExecutionPriority priority, boolean waitForResults) {
         final Search preValidationSearch = searchNormalization.preValidation(search, searchUser, executionState);
 
         final Set<SearchError> validationErrors = searchValidation.validate(preValidationSearch, searchUser);
@@ -76,10 +98,18 @@ public class SearchExecutor {
 
         final Search normalizedSearch = searchNormalization.postValidation(preValidationSearch, searchUser, executionState);
 
-        final SearchJob searchJob = queryEngine.execute(searchJobService.create(normalizedSearch, searchUser.username()), validationErrors);
+        final SearchJob createdJob = searchJobService.create(normalizedSearch, searchUser.username());
+        Optional.ofNullable(executionState.supersedes()).ifPresent(createdJob::supersede);
+        final SearchJob searchJob = waitForResults
+                ? queryEngine.execute(createdJob, validationErrors, priority)
+                : queryEngine.submit(createdJob, validationErrors, priority);
 
         validationErrors.forEach(searchJob::addError);
 
+        if (!waitForResults) {
+            return searchJob;
+        }
+
         try {
             Uninterruptibles.getUninterruptibly(searchJob.getResultFuture(), 60000, TimeUnit.MILLISECONDS);
         } catch (ExecutionException e) {
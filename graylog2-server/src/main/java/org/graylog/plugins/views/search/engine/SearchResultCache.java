@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.graylog.plugins.views.search.GlobalOverride;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog2.database.NotFoundException;
+import org.graylog2.indexer.indices.events.IndicesClosedEvent;
+import org.graylog2.indexer.indices.events.IndicesDeletedEvent;
+import org.graylog2.indexer.indices.events.IndicesReopenedEvent;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.indexer.ranges.IndexRangeService;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Caches search type results, so identical searches, e. g. the same dashboard opened by many users, are only executed
+ * once.
+ * <p>
+ * Entries are keyed by the normalized query and search type, the streams they run on and their time range.
+ * Absolute time ranges that lie completely in the past are cached until index ranges change. Time ranges that are
+ * relative to "now" are put into buckets of the configured staleness window and expire with it. The keys don't
+ * depend on the node, so they can be shared between the nodes of a cluster.
+ * <p>
+ * Every entry remembers the indices whose ranges overlapped its time range when it was stored. Entries are
+ * invalidated when the range of one of these indices is updated or removed, when an index is deleted, closed or
+ * reopened, or when an updated index range now overlaps the time range of the entry, e. g. after a write index
+ * rotation. Entries of all other indices are kept.
+ */
+@Singleton
+public class SearchResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SearchResultCache.class);
+
+    private final boolean enabled;
+    private final Duration staleness;
+    private final MetricRegistry metricRegistry;
+    private final IndexRangeService indexRangeService;
+    private final SearchTypeFingerprint fingerprint;
+    private final Cache<String, CachedResult> cache;
+
+    @Inject
+    public SearchResultCache(@Named("views_search_result_cache_enabled") boolean enabled,
+                             @Named("views_search_result_cache_staleness") Duration staleness,
+                             @Named("views_search_result_cache_max_entries") int maxEntries,
+                             MetricRegistry metricRegistry,
+                             ObjectMapper objectMapper,
+                             IndexRangeService indexRangeService,
+                             EventBus serverEventBus) {
+        this.enabled = enabled;
+        this.staleness = staleness;
+        this.metricRegistry = metricRegistry;
+        this.indexRangeService = indexRangeService;
+        this.fingerprint = new SearchTypeFingerprint(objectMapper);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new CachedResultExpiry(staleness))
+                .build();
+
+        serverEventBus.register(this);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the cache key for the search type or an empty optional if its results must not be cached
+     */
+    public Optional<Key> keyFor(Search search, Query query, SearchType searchType) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        final DateTime now = Tools.nowUTC();
+        final boolean closed = isClosedTimeRange(query, searchType, now);
+
+        // results for ranges relative to "now" are shared within a staleness window
+        final Long timeBucket = closed ? null : now.getMillis() / staleness.getMillis();
+        final TimeRange timeRange = query.effectiveTimeRange(searchType);
+        // live ranges keep growing until the entry expires, so every later index might contribute to them
+        final long to = closed ? timeRange.getTo().getMillis() : Long.MAX_VALUE;
+        try {
+            final String digest = fingerprint.digest(search, query, searchType, timeBucket);
+            return Optional.of(new Key(digest, searchType.type(), closed, timeRange.getFrom().getMillis(), to));
+        } catch (JsonProcessingException e) {
+            LOG.debug("Unable to build result cache key for search type <{}>, not caching it", searchType.id(), e);
+            return Optional.empty();
+        }
+    }
+
+    public Optional<SearchType.Result> get(Key key) {
+        final CachedResult cached = cache.getIfPresent(key.digest());
+        metricRegistry.meter(name(SearchResultCache.class, key.searchType(), cached == null ? "misses" : "hits")).mark();
+        return Optional.ofNullable(cached).map(CachedResult::result);
+    }
+
+    public void put(Key key, SearchType.Result result) {
+        final DateTime from = new DateTime(key.from(), DateTimeZone.UTC);
+        final DateTime to = key.closed() ? new DateTime(key.to(), DateTimeZone.UTC) : Tools.nowUTC();
+        final Set<String> indices = indexRangeService.find(from, to).stream()
+                .map(IndexRange::indexName)
+                .collect(Collectors.toSet());
+        cache.put(key.digest(), new CachedResult(result, key, indices));
+    }
+
+    @VisibleForTesting
+    static boolean isClosedTimeRange(Query query, SearchType searchType, DateTime now) {
+        // derived search type ranges are only fixed if the range of the query is fixed
+        final TimeRange queryRange = query.globalOverride().flatMap(GlobalOverride::timerange).orElse(query.timerange());
+        if (!isInPast(queryRange, now)) {
+            return false;
+        }
+        return searchType.timerange().isEmpty() || isInPast(query.effectiveTimeRange(searchType), now);
+    }
+
+    private static boolean isInPast(TimeRange timeRange, DateTime now) {
+        return timeRange instanceof AbsoluteRange && timeRange.getTo().isBefore(now);
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndexRangesUpdated(IndexRangesUpdatedEvent event) {
+        invalidateChanged(event.indices());
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndicesDeleted(IndicesDeletedEvent event) {
+        invalidate(event.indices(), Collections.emptySet());
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndicesClosed(IndicesClosedEvent event) {
+        invalidate(event.indices(), Collections.emptySet());
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndicesReopened(IndicesReopenedEvent event) {
+        invalidateChanged(event.indices());
+    }
+
+    private void invalidateChanged(Set<String> indices) {
+        final Set<IndexRange> currentRanges = indices.stream()
+                .map(this::currentRange)
+                .flatMap(Optional::stream)
+                .collect(Collectors.toSet());
+        invalidate(indices, currentRanges);
+    }
+
+    private Optional<IndexRange> currentRange(String index) {
+        try {
+            return Optional.of(indexRangeService.get(index));
+        } catch (NotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void invalidate(Set<String> indices, Set<IndexRange> currentRanges) {
+        if (cache.asMap().entrySet().removeIf(entry -> entry.getValue().isAffectedBy(indices, currentRanges))) {
+            LOG.debug("Index ranges of {} changed, invalidated affected search results", indices);
+        }
+    }
+
+    public static class Key {
+        private final String digest;
+        private final String searchType;
+        private final boolean closed;
+        private final long from;
+        private final long to;
+
+        Key(String digest, String searchType, boolean closed, long from, long to) {
+            this.digest = digest;
+            this.searchType = searchType;
+            this.closed = closed;
+            this.from = from;
+            this.to = to;
+        }
+
+        public String digest() {
+            return digest;
+        }
+
+        public String searchType() {
+            return searchType;
+        }
+
+        public boolean closed() {
+            return closed;
+        }
+
+        long from() {
+            return from;
+        }
+
+        long to() {
+            return to;
+        }
+    }
+
+    private static class CachedResult {
+        private final SearchType.Result result;
+        private final boolean closed;
+        private final long from;
+        private final long to;
+        private final Set<String> indices;
+
+        CachedResult(SearchType.Result result, Key key, Set<String> indices) {
+            this.result = result;
+            this.closed = key.closed();
+            this.from = key.from();
+            this.to = key.to();
+            this.indices = indices;
+        }
+
+        SearchType.Result result() {
+            return result;
+        }
+
+        boolean isAffectedBy(Set<String> changedIndices, Set<IndexRange> currentRanges) {
+            return changedIndices.stream().anyMatch(indices::contains)
+                    || currentRanges.stream().anyMatch(this::overlaps);
+        }
+
+        private boolean overlaps(IndexRange range) {
+            return range.begin().getMillis() <= to && range.end().getMillis() >= from;
+        }
+    }
+
+    private static class CachedResultExpiry implements Expiry<String, CachedResult> {
+        private final long stalenessNanos;
+
+        CachedResultExpiry(Duration staleness) {
+            this.stalenessNanos = TimeUnit.MILLISECONDS.toNanos(staleness.getMillis());
+        }
+
+        @Override
+        public long expireAfterCreate(@NonNull String key, @NonNull CachedResult value, long currentTime) {
+            return value.closed ? Long.MAX_VALUE : stalenessNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(@NonNull String key, @NonNull CachedResult value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(@NonNull String key, @NonNull CachedResult value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
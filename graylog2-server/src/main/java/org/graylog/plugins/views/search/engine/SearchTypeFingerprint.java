@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import org.graylog.plugins.views.search.GlobalOverride;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchType;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Computes a node independent digest of everything that determines the result of a search type.
+ */
+class SearchTypeFingerprint {
+    private final ObjectMapper objectMapper;
+
+    SearchTypeFingerprint(ObjectMapper objectMapper) {
+        // map keys must be ordered, otherwise equal queries could end up with different digests
+        this.objectMapper = objectMapper.copy().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+    }
+
+    /**
+     * @param timeBucket an optional discriminator for results which depend on the time they were computed at
+     */
+    String digest(Search search, Query query, SearchType searchType, @Nullable Long timeBucket) throws JsonProcessingException {
+        final Map<String, Object> normalized = new LinkedHashMap<>();
+        // search types are fingerprinted separately
+        normalized.put("query", query.toBuilder().searchTypes(ImmutableSet.of()).build());
+        normalized.put("override_timerange", query.globalOverride().flatMap(GlobalOverride::timerange).orElse(null));
+        normalized.put("override_query", query.globalOverride().flatMap(GlobalOverride::query).orElse(null));
+        normalized.put("search_type", searchType);
+        normalized.put("parameters", search.parameters());
+        normalized.put("streams", new TreeSet<>(query.effectiveStreams(searchType)));
+        normalized.put("time_bucket", timeBucket);
+
+        return Hashing.sha256().hashBytes(objectMapper.writeValueAsBytes(normalized)).toString();
+    }
+}
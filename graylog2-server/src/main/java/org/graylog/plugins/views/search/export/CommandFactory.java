@@ -43,7 +43,8 @@ public class CommandFactory {
                 .queryString(request.queryString())
                 .streams(request.streams())
                 .fieldsInOrder(request.fieldsInOrder())
-                .chunkSize(request.chunkSize());
+                .chunkSize(request.chunkSize())
+                .sorted(request.sorted());
 
         if (request.limit().isPresent()) {
             builder.limit(request.limit().getAsInt());
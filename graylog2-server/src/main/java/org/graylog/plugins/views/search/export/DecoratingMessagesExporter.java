@@ -32,6 +32,11 @@ public class DecoratingMessagesExporter implements MessagesExporter {
     }
 
     public void export(ExportMessagesCommand command, Consumer<SimpleMessageChunk> chunkForwarder) {
+        if (command.decorators().isEmpty()) {
+            backend.run(command, chunkForwarder);
+            return;
+        }
+
         Consumer<SimpleMessageChunk> decoratedForwarder = chunk -> decorate(chunkForwarder, chunk, command);
 
         backend.run(command, decoratedForwarder);
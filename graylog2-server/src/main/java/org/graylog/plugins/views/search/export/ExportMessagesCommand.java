@@ -66,6 +66,11 @@ public abstract class ExportMessagesCommand {
 
     public abstract DateTimeZone timeZone();
 
+    /**
+     * Whether messages must be exported in timestamp order. Backends may export unsorted messages more efficiently.
+     */
+    public abstract boolean sorted();
+
     public static ExportMessagesCommand withDefaults() {
         return builder().build();
     }
@@ -102,6 +107,8 @@ public abstract class ExportMessagesCommand {
 
         public abstract Builder timeZone(DateTimeZone timeZone);
 
+        public abstract Builder sorted(boolean sorted);
+
         abstract ExportMessagesCommand autoBuild();
 
         public ExportMessagesCommand build() {
@@ -116,7 +123,8 @@ public abstract class ExportMessagesCommand {
                     .fieldsInOrder(DEFAULT_FIELDS)
                     .decorators(Collections.emptyList())
                     .chunkSize(DEFAULT_CHUNK_SIZE)
-                    .timeZone(DEFAULT_TIME_ZONE);
+                    .timeZone(DEFAULT_TIME_ZONE)
+                    .sorted(true);
         }
     }
 }
@@ -49,6 +49,7 @@ public abstract class MessagesRequest {
     private static final String FIELD_FIELDS = "fields_in_order";
     private static final String FIELD_CHUNK_SIZE = "chunk_size";
     private static final String FIELD_TIME_ZONE = "time_zone";
+    private static final String FIELD_SORTED = "sorted";
 
     @JsonProperty(FIELD_TIMERANGE)
     public abstract TimeRange timeRange();
@@ -73,6 +74,9 @@ public abstract class MessagesRequest {
     @Positive
     public abstract OptionalInt limit();
 
+    @JsonProperty(FIELD_SORTED)
+    public abstract boolean sorted();
+
     public static MessagesRequest withDefaults() {
         return builder().build();
     }
@@ -118,6 +122,9 @@ public abstract class MessagesRequest {
         @JsonProperty
         public abstract Builder limit(Integer limit);
 
+        @JsonProperty(FIELD_SORTED)
+        public abstract Builder sorted(boolean sorted);
+
         public abstract MessagesRequest build();
 
         @JsonCreator
@@ -127,7 +134,8 @@ public abstract class MessagesRequest {
                     .streams(DEFAULT_STREAMS)
                     .queryString(DEFAULT_QUERY)
                     .fieldsInOrder(DEFAULT_FIELDS)
-                    .chunkSize(DEFAULT_CHUNK_SIZE);
+                    .chunkSize(DEFAULT_CHUNK_SIZE)
+                    .sorted(true);
         }
     }
 }
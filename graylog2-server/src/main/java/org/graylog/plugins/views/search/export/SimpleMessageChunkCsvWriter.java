@@ -33,10 +33,6 @@ import java.io.OutputStreamWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.List;
-
-import static java.util.stream.Collectors.toList;
 
 @Provider
 @Produces(MoreMediaTypes.TEXT_CSV)
@@ -79,19 +75,16 @@ public class SimpleMessageChunkCsvWriter extends SimpleMessageChunkWriter {
     }
 
     private void writeValues(SimpleMessageChunk chunk, CSVWriter csvWriter) {
-        List<String[]> valueMatrix = valuesAsStringsInOrder(chunk);
-        csvWriter.writeAll(valueMatrix);
-    }
-
-    private List<String[]> valuesAsStringsInOrder(SimpleMessageChunk simpleMessageChunk) {
-        return Arrays.stream(simpleMessageChunk.getAllValuesInOrder())
-                .map(this::toStringArray)
-                .collect(toList());
-    }
-
-    private String[] toStringArray(Object[] objects) {
-        return Arrays.stream(objects)
-                .map(o -> o == null ? null : o.toString())
-                .toArray(String[]::new);
+        final String[] fields = chunk.fieldsInOrder().toArray(new String[0]);
+        final String[] row = new String[fields.length];
+
+        // write row by row instead of building the whole value matrix of the chunk first
+        for (SimpleMessage message : chunk.messages()) {
+            for (int i = 0; i < fields.length; i++) {
+                final Object value = message.valueFor(fields[i]);
+                row[i] = value == null ? null : value.toString();
+            }
+            csvWriter.writeNext(row);
+        }
     }
 }
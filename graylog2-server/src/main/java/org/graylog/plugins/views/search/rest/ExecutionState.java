@@ -25,6 +25,7 @@ import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableMap;
 import org.graylog.plugins.views.search.Parameter;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 
 @AutoValue
@@ -43,6 +44,14 @@ public abstract class ExecutionState {
     @JsonProperty
     public abstract ImmutableMap<String, Object> additionalParameters();
 
+    /**
+     * @return the id of a previous search job of the same user whose queries are cancelled if they are still waiting
+     * for execution
+     */
+    @JsonProperty
+    @Nullable
+    public abstract String supersedes();
+
     public static ExecutionState empty() {
         return builder().build();
     }
@@ -85,6 +94,9 @@ public abstract class ExecutionState {
             return this;
         }
 
+        @JsonProperty("supersedes")
+        public abstract Builder supersedes(@Nullable String searchJobId);
+
         @JsonAnySetter
         public Builder addAdditionalParameter(String key, Object value) {
             additionalParametersBuilder().put(key, value);
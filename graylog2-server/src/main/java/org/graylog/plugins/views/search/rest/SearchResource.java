@@ -42,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.NotFoundException;
@@ -154,7 +155,7 @@ public class SearchResource extends RestResource implements PluginRestResource {
     public Response executeQuery(@ApiParam(name = "id") @PathParam("id") String id,
                                  @ApiParam ExecutionState executionState,
                                  @Context SearchUser searchUser) {
-        final SearchJob searchJob = searchExecutor.execute(id, searchUser, executionState);
+        final SearchJob searchJob = searchExecutor.executeInBackground(id, searchUser, executionState);
 
         postAuditEvent(searchJob);
 
@@ -220,6 +221,19 @@ public class SearchResource extends RestResource implements PluginRestResource {
         return SearchJobDTO.fromSearchJob(searchJob);
     }
 
+    @DELETE
+    @ApiOperation(value = "Stop the progressive execution of a query",
+                  notes = "Queries stop after the time slice they are currently running, the results of the slices executed so far become their final results")
+    @Path("status/{jobId}")
+    @NoAuditEvent("Only stops a running search job of the current user.")
+    @Produces({MediaType.APPLICATION_JSON, SEARCH_FORMAT_V1})
+    public SearchJobDTO stopJob(@ApiParam(name = "jobId") @PathParam("jobId") String jobId, @Context SearchUser searchUser) {
+        final SearchJob searchJob = searchJobService.load(jobId, searchUser.username()).orElseThrow(NotFoundException::new);
+        searchJob.requestStop();
+
+        return SearchJobDTO.fromSearchJob(searchJob);
+    }
+
     private void postAuditEvent(SearchJob searchJob) {
         final SearchJobExecutionEvent searchJobExecutionEvent = SearchJobExecutionEvent.create(getCurrentUser(), searchJob, DateTime.now(DateTimeZone.UTC));
         this.serverEventBus.post(searchJobExecutionEvent);
@@ -23,6 +23,7 @@ import io.swagger.annotations.ApiParam;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.graylog.plugins.views.search.Search;
 import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.plugins.views.search.engine.QueryExecutionPriority;
 import org.graylog.plugins.views.search.engine.SearchExecutor;
 import org.graylog.plugins.views.search.events.SearchJobExecutionEvent;
 import org.graylog.plugins.views.search.permissions.SearchUser;
@@ -103,7 +104,7 @@ public class ScriptingApiResource extends RestResource implements PluginRestReso
             Search search = searchCreator.mapToSearch(messagesRequestSpec, searchUser);
 
             //Step 2: execute search as we usually do
-            final SearchJob searchJob = searchExecutor.execute(search, searchUser, ExecutionState.empty());
+            final SearchJob searchJob = searchExecutor.execute(search, searchUser, ExecutionState.empty(), QueryExecutionPriority.BACKGROUND);
             postAuditEvent(searchJob);
 
             //Step 3: take complex response and try to map it to simpler, tabular form
@@ -156,7 +157,7 @@ public class ScriptingApiResource extends RestResource implements PluginRestReso
             Search search = searchCreator.mapToSearch(aggregationRequestSpec, searchUser);
 
             //Step 2: execute search as we usually do
-            final SearchJob searchJob = searchExecutor.execute(search, searchUser, ExecutionState.empty());
+            final SearchJob searchJob = searchExecutor.execute(search, searchUser, ExecutionState.empty(), QueryExecutionPriority.BACKGROUND);
             postAuditEvent(searchJob);
 
             //Step 3: take complex response and try to map it to simpler, tabular form
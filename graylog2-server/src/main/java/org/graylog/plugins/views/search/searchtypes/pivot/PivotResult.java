@@ -31,6 +31,7 @@ import java.util.List;
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public abstract class PivotResult implements SearchType.Result {
     private static final String FIELD_EFFECTIVE_TIMERANGE = "effective_timerange";
+    private static final String FIELD_EFFECTIVE_INTERVAL = "effective_interval";
 
     @Override
     @JsonProperty
@@ -51,6 +52,14 @@ public abstract class PivotResult implements SearchType.Result {
     @JsonProperty(FIELD_EFFECTIVE_TIMERANGE)
     public abstract AbsoluteRange effectiveTimerange();
 
+    /**
+     * The interval of the time buckets of the pivot's first time row group, if it is known. Only set when limiting
+     * time buckets to a target number of points is enabled.
+     */
+    @Nullable
+    @JsonProperty(FIELD_EFFECTIVE_INTERVAL)
+    public abstract String effectiveInterval();
+
     public static Builder builder() {
         return new AutoValue_PivotResult.Builder();
     }
@@ -80,6 +89,8 @@ public abstract class PivotResult implements SearchType.Result {
 
         public abstract Builder effectiveTimerange(AbsoluteRange effectiveTimerange);
 
+        public abstract Builder effectiveInterval(@Nullable String effectiveInterval);
+
         public abstract PivotResult build();
     }
 
@@ -42,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -55,6 +56,7 @@ import java.util.stream.Collectors;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static java.util.Objects.requireNonNull;
 import static org.graylog.scheduler.JobSchedulerConfiguration.LOCK_EXPIRATION_DURATION;
+import static org.graylog.scheduler.JobSchedulerConfiguration.TRIGGER_BATCH_SIZE;
 
 // This class does NOT use PaginatedDbService because we use the triggers collection for locking and need to handle
 // updates very carefully.
@@ -84,6 +86,7 @@ public class DBJobTriggerService {
     private final JobSchedulerClock clock;
     private final SchedulerCapabilitiesService schedulerCapabilitiesService;
     private final Duration lockExpirationDuration;
+    private final int triggerBatchSize;
 
     @Inject
     public DBJobTriggerService(MongoConnection mongoConnection,
@@ -91,11 +94,13 @@ public class DBJobTriggerService {
                                NodeId nodeId,
                                JobSchedulerClock clock,
                                SchedulerCapabilitiesService schedulerCapabilitiesService,
-                               @Named(LOCK_EXPIRATION_DURATION) Duration lockExpirationDuration) {
+                               @Named(LOCK_EXPIRATION_DURATION) Duration lockExpirationDuration,
+                               @Named(TRIGGER_BATCH_SIZE) int triggerBatchSize) {
         this.nodeId = nodeId.getNodeId();
         this.clock = clock;
         this.schedulerCapabilitiesService = schedulerCapabilitiesService;
         this.lockExpirationDuration = lockExpirationDuration;
+        this.triggerBatchSize = triggerBatchSize;
         this.db = JacksonDBCollection.wrap(mongoConnection.getDatabase().getCollection(COLLECTION_NAME),
                 JobTriggerDto.class,
                 ObjectId.class,
@@ -198,6 +203,26 @@ public class DBJobTriggerService {
         return groupedTriggers;
     }
 
+    /**
+     * Returns the given job definition IDs whose triggers are currently locked by this node, which means that their
+     * jobs are running or about to run on this node.
+     *
+     * @param jobDefinitionIds the job definition IDs
+     * @return the job definition IDs with triggers locked by this node
+     */
+    public Set<String> getJobDefinitionIdsLockedByThisNode(Collection<String> jobDefinitionIds) {
+        if (jobDefinitionIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Query query = DBQuery.and(
+                DBQuery.in(FIELD_JOB_DEFINITION_ID, jobDefinitionIds),
+                DBQuery.is(FIELD_LOCK_OWNER, nodeId)
+        );
+        return StreamEx.of(db.find(query).toArray())
+                .map(JobTriggerDto::jobDefinitionId)
+                .toSet();
+    }
+
     /**
      * Creates a new record in the database. The given {@link JobTriggerDto} object <b>must not</b> have an ID to make
      * sure a new record is created.
@@ -276,6 +301,36 @@ public class DBJobTriggerService {
         return db.update(DBQuery.is(FIELD_ID, getId(trigger)), update).getN() > 0;
     }
 
+    /**
+     * Atomically appends the given value to an array in the data of a pending trigger of the given job definition.
+     * Only triggers which are runnable, not locked and due until the given time are updated, so the value gets
+     * processed together with the rest of the trigger data. Triggers which already got locked are never modified.
+     *
+     * @param jobDefinitionId the job definition of the trigger
+     * @param dataQuery       additional conditions for the trigger, e.g. on the trigger data
+     * @param dueUntil        only triggers with a next time up to this time are updated
+     * @param arrayField      the array field in the trigger data
+     * @param value           the value to append
+     * @return true if the value has been added to a trigger, false if there was no matching trigger
+     */
+    public boolean addToPendingTriggerData(String jobDefinitionId, Query dataQuery, DateTime dueUntil, String arrayField, Object value) {
+        requireNonNull(value, "value cannot be null");
+
+        final Query query = DBQuery.and(
+                DBQuery.is(FIELD_JOB_DEFINITION_ID, jobDefinitionId),
+                DBQuery.is(FIELD_LOCK_OWNER, null),
+                DBQuery.is(FIELD_STATUS, JobTriggerStatus.RUNNABLE),
+                DBQuery.lessThanEquals(FIELD_NEXT_TIME, dueUntil),
+                DBQuery.exists(FIELD_DATA + "." + arrayField),
+                dataQuery
+        );
+        final DBUpdate.Builder update = DBUpdate.push(FIELD_DATA + "." + arrayField, value)
+                .set(FIELD_UPDATED_AT, clock.nowUTC());
+
+        // Prefer the oldest trigger so values are delivered as early as possible
+        return db.findAndModify(query, null, DBSort.asc(FIELD_NEXT_TIME), false, update, false, false) != null;
+    }
+
     /**
      * Deletes the trigger with the given ID.
      *
@@ -327,11 +382,102 @@ public class DBJobTriggerService {
      * @return next runnable trigger if any exists, an empty {@link Optional} otherwise
      */
     public Optional<JobTriggerDto> nextRunnableTrigger() {
+        return nextRunnableTrigger(Collections.emptySet(), Collections.emptySet());
+    }
+
+    private Optional<JobTriggerDto> nextRunnableTrigger(Set<String> includedJobTypes, Set<String> excludedJobTypes) {
         final DateTime now = clock.nowUTC();
 
+        // Atomically update, lock and return the next runnable trigger
+        final JobTriggerDto trigger = db.findAndModify(
+                runnableTriggersQuery(now, includedJobTypes, excludedJobTypes),
+                null,
+                // We want to lock the trigger with the oldest next time
+                DBSort.asc(FIELD_NEXT_TIME),
+                false,
+                lockUpdate(now),
+                true, // We need the modified object so we have access to the lock information
+                false
+        );
+
+        return Optional.ofNullable(trigger);
+    }
+
+    /**
+     * Locks and returns up to the given number of runnable triggers, limited by the configured trigger batch size.
+     * The caller needs to take care of releasing the trigger locks.
+     * <p>
+     * Instead of one {@code findAndModify} per trigger, the oldest runnable triggers are looked up, locked with a single
+     * update and loaded again. The update checks the lock conditions for every trigger again, so triggers which got
+     * locked by another node in the meantime are skipped and only the triggers locked by this call are returned.
+     *
+     * @param maxTriggers maximum number of triggers to lock, usually the number of free worker slots
+     * @return locked triggers ordered by their next time, an empty list if there are no runnable triggers
+     */
+    public List<JobTriggerDto> nextRunnableTriggers(int maxTriggers) {
+        return nextRunnableTriggers(maxTriggers, Collections.emptySet(), Collections.emptySet());
+    }
+
+    /**
+     * Like {@link #nextRunnableTriggers(int)} but only locks triggers of the given job types. This is used to fill
+     * the free slots of a worker lane without locking triggers that the lane cannot run.
+     *
+     * @param maxTriggers      maximum number of triggers to lock, usually the number of free slots in the worker lane
+     * @param includedJobTypes only lock triggers with one of these job definition types, no restriction if empty
+     * @param excludedJobTypes never lock triggers with one of these job definition types
+     * @return locked triggers ordered by their next time, an empty list if there are no runnable triggers
+     */
+    public List<JobTriggerDto> nextRunnableTriggers(int maxTriggers, Set<String> includedJobTypes, Set<String> excludedJobTypes) {
+        final int limit = Math.min(maxTriggers, triggerBatchSize);
+        if (limit <= 1) {
+            return nextRunnableTrigger(includedJobTypes, excludedJobTypes)
+                    .map(Collections::singletonList)
+                    .orElse(Collections.emptyList());
+        }
+
+        final DateTime now = clock.nowUTC();
+        final Query query = runnableTriggersQuery(now, includedJobTypes, excludedJobTypes);
+        final DBSort.SortBuilder sort = DBSort.asc(FIELD_NEXT_TIME);
+
+        final List<ObjectId> candidateIds;
+        try (final DBCursor<JobTriggerDto> cursor = db.find(query).sort(sort).limit(limit)) {
+            candidateIds = StreamEx.of(cursor.iterator()).map(this::getId).toList();
+        }
+        if (candidateIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final int lockedTriggers = db.updateMulti(DBQuery.and(query, DBQuery.in(FIELD_ID, candidateIds)), lockUpdate(now)).getN();
+        if (lockedTriggers == 0) {
+            return Collections.emptyList();
+        }
+
+        final Query lockedQuery = DBQuery.and(
+                DBQuery.in(FIELD_ID, candidateIds),
+                DBQuery.is(FIELD_LOCK_OWNER, nodeId),
+                DBQuery.is(FIELD_STATUS, JobTriggerStatus.RUNNING),
+                DBQuery.is(FIELD_TRIGGERED_AT, Optional.of(now))
+        );
+        try (final DBCursor<JobTriggerDto> cursor = db.find(lockedQuery).sort(sort)) {
+            return ImmutableList.copyOf(cursor.iterator());
+        }
+    }
+
+    private Query runnableTriggersQuery(DateTime now, Set<String> includedJobTypes, Set<String> excludedJobTypes) {
+        final Query query = runnableTriggersQuery(now);
+        if (!includedJobTypes.isEmpty()) {
+            return DBQuery.and(DBQuery.in(FIELD_JOB_DEFINITION_TYPE, includedJobTypes), query);
+        }
+        if (!excludedJobTypes.isEmpty()) {
+            return DBQuery.and(DBQuery.notIn(FIELD_JOB_DEFINITION_TYPE, excludedJobTypes), query);
+        }
+        return query;
+    }
+
+    private Query runnableTriggersQuery(DateTime now) {
         final Query constraintsQuery = MongoQueryUtils.getArrayIsContainedQuery(FIELD_CONSTRAINTS, schedulerCapabilitiesService.getNodeCapabilities());
 
-        final Query query = DBQuery.or(DBQuery.and(
+        return DBQuery.or(DBQuery.and(
                         // We cannot lock a trigger that is already locked by another node
                         DBQuery.is(FIELD_LOCK_OWNER, null),
                         DBQuery.is(FIELD_STATUS, JobTriggerStatus.RUNNABLE),
@@ -353,27 +499,14 @@ public class DBJobTriggerService {
                         constraintsQuery,
                         DBQuery.lessThan(FIELD_LAST_LOCK_TIME, now.minus(lockExpirationDuration.toMilliseconds())))
         );
-        // We want to lock the trigger with the oldest next time
-        final DBSort.SortBuilder sort = DBSort.asc(FIELD_NEXT_TIME);
+    }
 
-        final DBUpdate.Builder lockUpdate = DBUpdate.set(FIELD_LOCK_OWNER, nodeId)
+    private DBUpdate.Builder lockUpdate(DateTime now) {
+        return DBUpdate.set(FIELD_LOCK_OWNER, nodeId)
                 .set(FIELD_LAST_LOCK_OWNER, nodeId)
                 .set(FIELD_STATUS, JobTriggerStatus.RUNNING)
                 .set(FIELD_TRIGGERED_AT, Optional.of(now))
                 .set(FIELD_LAST_LOCK_TIME, now);
-
-        // Atomically update, lock and return the next runnable trigger
-        final JobTriggerDto trigger = db.findAndModify(
-                query,
-                null,
-                sort,
-                false,
-                lockUpdate,
-                true, // We need the modified object so we have access to the lock information
-                false
-        );
-
-        return Optional.ofNullable(trigger);
     }
 
     /**
@@ -19,9 +19,13 @@ package org.graylog.scheduler;
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.assistedinject.Assisted;
+import org.graylog.scheduler.clock.JobSchedulerClock;
 import org.graylog.scheduler.eventbus.JobCompletedEvent;
 import org.graylog.scheduler.eventbus.JobSchedulerEventBus;
+import org.graylog.scheduler.worker.JobWorkerLane;
 import org.graylog.scheduler.worker.JobWorkerPool;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -29,18 +33,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * The job execution engine checks runnable triggers and starts job execution in the given worker pool.
+ * The job execution engine checks runnable triggers and starts job execution in the given worker pool. Jobs of types
+ * which are assigned to a worker lane are executed in the worker pool of their lane instead.
  */
 public class JobExecutionEngine {
 
 
     public interface Factory {
-        JobExecutionEngine create(JobWorkerPool workerPool);
+        JobExecutionEngine create(JobWorkerPool workerPool, Map<JobWorkerLane, JobWorkerPool> lanePools);
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(JobExecutionEngine.class);
@@ -51,7 +58,9 @@ public class JobExecutionEngine {
     private final JobScheduleStrategies scheduleStrategies;
     private final JobTriggerUpdates.Factory jobTriggerUpdatesFactory;
     private final Map<String, Job.Factory> jobFactory;
-    private final JobWorkerPool workerPool;
+    private final List<LanePool> lanePools;
+    private final JobSchedulerClock clock;
+    private final MetricRegistry metricRegistry;
     private Counter executionSuccessful;
     private Counter executionFailed;
     private Timer executionTime;
@@ -66,19 +75,38 @@ public class JobExecutionEngine {
                               JobScheduleStrategies scheduleStrategies,
                               JobTriggerUpdates.Factory jobTriggerUpdatesFactory,
                               Map<String, Job.Factory> jobFactory,
-                              @Assisted JobWorkerPool workerPool, MetricRegistry metricRegistry) {
+                              @Assisted JobWorkerPool workerPool,
+                              @Assisted Map<JobWorkerLane, JobWorkerPool> lanePools,
+                              JobSchedulerClock clock,
+                              MetricRegistry metricRegistry) {
         this.jobTriggerService = jobTriggerService;
         this.jobDefinitionService = jobDefinitionService;
         this.eventBus = eventBus;
         this.scheduleStrategies = scheduleStrategies;
         this.jobTriggerUpdatesFactory = jobTriggerUpdatesFactory;
         this.jobFactory = jobFactory;
-        this.workerPool = workerPool;
+        this.lanePools = buildLanePools(workerPool, lanePools);
+        this.clock = clock;
+        this.metricRegistry = metricRegistry;
         this.executionSuccessful = metricRegistry.counter(MetricRegistry.name(getClass(), "executions", "successful"));
         this.executionFailed = metricRegistry.counter(MetricRegistry.name(getClass(), "executions", "failed"));
         this.executionTime = metricRegistry.timer(MetricRegistry.name(getClass(), "executions", "time"));
     }
 
+    private static List<LanePool> buildLanePools(JobWorkerPool workerPool, Map<JobWorkerLane, JobWorkerPool> lanePools) {
+        final ImmutableList.Builder<LanePool> builder = ImmutableList.builder();
+        final ImmutableSet.Builder<String> laneJobTypes = ImmutableSet.builder();
+
+        lanePools.forEach((lane, pool) -> {
+            builder.add(new LanePool(pool, lane.jobTypes(), ImmutableSet.of()));
+            laneJobTypes.addAll(lane.jobTypes());
+        });
+        // The default pool runs every job that is not assigned to a lane
+        builder.add(new LanePool(workerPool, ImmutableSet.of(), laneJobTypes.build()));
+
+        return builder.build();
+    }
+
     /**
      * Signal shutdown to the engine.
      */
@@ -98,10 +126,11 @@ public class JobExecutionEngine {
     }
 
     /**
-     * Execute the engine. This will try to lock a trigger and execute the job if there are free slots in the
-     * worker pool and the engine is not shutting down.
+     * Execute the engine. This will try to lock triggers, at most one per free slot in the worker pool of each lane,
+     * and execute their jobs if the engine is not shutting down.
      *
-     * @return true if a job trigger has been locked and the related job has been triggered, false otherwise
+     * @return true if at least one job trigger has been locked and the related job has been triggered and no worker
+     * pool got exhausted, false otherwise
      */
     public boolean execute() {
         // Cleanup stale scheduler state *before* processing any triggers for the first time.
@@ -110,28 +139,51 @@ public class JobExecutionEngine {
             cleanup();
         }
 
-        // We want to avoid a call to the database if there are no free slots in the pool or the engine is shutting down
-        if (isRunning.get() && workerPool.hasFreeSlots()) {
-            final Optional<JobTriggerDto> triggerOptional = jobTriggerService.nextRunnableTrigger();
+        boolean triggered = false;
+        boolean poolExhausted = false;
+        for (final LanePool lanePool : lanePools) {
+            // We want to avoid a call to the database if there are no free slots in the pool or the engine is shutting down
+            if (!isRunning.get() || !lanePool.pool.hasFreeSlots()) {
+                continue;
+            }
+            final ExecutionResult result = execute(lanePool);
+            triggered |= result.triggered;
+            poolExhausted |= result.poolExhausted;
+        }
+
+        return triggered && !poolExhausted;
+    }
 
-            if (triggerOptional.isPresent()) {
-                final JobTriggerDto trigger = triggerOptional.get();
+    private ExecutionResult execute(LanePool lanePool) {
+        final JobWorkerPool workerPool = lanePool.pool;
+        final List<JobTriggerDto> triggers = jobTriggerService.nextRunnableTriggers(workerPool.freeSlots(),
+                lanePool.includedJobTypes, lanePool.excludedJobTypes);
 
-                if (!workerPool.execute(() -> handleTrigger(trigger))) {
-                    // The job couldn't be executed so we have to release the trigger again with the same nextTime
-                    jobTriggerService.releaseTrigger(trigger, JobTriggerUpdate.withNextTime(trigger.nextTime()));
-                    return false;
-                }
+        final ExecutionResult result = new ExecutionResult();
+        for (final JobTriggerDto trigger : triggers) {
+            final long lagMillis = recordLag(trigger);
 
-                return true;
+            if (result.poolExhausted || !workerPool.execute(() -> handleTrigger(trigger), lagMillis)) {
+                // The job couldn't be executed so we have to release the trigger again with the same nextTime
+                jobTriggerService.releaseTrigger(trigger, JobTriggerUpdate.withNextTime(trigger.nextTime()));
+                result.poolExhausted = true;
+                continue;
             }
+            result.triggered = true;
         }
+        return result;
+    }
 
-        return false;
+    // The time between the scheduled and the actual start of a job, tracked per job type
+    private long recordLag(JobTriggerDto trigger) {
+        final long lagMillis = Math.max(clock.nowUTC().getMillis() - trigger.nextTime().getMillis(), 0);
+        metricRegistry.timer(MetricRegistry.name(getClass(), "lag", trigger.jobDefinitionType()))
+                .update(lagMillis, TimeUnit.MILLISECONDS);
+        return lagMillis;
     }
 
     public void updateLockedJobs() {
-        if (workerPool.anySlotsUsed()) {
+        if (lanePools.stream().anyMatch(lanePool -> lanePool.pool.anySlotsUsed())) {
             jobTriggerService.updateLockedJobTriggers();
         }
     }
@@ -197,4 +249,21 @@ public class JobExecutionEngine {
             jobTriggerService.releaseTrigger(trigger, JobTriggerUpdate.withNextTime(nextFutureTime));
         }
     }
+
+    private static class LanePool {
+        private final JobWorkerPool pool;
+        private final Set<String> includedJobTypes;
+        private final Set<String> excludedJobTypes;
+
+        LanePool(JobWorkerPool pool, Set<String> includedJobTypes, Set<String> excludedJobTypes) {
+            this.pool = pool;
+            this.includedJobTypes = includedJobTypes;
+            this.excludedJobTypes = excludedJobTypes;
+        }
+    }
+
+    private static class ExecutionResult {
+        private boolean triggered = false;
+        private boolean poolExhausted = false;
+    }
 }
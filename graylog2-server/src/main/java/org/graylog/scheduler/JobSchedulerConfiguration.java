@@ -21,8 +21,13 @@ import com.github.joschi.jadconfig.ValidationException;
 import com.github.joschi.jadconfig.Validator;
 import com.github.joschi.jadconfig.util.Duration;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
+import org.graylog.scheduler.worker.JobWorkerLane;
 import org.graylog2.plugin.PluginConfigBean;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Job scheduler specific configuration fields for the server configuration file.
  */
@@ -30,6 +35,9 @@ import org.graylog2.plugin.PluginConfigBean;
 public class JobSchedulerConfiguration implements PluginConfigBean {
     public static final String LOOP_SLEEP_DURATION = "job_scheduler_loop_sleep_duration";
     public static final String LOCK_EXPIRATION_DURATION = "job_scheduler_lock_expiration_duration";
+    public static final String TRIGGER_BATCH_SIZE = "job_scheduler_trigger_batch_size";
+    public static final String CHANGE_STREAM_ENABLED = "job_scheduler_change_stream_enabled";
+    public static final String WORKER_LANES = "job_scheduler_worker_lanes";
 
     @Parameter(value = LOOP_SLEEP_DURATION, validators = PositiveDurationValidator.class)
     private Duration loopSleepDuration = Duration.seconds(1);
@@ -37,6 +45,18 @@ public class JobSchedulerConfiguration implements PluginConfigBean {
     @Parameter(value = LOCK_EXPIRATION_DURATION, validators = Minimum1MinuteValidator.class)
     private Duration lockExpirationDuration = Duration.minutes(5);
 
+    // maximum number of runnable triggers locked at once, 1 locks every trigger on its own
+    @Parameter(value = TRIGGER_BATCH_SIZE, validators = PositiveIntegerValidator.class)
+    private int triggerBatchSize = 1;
+
+    // wake up the scheduler loop when triggers become due instead of polling, requires a MongoDB replica set
+    @Parameter(value = CHANGE_STREAM_ENABLED)
+    private boolean changeStreamEnabled = false;
+
+    // dedicated worker pools for job types, jobs without a lane run in the default worker pool
+    @Parameter(value = WORKER_LANES, converter = JobWorkerLane.Converter.class)
+    private List<JobWorkerLane> workerLanes = Collections.emptyList();
+
     public Duration getLoopSleepDuration() {
         return loopSleepDuration;
     }
@@ -45,6 +65,18 @@ public class JobSchedulerConfiguration implements PluginConfigBean {
         return lockExpirationDuration;
     }
 
+    public int getTriggerBatchSize() {
+        return triggerBatchSize;
+    }
+
+    public boolean isChangeStreamEnabled() {
+        return changeStreamEnabled;
+    }
+
+    public List<JobWorkerLane> getWorkerLanes() {
+        return workerLanes;
+    }
+
     public static class Minimum1MinuteValidator implements Validator<Duration> {
         @Override
         public void validate(final String name, final Duration value) throws ValidationException {
@@ -18,40 +18,54 @@ package org.graylog.scheduler;
 
 import com.github.joschi.jadconfig.util.Duration;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.graylog.scheduler.clock.JobSchedulerClock;
 import org.graylog.scheduler.eventbus.JobCompletedEvent;
 import org.graylog.scheduler.eventbus.JobSchedulerEventBus;
+import org.graylog.scheduler.worker.JobWorkerLane;
 import org.graylog.scheduler.worker.JobWorkerPool;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Singleton
 public class JobSchedulerService extends AbstractExecutionThreadService {
     private static final Logger LOG = LoggerFactory.getLogger(JobSchedulerService.class);
 
+    // Even with a change stream we have to check regularly for triggers with expired locks and for triggers that
+    // couldn't run because of unsatisfied constraints
+    private static final long MAX_CHANGE_STREAM_SLEEP_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
     private final JobExecutionEngine jobExecutionEngine;
     private final JobSchedulerConfig schedulerConfig;
     private final JobSchedulerClock clock;
     private final JobSchedulerEventBus schedulerEventBus;
     private final ServerStatus serverStatus;
-    private final JobWorkerPool workerPool;
     private final Duration loopSleepDuration;
     private final InterruptibleSleeper sleeper = new InterruptibleSleeper();
     private final ScheduledExecutorService jobHeartbeatExecutor;
+    private final JobTriggerChangeStream triggerChangeStream;
+    private final UpcomingJobTriggers upcomingTriggers = new UpcomingJobTriggers();
+    private volatile long wakeUpAt = Long.MAX_VALUE;
     private Thread executionThread;
 
     @Inject
@@ -61,14 +75,27 @@ public class JobSchedulerService extends AbstractExecutionThreadService {
                                JobSchedulerClock clock,
                                JobSchedulerEventBus schedulerEventBus,
                                ServerStatus serverStatus,
-                               @Named(JobSchedulerConfiguration.LOOP_SLEEP_DURATION) Duration loopSleepDuration) {
+                               JobTriggerChangeStream triggerChangeStream,
+                               @Named(JobSchedulerConfiguration.LOOP_SLEEP_DURATION) Duration loopSleepDuration,
+                               @Named(JobSchedulerConfiguration.WORKER_LANES) List<JobWorkerLane> workerLanes) {
         jobHeartbeatExecutor = createJobHeartbeatExecutor();
-        workerPool = workerPoolFactory.create("system", schedulerConfig.numberOfWorkerThreads(), this::shutdownJobHeartbeatExecutor);
-        this.jobExecutionEngine = engineFactory.create(workerPool);
+        // The job heartbeat is needed until the worker pools of all lanes have been shut down
+        final AtomicInteger runningPools = new AtomicInteger(workerLanes.size() + 1);
+        final Runnable poolShutdownCallback = () -> {
+            if (runningPools.decrementAndGet() == 0) {
+                shutdownJobHeartbeatExecutor();
+            }
+        };
+        final Map<JobWorkerLane, JobWorkerPool> lanePools = workerLanes.stream()
+                .collect(ImmutableMap.toImmutableMap(Function.identity(),
+                        lane -> workerPoolFactory.create(lane.name(), lane.concurrency(), poolShutdownCallback)));
+        final JobWorkerPool workerPool = workerPoolFactory.create(JobWorkerLane.DEFAULT_LANE, schedulerConfig.numberOfWorkerThreads(), poolShutdownCallback);
+        this.jobExecutionEngine = engineFactory.create(workerPool, lanePools);
         this.schedulerConfig = schedulerConfig;
         this.clock = clock;
         this.schedulerEventBus = schedulerEventBus;
         this.serverStatus = serverStatus;
+        this.triggerChangeStream = triggerChangeStream;
         this.loopSleepDuration = loopSleepDuration;
     }
 
@@ -89,6 +116,18 @@ public class JobSchedulerService extends AbstractExecutionThreadService {
     protected void startUp() throws Exception {
         jobHeartbeatExecutor.scheduleAtFixedRate(this::updateLockedJobs, 0, 15, TimeUnit.SECONDS);
         schedulerEventBus.register(this);
+        triggerChangeStream.start(new JobTriggerChangeStream.Listener() {
+            @Override
+            public void streamOpened(Map<String, DateTime> dueTimes) {
+                upcomingTriggers.replaceAll(dueTimes);
+                sleeper.interrupt();
+            }
+
+            @Override
+            public void triggerChanged(String triggerId, Optional<DateTime> dueTime) {
+                handleTriggerChanged(triggerId, dueTime);
+            }
+        });
         this.executionThread = Thread.currentThread();
     }
 
@@ -120,9 +159,14 @@ public class JobSchedulerService extends AbstractExecutionThreadService {
                     // When the execution engine returned false, there are either no free worker threads or no
                     // runnable triggers. To avoid busy spinning we sleep for the configured duration or until
                     // we receive a job completion event via the scheduler event bus.
-                    if (sleeper.sleep(loopSleepDuration.getQuantity(), loopSleepDuration.getUnit())) {
-                        LOG.debug("Waited for {} {} because there are either no free worker threads or no runnable triggers",
-                                    loopSleepDuration.getQuantity(), loopSleepDuration.getUnit());
+                    // With an active trigger change stream we sleep until the next trigger is due instead.
+                    final long sleepMillis = sleepMillis();
+                    wakeUpAt = clock.nowUTC().getMillis() + sleepMillis;
+                    final boolean slept = sleeper.sleep(sleepMillis, TimeUnit.MILLISECONDS);
+                    wakeUpAt = Long.MAX_VALUE;
+                    if (slept) {
+                        LOG.debug("Waited for {} ms because there are either no free worker threads or no runnable triggers",
+                                sleepMillis);
                     }
                 }
             } catch (InterruptedException e) {
@@ -140,10 +184,32 @@ public class JobSchedulerService extends AbstractExecutionThreadService {
         sleeper.interrupt();
     }
 
+    private void handleTriggerChanged(String triggerId, Optional<DateTime> dueTime) {
+        upcomingTriggers.update(triggerId, dueTime);
+        // Only wake up the loop if the trigger is due before the loop would wake up anyway
+        if (dueTime.isPresent() && dueTime.get().getMillis() < wakeUpAt) {
+            sleeper.interrupt();
+        }
+    }
+
+    private long sleepMillis() {
+        final long loopSleepMillis = loopSleepDuration.toMilliseconds();
+        if (!triggerChangeStream.isActive()) {
+            return loopSleepMillis;
+        }
+        return upcomingTriggers.next()
+                .map(dueTime -> dueTime.getMillis() - clock.nowUTC().getMillis())
+                // A trigger that is already due couldn't be run because all workers are busy
+                .map(millis -> millis > 0 ? millis : loopSleepMillis)
+                .map(millis -> Math.min(millis, MAX_CHANGE_STREAM_SLEEP_MILLIS))
+                .orElse(MAX_CHANGE_STREAM_SLEEP_MILLIS);
+    }
+
     @Override
     protected void triggerShutdown() {
         // We don't want to process events when shutting down, so do this first
         schedulerEventBus.unregister(this);
+        triggerChangeStream.stop();
         jobExecutionEngine.shutdown();
         executionThread.interrupt();
     }
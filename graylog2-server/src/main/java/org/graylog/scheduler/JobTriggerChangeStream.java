@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.scheduler;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.joda.time.DateTimeZone.UTC;
+
+/**
+ * Watches the job triggers collection with a MongoDB change stream and reports the time at which triggers become due
+ * whenever they are created, released or otherwise changed by any node.
+ * <p>
+ * Change streams are only available on replica sets. If they aren't supported, the stream stops and the scheduler
+ * keeps polling for runnable triggers.
+ */
+@Singleton
+public class JobTriggerChangeStream {
+    private static final Logger LOG = LoggerFactory.getLogger(JobTriggerChangeStream.class);
+
+    // "The $changeStream stage is only supported on replica sets"
+    private static final int CHANGE_STREAMS_NOT_SUPPORTED = 40573;
+    private static final long RETRY_DELAY_SECONDS = 5;
+    private static final String RUNNABLE = "runnable";
+    private static final String FIELD_LOCK_OWNER = JobTriggerDto.FIELD_LOCK + "." + JobTriggerLock.FIELD_OWNER;
+    private static final List<Bson> PIPELINE = ImmutableList.of(
+            Aggregates.match(Filters.in("operationType", "insert", "update", "replace", "delete")));
+
+    public interface Listener {
+        /**
+         * Called whenever the stream has been opened, changes before that might have been missed.
+         *
+         * @param dueTimes the times the currently runnable triggers are due by trigger ID
+         */
+        void streamOpened(Map<String, DateTime> dueTimes);
+
+        /**
+         * @param dueTime the time the trigger is due, empty if the trigger isn't runnable (anymore)
+         */
+        void triggerChanged(String triggerId, Optional<DateTime> dueTime);
+    }
+
+    private final MongoCollection<Document> collection;
+    private final boolean enabled;
+    private final ExecutorService executor;
+
+    private volatile boolean running = false;
+    private volatile boolean active = false;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+
+    @Inject
+    public JobTriggerChangeStream(MongoConnection mongoConnection,
+                                  @Named(JobSchedulerConfiguration.CHANGE_STREAM_ENABLED) boolean enabled) {
+        this.collection = mongoConnection.getMongoDatabase().getCollection(DBJobTriggerService.COLLECTION_NAME);
+        this.enabled = enabled;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("job-trigger-change-stream-%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(new Tools.LogUncaughtExceptionHandler(LOG))
+                .build());
+    }
+
+    /**
+     * @return true if the stream is open, so changes of triggers are reported
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    public void start(Listener listener) {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        executor.submit(() -> watch(listener));
+    }
+
+    public void stop() {
+        running = false;
+        final MongoChangeStreamCursor<ChangeStreamDocument<Document>> currentCursor = cursor;
+        if (currentCursor != null) {
+            currentCursor.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private void watch(Listener listener) {
+        while (running) {
+            try (final MongoChangeStreamCursor<ChangeStreamDocument<Document>> changes = collection.watch(PIPELINE)
+                    .fullDocument(FullDocument.UPDATE_LOOKUP)
+                    .cursor()) {
+                this.cursor = changes;
+                // Triggers might have changed while the stream wasn't open, so we start from the current state
+                listener.streamOpened(dueTimesOfRunnableTriggers());
+                this.active = true;
+                LOG.debug("Watching job triggers for changes");
+
+                while (running) {
+                    final ChangeStreamDocument<Document> change = changes.next();
+                    triggerId(change).ifPresent(triggerId -> listener.triggerChanged(triggerId, dueTime(change.getFullDocument())));
+                }
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == CHANGE_STREAMS_NOT_SUPPORTED) {
+                    LOG.info("MongoDB doesn't support change streams, polling for runnable job triggers instead");
+                    running = false;
+                } else {
+                    retryLater(e);
+                }
+            } catch (Exception e) {
+                retryLater(e);
+            } finally {
+                this.active = false;
+                this.cursor = null;
+            }
+        }
+    }
+
+    private void retryLater(Exception e) {
+        if (!running) {
+            // The cursor has been closed because the stream has been stopped
+            return;
+        }
+        LOG.warn("Watching job triggers for changes failed, retrying in {} seconds", RETRY_DELAY_SECONDS, e);
+        try {
+            TimeUnit.SECONDS.sleep(RETRY_DELAY_SECONDS);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private Map<String, DateTime> dueTimesOfRunnableTriggers() {
+        final Map<String, DateTime> dueTimes = new HashMap<>();
+        collection.find(Filters.and(Filters.eq(JobTriggerDto.FIELD_STATUS, RUNNABLE), Filters.eq(FIELD_LOCK_OWNER, null)))
+                .projection(Projections.include(JobTriggerDto.FIELD_STATUS, JobTriggerDto.FIELD_LOCK,
+                        JobTriggerDto.FIELD_NEXT_TIME, JobTriggerDto.FIELD_START_TIME))
+                .forEach(trigger -> dueTime(trigger).ifPresent(dueTime -> dueTimes.put(trigger.getObjectId("_id").toHexString(), dueTime)));
+        return dueTimes;
+    }
+
+    private static Optional<String> triggerId(ChangeStreamDocument<Document> change) {
+        return Optional.ofNullable(change.getDocumentKey())
+                .map(documentKey -> documentKey.get("_id"))
+                .filter(BsonValue::isObjectId)
+                .map(id -> id.asObjectId().getValue().toHexString());
+    }
+
+    /**
+     * @return the time the trigger is due, empty if the trigger isn't runnable or has been deleted
+     */
+    @VisibleForTesting
+    static Optional<DateTime> dueTime(@Nullable Document trigger) {
+        if (trigger == null || !RUNNABLE.equals(trigger.getString(JobTriggerDto.FIELD_STATUS))) {
+            return Optional.empty();
+        }
+        final Document lock = trigger.get(JobTriggerDto.FIELD_LOCK, Document.class);
+        if (lock != null && lock.get(JobTriggerLock.FIELD_OWNER) != null) {
+            return Optional.empty();
+        }
+        final Date nextTime = trigger.getDate(JobTriggerDto.FIELD_NEXT_TIME);
+        if (nextTime == null) {
+            return Optional.empty();
+        }
+        // Triggers are not run before their start time, even if the next time is earlier
+        final Date startTime = trigger.getDate(JobTriggerDto.FIELD_START_TIME);
+        final long dueMillis = startTime == null ? nextTime.getTime() : Math.max(nextTime.getTime(), startTime.getTime());
+        return Optional.of(new DateTime(dueMillis, UTC));
+    }
+}
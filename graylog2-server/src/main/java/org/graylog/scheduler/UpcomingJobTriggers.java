@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.scheduler;
+
+import org.joda.time.DateTime;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+import static org.joda.time.DateTimeZone.UTC;
+
+/**
+ * Keeps the times at which runnable job triggers are due in a min-heap, so the scheduler knows how long it can sleep.
+ * <p>
+ * Changed or removed triggers are not removed from the heap right away. Outdated entries are dropped once they reach
+ * the top of the heap.
+ */
+class UpcomingJobTriggers {
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>(Comparator.comparingLong(Entry::dueMillis));
+    private final Map<String, Long> dueTimes = new HashMap<>();
+
+    synchronized void replaceAll(Map<String, DateTime> triggers) {
+        heap.clear();
+        dueTimes.clear();
+        triggers.forEach(this::put);
+    }
+
+    /**
+     * @param dueTime the time the trigger is due, empty if the trigger isn't runnable (anymore)
+     */
+    synchronized void update(String triggerId, Optional<DateTime> dueTime) {
+        if (dueTime.isPresent()) {
+            put(triggerId, dueTime.get());
+        } else {
+            dueTimes.remove(triggerId);
+        }
+    }
+
+    /**
+     * @return the time the next trigger is due, empty if there are no runnable triggers
+     */
+    synchronized Optional<DateTime> next() {
+        while (!heap.isEmpty()) {
+            final Entry entry = heap.peek();
+            if (Objects.equals(dueTimes.get(entry.triggerId()), entry.dueMillis())) {
+                return Optional.of(new DateTime(entry.dueMillis(), UTC));
+            }
+            heap.poll();
+        }
+        return Optional.empty();
+    }
+
+    synchronized int size() {
+        return dueTimes.size();
+    }
+
+    private void put(String triggerId, DateTime dueTime) {
+        final long dueMillis = dueTime.getMillis();
+        final Long previous = dueTimes.put(triggerId, dueMillis);
+        if (previous == null || previous != dueMillis) {
+            heap.add(new Entry(triggerId, dueMillis));
+        }
+    }
+
+    private static class Entry {
+        private final String triggerId;
+        private final long dueMillis;
+
+        Entry(String triggerId, long dueMillis) {
+            this.triggerId = triggerId;
+            this.dueMillis = dueMillis;
+        }
+
+        String triggerId() {
+            return triggerId;
+        }
+
+        long dueMillis() {
+            return dueMillis;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.scheduler.worker;
+
+import com.github.joschi.jadconfig.ParameterException;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A worker lane runs the jobs of the given job types in a dedicated {@link JobWorkerPool} with its own concurrency
+ * limit. Jobs with types that are not assigned to a lane run in the default worker pool.
+ */
+@AutoValue
+public abstract class JobWorkerLane {
+    // The name of the default worker pool which runs all jobs that are not assigned to a lane
+    public static final String DEFAULT_LANE = "system";
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9\\-]+");
+
+    public abstract String name();
+
+    public abstract int concurrency();
+
+    public abstract ImmutableSet<String> jobTypes();
+
+    public static JobWorkerLane create(String name, int concurrency, Set<String> jobTypes) {
+        return new AutoValue_JobWorkerLane(name, concurrency, ImmutableSet.copyOf(jobTypes));
+    }
+
+    /**
+     * Converts lane definitions in the format {@code <name>:<concurrency>:<job-type>[,<job-type>...]}, separated by
+     * semicolons. Example: {@code notifications:2:notification-execution-v1;aggregations:4:event-processor-execution-v1}
+     */
+    public static class Converter implements com.github.joschi.jadconfig.Converter<List<JobWorkerLane>> {
+        @Override
+        public List<JobWorkerLane> convertFrom(String value) {
+            if (value == null) {
+                return ImmutableList.of();
+            }
+            final ImmutableList.Builder<JobWorkerLane> lanes = ImmutableList.builder();
+            final Set<String> laneNames = new HashSet<>();
+            final Set<String> laneJobTypes = new HashSet<>();
+
+            for (final String lane : Splitter.on(';').trimResults().omitEmptyStrings().split(value)) {
+                final List<String> parts = Splitter.on(':').trimResults().splitToList(lane);
+                if (parts.size() != 3) {
+                    throw new ParameterException("Invalid worker lane <" + lane + ">, expected <name>:<concurrency>:<job-types>");
+                }
+                final String name = parts.get(0);
+                if (!NAME_PATTERN.matcher(name).matches() || DEFAULT_LANE.equals(name) || !laneNames.add(name)) {
+                    throw new ParameterException("Invalid, reserved or duplicate worker lane name <" + name + ">, must match " + NAME_PATTERN);
+                }
+                final int concurrency;
+                try {
+                    concurrency = Integer.parseInt(parts.get(1));
+                } catch (NumberFormatException e) {
+                    throw new ParameterException("Invalid concurrency for worker lane <" + name + ">: " + parts.get(1));
+                }
+                if (concurrency < 1) {
+                    throw new ParameterException("Concurrency for worker lane <" + name + "> must be at least 1 (found " + concurrency + ")");
+                }
+                final Set<String> jobTypes = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(parts.get(2)));
+                if (jobTypes.isEmpty()) {
+                    throw new ParameterException("Worker lane <" + name + "> needs at least one job type");
+                }
+                for (final String jobType : jobTypes) {
+                    if (!laneJobTypes.add(jobType)) {
+                        throw new ParameterException("Job type <" + jobType + "> is assigned to more than one worker lane");
+                    }
+                }
+                lanes.add(create(name, concurrency, jobTypes));
+            }
+            return lanes.build();
+        }
+
+        @Override
+        public String convertTo(List<JobWorkerLane> value) {
+            if (value == null) {
+                throw new ParameterException("Couldn't convert worker lanes <null> to string.");
+            }
+            return value.stream()
+                    .map(lane -> lane.name() + ":" + lane.concurrency() + ":" + Joiner.on(",").join(lane.jobTypes()))
+                    .collect(Collectors.joining(";"));
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.InstrumentedExecutorService;
 import com.codahale.metrics.InstrumentedThreadFactory;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
 import org.graylog2.system.shutdown.GracefulShutdownHook;
@@ -53,10 +54,13 @@ public class JobWorkerPool implements GracefulShutdownHook {
     private static final String EXECUTOR_NAME = NAME_PREFIX + "-executor";
     private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9\\-]+");
 
+    private final String name;
     private final int poolSize;
     private final ExecutorService executor;
     private final Semaphore slots;
     private final Runnable shutdownCallback;
+    private final Timer executionTime;
+    private final Timer queueDelay;
 
     @Inject
     public JobWorkerPool(@Assisted String name,
@@ -65,16 +69,28 @@ public class JobWorkerPool implements GracefulShutdownHook {
                          GracefulShutdownService gracefulShutdownService,
                          MetricRegistry metricRegistry) {
         this.shutdownCallback = shutdownCallback;
+        this.name = name;
         this.poolSize = poolSize;
         checkArgument(NAME_PATTERN.matcher(name).matches(), "Pool name must match %s", NAME_PATTERN);
 
         this.executor = buildExecutor(name, poolSize, metricRegistry);
         this.slots = new Semaphore(poolSize, true);
+        this.executionTime = metricRegistry.timer(metricName("execution_time"));
+        this.queueDelay = metricRegistry.timer(metricName("queue_delay"));
 
         registerMetrics(metricRegistry, poolSize);
         gracefulShutdownService.register(this);
     }
 
+    /**
+     * Returns the name of the worker pool.
+     *
+     * @return the pool name
+     */
+    public String name() {
+        return name;
+    }
+
     /**
      * Returns the number of free slots in the worker pool.
      *
@@ -103,12 +119,24 @@ public class JobWorkerPool implements GracefulShutdownHook {
     }
 
     /**
-     * Exeute the given job in the worker pool if there are any free slots.
+     * Execute the given job in the worker pool if there are any free slots.
      *
      * @param job the job to execute
      * @return true if the job could be executed, false otherwise
      */
     public boolean execute(final Runnable job) {
+        return execute(job, 0);
+    }
+
+    /**
+     * Execute the given job in the worker pool if there are any free slots and record the time the job had to wait
+     * for execution since it became due.
+     *
+     * @param job              the job to execute
+     * @param queueDelayMillis the time in milliseconds since the job became due
+     * @return true if the job could be executed, false otherwise
+     */
+    public boolean execute(final Runnable job, final long queueDelayMillis) {
         // If there are no available slots, we won't do anything
         final boolean acquired = slots.tryAcquire();
         if (!acquired) {
@@ -117,7 +145,7 @@ public class JobWorkerPool implements GracefulShutdownHook {
 
         try {
             executor.execute(() -> {
-                try {
+                try (final Timer.Context ignored = executionTime.time()) {
                     job.run();
                 } catch (Exception e) {
                     LOG.error("Unhandled job execution error", e);
@@ -125,6 +153,7 @@ public class JobWorkerPool implements GracefulShutdownHook {
                     slots.release();
                 }
             });
+            queueDelay.update(Math.max(queueDelayMillis, 0), TimeUnit.MILLISECONDS);
             return true;
         } catch (RejectedExecutionException e) {
             // This should not happen because we always check the semaphore before submitting jobs to the pool
@@ -157,12 +186,22 @@ public class JobWorkerPool implements GracefulShutdownHook {
     }
 
     private void registerMetrics(MetricRegistry metricRegistry, int poolSize) {
-        metricRegistry.register(MetricRegistry.name(this.getClass(), "waiting_for_slots"),
+        metricRegistry.register(metricName("waiting_for_slots"),
                 (Gauge<Integer>) slots::getQueueLength);
-        metricRegistry.register(MetricRegistry.name(this.getClass(), "free_slots"),
+        metricRegistry.register(metricName("free_slots"),
                 (Gauge<Integer>) this::freeSlots);
-        metricRegistry.register(MetricRegistry.name(this.getClass(), "total_slots"),
+        metricRegistry.register(metricName("total_slots"),
                 (Gauge<Integer>) () -> poolSize);
+        metricRegistry.register(metricName("utilization"),
+                (Gauge<Double>) () -> (double) (poolSize - freeSlots()) / poolSize);
+    }
 
+    // Every worker lane has its own pool, so the metrics need to include the pool name. The default pool keeps the
+    // metric names it had before worker lanes existed to not break existing dashboards and alerts.
+    private String metricName(String metric) {
+        if (JobWorkerLane.DEFAULT_LANE.equals(name)) {
+            return name(JobWorkerPool.class, metric);
+        }
+        return name(JobWorkerPool.class, name, metric);
     }
 }
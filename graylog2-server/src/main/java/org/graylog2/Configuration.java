@@ -23,6 +23,7 @@ import com.github.joschi.jadconfig.ValidatorMethod;
 import com.github.joschi.jadconfig.converters.StringSetConverter;
 import com.github.joschi.jadconfig.converters.TrimmedStringSetConverter;
 import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.github.joschi.jadconfig.validators.PositiveLongValidator;
@@ -32,6 +33,7 @@ import org.graylog2.cluster.leader.LeaderElectionMode;
 import org.graylog2.cluster.leader.LeaderElectionService;
 import org.graylog2.cluster.lock.MongoLockService;
 import org.graylog2.configuration.converters.JavaDurationConverter;
+import org.graylog2.lookup.LookupKeyPrefetch;
 import org.graylog2.plugin.BaseConfiguration;
 import org.graylog2.security.realm.RootAccountRealm;
 import org.graylog2.utilities.IPSubnetConverter;
@@ -42,6 +44,7 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -189,6 +192,39 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "auto_restart_inputs")
     private boolean autoRestartInputs = false;
 
+    @Parameter(value = "events_shared_aggregation_searches_enabled")
+    private boolean sharedAggregationSearchesEnabled = false;
+
+    @Parameter(value = "events_streaming_filter_definitions_enabled")
+    private boolean streamingFilterDefinitionsEnabled = false;
+
+    @Parameter(value = "events_rolling_aggregations_enabled")
+    private boolean rollingAggregationsEnabled = false;
+
+    @Parameter(value = "events_notification_batch_window")
+    private Duration notificationBatchWindow = Duration.seconds(0L);
+
+    @Parameter(value = "events_notification_batch_max_events", validators = PositiveIntegerValidator.class)
+    private int notificationBatchMaxEvents = 500;
+
+    @Parameter(value = "events_indexing_buffer_enabled")
+    private boolean eventIndexingBufferEnabled = false;
+
+    @Parameter(value = "events_indexing_journal_dir")
+    private Path eventIndexingJournalDir = DEFAULT_DATA_DIR.resolve("event_journal");
+
+    @Parameter(value = "events_indexing_journal_max_size")
+    private Size eventIndexingJournalMaxSize = Size.megabytes(512L);
+
+    @Parameter(value = "events_indexing_batch_size", validators = PositiveIntegerValidator.class)
+    private int eventIndexingBatchSize = 500;
+
+    @Parameter(value = "events_indexing_buffer_max_pending", validators = PositiveIntegerValidator.class)
+    private int eventIndexingBufferMaxPending = 100_000;
+
+    @Parameter(value = "processbuffer_lookup_prefetch", converter = LookupKeyPrefetch.Converter.class)
+    private List<LookupKeyPrefetch> processBufferLookupPrefetch = Collections.emptyList();
+
     @Parameter(value = "run_migrations")
     private boolean runMigrations = true;
 
@@ -287,6 +323,50 @@ public class Configuration extends BaseConfiguration {
         return autoRestartInputs;
     }
 
+    public boolean isSharedAggregationSearchesEnabled() {
+        return sharedAggregationSearchesEnabled;
+    }
+
+    public boolean isStreamingFilterDefinitionsEnabled() {
+        return streamingFilterDefinitionsEnabled;
+    }
+
+    public boolean isRollingAggregationsEnabled() {
+        return rollingAggregationsEnabled;
+    }
+
+    public Duration getNotificationBatchWindow() {
+        return notificationBatchWindow;
+    }
+
+    public int getNotificationBatchMaxEvents() {
+        return notificationBatchMaxEvents;
+    }
+
+    public boolean isEventIndexingBufferEnabled() {
+        return eventIndexingBufferEnabled;
+    }
+
+    public Path getEventIndexingJournalDir() {
+        return eventIndexingJournalDir;
+    }
+
+    public Size getEventIndexingJournalMaxSize() {
+        return eventIndexingJournalMaxSize;
+    }
+
+    public int getEventIndexingBatchSize() {
+        return eventIndexingBatchSize;
+    }
+
+    public int getEventIndexingBufferMaxPending() {
+        return eventIndexingBufferMaxPending;
+    }
+
+    public List<LookupKeyPrefetch> getProcessBufferLookupPrefetch() {
+        return processBufferLookupPrefetch;
+    }
+
     public boolean runMigrations() {
         return runMigrations;
     }
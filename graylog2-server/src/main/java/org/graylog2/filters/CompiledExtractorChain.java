@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.filters;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.inputs.Extractor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * The extractors of an input compiled into an execution plan, built whenever the extractors of the input change.
+ * <p>
+ * Consecutive extractors on the same source field form a group which reads the field once and only reads it again
+ * after an extractor modified the message. Extractor conditions are evaluated up front with patterns compiled once
+ * per distinct condition, so extractors sharing a condition evaluate it only once per field value, and extractors
+ * whose condition doesn't match never enter their timers.
+ */
+class CompiledExtractorChain {
+    private static final byte UNKNOWN = 0;
+    private static final byte HIT = 1;
+    private static final byte MISS = 2;
+
+    private final List<SourceFieldGroup> groups;
+
+    private CompiledExtractorChain(List<SourceFieldGroup> groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * @param extractors the extractors of an input, sorted by their order
+     */
+    static CompiledExtractorChain compile(List<Extractor> extractors) {
+        final ImmutableList.Builder<SourceFieldGroup> groups = ImmutableList.builder();
+        // only consecutive extractors are grouped to keep the configured order
+        List<Extractor> current = new ArrayList<>();
+        for (final Extractor extractor : extractors) {
+            if (!current.isEmpty() && !Objects.equals(current.get(0).getSourceField(), extractor.getSourceField())) {
+                groups.add(new SourceFieldGroup(current));
+                current = new ArrayList<>();
+            }
+            current.add(extractor);
+        }
+        if (!current.isEmpty()) {
+            groups.add(new SourceFieldGroup(current));
+        }
+
+        return new CompiledExtractorChain(groups.build());
+    }
+
+    /**
+     * Runs all extractors on the message.
+     *
+     * @param msg          the message to run the extractors on
+     * @param errorHandler called for every extractor that threw an exception, the remaining extractors still run
+     */
+    void run(Message msg, BiConsumer<Extractor, Exception> errorHandler) {
+        for (final SourceFieldGroup group : groups) {
+            group.run(msg, errorHandler);
+        }
+    }
+
+    private static class SourceFieldGroup {
+        private final String sourceField;
+        private final Extractor[] extractors;
+        // condition of each extractor, null if it doesn't have one
+        private final Condition[] conditions;
+        private final int distinctConditions;
+
+        SourceFieldGroup(List<Extractor> extractors) {
+            this.sourceField = extractors.get(0).getSourceField();
+            this.extractors = extractors.toArray(new Extractor[0]);
+            this.conditions = new Condition[this.extractors.length];
+
+            final Map<String, Condition> compiled = new HashMap<>();
+            for (int i = 0; i < this.extractors.length; i++) {
+                final Extractor.ConditionType type = this.extractors[i].getConditionType();
+                final String value = this.extractors[i].getConditionValue();
+                if (type == Extractor.ConditionType.STRING || type == Extractor.ConditionType.REGEX) {
+                    conditions[i] = compiled.computeIfAbsent(type + ":" + value, key -> new Condition(compiled.size(), type, value));
+                }
+            }
+            this.distinctConditions = compiled.size();
+        }
+
+        void run(Message msg, BiConsumer<Extractor, Exception> errorHandler) {
+            Object value = msg.getField(sourceField);
+            // condition results for the current field value
+            final byte[] conditionResults = distinctConditions == 0 ? null : new byte[distinctConditions];
+
+            for (int i = 0; i < extractors.length; i++) {
+                final Extractor extractor = extractors[i];
+                // We can only work on Strings.
+                if (!(value instanceof String)) {
+                    extractor.recordConditionResult(false);
+                    continue;
+                }
+                final String field = (String) value;
+
+                final Condition condition = conditions[i];
+                if (condition != null) {
+                    byte result = conditionResults[condition.index];
+                    if (result == UNKNOWN) {
+                        final long start = System.nanoTime();
+                        result = condition.matches(field) ? HIT : MISS;
+                        extractor.recordConditionTime(System.nanoTime() - start);
+                        conditionResults[condition.index] = result;
+                    }
+                    extractor.recordConditionResult(result == HIT);
+                    if (result == MISS) {
+                        continue;
+                    }
+                }
+
+                boolean modified;
+                try {
+                    modified = extractor.runExtractor(msg, field);
+                } catch (Exception e) {
+                    errorHandler.accept(extractor, e);
+                    // we don't know how far the extractor got
+                    modified = true;
+                }
+
+                if (modified) {
+                    value = msg.getField(sourceField);
+                    if (conditionResults != null) {
+                        Arrays.fill(conditionResults, UNKNOWN);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Condition {
+        private final int index;
+        private final String value;
+        private final Pattern pattern;
+
+        Condition(int index, Extractor.ConditionType type, String value) {
+            this.index = index;
+            this.value = value;
+            this.pattern = type == Extractor.ConditionType.REGEX ? Pattern.compile(value, Pattern.DOTALL) : null;
+        }
+
+        boolean matches(String field) {
+            return pattern == null ? field.contains(value) : pattern.matcher(field).find();
+        }
+    }
+}
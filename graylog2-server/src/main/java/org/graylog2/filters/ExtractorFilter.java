@@ -16,7 +16,6 @@
  */
 package org.graylog2.filters;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import org.graylog.failure.ProcessingFailureCause;
@@ -39,7 +38,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -51,7 +49,7 @@ public class ExtractorFilter implements MessageFilter {
     private static final Logger LOG = LoggerFactory.getLogger(ExtractorFilter.class);
     private static final String NAME = "Extractor";
 
-    private final ConcurrentMap<String, List<Extractor>> extractors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompiledExtractorChain> extractors = new ConcurrentHashMap<>();
 
     private final InputService inputService;
     private final ScheduledExecutorService scheduler;
@@ -73,25 +71,26 @@ public class ExtractorFilter implements MessageFilter {
             return false;
         }
 
-        for (final Extractor extractor : extractors.getOrDefault(msg.getSourceInputId(), Collections.emptyList())) {
-            try {
-                extractor.runExtractor(msg);
-            } catch (Exception e) {
-                extractor.incrementExceptions();
-                final String error = "Could not apply extractor <" + extractor.getTitle() + "(" + extractor.getId() + ")>";
-                if (LOG.isDebugEnabled()) {
-                    LOG.error(error + " to message " + msg.getId(), e);
-                } else {
-                    LOG.error("{} to message {}:\n{}", error, msg.getId(), ExceptionUtils.getShortenedStackTrace(e));
-                }
-                msg.addProcessingError(new Message.ProcessingError(ProcessingFailureCause.ExtractorException,
-                        error, ExceptionUtils.getRootCauseMessage(e)));
-            }
+        final CompiledExtractorChain chain = extractors.get(msg.getSourceInputId());
+        if (chain != null) {
+            chain.run(msg, (extractor, e) -> handleExtractorException(msg, extractor, e));
         }
 
         return false;
     }
 
+    private void handleExtractorException(Message msg, Extractor extractor, Exception e) {
+        extractor.incrementExceptions();
+        final String error = "Could not apply extractor <" + extractor.getTitle() + "(" + extractor.getId() + ")>";
+        if (LOG.isDebugEnabled()) {
+            LOG.error(error + " to message " + msg.getId(), e);
+        } else {
+            LOG.error("{} to message {}:\n{}", error, msg.getId(), ExceptionUtils.getShortenedStackTrace(e));
+        }
+        msg.addProcessingError(new Message.ProcessingError(ProcessingFailureCause.ExtractorException,
+                error, ExceptionUtils.getRootCauseMessage(e)));
+    }
+
     @Subscribe
     @SuppressWarnings("unused")
     public void handleInputCreate(final InputCreated event) {
@@ -159,7 +158,7 @@ public class ExtractorFilter implements MessageFilter {
                     .sorted(Comparator.comparingLong(Extractor::getOrder))
                     .collect(Collectors.toList());
 
-            extractors.put(inputId, ImmutableList.copyOf(sortedExtractors));
+            extractors.put(inputId, CompiledExtractorChain.compile(sortedExtractors));
         } catch (NotFoundException e) {
             LOG.warn("Unable to load input <{}>: {}", inputId, e.getMessage());
         }
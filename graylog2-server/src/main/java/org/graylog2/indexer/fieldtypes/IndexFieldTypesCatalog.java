@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.fieldtypes;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable, versioned in-memory copy of all stored index field types, indexed by index name, index set and field name.
+ */
+class IndexFieldTypesCatalog {
+    static final IndexFieldTypesCatalog EMPTY = new IndexFieldTypesCatalog(0L, Collections.emptyMap());
+
+    private final long version;
+    private final ImmutableMap<String, IndexFieldTypesDTO> byIndexName;
+    private final ImmutableListMultimap<String, IndexFieldTypesDTO> byIndexSetId;
+    private final ImmutableListMultimap<String, IndexFieldTypesDTO> byFieldName;
+
+    private IndexFieldTypesCatalog(long version, Map<String, IndexFieldTypesDTO> byIndexName) {
+        this.version = version;
+        this.byIndexName = ImmutableMap.copyOf(byIndexName);
+
+        final ImmutableListMultimap.Builder<String, IndexFieldTypesDTO> indexSets = ImmutableListMultimap.builder();
+        final ImmutableListMultimap.Builder<String, IndexFieldTypesDTO> fieldNames = ImmutableListMultimap.builder();
+        for (IndexFieldTypesDTO dto : byIndexName.values()) {
+            indexSets.put(dto.indexSetId(), dto);
+            dto.fields().stream()
+                    .map(FieldTypeDTO::fieldName)
+                    .distinct()
+                    .forEach(fieldName -> fieldNames.put(fieldName, dto));
+        }
+        this.byIndexSetId = indexSets.build();
+        this.byFieldName = fieldNames.build();
+    }
+
+    static IndexFieldTypesCatalog of(long version, Collection<IndexFieldTypesDTO> indexFieldTypes) {
+        return new IndexFieldTypesCatalog(version, indexFieldTypes.stream()
+                .collect(Collectors.toMap(IndexFieldTypesDTO::indexName, Function.identity(), (first, second) -> second, LinkedHashMap::new)));
+    }
+
+    /**
+     * Returns a catalog in which the entries of the given indices are replaced by the given, freshly loaded entries,
+     * or this catalog if nothing has changed.
+     */
+    IndexFieldTypesCatalog update(Set<String> indexNames, Collection<IndexFieldTypesDTO> loaded) {
+        final Map<String, IndexFieldTypesDTO> updated = new LinkedHashMap<>(byIndexName);
+        final Set<String> loadedIndexNames = loaded.stream().map(IndexFieldTypesDTO::indexName).collect(Collectors.toSet());
+        indexNames.stream().filter(indexName -> !loadedIndexNames.contains(indexName)).forEach(updated::remove);
+        // replacing keeps the position of existing entries
+        loaded.forEach(dto -> updated.put(dto.indexName(), dto));
+
+        return updated.equals(byIndexName) ? this : new IndexFieldTypesCatalog(version + 1, updated);
+    }
+
+    long version() {
+        return version;
+    }
+
+    Collection<IndexFieldTypesDTO> all() {
+        return byIndexName.values();
+    }
+
+    Collection<IndexFieldTypesDTO> forIndexSets(Collection<String> indexSetIds) {
+        if (indexSetIds.size() == 1) {
+            return byIndexSetId.get(indexSetIds.iterator().next());
+        }
+        return indexSetIds.stream()
+                .distinct()
+                .flatMap(indexSetId -> byIndexSetId.get(indexSetId).stream())
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    Collection<IndexFieldTypesDTO> forFieldNames(Collection<String> fieldNames) {
+        final Set<IndexFieldTypesDTO> result = new LinkedHashSet<>();
+        fieldNames.forEach(fieldName -> result.addAll(byFieldName.get(fieldName)));
+        return ImmutableList.copyOf(result);
+    }
+
+    Collection<IndexFieldTypesDTO> forFieldNamesAndIndices(Collection<String> fieldNames, Collection<String> indexNames) {
+        final Set<String> fieldNameSet = Set.copyOf(fieldNames);
+        return indexNames.stream()
+                .distinct()
+                .map(byIndexName::get)
+                .filter(dto -> dto != null && dto.fields().stream().anyMatch(field -> fieldNameSet.contains(field.fieldName())))
+                .collect(ImmutableList.toImmutableList());
+    }
+}
@@ -16,19 +16,31 @@
  */
 package org.graylog2.indexer.fieldtypes;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import com.mongodb.BasicDBObject;
 import org.bson.types.ObjectId;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.MongoConnection;
 import org.graylog2.database.MongoDBUpsertRetryer;
+import org.graylog2.events.ClusterEventBus;
+import org.graylog2.indexer.fieldtypes.events.IndexFieldTypesUpdatedEvent;
+import org.graylog2.indexer.indexset.events.IndexSetCreatedEvent;
+import org.graylog2.indexer.indexset.events.IndexSetDeletedEvent;
 import org.graylog2.streams.StreamService;
+import org.graylog2.streams.events.StreamDeletedEvent;
+import org.graylog2.streams.events.StreamsChangedEvent;
 import org.mongojack.DBQuery;
 import org.mongojack.JacksonDBCollection;
 import org.mongojack.WriteResult;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import java.util.Collection;
 import java.util.Locale;
 import java.util.Objects;
@@ -38,18 +50,33 @@ import java.util.stream.Collectors;
 
 /**
  * Manages the "index_field_types" MongoDB collection.
+ * <p>
+ * Lookups are answered from an in-memory {@link IndexFieldTypesCatalog}, which is loaded on first use. Changes are
+ * applied to it right away and announced to the other nodes with an {@link IndexFieldTypesUpdatedEvent}.
  */
+@Singleton
 public class IndexFieldTypesService {
     private static final String FIELDS_FIELD_NAMES = String.format(Locale.US, "%s.%s", IndexFieldTypesDTO.FIELD_FIELDS, FieldTypeDTO.FIELD_NAME);
 
     private final JacksonDBCollection<IndexFieldTypesDTO, ObjectId> db;
     private final StreamService streamService;
+    private final ClusterEventBus clusterEventBus;
+
+    private final Object catalogLock = new Object();
+    private volatile IndexFieldTypesCatalog catalog = null;
+    // stream ids -> index set ids
+    private final Cache<Set<String>, Set<String>> indexSetIdsByStreams = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .build();
 
     @Inject
     public IndexFieldTypesService(MongoConnection mongoConnection,
                                   StreamService streamService,
-                                  MongoJackObjectMapperProvider objectMapperProvider) {
+                                  MongoJackObjectMapperProvider objectMapperProvider,
+                                  EventBus eventBus,
+                                  ClusterEventBus clusterEventBus) {
         this.streamService = streamService;
+        this.clusterEventBus = clusterEventBus;
         this.db = JacksonDBCollection.wrap(mongoConnection.getDatabase().getCollection("index_field_types"),
                 IndexFieldTypesDTO.class,
                 ObjectId.class,
@@ -62,6 +89,8 @@ public class IndexFieldTypesService {
         this.db.createIndex(new BasicDBObject(IndexFieldTypesDTO.FIELD_INDEX_NAME, 1), new BasicDBObject("unique", true));
         this.db.createIndex(new BasicDBObject(FIELDS_FIELD_NAMES, 1));
         this.db.createIndex(new BasicDBObject(IndexFieldTypesDTO.FIELD_INDEX_SET_ID, 1));
+
+        eventBus.register(this);
     }
 
     public Optional<IndexFieldTypesDTO> get(String idOrIndexName) {
@@ -75,6 +104,7 @@ public class IndexFieldTypesService {
 
     public IndexFieldTypesDTO save(IndexFieldTypesDTO dto) {
         final WriteResult<IndexFieldTypesDTO, ObjectId> save = db.save(dto);
+        changed(ImmutableSet.of(dto.indexName()));
         return save.getSavedObject();
     }
 
@@ -88,6 +118,7 @@ public class IndexFieldTypesService {
                 true,
                 false
         ));
+        changed(ImmutableSet.of(dto.indexName()));
 
         final Object upsertedId = update.getUpsertedId();
         if (upsertedId instanceof ObjectId) {
@@ -100,48 +131,116 @@ public class IndexFieldTypesService {
 
     public void delete(String idOrIndexName) {
         try {
-            db.removeById(new ObjectId(idOrIndexName));
+            final ObjectId id = new ObjectId(idOrIndexName);
+            final Optional<IndexFieldTypesDTO> existing = Optional.ofNullable(db.findOneById(id));
+            db.removeById(id);
+            existing.ifPresent(dto -> changed(ImmutableSet.of(dto.indexName())));
         } catch (IllegalArgumentException e) {
             // Not an ObjectId, try again with index_name
             db.remove(DBQuery.is(IndexFieldTypesDTO.FIELD_INDEX_NAME, idOrIndexName));
+            changed(ImmutableSet.of(idOrIndexName));
         }
     }
 
     public Collection<IndexFieldTypesDTO> findForIndexSet(String indexSetId) {
-        return findByQuery(DBQuery.is(IndexFieldTypesDTO.FIELD_INDEX_SET_ID, indexSetId));
+        return catalog().forIndexSets(ImmutableSet.of(indexSetId));
     }
 
     public Collection<IndexFieldTypesDTO> findForIndexSets(Collection<String> indexSetIds) {
-        return findByQuery(
-                DBQuery.in(IndexFieldTypesDTO.FIELD_INDEX_SET_ID, indexSetIds)
-        );
+        return catalog().forIndexSets(indexSetIds);
     }
 
     public Collection<IndexFieldTypesDTO> findForFieldNames(Collection<String> fieldNames) {
-        return findByQuery(DBQuery.in(FIELDS_FIELD_NAMES, fieldNames));
+        return catalog().forFieldNames(fieldNames);
     }
 
     public Collection<IndexFieldTypesDTO> findForFieldNamesAndIndices(Collection<String> fieldNames, Collection<String> indexNames) {
-        final DBQuery.Query query = DBQuery.and(
-                DBQuery.in(IndexFieldTypesDTO.FIELD_INDEX_NAME, indexNames),
-                DBQuery.in(FIELDS_FIELD_NAMES, fieldNames)
-        );
-
-        return findByQuery(query);
+        return catalog().forFieldNamesAndIndices(fieldNames, indexNames);
     }
 
     public Collection<IndexFieldTypesDTO> findForStreamIds(Collection<String> streamIds) {
-        final Set<String> indexSetIds = streamService.loadByIds(streamIds)
+        final Set<String> indexSetIds = indexSetIdsByStreams.get(ImmutableSet.copyOf(streamIds), ids -> streamService.loadByIds(ids)
                 .stream()
                 .filter(Objects::nonNull)
                 .map(stream -> stream.getIndexSet().getConfig().id())
-                .collect(Collectors.toSet());
+                .collect(Collectors.toSet()));
 
         return findForIndexSets(indexSetIds);
     }
 
     public Collection<IndexFieldTypesDTO> findAll() {
-        return findByQuery(DBQuery.empty());
+        return catalog().all();
+    }
+
+    /**
+     * @return the version of the in-memory catalog, which changes whenever stored field types change
+     */
+    public long catalogVersion() {
+        return catalog().version();
+    }
+
+    private IndexFieldTypesCatalog catalog() {
+        final IndexFieldTypesCatalog current = this.catalog;
+        if (current != null) {
+            return current;
+        }
+        synchronized (catalogLock) {
+            if (this.catalog == null) {
+                this.catalog = IndexFieldTypesCatalog.of(1L, findByQuery(DBQuery.empty()));
+            }
+            return this.catalog;
+        }
+    }
+
+    private void changed(Set<String> indexNames) {
+        if (reload(indexNames)) {
+            clusterEventBus.post(IndexFieldTypesUpdatedEvent.create(indexNames));
+        }
+    }
+
+    /**
+     * Reloads the field types of the given indices into the in-memory catalog.
+     *
+     * @return true if the catalog has changed
+     */
+    private boolean reload(Set<String> indexNames) {
+        synchronized (catalogLock) {
+            final IndexFieldTypesCatalog current = this.catalog;
+            if (current == null) {
+                // nothing loaded yet, the initial load picks up all changes
+                return true;
+            }
+            final IndexFieldTypesCatalog updated = current.update(indexNames,
+                    findByQuery(DBQuery.in(IndexFieldTypesDTO.FIELD_INDEX_NAME, indexNames)));
+            this.catalog = updated;
+            return updated != current;
+        }
+    }
+
+    @Subscribe
+    public void handleIndexFieldTypesUpdated(IndexFieldTypesUpdatedEvent event) {
+        // changes of this node have already been applied, in that case this is a no-op
+        reload(event.indices());
+    }
+
+    @Subscribe
+    public void handleStreamsChanged(StreamsChangedEvent event) {
+        indexSetIdsByStreams.invalidateAll();
+    }
+
+    @Subscribe
+    public void handleStreamDeleted(StreamDeletedEvent event) {
+        indexSetIdsByStreams.invalidateAll();
+    }
+
+    @Subscribe
+    public void handleIndexSetCreated(IndexSetCreatedEvent event) {
+        indexSetIdsByStreams.invalidateAll();
+    }
+
+    @Subscribe
+    public void handleIndexSetDeleted(IndexSetDeletedEvent event) {
+        indexSetIdsByStreams.invalidateAll();
     }
 
     private Collection<IndexFieldTypesDTO> findByQuery(DBQuery.Query query) {
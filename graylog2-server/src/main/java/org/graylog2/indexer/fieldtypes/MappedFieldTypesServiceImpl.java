@@ -16,6 +16,8 @@
  */
 package org.graylog2.indexer.fieldtypes;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import org.graylog.plugins.views.search.elasticsearch.IndexLookup;
@@ -43,7 +45,10 @@ public class MappedFieldTypesServiceImpl implements MappedFieldTypesService {
     private final FieldTypeMapper fieldTypeMapper;
     private final IndexLookup indexLookup;
     private final boolean streamAwareFieldTypes;
-
+    // merged field types by the stored field types they are computed from
+    private final Cache<CacheKey, Set<MappedFieldTypeDTO>> mergedFieldTypes = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .build();
 
     @Inject
     public MappedFieldTypesServiceImpl(final Configuration configuration,
@@ -62,6 +67,15 @@ public class MappedFieldTypesServiceImpl implements MappedFieldTypesService {
     public Set<MappedFieldTypeDTO> fieldTypesByStreamIds(Collection<String> streamIds, TimeRange timeRange) {
         final Set<String> indexSets = streamService.indexSetIdsByIds(streamIds);
         final Set<String> indexNames = this.indexLookup.indexNamesForStreamsInTimeRange(ImmutableSet.copyOf(streamIds), timeRange);
+        // the version has to be read first, so a concurrent change can't be cached for an outdated version
+        final CacheKey cacheKey = new CacheKey(indexFieldTypesService.catalogVersion(),
+                ImmutableSet.copyOf(indexSets),
+                ImmutableSet.copyOf(indexNames),
+                streamAwareFieldTypes ? ImmutableSet.copyOf(streamIds) : ImmutableSet.of());
+        return mergedFieldTypes.get(cacheKey, key -> fieldTypesOf(indexSets, indexNames, streamIds));
+    }
+
+    private Set<MappedFieldTypeDTO> fieldTypesOf(Set<String> indexSets, Set<String> indexNames, Collection<String> streamIds) {
         final Set<FieldTypeDTO> fieldTypeDTOs = this.indexFieldTypesService.findForIndexSets(indexSets)
                 .stream()
                 .filter(fieldTypes -> indexNames.contains(fieldTypes.indexName()))
@@ -69,8 +83,8 @@ public class MappedFieldTypesServiceImpl implements MappedFieldTypesService {
                 .filter(fieldTypeDTO -> !streamAwareFieldTypes || !Collections.disjoint(fieldTypeDTO.streams(), streamIds))
                 .collect(Collectors.toSet());
 
-        return mergeCompoundFieldTypes(fieldTypeDTOs.stream()
-                .map(this::mapPhysicalFieldType));
+        return ImmutableSet.copyOf(mergeCompoundFieldTypes(fieldTypeDTOs.stream()
+                .map(this::mapPhysicalFieldType)));
     }
 
     private MappedFieldTypeDTO mapPhysicalFieldType(FieldTypeDTO fieldType) {
@@ -110,4 +124,6 @@ public class MappedFieldTypesServiceImpl implements MappedFieldTypesService {
                 .collect(Collectors.toSet());
 
     }
+
+    private record CacheKey(long catalogVersion, Set<String> indexSets, Set<String> indexNames, Set<String> streamIds) {}
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Immutable interval index over index ranges, answering which ranges overlap a given time range.
+ * <p>
+ * Ranges are sorted by their begin and augmented with the maximum end of all ranges up to each position, which allows
+ * to stop scanning as soon as no earlier range can reach into the requested time range.
+ */
+class IndexRangeIntervals {
+    static final IndexRangeIntervals EMPTY = of(Collections.emptyList());
+
+    private final IndexRange[] rangesByBegin;
+    private final long[] begins;
+    private final long[] maxEnds;
+
+    private IndexRangeIntervals(IndexRange[] rangesByBegin) {
+        this.rangesByBegin = rangesByBegin;
+        this.begins = new long[rangesByBegin.length];
+        this.maxEnds = new long[rangesByBegin.length];
+
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < rangesByBegin.length; i++) {
+            begins[i] = rangesByBegin[i].begin().getMillis();
+            maxEnd = Math.max(maxEnd, rangesByBegin[i].end().getMillis());
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    static IndexRangeIntervals of(Collection<? extends IndexRange> ranges) {
+        final IndexRange[] sorted = ranges.toArray(new IndexRange[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(range -> range.begin().getMillis()));
+        return new IndexRangeIntervals(sorted);
+    }
+
+    int size() {
+        return rangesByBegin.length;
+    }
+
+    /**
+     * Adds all ranges with {@code begin <= end} and {@code end >= begin} (both inclusive) to the given builder.
+     */
+    void addOverlapping(long begin, long end, ImmutableSortedSet.Builder<IndexRange> result) {
+        // index of the first range starting after the requested end
+        int position = Arrays.binarySearch(begins, end);
+        if (position < 0) {
+            position = -position - 1;
+        } else {
+            while (position < begins.length && begins[position] == end) {
+                position++;
+            }
+        }
+
+        for (int i = position - 1; i >= 0 && maxEnds[i] >= begin; i--) {
+            if (rangesByBegin[i].end().getMillis() >= begin) {
+                result.add(rangesByBegin[i]);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.graylog2.indexer.ranges;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.EventBus;
@@ -31,11 +32,13 @@ import org.graylog2.audit.AuditEventSender;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.MongoConnection;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.indexer.IndexSetRegistry;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.indices.events.IndicesClosedEvent;
 import org.graylog2.indexer.indices.events.IndicesDeletedEvent;
 import org.graylog2.indexer.indices.events.IndicesReopenedEvent;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
 import org.graylog2.indexer.searches.IndexRangeStats;
 import org.graylog2.plugin.system.NodeId;
 import org.joda.time.DateTime;
@@ -49,7 +52,10 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.concurrent.TimeUnit;
 
@@ -67,6 +73,12 @@ public class MongoIndexRangeService implements IndexRangeService {
     private final AuditEventSender auditEventSender;
     private final NodeId nodeId;
     private final JacksonDBCollection<MongoIndexRange, ObjectId> collection;
+    private final ClusterEventBus clusterEventBus;
+
+    // In-memory copy of all index ranges, loaded on first use and kept up to date on changes of this or other nodes
+    private final Object rangesLock = new Object();
+    private final Map<String, IndexRange> rangesByIndex = new HashMap<>();
+    private volatile IndexRangeIntervals intervals = null;
 
     @Inject
     public MongoIndexRangeService(MongoConnection mongoConnection,
@@ -75,11 +87,13 @@ public class MongoIndexRangeService implements IndexRangeService {
                                   IndexSetRegistry indexSetRegistry,
                                   AuditEventSender auditEventSender,
                                   NodeId nodeId,
-                                  EventBus eventBus) {
+                                  EventBus eventBus,
+                                  ClusterEventBus clusterEventBus) {
         this.indices = indices;
         this.indexSetRegistry = indexSetRegistry;
         this.auditEventSender = auditEventSender;
         this.nodeId = nodeId;
+        this.clusterEventBus = clusterEventBus;
         this.collection = JacksonDBCollection.wrap(
                 mongoConnection.getDatabase().getCollection(COLLECTION_NAME),
                 MongoIndexRange.class,
@@ -110,21 +124,52 @@ public class MongoIndexRangeService implements IndexRangeService {
 
     @Override
     public SortedSet<IndexRange> find(DateTime begin, DateTime end) {
-        final DBQuery.Query query = DBQuery.or(
-                DBQuery.and(
-                        DBQuery.notExists("start"),  // "start" has been used by the old index ranges in MongoDB
-                        DBQuery.lessThanEquals(IndexRange.FIELD_BEGIN, end.getMillis()),
-                        DBQuery.greaterThanEquals(IndexRange.FIELD_END, begin.getMillis())
-                ),
-                DBQuery.and(
-                        DBQuery.notExists("start"),  // "start" has been used by the old index ranges in MongoDB
-                        DBQuery.lessThanEquals(IndexRange.FIELD_BEGIN, 0L),
-                        DBQuery.greaterThanEquals(IndexRange.FIELD_END, 0L)
-                )
-        );
-
-        try (DBCursor<MongoIndexRange> indexRanges = collection.find(query)) {
-            return ImmutableSortedSet.copyOf(IndexRange.COMPARATOR, (Iterator<? extends IndexRange>) indexRanges);
+        final IndexRangeIntervals current = intervals();
+        final ImmutableSortedSet.Builder<IndexRange> result = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
+
+        current.addOverlapping(begin.getMillis(), end.getMillis(), result);
+        // unknown index ranges (begin and end at 0) are always included, see createUnknownRange()
+        current.addOverlapping(0L, 0L, result);
+
+        return result.build();
+    }
+
+    private IndexRangeIntervals intervals() {
+        final IndexRangeIntervals current = this.intervals;
+        if (current != null) {
+            return current;
+        }
+        synchronized (rangesLock) {
+            if (this.intervals == null) {
+                final Stopwatch sw = Stopwatch.createStarted();
+                rangesByIndex.clear();
+                try (DBCursor<MongoIndexRange> cursor = collection.find(DBQuery.notExists("start"))) {
+                    cursor.forEachRemaining(range -> rangesByIndex.put(range.indexName(), range));
+                }
+                this.intervals = IndexRangeIntervals.of(rangesByIndex.values());
+                LOG.debug("Loaded {} index ranges in {}ms.", rangesByIndex.size(), sw.stop().elapsed(TimeUnit.MILLISECONDS));
+            }
+            return this.intervals;
+        }
+    }
+
+    /**
+     * Reloads the ranges of the given indices from the database into the in-memory copy.
+     */
+    private void refresh(Collection<String> indexNames) {
+        synchronized (rangesLock) {
+            if (this.intervals == null) {
+                // nothing loaded yet, the complete load will pick up the changes
+                return;
+            }
+            indexNames.forEach(rangesByIndex::remove);
+            final DBQuery.Query query = DBQuery.and(
+                    DBQuery.notExists("start"),
+                    DBQuery.in(IndexRange.FIELD_INDEX_NAME, indexNames));
+            try (DBCursor<MongoIndexRange> cursor = collection.find(query)) {
+                cursor.forEachRemaining(range -> rangesByIndex.put(range.indexName(), range));
+            }
+            this.intervals = IndexRangeIntervals.of(rangesByIndex.values());
         }
     }
 
@@ -158,17 +203,36 @@ public class MongoIndexRangeService implements IndexRangeService {
 
     @Override
     public WriteResult<MongoIndexRange, ObjectId> save(IndexRange indexRange) {
-        remove(indexRange.indexName());
+        // replacing the range is a single update, so only post one event for it
+        removeRange(indexRange.indexName());
         final WriteResult<MongoIndexRange, ObjectId> save = collection.save(MongoIndexRange.create(indexRange));
+        refresh(ImmutableSet.of(indexRange.indexName()));
+        clusterEventBus.post(IndexRangesUpdatedEvent.create(indexRange.indexName()));
         return save;
     }
 
     @Override
     public boolean remove(String index) {
+        final boolean removed = removeRange(index);
+        if (removed) {
+            refresh(ImmutableSet.of(index));
+            clusterEventBus.post(IndexRangesUpdatedEvent.create(index));
+        }
+        return removed;
+    }
+
+    private boolean removeRange(String index) {
         final WriteResult<MongoIndexRange, ObjectId> remove = collection.remove(DBQuery.in(IndexRange.FIELD_INDEX_NAME, index));
         return remove.getN() > 0;
     }
 
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handleIndexRangesUpdated(IndexRangesUpdatedEvent event) {
+        // also delivered for changes of this node, which have already been applied and only cause a cheap reload
+        refresh(event.indices());
+    }
+
     @Subscribe
     @AllowConcurrentEvents
     public void handleIndexDeletion(IndicesDeletedEvent event) {
@@ -20,11 +20,11 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.CompositeByteBuf;
 import org.graylog2.inputs.codecs.gelf.GELFMessage;
-import org.graylog2.inputs.codecs.gelf.GELFMessageChunk;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
 import org.slf4j.Logger;
@@ -34,26 +34,45 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static com.codahale.metrics.MetricRegistry.name;
-import static java.util.Objects.requireNonNull;
-
+import static org.graylog2.inputs.codecs.gelf.GELFMessageChunk.HEADER_PART_HASH_START;
+import static org.graylog2.inputs.codecs.gelf.GELFMessageChunk.HEADER_PART_SEQCNT_START;
+import static org.graylog2.inputs.codecs.gelf.GELFMessageChunk.HEADER_PART_SEQNUM_START;
+import static org.graylog2.inputs.codecs.gelf.GELFMessageChunk.HEADER_TOTAL_LENGTH;
+
+/**
+ * Reassembles chunked GELF messages.
+ * <p>
+ * Chunks are kept as retained slices of the received buffer and the complete message is handed on as a
+ * {@link CompositeByteBuf} of those slices, which is released by the downstream handler. Chunks which only use a small
+ * part of their buffer (e.g. a 64KB UDP receive buffer) are copied instead, so a pending chunk doesn't pin the whole
+ * buffer until its message is complete or expired.
+ * Incomplete messages are expired by a timing wheel with one slot per {@link #CHECK_PERIOD}, so the eviction task
+ * only looks at the entries whose validity period has passed.
+ */
 public class GelfChunkAggregator implements CodecAggregator {
     private static final Logger log = LoggerFactory.getLogger(GelfChunkAggregator.class);
 
     private static final int MAX_CHUNKS = 128;
+    // a slice is only kept if its buffer is at most this many times larger than the slice
+    private static final int MAX_SLICE_OVERHEAD = 4;
     public static final Result VALID_EMPTY_RESULT = new Result(null, true);
     public static final Result INVALID_RESULT = new Result(null, false);
     public static final int VALIDITY_PERIOD = 5000; // millis
     private static final long CHECK_PERIOD = 1000;
+    // enough slots to never reuse a slot that can still contain entries of a tick which hasn't been processed yet
+    private static final int WHEEL_SIZE = (int) (VALIDITY_PERIOD / CHECK_PERIOD) + 3;
 
     public static final String CHUNK_COUNTER = name(GelfChunkAggregator.class, "total-chunks");
     public static final String WAITING_MESSAGES = name(GelfChunkAggregator.class, "waiting-messages");
@@ -62,8 +81,9 @@ public class GelfChunkAggregator implements CodecAggregator {
     public static final String EXPIRED_CHUNKS = name(GelfChunkAggregator.class, "expired-chunks");
     public static final String DUPLICATE_CHUNKS = name(GelfChunkAggregator.class, "duplicate-chunks");
 
-    private final ConcurrentMap<String, ChunkEntry> chunks = Maps.newConcurrentMap();
-    private final ConcurrentSkipListSet<ChunkEntry> sortedEvictionSet = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<Long, ChunkEntry> chunks = Maps.newConcurrentMap();
+    private final List<Set<ChunkEntry>> expiryWheel;
+    private volatile long lastExpiredTick;
     private final Counter chunkCounter;
     private final Counter waitingMessages;
     private final Counter expiredMessages;
@@ -73,9 +93,15 @@ public class GelfChunkAggregator implements CodecAggregator {
 
     @Inject
     public GelfChunkAggregator(@Named("daemonScheduler") ScheduledExecutorService scheduler, MetricRegistry metricRegistry) {
+        final ImmutableList.Builder<Set<ChunkEntry>> wheel = ImmutableList.builder();
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+        expiryWheel = wheel.build();
+        lastExpiredTick = tickOf(Tools.nowUTC().getMillis()) - 1;
         scheduler.scheduleAtFixedRate(new ChunkEvictionTask(), VALIDITY_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
         chunkCounter = metricRegistry.counter(CHUNK_COUNTER);
-        // this is a counter instead of a Gauge, because calling sortedEvictionSet.size() is expensive
+        // this is a counter instead of a Gauge, because calling chunks.size() is expensive
         waitingMessages = metricRegistry.counter(WAITING_MESSAGES);
         completeMessages = metricRegistry.counter(COMPLETE_MESSAGES);
         expiredMessages = metricRegistry.counter(EXPIRED_MESSAGES);
@@ -86,17 +112,12 @@ public class GelfChunkAggregator implements CodecAggregator {
     @Nonnull
     @Override
     public Result addChunk(ByteBuf buffer) {
-        final byte[] readable = new byte[buffer.readableBytes()];
-        buffer.readBytes(readable, buffer.readerIndex(), buffer.readableBytes());
-
-        final GELFMessage msg = new GELFMessage(readable);
-
         final ByteBuf aggregatedBuffer;
-        switch (msg.getGELFType()) {
+        switch (GELFMessage.getGELFType(buffer)) {
             case CHUNKED:
                 try {
                     chunkCounter.inc();
-                    aggregatedBuffer = checkForCompletion(msg);
+                    aggregatedBuffer = checkForCompletion(buffer);
                     if (aggregatedBuffer == null) {
                         return VALID_EMPTY_RESULT;
                     }
@@ -108,7 +129,7 @@ public class GelfChunkAggregator implements CodecAggregator {
             case ZLIB:
             case GZIP:
             case UNCOMPRESSED:
-                aggregatedBuffer = Unpooled.wrappedBuffer(readable);
+                aggregatedBuffer = retainedSliceOrCopy(buffer, buffer.readerIndex(), buffer.readableBytes());
                 break;
             case UNSUPPORTED:
                 return INVALID_RESULT;
@@ -123,99 +144,151 @@ public class GelfChunkAggregator implements CodecAggregator {
      * If the message isn't complete, it adds the chunk to the internal buffer and waits for more incoming messages.
      * Outdated chunks are being purged regularly.
      *
-     * @param gelfMessage the gelf message chunk
-     * @return null or a {@link org.graylog2.plugin.journal.RawMessage raw message} object
+     * @param buffer the buffer containing the gelf message chunk, including the chunk header
+     * @return null or the reassembled message payload
      */
     @Nullable
-    private ByteBuf checkForCompletion(GELFMessage gelfMessage) {
+    private ByteBuf checkForCompletion(ByteBuf buffer) {
         if (!chunks.isEmpty() && log.isDebugEnabled()) {
             log.debug("Dumping GELF chunk map [chunks for {} messages]:\n{}", chunks.size(), humanReadableChunkMap());
         }
-        final GELFMessageChunk chunk = new GELFMessageChunk(gelfMessage, null); // TODO second parameter
-        final int sequenceCount = chunk.getSequenceCount();
-
-        final String messageId = chunk.getId();
-
-        ChunkEntry entry = new ChunkEntry(sequenceCount, chunk.getArrival(), messageId);
+        if (buffer.readableBytes() < HEADER_TOTAL_LENGTH) {
+            throw new IllegalArgumentException("This GELF message chunk is too short. Cannot even contain the required header.");
+        }
+        final int readerIndex = buffer.readerIndex();
+        final long messageId = buffer.getLong(readerIndex + HEADER_PART_HASH_START);
+        final int sequenceNumber = buffer.getUnsignedByte(readerIndex + HEADER_PART_SEQNUM_START);
+        final int sequenceCount = buffer.getUnsignedByte(readerIndex + HEADER_PART_SEQCNT_START);
+        if (sequenceNumber >= sequenceCount) {
+            throw new IndexOutOfBoundsException("Chunk sequence number " + sequenceNumber + " exceeds sequence count " + sequenceCount);
+        }
 
-        final ChunkEntry existing = chunks.putIfAbsent(messageId, entry);
-        if (existing == null) {
-            // add this chunk entry to the eviction set
+        final ChunkEntry newEntry = new ChunkEntry(sequenceCount, Tools.nowUTC().getMillis(), messageId);
+        ChunkEntry entry = chunks.putIfAbsent(messageId, newEntry);
+        if (entry == null) {
+            // add this chunk entry to the expiry wheel
+            entry = newEntry;
             waitingMessages.inc();
-            sortedEvictionSet.add(entry);
-        } else {
-            // the entry is already in the eviction set and chunk map
-            entry = existing;
+            wheelSlot(entry).add(entry);
         }
 
-        final int sequenceNumber = chunk.getSequenceNumber();
+        final ByteBuf chunk = retainedSliceOrCopy(buffer, readerIndex + HEADER_TOTAL_LENGTH, buffer.readableBytes() - HEADER_TOTAL_LENGTH);
         if (!entry.payloadArray.compareAndSet(sequenceNumber, null, chunk)) {
-            log.error("Received duplicate chunk {} for message {} from {}", sequenceNumber, messageId, gelfMessage.getSourceAddress());
+            chunk.release();
+            log.error("Received duplicate chunk {} for message {}", sequenceNumber, Long.toHexString(messageId));
             duplicateChunks.inc();
             return null;
         }
+        if (chunks.get(messageId) != entry) {
+            // the entry has been expired or discarded concurrently, whoever removed it already released the other chunks
+            if (entry.payloadArray.compareAndSet(sequenceNumber, chunk, null)) {
+                chunk.release();
+            }
+            return null;
+        }
 
         final int chunkWatermark = entry.chunkSlotsWritten.incrementAndGet();
 
         if (chunkWatermark > MAX_CHUNKS) {
-            getAndCleanupEntry(messageId);
+            if (removeEntry(entry)) {
+                releaseChunks(entry);
+            }
             throw new IllegalStateException("Maximum number of chunks reached, discarding message");
         }
 
         if (chunkWatermark == sequenceCount) {
             // message is complete by chunk count, assemble and return it.
             // it might still be corrupt etc, but we've seen enough chunks
-            // remove before operating on it, to avoid racing too much with the clean up job, some race is inevitable, though.
-            entry = getAndCleanupEntry(messageId);
+            // remove before operating on it, the eviction task can't expire it anymore once it's gone from the map.
+            if (!removeEntry(entry)) {
+                return null;
+            }
 
-            final byte[] allChunks[] = new byte[sequenceCount][];
+            final CompositeByteBuf message = buffer.alloc().compositeBuffer(sequenceCount);
             for (int i = 0; i < entry.payloadArray.length(); i++) {
-                final GELFMessageChunk messageChunk = entry.payloadArray.get(i);
+                final ByteBuf messageChunk = entry.payloadArray.getAndSet(i, null);
                 if (messageChunk == null) {
-                    log.debug("Couldn't read chunk {} of message {}, skipping this chunk.", i, messageId);
+                    log.debug("Couldn't read chunk {} of message {}, skipping this chunk.", i, Long.toHexString(messageId));
                 } else {
-                    allChunks[i] = messageChunk.getData();
+                    message.addComponent(true, messageChunk);
                 }
             }
             completeMessages.inc();
-            return Unpooled.wrappedBuffer(allChunks);
+            return message;
         }
 
         // message isn't complete yet, check if we should remove the other parts as well
-        if (isOutdated(entry)) {
+        if (isOutdated(entry, Tools.nowUTC().getMillis())) {
             // chunks are outdated, the oldest came in over 5 seconds ago, clean them all up
-            log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", messageId, VALIDITY_PERIOD);
-            expireEntry(messageId);
+            log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", Long.toHexString(messageId), VALIDITY_PERIOD);
+            expireEntry(entry);
         }
 
         return null;
     }
 
-    private void expireEntry(String messageId) {
-        final ChunkEntry cleanupEntry = getAndCleanupEntry(messageId);
-        expiredMessages.inc();
-        expiredChunks.inc(cleanupEntry.chunkSlotsWritten.get());
+    private void expireEntry(ChunkEntry entry) {
+        if (removeEntry(entry)) {
+            expiredMessages.inc();
+            expiredChunks.inc(entry.chunkSlotsWritten.get());
+            releaseChunks(entry);
+        }
+    }
+
+    /**
+     * Removes the entry from the chunk map and the expiry wheel.
+     *
+     * @return {@code true} if the caller removed the entry and now owns its chunks, {@code false} if it was already gone
+     */
+    private boolean removeEntry(ChunkEntry entry) {
+        if (!chunks.remove(entry.id, entry)) {
+            return false;
+        }
+        wheelSlot(entry).remove(entry);
+        waitingMessages.dec();
+        return true;
+    }
+
+    private static ByteBuf retainedSliceOrCopy(ByteBuf buffer, int index, int length) {
+        if (buffer.capacity() > (long) length * MAX_SLICE_OVERHEAD) {
+            return buffer.copy(index, length);
+        }
+        return buffer.retainedSlice(index, length);
+    }
+
+    private static void releaseChunks(ChunkEntry entry) {
+        for (int i = 0; i < entry.payloadArray.length(); i++) {
+            final ByteBuf chunk = entry.payloadArray.getAndSet(i, null);
+            if (chunk != null) {
+                chunk.release();
+            }
+        }
     }
 
-    private boolean isOutdated(ChunkEntry entry) {
-        return (Tools.nowUTC().getMillis() - entry.firstTimestamp) > VALIDITY_PERIOD;
+    private static boolean isOutdated(ChunkEntry entry, long now) {
+        return (now - entry.firstTimestamp) > VALIDITY_PERIOD;
     }
 
-    private ChunkEntry getAndCleanupEntry(String id) {
-        final ChunkEntry entry = chunks.remove(id);
-        sortedEvictionSet.remove(entry);
-        waitingMessages.dec();
-        return entry;
+    private static long tickOf(long millis) {
+        return millis / CHECK_PERIOD;
+    }
+
+    private Set<ChunkEntry> wheelSlot(ChunkEntry entry) {
+        return wheelSlot(tickOf(entry.firstTimestamp + VALIDITY_PERIOD));
+    }
+
+    private Set<ChunkEntry> wheelSlot(long tick) {
+        return expiryWheel.get((int) Math.floorMod(tick, (long) WHEEL_SIZE));
     }
 
     private String humanReadableChunkMap() {
         final StringBuilder sb = new StringBuilder();
 
-        for (final Map.Entry<String, ChunkEntry> entry : chunks.entrySet()) {
-            sb.append("Message <").append(entry.getKey()).append("> ");
+        for (final Map.Entry<Long, ChunkEntry> entry : chunks.entrySet()) {
+            sb.append("Message <").append(Long.toHexString(entry.getKey())).append("> ");
             sb.append("\tChunks:\n");
             for (int i = 0; i < entry.getValue().payloadArray.length(); i++) {
-                final GELFMessageChunk chunk = entry.getValue().payloadArray.get(i);
+                final ByteBuf chunk = entry.getValue().payloadArray.get(i);
                 sb.append("\t\t").append(chunk == null ? "<not arrived yet>" : chunk).append("\n");
             }
         }
@@ -224,16 +297,16 @@ public class GelfChunkAggregator implements CodecAggregator {
     }
 
     @VisibleForTesting
-    static class ChunkEntry implements Comparable<ChunkEntry> {
+    static class ChunkEntry {
         protected final AtomicInteger chunkSlotsWritten = new AtomicInteger(0);
         protected final long firstTimestamp;
-        protected final AtomicReferenceArray<GELFMessageChunk> payloadArray;
-        protected final String id;
+        protected final AtomicReferenceArray<ByteBuf> payloadArray;
+        protected final long id;
 
-        public ChunkEntry(int chunkCount, long firstTimestamp, String id) {
+        public ChunkEntry(int chunkCount, long firstTimestamp, long id) {
             this.payloadArray = new AtomicReferenceArray<>(chunkCount);
             this.firstTimestamp = firstTimestamp;
-            this.id = requireNonNull(id);
+            this.id = id;
         }
 
         @Override
@@ -243,7 +316,7 @@ public class GelfChunkAggregator implements CodecAggregator {
 
             final ChunkEntry that = (ChunkEntry) o;
 
-            if (!id.equals(that.id)) return false;
+            if (id != that.id) return false;
             if (firstTimestamp != that.firstTimestamp) return false;
 
             //noinspection RedundantIfStatement
@@ -255,24 +328,10 @@ public class GelfChunkAggregator implements CodecAggregator {
             return Objects.hash(id, firstTimestamp);
         }
 
-        @Override
-        public int compareTo(@Nonnull ChunkEntry o) {
-            if (equals(o)) {
-                return 0;
-            }
-            // If two chunk entries have the same timestamp, we have to compare the IDs. Otherwise the removal from
-            // the eviction set might not work and leak memory.
-            // See: https://github.com/Graylog2/graylog2-server/issues/1462
-            if (firstTimestamp == o.firstTimestamp) {
-                return id.compareTo(o.id);
-            }
-            return firstTimestamp < o.firstTimestamp ? -1 : 1;
-        }
-
         @Override
         public String toString() {
             return MoreObjects.toStringHelper(this)
-                    .add("id", id)
+                    .add("id", Long.toHexString(id))
                     .add("firstTimestamp", firstTimestamp)
                     .add("chunkSlotsWritten", chunkSlotsWritten)
                     .toString();
@@ -284,21 +343,24 @@ public class GelfChunkAggregator implements CodecAggregator {
         @Override
         public void run() {
             try {
-                // loop until we've either evicted all outdated chunk entries, or the set is completely empty.
+                // only visit the wheel slots of ticks which have completely passed, all entries in them are outdated.
+                // if the task fell behind by more than a full rotation, looking at every slot once is enough.
                 // this task will run every second by default (see constant in constructor)
-                while (true) {
-                    // Check if eviction set is empty to avoid a NoElementException when calling first().
-                    if (sortedEvictionSet.isEmpty()) {
-                        break;
-                    }
-                    final ChunkEntry oldestChunkEntry = sortedEvictionSet.first();
-                    if (isOutdated(oldestChunkEntry)) {
-                        expireEntry(oldestChunkEntry.id);
-                    } else {
-                        log.debug("No more outdated chunk entries found to evict, leaving cleanup loop.");
-                        break;
+                final long now = Tools.nowUTC().getMillis();
+                final long currentTick = tickOf(now);
+                final long firstTick = Math.max(lastExpiredTick + 1, currentTick - WHEEL_SIZE);
+                for (long tick = firstTick; tick < currentTick; tick++) {
+                    final Set<ChunkEntry> slot = wheelSlot(tick);
+                    for (final ChunkEntry entry : slot) {
+                        // a slot is shared by ticks one rotation apart, so check each entry
+                        if (isOutdated(entry, now)) {
+                            // also drop entries which have been completed before they were added to the wheel
+                            slot.remove(entry);
+                            expireEntry(entry);
+                        }
                     }
                 }
+                lastExpiredTick = Math.max(lastExpiredTick, currentTick - 1);
             } catch (Exception e) {
                 // Make sure to never throw an exception out of this runnable, it's being run in an executor.
                 log.warn("Error while expiring GELF chunk entries", e);
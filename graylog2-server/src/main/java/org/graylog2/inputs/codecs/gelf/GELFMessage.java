@@ -16,6 +16,7 @@
  */
 package org.graylog2.inputs.codecs.gelf;
 
+import io.netty.buffer.ByteBuf;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.Tools;
 
@@ -50,6 +51,20 @@ public class GELFMessage {
         return Type.determineType(payload[0], payload[1]);
     }
 
+    /**
+     * Determine the GELF type of the readable bytes in the given buffer without copying them.
+     *
+     * @param payload the buffer holding a GELF message, the reader index is not modified
+     * @return the GELF type of the payload
+     */
+    public static Type getGELFType(ByteBuf payload) {
+        if (payload.readableBytes() < Type.HEADER_SIZE) {
+            throw new IllegalStateException("GELF message is too short. Not even the type header would fit.");
+        }
+        final int readerIndex = payload.readerIndex();
+        return Type.determineType(payload.getByte(readerIndex), payload.getByte(readerIndex + 1));
+    }
+
     /**
      * Return the JSON payload of the GELF message
      *
@@ -17,30 +17,39 @@
 package org.graylog2.inputs.transports;
 
 import com.github.joschi.jadconfig.util.Size;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.EventLoopGroup;
-import io.netty.handler.codec.Delimiters;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.handler.codec.http.HttpContentDecompressor;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpResponseEncoder;
 import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import org.graylog2.configuration.TLSProtocolsConfiguration;
+import org.graylog2.inputs.transports.netty.AutoReadThrottleHandler;
 import org.graylog2.inputs.transports.netty.EventLoopGroupFactory;
+import org.graylog2.inputs.transports.netty.HttpBulkStreamHandler;
 import org.graylog2.inputs.transports.netty.HttpHandler;
-import org.graylog2.inputs.transports.netty.LenientDelimiterBasedFrameDecoder;
 import org.graylog2.plugin.LocalMetricRegistry;
+import org.graylog2.plugin.ThrottleState;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
 import org.graylog2.plugin.configuration.fields.BooleanField;
 import org.graylog2.plugin.configuration.fields.ConfigurationField;
 import org.graylog2.plugin.configuration.fields.NumberField;
 import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.MisfireException;
 import org.graylog2.plugin.inputs.annotations.ConfigClass;
 import org.graylog2.plugin.inputs.annotations.FactoryClass;
 import org.graylog2.plugin.inputs.transports.AbstractTcpTransport;
+import org.graylog2.plugin.inputs.transports.ThrottleStateEvaluator;
+import org.graylog2.plugin.inputs.transports.ThrottleableTransport;
 import org.graylog2.plugin.inputs.transports.Transport;
 import org.graylog2.plugin.inputs.util.ThroughputCounter;
 
@@ -63,6 +72,11 @@ public class HttpTransport extends AbstractTcpTransport {
     protected final boolean enableCors;
     protected final int maxChunkSize;
     private final int idleWriterTimeout;
+    private final boolean throttlingAllowed;
+    private final EventBus serverEventBus;
+    private final ThrottleStateEvaluator throttleStateEvaluator = new ThrottleStateEvaluator(getClass().getSimpleName());
+    private final ChannelGroup throttledChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private volatile boolean throttled = false;
 
     @AssistedInject
     public HttpTransport(@Assisted Configuration configuration,
@@ -71,7 +85,8 @@ public class HttpTransport extends AbstractTcpTransport {
                          NettyTransportConfiguration nettyTransportConfiguration,
                          ThroughputCounter throughputCounter,
                          LocalMetricRegistry localRegistry,
-                         TLSProtocolsConfiguration tlsConfiguration) {
+                         TLSProtocolsConfiguration tlsConfiguration,
+                         EventBus serverEventBus) {
         super(configuration,
               throughputCounter,
               localRegistry,
@@ -84,6 +99,37 @@ public class HttpTransport extends AbstractTcpTransport {
         this.enableCors = configuration.getBoolean(CK_ENABLE_CORS);
         this.maxChunkSize = parseMaxChunkSize(configuration);
         this.idleWriterTimeout = configuration.intIsSet(CK_IDLE_WRITER_TIMEOUT) ? configuration.getInt(CK_IDLE_WRITER_TIMEOUT, DEFAULT_IDLE_WRITER_TIMEOUT) : DEFAULT_IDLE_WRITER_TIMEOUT;
+        this.throttlingAllowed = configuration.getBoolean(ThrottleableTransport.CK_THROTTLING_ALLOWED);
+        this.serverEventBus = serverEventBus;
+    }
+
+    @Override
+    public void launch(MessageInput input) throws MisfireException {
+        super.launch(input);
+        if (throttlingAllowed) {
+            serverEventBus.register(this);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (throttlingAllowed) {
+            serverEventBus.unregister(this);
+        }
+        super.stop();
+    }
+
+    /**
+     * Stops reading from all connections while the journal is throttled, which makes senders block through TCP
+     * flow control instead of us buffering their requests.
+     */
+    @Subscribe
+    public void updateThrottleState(ThrottleState throttleState) {
+        final boolean nowThrottled = throttleStateEvaluator.isThrottled(throttleState);
+        if (nowThrottled != throttled) {
+            throttled = nowThrottled;
+            throttledChannels.forEach(channel -> channel.config().setAutoRead(!nowThrottled));
+        }
     }
 
     /**
@@ -104,14 +150,18 @@ public class HttpTransport extends AbstractTcpTransport {
             handlers.put("read-timeout-handler", () -> new ReadTimeoutHandler(idleWriterTimeout, TimeUnit.SECONDS));
         }
 
+        if (throttlingAllowed) {
+            handlers.put("throttle-handler", () -> new AutoReadThrottleHandler(throttledChannels, () -> throttled));
+        }
         handlers.put("decoder", () -> new HttpRequestDecoder(DEFAULT_MAX_INITIAL_LINE_LENGTH, DEFAULT_MAX_HEADER_SIZE, maxChunkSize));
         handlers.put("decompressor", HttpContentDecompressor::new);
         handlers.put("encoder", HttpResponseEncoder::new);
-        handlers.put("aggregator", () -> new HttpObjectAggregator(maxChunkSize));
-        handlers.put("http-handler", () -> new HttpHandler(enableCors));
         if (enableBulkReceiving) {
-            handlers.put("http-bulk-newline-decoder",
-                    () -> new LenientDelimiterBasedFrameDecoder(maxChunkSize, Delimiters.lineDelimiter()));
+            // split the body into messages while it is being received instead of aggregating the whole request
+            handlers.put("http-bulk-handler", () -> new HttpBulkStreamHandler(enableCors, maxChunkSize));
+        } else {
+            handlers.put("aggregator", () -> new HttpObjectAggregator(maxChunkSize));
+            handlers.put("http-handler", () -> new HttpHandler(enableCors));
         }
         handlers.putAll(super.getCustomChildChannelHandlers(input));
         return handlers;
@@ -142,7 +192,8 @@ public class HttpTransport extends AbstractTcpTransport {
             r.addField(new NumberField(CK_MAX_CHUNK_SIZE,
                                         "Max. HTTP chunk size",
                                         DEFAULT_MAX_CHUNK_SIZE,
-                                        "The maximum HTTP chunk size in bytes (e. g. length of HTTP request body)",
+                                        "The maximum HTTP chunk size in bytes (e. g. length of HTTP request body). " +
+                                                "With bulk receiving enabled, the maximum size of a single message.",
                                         ConfigurationField.Optional.OPTIONAL));
             r.addField(new NumberField(CK_IDLE_WRITER_TIMEOUT,
                                         "Idle writer timeout",
@@ -150,6 +201,10 @@ public class HttpTransport extends AbstractTcpTransport {
                                         "The server closes the connection after the given time in seconds after the last client write request. (use 0 to disable)",
                                         ConfigurationField.Optional.OPTIONAL,
                                         NumberField.Attribute.ONLY_POSITIVE));
+            r.addField(new BooleanField(ThrottleableTransport.CK_THROTTLING_ALLOWED,
+                                        "Allow throttling this input.",
+                                        false,
+                                        "If enabled, the input stops reading from its connections until Graylog catches up with its message load."));
             return r;
         }
     }
@@ -28,11 +28,14 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.InvalidOffsetException;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.AuthorizationException;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
@@ -71,9 +74,17 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -81,6 +92,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 import java.util.stream.IntStream;
 
@@ -97,6 +109,7 @@ public class KafkaTransport extends ThrottleableTransport {
     public static final String CK_OFFSET_RESET = "offset_reset";
     public static final String CK_GROUP_ID = "group_id";
     public static final String CK_CUSTOM_PROPERTIES = "custom_properties";
+    public static final String CK_BATCH_MODE = "batch_mode";
 
     // See https://kafka.apache.org/090/documentation.html for available values for "auto.offset.reset".
     private static final ImmutableMap<String, String> OFFSET_RESET_VALUES = ImmutableMap.of(
@@ -234,6 +247,10 @@ public class KafkaTransport extends ThrottleableTransport {
         // Default auto commit interval is 60 seconds. Reduce to 1 second to minimize message duplication
         // if something breaks.
         props.put("auto.commit.interval.ms", "1000");
+        if (configuration.getBoolean(CK_BATCH_MODE, false)) {
+            // offsets are committed explicitly once their records have been written to the journal
+            props.put("enable.auto.commit", "false");
+        }
         props.put(org.apache.kafka.clients.consumer.ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
         props.put(org.apache.kafka.clients.consumer.ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
 
@@ -251,14 +268,35 @@ public class KafkaTransport extends ThrottleableTransport {
     private class ConsumerRunnable implements Runnable {
         private final MessageInput input;
         private final KafkaConsumer<byte[], byte[]> consumer;
+        private final boolean batchMode;
+        // offsets of records on their way to the journal, acknowledged by the input buffer threads
+        private final AcknowledgedOffsets acknowledgedOffsets = new AcknowledgedOffsets();
 
         public ConsumerRunnable(Properties props, MessageInput input, int threadId) {
             this.input = input;
+            this.batchMode = configuration.getBoolean(CK_BATCH_MODE, false);
             final Properties nprops = (Properties) props.clone();
             nprops.put("client.id", "gl2-" + nodeId.getShortNodeId() + "-" + input.getId() + "-" + threadId);
             consumer = new KafkaConsumer<>(nprops);
             //noinspection ConstantConditions
-            consumer.subscribe(Pattern.compile(configuration.getString(CK_TOPIC_FILTER)));
+            final Pattern topicFilter = Pattern.compile(configuration.getString(CK_TOPIC_FILTER));
+            if (batchMode) {
+                consumer.subscribe(topicFilter, new ConsumerRebalanceListener() {
+                    @Override
+                    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                        // hand over everything that already reached the journal before another consumer takes over
+                        commitAcknowledgedOffsets(true);
+                        acknowledgedOffsets.remove(partitions);
+                    }
+
+                    @Override
+                    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                        // newly assigned partitions are paused on the next loop iteration if we are throttled
+                    }
+                });
+            } else {
+                consumer.subscribe(topicFilter);
+            }
         }
 
         private void consumeRecords(ConsumerRecords<byte[], byte[]> consumerRecords) {
@@ -292,6 +330,98 @@ public class KafkaTransport extends ThrottleableTransport {
             }
         }
 
+        private void consumeBatch(ConsumerRecords<byte[], byte[]> consumerRecords) {
+            if (consumerRecords.isEmpty()) {
+                return;
+            }
+            if (paused) {
+                LOG.debug("Message processing is paused, blocking until message processing is turned back on.");
+                Uninterruptibles.awaitUninterruptibly(pausedLatch);
+            }
+            // nothing has been committed for this batch yet, so it will be delivered again after a restart
+            if (stopped) {
+                return;
+            }
+
+            final List<RawMessage> rawMessages = new ArrayList<>(consumerRecords.count());
+            for (final ConsumerRecord<byte[], byte[]> record : consumerRecords) {
+                final RawMessage.JournalAckCallback ackCallback = acknowledgedOffsets.track(record);
+
+                final byte[] bytes = record.value();
+                // empty messages are discarded by the input, there is nothing to wait for
+                if (bytes == null || bytes.length == 0) {
+                    ackCallback.acknowledge();
+                    continue;
+                }
+                totalBytesRead.addAndGet(bytes.length);
+                lastSecBytesReadTmp.addAndGet(bytes.length);
+
+                final RawMessage rawMessage = new RawMessage(bytes);
+                rawMessage.setJournalAckCallback(ackCallback);
+                rawMessages.add(rawMessage);
+            }
+
+            if (!rawMessages.isEmpty()) {
+                input.processRawMessages(rawMessages);
+            }
+        }
+
+        /**
+         * The throttle state is shared by all inputs on this node, so every assigned partition is paused while we are
+         * throttled. Polling continues to keep the consumer in its group.
+         */
+        private void updatePartitionPauseState() {
+            if (isThrottled()) {
+                final Set<TopicPartition> unpaused = new HashSet<>(consumer.assignment());
+                unpaused.removeAll(consumer.paused());
+                if (!unpaused.isEmpty()) {
+                    LOG.debug("Journal is throttled, pausing partitions {}", unpaused);
+                    consumer.pause(unpaused);
+                }
+            } else {
+                final Set<TopicPartition> pausedPartitions = consumer.paused();
+                if (!pausedPartitions.isEmpty()) {
+                    LOG.debug("Journal is not throttled anymore, resuming partitions {}", pausedPartitions);
+                    consumer.resume(pausedPartitions);
+                }
+            }
+        }
+
+        private void commitAcknowledgedOffsets(boolean sync) {
+            final Map<TopicPartition, OffsetAndMetadata> offsets = acknowledgedOffsets.poll();
+            // partitions might have been revoked while their records were on their way to the journal
+            offsets.keySet().retainAll(consumer.assignment());
+            commitOffsets(offsets, sync);
+
+            // everything after a failed record is consumed again, no matter if it reached the journal or not
+            final Map<TopicPartition, Long> failedOffsets = acknowledgedOffsets.pollFailed();
+            failedOffsets.keySet().retainAll(consumer.assignment());
+            failedOffsets.forEach((partition, offset) -> {
+                LOG.warn("Couldn't write record at offset {} of partition {} to the journal, consuming it again", offset, partition);
+                consumer.seek(partition, offset);
+            });
+        }
+
+        private void commitOffsets(Map<TopicPartition, OffsetAndMetadata> offsets, boolean sync) {
+            if (offsets.isEmpty()) {
+                return;
+            }
+
+            if (sync) {
+                try {
+                    consumer.commitSync(offsets);
+                } catch (KafkaException e) {
+                    LOG.warn("Couldn't commit offsets {}, messages might be consumed again", offsets, e);
+                }
+            } else {
+                consumer.commitAsync(offsets, (committed, e) -> {
+                    if (e != null) {
+                        LOG.warn("Couldn't commit offsets {}, messages might be consumed again", committed, e);
+                    }
+                });
+            }
+        }
+
         private Optional<ConsumerRecords<byte[], byte[]>> tryPoll() {
             try {
                 final ConsumerRecords<byte[], byte[]> consumerRecords = consumer.poll(Duration.ofSeconds(1));
@@ -310,6 +440,10 @@ public class KafkaTransport extends ThrottleableTransport {
             while (!stopped) {
                 final Optional<ConsumerRecords<byte[], byte[]>> consumerRecords;
                 try {
+                    if (batchMode) {
+                        commitAcknowledgedOffsets(false);
+                        updatePartitionPauseState();
+                    }
                     consumerRecords = tryPoll();
                     if (! consumerRecords.isPresent()) {
                         LOG.error("Caught recoverable exception. Retrying");
@@ -322,7 +456,11 @@ public class KafkaTransport extends ThrottleableTransport {
                     break;
                 }
                 try {
-                    consumeRecords(consumerRecords.get());
+                    if (batchMode) {
+                        consumeBatch(consumerRecords.get());
+                    } else {
+                        consumeRecords(consumerRecords.get());
+                    }
                 } catch (Exception e) {
                     LOG.error("Exception in consumer thread. Stopping input", e);
                     stopped = true;
@@ -331,12 +469,100 @@ public class KafkaTransport extends ThrottleableTransport {
             }
             // explicitly commit our offsets when stopping.
             // this might trigger a couple of times, but it won't hurt
-            consumer.commitAsync();
+            if (batchMode) {
+                // batches still on their way to the journal will be consumed again
+                commitAcknowledgedOffsets(true);
+            } else {
+                consumer.commitAsync();
+            }
             stopLatch.countDown();
             consumer.close(Duration.ofSeconds(5));
         }
     }
 
+    /**
+     * Tracks the records of each partition in the order they were polled. Only the offsets up to the oldest record that
+     * hasn't been written to the journal yet are committed, so a record which never reaches the journal can't be
+     * skipped by committing the offsets of the records after it.
+     * <p>
+     * Records are tracked and polled by the consumer thread, the input buffer threads only acknowledge or fail them.
+     */
+    static class AcknowledgedOffsets {
+        private final Map<TopicPartition, Deque<TrackedRecord>> partitions = new HashMap<>();
+
+        RawMessage.JournalAckCallback track(ConsumerRecord<?, ?> record) {
+            final TrackedRecord trackedRecord = new TrackedRecord(record.offset());
+            partitions.computeIfAbsent(new TopicPartition(record.topic(), record.partition()), partition -> new ArrayDeque<>())
+                    .add(trackedRecord);
+            return trackedRecord;
+        }
+
+        /**
+         * Returns the offsets to commit for all partitions whose oldest records were acknowledged since the last call.
+         */
+        Map<TopicPartition, OffsetAndMetadata> poll() {
+            final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            partitions.forEach((partition, records) -> {
+                TrackedRecord acknowledged = null;
+                while (!records.isEmpty() && records.peek().state() == TrackedRecord.State.ACKNOWLEDGED) {
+                    acknowledged = records.poll();
+                }
+                if (acknowledged != null) {
+                    offsets.put(partition, new OffsetAndMetadata(acknowledged.offset + 1));
+                }
+            });
+            return offsets;
+        }
+
+        /**
+         * Returns the offsets of the oldest records which failed to be written to the journal. Their partitions are not
+         * tracked anymore, the consumer has to seek back to the returned offsets.
+         */
+        Map<TopicPartition, Long> pollFailed() {
+            final Map<TopicPartition, Long> offsets = new HashMap<>();
+            partitions.entrySet().removeIf(entry -> {
+                final TrackedRecord oldest = entry.getValue().peek();
+                if (oldest != null && oldest.state() == TrackedRecord.State.FAILED) {
+                    offsets.put(entry.getKey(), oldest.offset);
+                    return true;
+                }
+                return false;
+            });
+            return offsets;
+        }
+
+        void remove(Collection<TopicPartition> revokedPartitions) {
+            partitions.keySet().removeAll(revokedPartitions);
+        }
+
+        private static class TrackedRecord implements RawMessage.JournalAckCallback {
+            private enum State {
+                PENDING, ACKNOWLEDGED, FAILED
+            }
+
+            private final long offset;
+            private final AtomicReference<State> state = new AtomicReference<>(State.PENDING);
+
+            private TrackedRecord(long offset) {
+                this.offset = offset;
+            }
+
+            private State state() {
+                return state.get();
+            }
+
+            @Override
+            public void acknowledge() {
+                state.compareAndSet(State.PENDING, State.ACKNOWLEDGED);
+            }
+
+            @Override
+            public void fail() {
+                state.compareAndSet(State.PENDING, State.FAILED);
+            }
+        }
+    }
+
     private void doLaunchLegacy(final MessageInput input) {
         final Properties props = new Properties();
 
@@ -518,6 +744,13 @@ public class KafkaTransport extends ThrottleableTransport {
                             "Not used in legacy mode.",
                     ConfigurationField.Optional.OPTIONAL,
                     11));
+            cr.addField(new BooleanField(CK_BATCH_MODE,
+                    "Batch mode",
+                    false,
+                    "Hand each fetched batch to the journal at once and commit offsets only after it has been written. " +
+                            "Partitions are paused instead of blocking while the journal is throttled. Not used in legacy mode.",
+                    13
+            ));
             cr.addField(new TextField(
                     CK_ZOOKEEPER,
                     "ZooKeeper address (legacy mode only)",
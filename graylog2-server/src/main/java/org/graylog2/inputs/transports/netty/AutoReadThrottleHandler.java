@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports.netty;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.group.ChannelGroup;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps track of the child channels of a transport so reading from them can be suspended and resumed
+ * ({@link io.netty.channel.ChannelConfig#setAutoRead(boolean) auto read}) when the transport is throttled.
+ * Channels which become active while the transport is throttled don't start reading until it is unthrottled.
+ */
+public class AutoReadThrottleHandler extends ChannelInboundHandlerAdapter {
+    private final ChannelGroup channels;
+    private final BooleanSupplier throttled;
+
+    public AutoReadThrottleHandler(ChannelGroup channels, BooleanSupplier throttled) {
+        this.channels = channels;
+        this.throttled = throttled;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        // add first, so a concurrent throttle state change either sees this channel or we see the new state
+        channels.add(ctx.channel());
+        if (throttled.getAsBoolean()) {
+            ctx.channel().config().setAutoRead(false);
+            // the transport might have been unthrottled before auto read was disabled
+            if (!throttled.getAsBoolean()) {
+                ctx.channel().config().setAutoRead(true);
+            }
+        }
+        super.channelActive(ctx);
+    }
+}
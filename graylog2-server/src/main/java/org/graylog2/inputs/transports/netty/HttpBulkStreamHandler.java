@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * Splits newline-delimited HTTP request bodies into single messages while the body is still being received, instead
+ * of aggregating the whole request in memory first. Only the current incomplete record of a connection is buffered.
+ * <p>
+ * Records are separated by {@code \n} or {@code \r\n}. The last record of a request doesn't need a trailing newline.
+ * The response is written once the whole request body has been read, so responses to pipelined requests on a kept
+ * alive connection are sent in order.
+ */
+public class HttpBulkStreamHandler extends SimpleChannelInboundHandler<HttpObject> {
+    private final boolean enableCors;
+    private final int maxFrameLength;
+
+    // state of the request currently being received on this connection
+    private HttpResponseStatus responseStatus;
+    private boolean keepAlive;
+    private HttpVersion httpRequestVersion;
+    private String origin;
+
+    // incomplete record spanning several content chunks
+    private ByteBuf pending;
+    private boolean discarding;
+
+    public HttpBulkStreamHandler(boolean enableCors, int maxFrameLength) {
+        this.enableCors = enableCors;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) throws Exception {
+        if (msg instanceof HttpRequest) {
+            startRequest(ctx, (HttpRequest) msg);
+        }
+        if (msg instanceof HttpContent) {
+            if (responseStatus == HttpResponseStatus.ACCEPTED) {
+                splitRecords(ctx, ((HttpContent) msg).content());
+            }
+            if (msg instanceof LastHttpContent) {
+                finishRequest(ctx);
+            }
+        }
+    }
+
+    private void startRequest(ChannelHandlerContext ctx, HttpRequest request) {
+        keepAlive = HttpUtil.isKeepAlive(request);
+        httpRequestVersion = request.protocolVersion();
+        origin = request.headers().get(HttpHeaderNames.ORIGIN);
+
+        // to allow for future changes, let's be at least a little strict in what we accept here.
+        if (HttpMethod.OPTIONS.equals(request.method())) {
+            responseStatus = HttpResponseStatus.OK;
+        } else if (!HttpMethod.POST.equals(request.method())) {
+            responseStatus = HttpResponseStatus.METHOD_NOT_ALLOWED;
+        } else if (!"/gelf".equals(request.uri())) {
+            responseStatus = HttpResponseStatus.NOT_FOUND;
+        } else {
+            responseStatus = HttpResponseStatus.ACCEPTED;
+            if (HttpUtil.is100ContinueExpected(request)) {
+                ctx.writeAndFlush(new DefaultFullHttpResponse(httpRequestVersion, HttpResponseStatus.CONTINUE));
+            }
+        }
+    }
+
+    private void splitRecords(ChannelHandlerContext ctx, ByteBuf content) {
+        while (content.isReadable()) {
+            final int lineFeed = content.indexOf(content.readerIndex(), content.writerIndex(), (byte) '\n');
+            if (lineFeed < 0) {
+                bufferIncompleteRecord(ctx, content);
+                return;
+            }
+
+            final int length = lineFeed - content.readerIndex();
+            if (discarding) {
+                // end of a record which was too long
+                content.skipBytes(length + 1);
+                discarding = false;
+                continue;
+            }
+
+            final int bufferedLength = pending == null ? 0 : pending.readableBytes();
+            if (bufferedLength + length > maxFrameLength) {
+                content.skipBytes(length + 1);
+                failTooLongRecord(ctx, bufferedLength + length);
+                continue;
+            }
+
+            final ByteBuf record;
+            if (pending == null) {
+                record = content.readRetainedSlice(length);
+            } else {
+                record = pending.writeBytes(content, length);
+                pending = null;
+            }
+            content.skipBytes(1);
+            emitRecord(ctx, record);
+        }
+    }
+
+    private void bufferIncompleteRecord(ChannelHandlerContext ctx, ByteBuf content) {
+        final int length = content.readableBytes();
+        if (discarding) {
+            content.skipBytes(length);
+            return;
+        }
+
+        final int bufferedLength = pending == null ? 0 : pending.readableBytes();
+        if (bufferedLength + length > maxFrameLength) {
+            content.skipBytes(length);
+            discarding = true;
+            failTooLongRecord(ctx, bufferedLength + length);
+            return;
+        }
+
+        if (pending == null) {
+            pending = ctx.alloc().buffer(length);
+        }
+        pending.writeBytes(content);
+    }
+
+    private void failTooLongRecord(ChannelHandlerContext ctx, long length) {
+        releasePending();
+        ctx.fireExceptionCaught(new TooLongFrameException("frame length exceeds " + maxFrameLength + ": " + length + " - discarded"));
+    }
+
+    private void emitRecord(ChannelHandlerContext ctx, ByteBuf record) {
+        // strip the carriage return of \r\n delimited records
+        final int lastIndex = record.writerIndex() - 1;
+        if (record.isReadable() && record.getByte(lastIndex) == '\r') {
+            record.writerIndex(lastIndex);
+        }
+
+        if (record.isReadable()) {
+            ctx.fireChannelRead(record);
+        } else {
+            record.release();
+        }
+    }
+
+    private void finishRequest(ChannelHandlerContext ctx) {
+        if (responseStatus == null) {
+            return;
+        }
+        if (pending != null) {
+            final ByteBuf record = pending;
+            pending = null;
+            emitRecord(ctx, record);
+        }
+        discarding = false;
+
+        HttpHandler.writeResponse(ctx.channel(), keepAlive, httpRequestVersion, responseStatus, origin, enableCors);
+        responseStatus = null;
+    }
+
+    private void releasePending() {
+        if (pending != null) {
+            pending.release();
+            pending = null;
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        releasePending();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        releasePending();
+        super.handlerRemoved(ctx);
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.net.InetAddresses;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * A path-compressed binary trie of IPv4 and IPv6 network prefixes, which finds the longest prefix containing an
+ * IP address.
+ * <p>
+ * A lookup only visits the nodes on the path of the address, at most 33 for IPv4 and 129 for IPv6 addresses,
+ * independent of the number of prefixes in the trie.
+ * <p>
+ * The trie is not thread-safe for modifications. It should be built first and then be published to the readers,
+ * e.g. through an {@link java.util.concurrent.atomic.AtomicReference}. Lookups are thread-safe after that.
+ *
+ * @param <V> the type of the values
+ */
+public class CidrTrie<V> {
+    private static final int IPV4_BITS = 32;
+    private static final int IPV6_BITS = 128;
+
+    private Node<V> ipv4Root;
+    private Node<V> ipv6Root;
+    private int size;
+
+    /**
+     * Adds a network prefix to the trie, replacing the value of an existing equal prefix.
+     *
+     * @param cidr  the network prefix in CIDR notation, e.g. {@code 10.0.0.0/8} or {@code 2001:db8::/32}, or a single
+     *              IP address
+     * @param value the value of the prefix
+     * @throws IllegalArgumentException if the prefix is invalid
+     */
+    public void put(String cidr, V value) {
+        final int slash = cidr.indexOf('/');
+        final InetAddress address = InetAddresses.forString(slash < 0 ? cidr.trim() : cidr.substring(0, slash).trim());
+        final int prefixLength;
+        if (slash < 0) {
+            prefixLength = bits(address);
+        } else {
+            try {
+                prefixLength = Integer.parseInt(cidr.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length in <" + cidr + ">", e);
+            }
+        }
+        put(address, prefixLength, value);
+    }
+
+    /**
+     * Adds a network prefix to the trie, replacing the value of an existing equal prefix. Host bits of the address
+     * are ignored.
+     *
+     * @param address      an address of the network
+     * @param prefixLength the length of the network prefix
+     * @param value        the value of the prefix
+     * @throws IllegalArgumentException if the prefix length is invalid for the address
+     */
+    public void put(InetAddress address, int prefixLength, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null");
+        }
+        final int bits = bits(address);
+        if (prefixLength < 0 || prefixLength > bits) {
+            throw new IllegalArgumentException("Invalid prefix length <" + prefixLength + "> for address <" + InetAddresses.toAddrString(address) + ">");
+        }
+        final Key key = Key.of(address).masked(prefixLength);
+        final Node<V> leaf = new Node<>(key, prefixLength, value, bits);
+
+        if (bits == IPV4_BITS) {
+            ipv4Root = insert(ipv4Root, leaf);
+        } else {
+            ipv6Root = insert(ipv6Root, leaf);
+        }
+    }
+
+    private Node<V> insert(Node<V> root, Node<V> leaf) {
+        if (root == null) {
+            size++;
+            return leaf;
+        }
+        Node<V> parent = null;
+        Node<V> current = root;
+        while (true) {
+            final int common = Math.min(current.key.commonPrefixLength(leaf.key), Math.min(current.length, leaf.length));
+
+            if (common < current.length) {
+                // The new prefix diverges within the compressed path of the current node, so the path is split
+                final Node<V> replacement;
+                if (common == leaf.length) {
+                    // The new prefix is a parent of the current node
+                    replacement = leaf;
+                } else {
+                    replacement = new Node<>(leaf.key.masked(common), common, null, leaf.bits);
+                    replacement.setChild(leaf.key.bit(common), leaf);
+                }
+                replacement.setChild(current.key.bit(common), current);
+                size++;
+                if (parent == null) {
+                    return replacement;
+                }
+                parent.setChild(current.key.bit(parent.length), replacement);
+                return root;
+            }
+
+            if (leaf.length == current.length) {
+                if (current.value == null) {
+                    size++;
+                }
+                current.value = leaf.value;
+                current.cidr = leaf.cidr;
+                return root;
+            }
+
+            final int bit = leaf.key.bit(current.length);
+            final Node<V> child = current.child(bit);
+            if (child == null) {
+                current.setChild(bit, leaf);
+                size++;
+                return root;
+            }
+            parent = current;
+            current = child;
+        }
+    }
+
+    /**
+     * Returns the longest prefix containing the given IP address.
+     *
+     * @param ip the IP address
+     * @return the longest matching prefix, an empty {@link Optional} if no prefix contains the address
+     * @throws IllegalArgumentException if the IP address is invalid
+     */
+    public Optional<Match<V>> longestPrefixMatch(String ip) {
+        return longestPrefixMatch(InetAddresses.forString(ip));
+    }
+
+    /**
+     * Returns the longest prefix containing the given IP address.
+     *
+     * @param address the IP address
+     * @return the longest matching prefix, an empty {@link Optional} if no prefix contains the address
+     */
+    public Optional<Match<V>> longestPrefixMatch(InetAddress address) {
+        final int bits = bits(address);
+        final Key key = Key.of(address);
+
+        Node<V> current = bits == IPV4_BITS ? ipv4Root : ipv6Root;
+        Node<V> match = null;
+        while (current != null && key.matches(current.key, current.length)) {
+            if (current.value != null) {
+                match = current;
+            }
+            if (current.length == bits) {
+                break;
+            }
+            current = current.child(key.bit(current.length));
+        }
+        return match == null ? Optional.empty() : Optional.of(Match.create(match.cidr, match.value));
+    }
+
+    /**
+     * @return the number of prefixes in the trie
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static int bits(InetAddress address) {
+        return address instanceof Inet4Address ? IPV4_BITS : IPV6_BITS;
+    }
+
+    @AutoValue
+    public abstract static class Match<V> {
+        /**
+         * @return the matching prefix in CIDR notation
+         */
+        public abstract String cidr();
+
+        public abstract V value();
+
+        static <V> Match<V> create(String cidr, V value) {
+            return new AutoValue_CidrTrie_Match<>(cidr, value);
+        }
+    }
+
+    private static class Node<V> {
+        private final Key key;
+        private final int length;
+        private final int bits;
+        private V value;
+        private String cidr;
+        private Node<V> zero;
+        private Node<V> one;
+
+        Node(Key key, int length, V value, int bits) {
+            this.key = key;
+            this.length = length;
+            this.bits = bits;
+            this.value = value;
+            this.cidr = value == null ? null : key.toCidr(length, bits);
+        }
+
+        Node<V> child(int bit) {
+            return bit == 0 ? zero : one;
+        }
+
+        void setChild(int bit, Node<V> child) {
+            if (bit == 0) {
+                zero = child;
+            } else {
+                one = child;
+            }
+        }
+    }
+
+    /**
+     * A 128 bit address, IPv4 addresses use the upper 32 bits.
+     */
+    private static class Key {
+        private final long high;
+        private final long low;
+
+        Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        static Key of(InetAddress address) {
+            final byte[] bytes = address.getAddress();
+            if (bytes.length == 4) {
+                return new Key(Integer.toUnsignedLong(ByteBuffer.wrap(bytes).getInt()) << 32, 0L);
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new Key(buffer.getLong(), buffer.getLong());
+        }
+
+        int bit(int index) {
+            return index < 64
+                    ? (int) (high >>> (63 - index)) & 1
+                    : (int) (low >>> (127 - index)) & 1;
+        }
+
+        Key masked(int length) {
+            return new Key(high & highMask(length), low & lowMask(length));
+        }
+
+        boolean matches(Key prefix, int length) {
+            return ((high ^ prefix.high) & highMask(length)) == 0 && ((low ^ prefix.low) & lowMask(length)) == 0;
+        }
+
+        int commonPrefixLength(Key other) {
+            final long highDiff = high ^ other.high;
+            if (highDiff != 0) {
+                return Long.numberOfLeadingZeros(highDiff);
+            }
+            return 64 + Long.numberOfLeadingZeros(low ^ other.low);
+        }
+
+        String toCidr(int length, int bits) {
+            final ByteBuffer buffer = ByteBuffer.allocate(16).putLong(high).putLong(low);
+            final byte[] address = new byte[bits / 8];
+            System.arraycopy(buffer.array(), 0, address, 0, address.length);
+            try {
+                return InetAddresses.toAddrString(InetAddress.getByAddress(address)) + "/" + length;
+            } catch (UnknownHostException e) {
+                // Can't happen for 4 and 16 byte addresses
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static long highMask(int length) {
+            if (length <= 0) {
+                return 0L;
+            }
+            return length >= 64 ? -1L : -1L << (64 - length);
+        }
+
+        private static long lowMask(int length) {
+            if (length <= 64) {
+                return 0L;
+            }
+            return length >= 128 ? -1L : -1L << (128 - length);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup;
+
+import com.github.joschi.jadconfig.ParameterException;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Names a lookup table and the message fields whose values are looked up in it, so the process buffer can
+ * prefetch the keys of all messages of a batch with a single {@link LookupTable#lookupAll(java.util.Collection)} call.
+ */
+@AutoValue
+public abstract class LookupKeyPrefetch {
+    public abstract String lookupTable();
+
+    public abstract ImmutableSet<String> fields();
+
+    public static LookupKeyPrefetch create(String lookupTable, Set<String> fields) {
+        return new AutoValue_LookupKeyPrefetch(lookupTable, ImmutableSet.copyOf(fields));
+    }
+
+    /**
+     * Converts prefetch definitions in the format {@code <lookup-table>:<field>[,<field>...]}, separated by
+     * semicolons. Example: {@code assets:src_ip,dst_ip;departments:user}
+     */
+    public static class Converter implements com.github.joschi.jadconfig.Converter<List<LookupKeyPrefetch>> {
+        @Override
+        public List<LookupKeyPrefetch> convertFrom(String value) {
+            if (value == null) {
+                return ImmutableList.of();
+            }
+            final ImmutableList.Builder<LookupKeyPrefetch> prefetches = ImmutableList.builder();
+            final Set<String> lookupTables = new HashSet<>();
+
+            for (final String prefetch : Splitter.on(';').trimResults().omitEmptyStrings().split(value)) {
+                final List<String> parts = Splitter.on(':').trimResults().splitToList(prefetch);
+                if (parts.size() != 2 || parts.get(0).isEmpty()) {
+                    throw new ParameterException("Invalid lookup prefetch <" + prefetch + ">, expected <lookup-table>:<fields>");
+                }
+                final String lookupTable = parts.get(0);
+                if (!lookupTables.add(lookupTable)) {
+                    throw new ParameterException("Duplicate lookup prefetch for lookup table <" + lookupTable + ">");
+                }
+                final Set<String> fields = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(parts.get(1)));
+                if (fields.isEmpty()) {
+                    throw new ParameterException("Lookup prefetch for lookup table <" + lookupTable + "> needs at least one field");
+                }
+                prefetches.add(create(lookupTable, fields));
+            }
+            return prefetches.build();
+        }
+
+        @Override
+        public String convertTo(List<LookupKeyPrefetch> value) {
+            if (value == null) {
+                throw new ParameterException("Couldn't convert lookup prefetches <null> to string.");
+            }
+            return value.stream()
+                    .map(prefetch -> prefetch.lookupTable() + ":" + Joiner.on(",").join(prefetch.fields()))
+                    .collect(Collectors.joining(";"));
+        }
+    }
+}
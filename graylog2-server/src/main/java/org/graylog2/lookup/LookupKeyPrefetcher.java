@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.plugin.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Warms the lookup table caches with the keys of a batch of messages before the messages are processed.
+ * <p>
+ * The keys of all messages are loaded with one {@link LookupTable#lookupAll(Collection)} call per lookup table,
+ * so data adapters which support batch lookups need fewer round trips than the per-message lookups of the
+ * pipeline rules. This only pays off for lookup tables with a cache, the later lookups are served from it.
+ */
+@Singleton
+public class LookupKeyPrefetcher {
+    private static final Logger LOG = LoggerFactory.getLogger(LookupKeyPrefetcher.class);
+
+    private final List<LookupKeyPrefetch> prefetches;
+    private final LookupTableService lookupTableService;
+    private final Meter prefetchedKeys;
+
+    @Inject
+    public LookupKeyPrefetcher(@Named("processbuffer_lookup_prefetch") List<LookupKeyPrefetch> prefetches,
+                               LookupTableService lookupTableService,
+                               MetricRegistry metricRegistry) {
+        this.prefetches = prefetches;
+        this.lookupTableService = lookupTableService;
+        this.prefetchedKeys = metricRegistry.meter(name(LookupKeyPrefetcher.class, "prefetchedKeys"));
+    }
+
+    public boolean isEnabled() {
+        return !prefetches.isEmpty();
+    }
+
+    /**
+     * Looks up the values of the configured fields of the given messages. Errors are only logged, the messages
+     * will be processed anyway.
+     *
+     * @param messages the messages to prefetch the lookup keys of
+     */
+    public void prefetch(Collection<Message> messages) {
+        if (!isEnabled() || messages.isEmpty()) {
+            return;
+        }
+        for (final LookupKeyPrefetch prefetch : prefetches) {
+            final Set<Object> keys = new LinkedHashSet<>();
+            for (final Message message : messages) {
+                for (final String field : prefetch.fields()) {
+                    final Object value = message.getField(field);
+                    if (value != null && !(value instanceof String && ((String) value).isEmpty())) {
+                        keys.add(value);
+                    }
+                }
+            }
+            if (keys.isEmpty()) {
+                continue;
+            }
+
+            final LookupTable lookupTable = lookupTableService.getTable(prefetch.lookupTable());
+            if (lookupTable == null) {
+                continue;
+            }
+            try {
+                lookupTable.lookupAll(keys);
+                prefetchedKeys.mark(keys.size());
+            } catch (Exception e) {
+                LOG.debug("Couldn't prefetch {} keys of lookup table <{}>", keys.size(), prefetch.lookupTable(), e);
+            }
+        }
+    }
+}
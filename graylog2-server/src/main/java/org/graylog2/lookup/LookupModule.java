@@ -19,6 +19,7 @@ package org.graylog2.lookup;
 import com.google.inject.Scopes;
 import com.google.inject.multibindings.MapBinder;
 import org.graylog2.Configuration;
+import org.graylog2.lookup.adapters.CIDRFileDataAdapter;
 import org.graylog2.lookup.adapters.CSVFileDataAdapter;
 import org.graylog2.lookup.adapters.DSVHTTPDataAdapter;
 import org.graylog2.lookup.adapters.DnsLookupDataAdapter;
@@ -65,6 +66,11 @@ public class LookupModule extends Graylog2Module {
                 CSVFileDataAdapter.Factory.class,
                 CSVFileDataAdapter.Config.class);
 
+        installLookupDataAdapter(CIDRFileDataAdapter.NAME,
+                CIDRFileDataAdapter.class,
+                CIDRFileDataAdapter.Factory.class,
+                CIDRFileDataAdapter.Config.class);
+
         installLookupDataAdapter2(DnsLookupDataAdapter.NAME,
                 DnsLookupDataAdapter.class,
                 DnsLookupDataAdapter.Factory.class,
@@ -26,7 +26,11 @@ import org.graylog2.plugin.lookup.LookupResult;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static com.google.common.collect.Streams.stream;
@@ -82,6 +86,40 @@ public abstract class LookupTable {
         return result;
     }
 
+    /**
+     * Looks up multiple keys at once. Keys which are not cached are loaded from the data adapter with a single
+     * {@link LookupDataAdapter#getAll(java.util.Collection)} call.
+     *
+     * @param keys the keys to look up
+     * @return the results for all given keys, in the iteration order of the keys
+     */
+    public Map<Object, LookupResult> lookupAll(@Nonnull Collection<?> keys) {
+        final Map<LookupCacheKey, Object> cacheKeys = new LinkedHashMap<>();
+        for (final Object key : keys) {
+            cacheKeys.put(LookupCacheKey.create(dataAdapter(), key), key);
+        }
+
+        final Map<LookupCacheKey, LookupResult> cacheResults = cache().getAll(cacheKeys.keySet(), missingKeys -> {
+            final List<Object> adapterKeys = missingKeys.stream().map(LookupCacheKey::key).collect(Collectors.toList());
+            final Map<Object, LookupResult> adapterResults = dataAdapter().getAll(adapterKeys);
+            final Map<LookupCacheKey, LookupResult> results = new HashMap<>();
+            adapterResults.forEach((key, result) -> results.put(LookupCacheKey.create(dataAdapter(), key), result));
+            return results;
+        });
+
+        final Map<Object, LookupResult> results = new LinkedHashMap<>();
+        cacheKeys.forEach((cacheKey, key) -> {
+            final LookupResult result = cacheResults.get(cacheKey);
+            if (result == null || (result.isEmpty() && !result.hasError())) {
+                // The default value will only be used if single, multi and list values are empty
+                results.put(key, LookupResult.addDefaults(defaultSingleValue(), defaultMultiValue()).hasError(false).build());
+            } else {
+                results.put(key, result);
+            }
+        });
+        return results;
+    }
+
     public LookupResult setValue(@Nonnull Object key, @Nonnull Object value) {
         final LookupResult result = dataAdapter().setValue(key, value);
         cache().purge(LookupCacheKey.create(dataAdapter(), key));
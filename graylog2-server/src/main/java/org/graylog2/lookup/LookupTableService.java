@@ -48,6 +48,7 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -645,6 +646,30 @@ public class LookupTableService extends AbstractIdleService {
             return result;
         }
 
+        /**
+         * Looks up multiple keys at once, see {@link LookupTable#lookupAll(Collection)}.
+         *
+         * @param keys the keys to look up
+         * @return the results for all given keys, in the iteration order of the keys
+         */
+        public Map<Object, LookupResult> lookupAll(@Nonnull Collection<?> keys) {
+            final LookupTable lookupTable = lookupTableService.getTable(lookupTableName);
+            final Map<Object, LookupResult> results = new LinkedHashMap<>();
+            if (lookupTable == null) {
+                keys.forEach(key -> results.put(key, LookupResult.withError()));
+                return results;
+            }
+
+            lookupTable.lookupAll(keys).forEach((key, result) -> {
+                if (result == null || (result.isEmpty() && !result.hasError())) {
+                    results.put(key, LookupResult.empty());
+                } else {
+                    results.put(key, result);
+                }
+            });
+            return results;
+        }
+
         private Object requireValidKey(Object key) {
             return requireNonNull(key, "key cannot be null");
         }
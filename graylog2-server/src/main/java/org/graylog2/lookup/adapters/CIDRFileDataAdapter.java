@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.adapters;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.google.common.primitives.Ints;
+import com.google.inject.assistedinject.Assisted;
+import org.apache.commons.lang3.StringUtils;
+import org.graylog.autovalue.WithBeanGetter;
+import org.graylog2.lookup.AllowedAuxiliaryPathChecker;
+import org.graylog2.lookup.CidrTrie;
+import org.graylog2.plugin.lookup.LookupCachePurge;
+import org.graylog2.plugin.lookup.LookupDataAdapter;
+import org.graylog2.plugin.lookup.LookupDataAdapterConfiguration;
+import org.graylog2.plugin.lookup.LookupResult;
+import org.graylog2.plugin.utilities.FileInfo;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static org.graylog2.shared.utilities.StringUtils.f;
+
+/**
+ * Looks up IP addresses in a CSV file of IPv4 and IPv6 network ranges in CIDR notation. The value of the most
+ * specific range containing the address is returned.
+ */
+public class CIDRFileDataAdapter extends LookupDataAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(CIDRFileDataAdapter.class);
+
+    public static final String NAME = "cidrfile";
+
+    /**
+     * See {@link CSVFileDataAdapter#ALLOWED_PATH_ERROR}.
+     */
+    public static final String ALLOWED_PATH_ERROR =
+            "The specified CIDR file either does not exist or is not in an allowed path.";
+
+    public static final String RESULT_FIELD_VALUE = "value";
+    public static final String RESULT_FIELD_CIDR = "cidr";
+
+    private final Config config;
+    private final AllowedAuxiliaryPathChecker pathChecker;
+    private final AtomicReference<CidrTrie<String>> lookupRef = new AtomicReference<>(new CidrTrie<>());
+    private final String name;
+
+    private FileInfo fileInfo = FileInfo.empty();
+
+    @Inject
+    public CIDRFileDataAdapter(@Assisted("id") String id,
+                               @Assisted("name") String name,
+                               @Assisted LookupDataAdapterConfiguration config,
+                               MetricRegistry metricRegistry,
+                               AllowedAuxiliaryPathChecker pathChecker) {
+        super(id, name, config, metricRegistry);
+        this.name = name;
+        this.config = (Config) config;
+        this.pathChecker = pathChecker;
+    }
+
+    @Override
+    public void doStart() throws Exception {
+        LOG.debug("Starting CIDR data adapter for file: {}", config.path());
+        if (isNullOrEmpty(config.path())) {
+            throw new IllegalStateException("File path needs to be set");
+        }
+        if (!pathChecker.fileIsInAllowedPath(Paths.get(config.path()))) {
+            throw new IllegalStateException(ALLOWED_PATH_ERROR);
+        }
+        if (config.checkInterval() < 1) {
+            throw new IllegalStateException("Check interval setting cannot be smaller than 1");
+        }
+
+        // Set file info before parsing the data for the first time
+        fileInfo = getNewFileInfo();
+        lookupRef.set(parseCIDRFile());
+    }
+
+    @Override
+    public Duration refreshInterval() {
+        return Duration.standardSeconds(Ints.saturatedCast(config.checkInterval()));
+    }
+
+    @Override
+    protected void doRefresh(LookupCachePurge cachePurge) throws Exception {
+        if (!pathChecker.fileIsInAllowedPath(Paths.get(config.path()))) {
+            LOG.error(ALLOWED_PATH_ERROR);
+            setError(new IllegalStateException(ALLOWED_PATH_ERROR));
+            return;
+        }
+
+        if (!Files.isReadable(Paths.get(config.path()))) {
+            String error = f("The specified file [%s] does not exist or is not readable. " +
+                            "To resolve this error, edit the adapter [%s] and specify a new path, or restore the file " +
+                            "or read access to it.",
+                    config.path(), name);
+            LOG.error(error);
+            setError(new IllegalStateException(error));
+            return;
+        }
+
+        try {
+            final FileInfo.Change fileChanged = fileInfo.checkForChange();
+            if (!fileChanged.isChanged() && !getError().isPresent()) {
+                // Nothing to do, file did not change
+                return;
+            }
+
+            LOG.debug("CIDR file {} has changed, updating data", config.path());
+            lookupRef.set(parseCIDRFile());
+            cachePurge.purgeAll();
+            // If the file has been moved, then moved back, the fileInfo might have been disconnected.
+            // In this case, create a new fileInfo.
+            fileInfo = fileChanged.fileInfo() != null ? fileChanged.fileInfo() : getNewFileInfo();
+            clearError();
+        } catch (IOException e) {
+            LOG.error("Couldn't check data adapter <{}> CIDR file {} for updates: {} {}", name(), config.path(), e.getClass().getCanonicalName(), e.getMessage());
+            setError(e);
+        }
+    }
+
+    private CidrTrie<String> parseCIDRFile() throws IOException {
+        final InputStream inputStream = Files.newInputStream(Paths.get(config.path()));
+        final InputStreamReader fileReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        final CidrTrie<String> newLookup = new CidrTrie<>();
+
+        try (final CSVReader csvReader = new CSVReader(fileReader, config.separatorAsChar(), config.quotecharAsChar())) {
+            int line = 0;
+            int cidrColumn = -1;
+            int valueColumn = -1;
+
+            while (true) {
+                final String[] next = csvReader.readNext();
+                if (next == null) {
+                    break;
+                }
+                line++;
+
+                if (line == 1) {
+                    // The first line in the CSV file provides the column names
+                    int col = 0;
+                    for (final String column : next) {
+                        if (!isNullOrEmpty(column)) {
+                            if (config.cidrColumn().equals(column)) {
+                                cidrColumn = col;
+                            }
+                            if (config.valueColumn().equals(column)) {
+                                valueColumn = col;
+                            }
+                        }
+                        col++;
+                    }
+                } else {
+                    // The other lines are supposed to be data entries
+                    if (cidrColumn < 0 || valueColumn < 0) {
+                        throw new IllegalStateException("Couldn't detect column number for CIDR or value - check CSV file format");
+                    }
+                    if (next.length == 1 && StringUtils.isEmpty(next[0])) {
+                        LOG.debug("Skipping empty line in CIDR adapter file [{}/{}].", name, config.path());
+                        continue;
+                    }
+
+                    final String cidr;
+                    final String value;
+                    try {
+                        cidr = next[cidrColumn];
+                        value = next[valueColumn];
+                    } catch (IndexOutOfBoundsException e) {
+                        final String error = f("The CIDR file [%s] contains invalid lines. Please check the file and ensure " +
+                                "that both CIDR and value columns are present in all lines.", name);
+                        throw new IllegalStateException(error, e);
+                    }
+
+                    try {
+                        newLookup.put(cidr, value);
+                    } catch (IllegalArgumentException e) {
+                        final String error = f("The CIDR file [%s] contains the invalid CIDR range <%s> in line %d.", name, cidr, line);
+                        throw new IllegalStateException(error, e);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Couldn't parse CIDR file {} (settings separator=<{}> quotechar=<{}> cidr_column=<{}> value_column=<{}>)", config.path(),
+                    config.separator(), config.quotechar(), config.cidrColumn(), config.valueColumn(), e);
+            setError(e);
+            throw new IllegalStateException(e);
+        }
+
+        return newLookup;
+    }
+
+    private FileInfo getNewFileInfo() {
+        return FileInfo.forPath(Paths.get(config.path()));
+    }
+
+    @Override
+    public void doStop() throws Exception {
+        LOG.debug("Stopping CIDR data adapter for file: {}", config.path());
+    }
+
+    @Override
+    public LookupResult doGet(Object key) {
+        final Optional<CidrTrie.Match<String>> match;
+        try {
+            match = lookupRef.get().longestPrefixMatch(String.valueOf(key).trim());
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Couldn't look up invalid IP address <{}> in data adapter <{}>", key, name());
+            return getEmptyResult();
+        }
+
+        return match.map(m -> LookupResult.multi(m.value(), ImmutableMap.of(
+                        RESULT_FIELD_VALUE, m.value(),
+                        RESULT_FIELD_CIDR, m.cidr())))
+                .orElseGet(this::getEmptyResult);
+    }
+
+    @Override
+    public void set(Object key, Object value) {
+
+    }
+
+    public interface Factory extends LookupDataAdapter.Factory<CIDRFileDataAdapter> {
+        @Override
+        CIDRFileDataAdapter create(@Assisted("id") String id,
+                                   @Assisted("name") String name,
+                                   LookupDataAdapterConfiguration configuration);
+
+        @Override
+        Descriptor getDescriptor();
+    }
+
+    public static class Descriptor extends LookupDataAdapter.Descriptor<Config> {
+        public Descriptor() {
+            super(NAME, Config.class);
+        }
+
+        @Override
+        public Config defaultConfiguration() {
+            return Config.builder()
+                    .type(NAME)
+                    .path("/etc/graylog/lookup-table-cidr.csv")
+                    .separator(",")
+                    .quotechar("\"")
+                    .cidrColumn("cidr")
+                    .valueColumn("value")
+                    .checkInterval(60)
+                    .build();
+        }
+    }
+
+    @AutoValue
+    @WithBeanGetter
+    @JsonAutoDetect
+    @JsonDeserialize(builder = AutoValue_CIDRFileDataAdapter_Config.Builder.class)
+    @JsonTypeName(NAME)
+    public static abstract class Config implements LookupDataAdapterConfiguration {
+
+        @Override
+        @JsonProperty(TYPE_FIELD)
+        public abstract String type();
+
+        @JsonProperty("path")
+        @NotEmpty
+        public abstract String path();
+
+        // Using String here instead of char to allow deserialization of a longer (invalid) string to get proper
+        // validation error messages
+        @JsonProperty("separator")
+        @Size(min = 1, max = 1)
+        @NotEmpty
+        public abstract String separator();
+
+        @JsonIgnore
+        public char separatorAsChar() {
+            return separator().charAt(0);
+        }
+
+        // Using String here instead of char to allow deserialization of a longer (invalid) string to get proper
+        // validation error messages
+        @JsonProperty("quotechar")
+        @Size(min = 1, max = 1)
+        @NotEmpty
+        public abstract String quotechar();
+
+        @JsonIgnore
+        public char quotecharAsChar() {
+            return quotechar().charAt(0);
+        }
+
+        @JsonProperty("cidr_column")
+        @NotEmpty
+        public abstract String cidrColumn();
+
+        @JsonProperty("value_column")
+        @NotEmpty
+        public abstract String valueColumn();
+
+        @JsonProperty("check_interval")
+        @Min(1)
+        public abstract long checkInterval();
+
+        public static Builder builder() {
+            return new AutoValue_CIDRFileDataAdapter_Config.Builder();
+        }
+
+        @Override
+        public Optional<Multimap<String, String>> validate(LookupDataAdapterValidationContext context) {
+            final ArrayListMultimap<String, String> errors = ArrayListMultimap.create();
+
+            final Path path = Paths.get(path());
+            if (!context.getPathChecker().fileIsInAllowedPath(path)) {
+                errors.put("path", ALLOWED_PATH_ERROR);
+
+                // Intentionally return here, because in the Cloud context, we should not perform the following checks
+                // to report to the user whether or not a file exists.
+                return Optional.of(errors);
+            }
+
+            if (!Files.exists(path)) {
+                errors.put("path", "The file does not exist.");
+            } else if (!Files.isReadable(path)) {
+                errors.put("path", "The file cannot be read.");
+            }
+
+            return errors.isEmpty() ? Optional.empty() : Optional.of(errors);
+        }
+
+        @Override
+        public boolean isCloudCompatible() {
+            return false;
+        }
+
+        @AutoValue.Builder
+        public abstract static class Builder {
+            @JsonProperty(TYPE_FIELD)
+            public abstract Builder type(String type);
+
+            @JsonProperty("path")
+            public abstract Builder path(String path);
+
+            @JsonProperty("separator")
+            public abstract Builder separator(String separator);
+
+            @JsonProperty("quotechar")
+            public abstract Builder quotechar(String quotechar);
+
+            @JsonProperty("cidr_column")
+            public abstract Builder cidrColumn(String cidrColumn);
+
+            @JsonProperty("value_column")
+            public abstract Builder valueColumn(String valueColumn);
+
+            @JsonProperty("check_interval")
+            public abstract Builder checkInterval(long checkInterval);
+
+            public abstract Config build();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -54,6 +55,7 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
@@ -61,6 +63,10 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class DnsLookupDataAdapter extends LookupDataAdapter {
@@ -78,7 +84,10 @@ public class DnsLookupDataAdapter extends LookupDataAdapter {
     private static final String TIMER_RESOLVE_DOMAIN_NAME = "resolveDomainNameTime";
     private static final String TIMER_REVERSE_LOOKUP = "reverseLookupTime";
     private static final String TIMER_TEXT_LOOKUP = "textLookupTime";
+    // Upper bound for the concurrent DNS requests of batch lookups
+    private static final int BATCH_LOOKUP_CONCURRENCY = 16;
     private DnsClient dnsClient;
+    private ExecutorService batchLookupExecutor;
     private final Config config;
 
     private final Counter errorCounter;
@@ -104,12 +113,19 @@ public class DnsLookupDataAdapter extends LookupDataAdapter {
 
         dnsClient = new DnsClient(config.requestTimeout());
         dnsClient.start(config.serverIps());
+        batchLookupExecutor = Executors.newFixedThreadPool(BATCH_LOOKUP_CONCURRENCY, new ThreadFactoryBuilder()
+                .setNameFormat("dns-lookup-adapter-" + name() + "-%d")
+                .setDaemon(true)
+                .build());
     }
 
     @Override
     protected void doStop() {
 
         dnsClient.stop();
+        if (batchLookupExecutor != null) {
+            batchLookupExecutor.shutdownNow();
+        }
     }
 
     /**
@@ -179,6 +195,34 @@ public class DnsLookupDataAdapter extends LookupDataAdapter {
         return lookupResult;
     }
 
+    /**
+     * The DNS client blocks until a request has been answered, so the keys of a batch are resolved concurrently
+     * to avoid adding up the latencies of all requests.
+     */
+    @Override
+    protected Map<Object, LookupResult> doGetAll(Collection<?> keys) {
+        if (keys.size() < 2) {
+            return super.doGetAll(keys);
+        }
+
+        final Map<Object, CompletableFuture<LookupResult>> futures = new LinkedHashMap<>();
+        for (final Object key : keys) {
+            futures.put(key, CompletableFuture.supplyAsync(() -> doGet(key), batchLookupExecutor));
+        }
+
+        final Map<Object, LookupResult> results = new LinkedHashMap<>();
+        futures.forEach((key, future) -> {
+            try {
+                results.put(key, future.join());
+            } catch (CompletionException e) {
+                LOG.error("Could not resolve [{}] records for key [{}]. Cause [{}]", config.lookupType(), key, ExceptionUtils.getRootCauseOrMessage(e));
+                errorCounter.inc();
+                results.put(key, getErrorResult());
+            }
+        });
+        return results;
+    }
+
     /**
      * Provides both single and multiple addresses in LookupResult. This is because the purpose of a hostname
      * resolution request is to resolve to a single IP address (so that communication can be initiated with it).
@@ -36,6 +36,8 @@ import com.jayway.jsonpath.InvalidJsonException;
 import com.jayway.jsonpath.InvalidPathException;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.PathNotFoundException;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
@@ -54,6 +56,7 @@ import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.validation.constraints.NotEmpty;
@@ -63,10 +66,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -150,6 +156,68 @@ public class HTTPJSONPathDataAdapter extends LookupDataAdapter {
 
     @Override
     protected LookupResult doGet(Object key) {
+        final Request request = createRequest(key);
+        if (request == null) {
+            return getErrorResult();
+        }
+
+        final Timer.Context time = httpRequestTimer.time();
+        try (final Response response = httpClient.newCall(request).execute()) {
+            return handleResponse(key, response);
+        } catch (IOException e) {
+            return handleRequestError(key, e);
+        } finally {
+            time.stop();
+        }
+    }
+
+    /**
+     * Sends the HTTP requests of all keys concurrently, so the latencies of the requests don't add up. The
+     * concurrency is limited by the dispatcher of the HTTP client.
+     */
+    @Override
+    protected Map<Object, LookupResult> doGetAll(Collection<?> keys) {
+        if (keys.size() < 2) {
+            return super.doGetAll(keys);
+        }
+
+        final Map<Object, CompletableFuture<LookupResult>> futures = new LinkedHashMap<>();
+        for (final Object key : keys) {
+            final Request request = createRequest(key);
+            if (request == null) {
+                futures.put(key, CompletableFuture.completedFuture(getErrorResult()));
+                continue;
+            }
+
+            final CompletableFuture<LookupResult> future = new CompletableFuture<>();
+            final Timer.Context time = httpRequestTimer.time();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@Nonnull Call call, @Nonnull IOException e) {
+                    time.stop();
+                    future.complete(handleRequestError(key, e));
+                }
+
+                @Override
+                public void onResponse(@Nonnull Call call, @Nonnull Response response) {
+                    time.stop();
+                    try (response) {
+                        future.complete(handleResponse(key, response));
+                    } catch (Exception e) {
+                        future.complete(handleRequestError(key, e));
+                    }
+                }
+            });
+            futures.put(key, future);
+        }
+
+        final Map<Object, LookupResult> results = new LinkedHashMap<>();
+        futures.forEach((key, future) -> results.put(key, future.join()));
+        return results;
+    }
+
+    @Nullable
+    private Request createRequest(Object key) {
         String encodedKey;
         try {
             encodedKey = URLEncoder.encode(String.valueOf(key), "UTF-8").replaceAll("\\+", "%20");
@@ -163,7 +231,7 @@ public class HTTPJSONPathDataAdapter extends LookupDataAdapter {
             LOG.error("URL <{}> is not whitelisted. Aborting lookup request.", urlString);
             publishSystemNotificationForWhitelistFailure();
             setError(UrlNotWhitelistedException.forUrl(urlString));
-            return getErrorResult();
+            return null;
         } else {
             // we use this kind of error reporting mechanism only for whitelist errors, so we can safely clear the
             // error here
@@ -175,35 +243,34 @@ public class HTTPJSONPathDataAdapter extends LookupDataAdapter {
         if (url == null) {
             LOG.error("Couldn't parse URL <{}> - returning empty result", urlString);
             httpURLErrors.mark();
-            return getErrorResult();
+            return null;
         }
 
-        final Request request = new Request.Builder()
+        return new Request.Builder()
                 .get()
                 .url(url)
                 .headers(headers)
                 .build();
+    }
 
-        final Timer.Context time = httpRequestTimer.time();
-        try (final Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                LOG.warn("HTTP request for key <{}> failed: {}", key, response);
-                httpRequestErrors.mark();
-                return getErrorResult();
-            }
-
-            final LookupResult result = parseBody(singleJsonPath, multiJsonPath, response.body().byteStream());
-            if (result == null) {
-                return getErrorResult();
-            }
-            return result;
-        } catch (IOException e) {
-            LOG.error("HTTP request error for key <{}>", key, e);
+    private LookupResult handleResponse(Object key, Response response) {
+        if (!response.isSuccessful()) {
+            LOG.warn("HTTP request for key <{}> failed: {}", key, response);
             httpRequestErrors.mark();
             return getErrorResult();
-        } finally {
-            time.stop();
         }
+
+        final LookupResult result = parseBody(singleJsonPath, multiJsonPath, response.body().byteStream());
+        if (result == null) {
+            return getErrorResult();
+        }
+        return result;
+    }
+
+    private LookupResult handleRequestError(Object key, Exception e) {
+        LOG.error("HTTP request error for key <{}>", key, e);
+        httpRequestErrors.mark();
+        return getErrorResult();
     }
 
     @VisibleForTesting
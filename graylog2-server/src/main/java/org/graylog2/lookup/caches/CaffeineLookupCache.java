@@ -28,6 +28,7 @@ import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -42,7 +43,11 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.inject.Named;
 import javax.validation.constraints.Min;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
@@ -137,6 +142,31 @@ public class CaffeineLookupCache extends LookupCache {
         }
     }
 
+    @Override
+    public Map<LookupCacheKey, LookupResult> getAll(Collection<LookupCacheKey> keys,
+                                                    Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        try (final Timer.Context ignored = lookupTimer()) {
+            return cache.getAll(keys, missingKeys -> loadAll(missingKeys, loader));
+        }
+    }
+
+    private Map<LookupCacheKey, LookupResult> loadAll(Iterable<? extends LookupCacheKey> missingKeys,
+                                                      Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        final List<LookupCacheKey> keysToLoad = ImmutableList.copyOf(missingKeys);
+        final Map<LookupCacheKey, LookupResult> results = new HashMap<>();
+        try {
+            results.putAll(loader.apply(keysToLoad));
+        } catch (Exception e) {
+            LOG.warn("Loading values from data adapter failed for keys {}, returning error results", keysToLoad, e);
+            keysToLoad.forEach(key -> results.put(key, LookupResult.withError(
+                    String.format(Locale.ENGLISH, "Loading value from data adapter failed for key <%s>: %s", key.toString(), e.getMessage()))));
+        }
+        // Every requested key needs a result, otherwise the cache would not return it at all
+        keysToLoad.forEach(key -> results.putIfAbsent(key, LookupResult.withError(
+                String.format(Locale.ENGLISH, "Data adapter did not return a value for key <%s>", key.toString()))));
+        return results;
+    }
+
     @Override
     public LookupResult getIfPresent(LookupCacheKey key) {
         final LookupResult cacheEntry = cache.getIfPresent(key);
@@ -32,7 +32,11 @@ import org.graylog2.plugin.lookup.LookupResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
 
 /**
  * The cache that doesn't. Used in place when no cache is wanted, having a null implementation saves us ugly null checks.
@@ -70,6 +74,20 @@ public class NullCache extends LookupCache {
         }
     }
 
+    @Override
+    public Map<LookupCacheKey, LookupResult> getAll(Collection<LookupCacheKey> keys,
+                                                    Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        final Map<LookupCacheKey, LookupResult> results = new LinkedHashMap<>();
+        try {
+            final Map<LookupCacheKey, LookupResult> loaded = loader.apply(keys);
+            keys.forEach(key -> results.put(key, loaded.getOrDefault(key, LookupResult.empty())));
+        } catch (Exception e) {
+            LOG.warn("Loading values from data adapter failed for keys {}, returning empty results", keys, e);
+            keys.forEach(key -> results.put(key, LookupResult.empty()));
+        }
+        return results;
+    }
+
     @Override
     public LookupResult getIfPresent(LookupCacheKey key) {
         return LookupResult.empty();
@@ -18,6 +18,16 @@ package org.graylog2.plugin.buffers;
 
 import org.graylog2.plugin.journal.RawMessage;
 
+import java.util.List;
+
 public interface InputBuffer extends EventBuffer {
     void insert(RawMessage message);
+
+    /**
+     * Inserts all given messages, keeping their order. Implementations may publish the messages as a single unit
+     * instead of claiming a slot for each message separately.
+     */
+    default void insertBatch(List<RawMessage> messages) {
+        messages.forEach(this::insert);
+    }
 }
@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -220,54 +221,93 @@ public abstract class Extractor implements EmbeddedPersistable {
                 }
             }
 
-            try (final Timer.Context ignored2 = executionTimer.time()) {
-                Result[] results;
-                try {
-                    results = run(field);
-                } catch (ExtractorException e) {
-                    final String error = "Could not apply extractor <" + getTitle() + " (" + getId() + ")>";
-                    msg.addProcessingError(new Message.ProcessingError(
-                            ProcessingFailureCause.ExtractorException, error, ExceptionUtils.getRootCauseMessage(e)));
-                    return;
-                }
+            extract(msg, field);
+        }
+    }
 
-                if (results == null || results.length == 0 || Arrays.stream(results).anyMatch(result -> result.getValue() == null)) {
-                    return;
-                } else if (results.length == 1 && results[0].target == null) {
-                    // results[0].target is null if this extractor cannot produce multiple fields use targetField in that case
-                    msg.addField(targetField, results[0].getValue());
-                } else {
-                    for (final Result result : results) {
-                        msg.addField(result.getTarget(), result.getValue());
-                    }
-                }
+    /**
+     * Runs the extractor on an already read value of the source field whose extractor condition has already been
+     * checked by the caller, e. g. because it is shared with other extractors on the same field.
+     *
+     * @param msg   the message to extract into
+     * @param field the current value of the source field
+     * @return {@code true} if the message might have been modified, {@code false} if it is unchanged
+     * @see #recordConditionResult(boolean)
+     */
+    public boolean runExtractor(Message msg, String field) {
+        try (final Timer.Context ignored = completeTimer.time()) {
+            return extract(msg, field);
+        }
+    }
 
-                // Remove original from message?
-                if (cursorStrategy.equals(CursorStrategy.CUT) && !targetField.equals(sourceField) && !Message.RESERVED_FIELDS.contains(sourceField) && results[0].beginIndex != -1) {
-                    final StringBuilder sb = new StringBuilder(field);
+    private boolean extract(Message msg, String field) {
+        try (final Timer.Context ignored = executionTimer.time()) {
+            Result[] results;
+            try {
+                results = run(field);
+            } catch (ExtractorException e) {
+                final String error = "Could not apply extractor <" + getTitle() + " (" + getId() + ")>";
+                msg.addProcessingError(new Message.ProcessingError(
+                        ProcessingFailureCause.ExtractorException, error, ExceptionUtils.getRootCauseMessage(e)));
+                return false;
+            }
 
-                    final List<Result> reverseList = Arrays.stream(results)
-                            .sorted(Comparator.<Result>comparingInt(result -> result.endIndex).reversed())
-                            .collect(Collectors.toList());
+            if (results == null || results.length == 0 || Arrays.stream(results).anyMatch(result -> result.getValue() == null)) {
+                return false;
+            } else if (results.length == 1 && results[0].target == null) {
+                // results[0].target is null if this extractor cannot produce multiple fields use targetField in that case
+                msg.addField(targetField, results[0].getValue());
+            } else {
+                for (final Result result : results) {
+                    msg.addField(result.getTarget(), result.getValue());
+                }
+            }
 
-                    // remove all from reverse so that the indices still match
-                    for (final Result result : reverseList) {
-                        sb.delete(result.getBeginIndex(), result.getEndIndex());
-                    }
+            // Remove original from message?
+            if (cursorStrategy.equals(CursorStrategy.CUT) && !targetField.equals(sourceField) && !Message.RESERVED_FIELDS.contains(sourceField) && results[0].beginIndex != -1) {
+                final StringBuilder sb = new StringBuilder(field);
 
-                    final String builtString = sb.toString();
-                    final String finalResult = builtString.trim().isEmpty() ? "fullyCutByExtractor" : builtString;
+                final List<Result> reverseList = Arrays.stream(results)
+                        .sorted(Comparator.<Result>comparingInt(result -> result.endIndex).reversed())
+                        .collect(Collectors.toList());
 
-                    msg.removeField(sourceField);
-                    // TODO don't add an empty field back, or rather don't add fullyCutByExtractor
-                    msg.addField(sourceField, finalResult);
+                // remove all from reverse so that the indices still match
+                for (final Result result : reverseList) {
+                    sb.delete(result.getBeginIndex(), result.getEndIndex());
                 }
 
+                final String builtString = sb.toString();
+                final String finalResult = builtString.trim().isEmpty() ? "fullyCutByExtractor" : builtString;
+
+                msg.removeField(sourceField);
+                // TODO don't add an empty field back, or rather don't add fullyCutByExtractor
+                msg.addField(sourceField, finalResult);
+            }
+
+            // don't time converters if there are none
+            if (!converters.isEmpty()) {
                 runConverters(msg);
             }
+            return true;
         }
     }
 
+    /**
+     * Records the outcome of the extractor condition if it has been evaluated outside of {@link #runExtractor(Message)}.
+     * A missing or non-string source field counts as a miss.
+     */
+    public void recordConditionResult(boolean hit) {
+        if (hit) {
+            conditionHitsCounter.inc();
+        } else {
+            conditionMissesCounter.inc();
+        }
+    }
+
+    public void recordConditionTime(long nanos) {
+        conditionTimer.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
     private void runConverters(Message msg) {
         try(final Timer.Context ignored = converterTimer.time()) {
             for (Converter converter : converters) {
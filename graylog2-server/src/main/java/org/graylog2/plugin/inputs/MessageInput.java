@@ -42,7 +42,9 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -381,6 +383,32 @@ public abstract class MessageInput implements Stoppable {
     }
 
     public void processRawMessage(RawMessage rawMessage) {
+        if (prepareRawMessage(rawMessage)) {
+            inputBuffer.insert(rawMessage);
+            recordIncomingMessage(rawMessage);
+        }
+    }
+
+    /**
+     * Processes all given messages and inserts them into the input buffer as a single batch. Empty messages are
+     * discarded like in {@link #processRawMessage(RawMessage)}.
+     */
+    public void processRawMessages(List<RawMessage> rawMessages) {
+        final List<RawMessage> batch = new ArrayList<>(rawMessages.size());
+        for (RawMessage rawMessage : rawMessages) {
+            if (prepareRawMessage(rawMessage)) {
+                batch.add(rawMessage);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        inputBuffer.insertBatch(batch);
+        batch.forEach(this::recordIncomingMessage);
+    }
+
+    private boolean prepareRawMessage(RawMessage rawMessage) {
         final int payloadLength = rawMessage.getPayload().length;
         if (payloadLength == 0) {
             LOG.debug("Discarding empty message {} from input {} (remote address {}). Turn logger org.graylog2.plugin.journal.RawMessage to TRACE to see originating stack trace.",
@@ -388,7 +416,7 @@ public abstract class MessageInput implements Stoppable {
                     toIdentifier(),
                     rawMessage.getRemoteAddress() == null ? "unknown" : rawMessage.getRemoteAddress());
             emptyMessages.inc();
-            return;
+            return false;
         }
 
         // add the common message metadata for this input/codec
@@ -397,9 +425,11 @@ public abstract class MessageInput implements Stoppable {
         rawMessage.addSourceNode(getId(), serverStatus.getNodeId());
         // Wrap at unsigned int maximum
         rawMessage.setSequenceNr((int) sequenceNr.getAndUpdate(i -> i == 0xFFFF_FFFFL ? 0 : i + 1));
+        return true;
+    }
 
-        inputBuffer.insert(rawMessage);
-
+    private void recordIncomingMessage(RawMessage rawMessage) {
+        final int payloadLength = rawMessage.getPayload().length;
         incomingMessages.mark();
         globalIncomingMessages.inc();
         rawSize.mark(payloadLength);
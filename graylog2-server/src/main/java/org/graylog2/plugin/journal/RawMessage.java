@@ -69,6 +69,8 @@ public class RawMessage implements Serializable {
     private Object messageQueueId;
     private int sequenceNr;
     private Configuration codecConfig;
+    // only kept in memory, never written to the journal
+    private transient JournalAckCallback journalAckCallback;
 
     public RawMessage(@Nonnull byte[] payload) {
         this(payload, (ResolvableInetSocketAddress)null);
@@ -294,6 +296,22 @@ public class RawMessage implements Serializable {
         return messageQueueId;
     }
 
+    /**
+     * Registers a callback that is notified once this message has been handed over to the message journal (or directly
+     * to the process buffer if the journal is disabled), or once that failed. Transports use this to acknowledge
+     * messages at their source only after they cannot be lost anymore.
+     * <p>
+     * The callback is invoked from an input buffer thread and must not block.
+     */
+    public void setJournalAckCallback(@Nullable JournalAckCallback journalAckCallback) {
+        this.journalAckCallback = journalAckCallback;
+    }
+
+    @Nullable
+    public JournalAckCallback getJournalAckCallback() {
+        return journalAckCallback;
+    }
+
     /**
      * @deprecated use {@link #getMessageQueueId()} instead
      */
@@ -330,4 +348,16 @@ public class RawMessage implements Serializable {
             }
         }
     }
+
+    public interface JournalAckCallback {
+        /**
+         * The message has been written to the journal.
+         */
+        void acknowledge();
+
+        /**
+         * The message could not be written to the journal, it is lost unless the transport delivers it again.
+         */
+        void fail();
+    }
 }
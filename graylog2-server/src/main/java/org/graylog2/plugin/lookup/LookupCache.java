@@ -28,9 +28,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static org.graylog2.utilities.ObjectUtils.objectId;
 
@@ -153,6 +158,26 @@ public abstract class LookupCache extends AbstractIdleService {
 
     public abstract LookupResult get(LookupCacheKey key, Callable<LookupResult> loader);
 
+    /**
+     * Returns the results for multiple keys. The given loader is called with the keys which are not cached, it must
+     * return a result for each of them.
+     * <p>
+     * This default implementation calls {@link #get(LookupCacheKey, Callable)} for every key, which also calls the
+     * loader for every missing key. Caches which can load several keys at once should override it.
+     *
+     * @param keys   the keys to look up
+     * @param loader the function to load missing keys
+     * @return the results for all given keys, in the iteration order of the keys
+     */
+    public Map<LookupCacheKey, LookupResult> getAll(Collection<LookupCacheKey> keys,
+                                                    Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        final Map<LookupCacheKey, LookupResult> results = new LinkedHashMap<>();
+        for (final LookupCacheKey key : keys) {
+            results.put(key, get(key, () -> loader.apply(Collections.singleton(key)).get(key)));
+        }
+        return results;
+    }
+
     public abstract LookupResult getIfPresent(LookupCacheKey key);
 
     public abstract void purge();
@@ -26,7 +26,10 @@ import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -145,6 +148,39 @@ public abstract class LookupDataAdapter extends AbstractIdleService {
     }
     protected abstract LookupResult doGet(Object key);
 
+    /**
+     * Looks up multiple keys at once.
+     *
+     * @param keys the keys to look up
+     * @return the results for all given keys, in the iteration order of the keys
+     */
+    public Map<Object, LookupResult> getAll(Collection<?> keys) {
+        if (state() == State.FAILED) {
+            final Map<Object, LookupResult> results = new LinkedHashMap<>();
+            keys.forEach(key -> results.put(key, getErrorResult()));
+            return results;
+        }
+        checkState(isRunning(), "Data adapter needs to be started before it can be used");
+        try (final Timer.Context ignored = requestTimer.time()) {
+            return doGetAll(keys);
+        }
+    }
+
+    /**
+     * Looks up multiple keys at once. This default implementation calls {@link #doGet(Object)} for every key.
+     * Data adapters which can resolve several keys with fewer round trips to their data source should override it.
+     *
+     * @param keys the keys to look up
+     * @return the results for all given keys, in the iteration order of the keys
+     */
+    protected Map<Object, LookupResult> doGetAll(Collection<?> keys) {
+        final Map<Object, LookupResult> results = new LinkedHashMap<>();
+        for (final Object key : keys) {
+            results.put(key, doGet(key));
+        }
+        return results;
+    }
+
     @Deprecated
     public abstract void set(Object key, Object value);
 
@@ -37,9 +37,20 @@ class DirectMessageHandler implements WorkHandler<RawMessageEvent> {
     @Override
     public void onEvent(RawMessageEvent event) throws Exception {
         final RawMessage rawMessage = event.getRawMessage();
-        processBuffer.insertBlocking(rawMessage);
+        final RawMessage.JournalAckCallback journalAckCallback = rawMessage == null ? null : rawMessage.getJournalAckCallback();
+        try {
+            processBuffer.insertBlocking(rawMessage);
+        } catch (Exception e) {
+            if (journalAckCallback != null) {
+                journalAckCallback.fail();
+            }
+            throw e;
+        }
         if (rawMessage != null) {
             processingStatusRecorder.updateIngestReceiveTime(rawMessage.getTimestamp());
+            if (journalAckCallback != null) {
+                journalAckCallback.acknowledge();
+            }
         }
         // clear out for gc and to avoid promoting the raw message event to a tenured gen
         event.clear();
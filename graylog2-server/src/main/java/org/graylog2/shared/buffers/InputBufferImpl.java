@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
+import java.util.List;
 import java.util.concurrent.ThreadFactory;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -103,6 +104,18 @@ public class InputBufferImpl implements InputBuffer {
         incomingMessages.mark();
     }
 
+    @Override
+    public void insertBatch(List<RawMessage> messages) {
+        final RawMessage[] batch = messages.toArray(new RawMessage[0]);
+        // A single publish cannot claim more slots than the ring buffer has
+        final int maxBatchSize = ringBuffer.getBufferSize();
+        for (int start = 0; start < batch.length; start += maxBatchSize) {
+            final int batchSize = Math.min(maxBatchSize, batch.length - start);
+            ringBuffer.publishEvents(RawMessageEvent.TRANSLATOR, start, batchSize, batch);
+        }
+        incomingMessages.mark(batch.length);
+    }
+
     @Override
     public long getUsage() {
         return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
@@ -21,6 +21,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.lmax.disruptor.EventHandler;
+import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.shared.messageq.MessageQueueWriter;
 import org.graylog2.system.processing.ProcessingStatusRecorder;
 import org.joda.time.DateTime;
@@ -67,7 +68,15 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
             // call the update on the recorder service for every message. (less contention)
             processingStatusRecorder.updateIngestReceiveTime(metricsFilter.getLatestReceiveTime());
 
-            messageQueueWriter.write(entries);
+            try {
+                messageQueueWriter.write(entries);
+            } catch (Exception e) {
+                entries.forEach(entry -> runAckCallback(entry, false));
+                throw e;
+            }
+
+            // Only acknowledge after the write returned, transports rely on the messages being in the journal by now
+            entries.forEach(entry -> runAckCallback(entry, true));
 
             // Release objects for GC
             batch.stream()
@@ -78,6 +87,22 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
         }
     }
 
+    private void runAckCallback(RawMessageEvent event, boolean written) {
+        final RawMessage.JournalAckCallback callback = event.getJournalAckCallback();
+        if (callback == null) {
+            return;
+        }
+        try {
+            if (written) {
+                callback.acknowledge();
+            } else {
+                callback.fail();
+            }
+        } catch (Exception e) {
+            log.error("Error while running journal acknowledgement callback", e);
+        }
+    }
+
     private class Filter implements Function<RawMessageEvent, RawMessageEvent> {
         private long bytesWritten = 0;
         private DateTime latestReceiveTime = new DateTime(0L, DateTimeZone.UTC);
@@ -99,6 +124,7 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
 
             if (input.getEncodedRawMessage() == null) {
                 log.error("Skipping RawMessageEvent with null encodedRawMessage");
+                runAckCallback(input, false);
                 return null;
             }
             // stats
@@ -23,9 +23,11 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.WaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
+import org.graylog2.lookup.LookupKeyPrefetcher;
 import org.graylog2.plugin.GlobalMetricNames;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.buffers.Buffer;
@@ -59,7 +61,8 @@ public class ProcessBuffer extends Buffer {
                          ProcessBufferProcessor.Factory bufferProcessorFactory,
                          @Named("processbuffer_processors") int processorCount,
                          @Named("ring_size") int ringSize,
-                         @Named("processor_wait_strategy") String waitStrategyName) {
+                         @Named("processor_wait_strategy") String waitStrategyName,
+                         LookupKeyPrefetcher lookupKeyPrefetcher) {
         this.ringBufferSize = ringSize;
         this.incomingMessages = metricRegistry.meter(name(ProcessBuffer.class, "incomingMessages"));
 
@@ -90,7 +93,18 @@ public class ProcessBuffer extends Buffer {
         for (int i = 0; i < processorCount; i++) {
             processors[i] = bufferProcessorFactory.create(decodingProcessorFactory.create(decodeTime, parseTime));
         }
-        disruptor.handleEventsWithWorkerPool(processors);
+        if (lookupKeyPrefetcher.isEnabled()) {
+            // Work handlers don't see the batches of the ring buffer, so every processor handles its share of the
+            // events itself and prefetches the lookup keys of each batch at once.
+            @SuppressWarnings("unchecked")
+            final EventHandler<MessageEvent>[] handlers = new EventHandler[processorCount];
+            for (int i = 0; i < processorCount; i++) {
+                handlers[i] = processors[i].prefetchingEventHandler(i, processorCount);
+            }
+            disruptor.handleEventsWith(handlers);
+        } else {
+            disruptor.handleEventsWithWorkerPool(processors);
+        }
 
         ringBuffer = disruptor.start();
     }
@@ -38,6 +38,8 @@ public class RawMessageEncoderHandler implements WorkHandler<RawMessageEvent> {
     @Override
     public void onEvent(RawMessageEvent event) throws Exception {
         incomingMessages.mark();
+        // Set before encoding, the journal writer fails the callback if the message couldn't be encoded
+        event.setJournalAckCallback(event.getRawMessage().getJournalAckCallback());
         event.setEncodedRawMessage(event.getRawMessage().encode());
         event.setMessageIdBytes(event.getRawMessage().getIdBytes());
         
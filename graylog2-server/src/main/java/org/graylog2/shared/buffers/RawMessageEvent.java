@@ -23,6 +23,7 @@ import com.lmax.disruptor.EventTranslatorOneArg;
 import org.graylog2.plugin.journal.RawMessage;
 import org.joda.time.DateTime;
 
+import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 
 public class RawMessageEvent {
@@ -37,6 +38,9 @@ public class RawMessageEvent {
     // We need access to the raw message timestamp after the raw message has been cleared
     private DateTime messageTimestamp;
 
+    // Survives clearing the raw message so the journal writer can acknowledge the message after writing it
+    private RawMessage.JournalAckCallback journalAckCallback;
+
     public static final EventFactory<RawMessageEvent> FACTORY = new EventFactory<RawMessageEvent>() {
         @Override
         public RawMessageEvent newInstance() {
@@ -91,6 +95,15 @@ public class RawMessageEvent {
         this.messageTimestamp = messageTimestamp;
     }
 
+    @Nullable
+    public RawMessage.JournalAckCallback getJournalAckCallback() {
+        return journalAckCallback;
+    }
+
+    public void setJournalAckCallback(@Nullable RawMessage.JournalAckCallback journalAckCallback) {
+        this.journalAckCallback = journalAckCallback;
+    }
+
     // performance doesn't matter, it's only being called during tracing
     public UUID getMessageId() {
         final ByteBuffer wrap = ByteBuffer.wrap(messageIdBytes);
@@ -102,5 +115,6 @@ public class RawMessageEvent {
         this.encodedRawMessage = null;
         this.messageIdBytes = null;
         this.messageTimestamp = null;
+        this.journalAckCallback = null;
     }
 }
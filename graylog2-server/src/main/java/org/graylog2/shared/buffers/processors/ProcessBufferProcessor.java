@@ -22,10 +22,13 @@ import com.codahale.metrics.Timer;
 import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.WorkHandler;
 import de.huxhorn.sulky.ulid.ULID;
+import org.graylog.events.processor.aggregation.StreamingFilterEvents;
 import org.graylog.failure.FailureSubmissionService;
 import org.graylog2.buffers.OutputBuffer;
+import org.graylog2.lookup.LookupKeyPrefetcher;
 import org.graylog2.messageprocessors.OrderedMessageProcessors;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.Messages;
@@ -39,7 +42,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 
@@ -48,6 +54,8 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 
 public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
     private static final Logger LOG = LoggerFactory.getLogger(ProcessBufferProcessor.class);
+    // Upper bound for the messages which are collected before their lookup keys are prefetched
+    private static final int MAX_PREFETCH_BATCH_SIZE = 500;
 
     private final Meter incomingMessages;
 
@@ -62,6 +70,8 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
     private final DecodingProcessor decodingProcessor;
     private final Provider<Stream> defaultStreamProvider;
     private final FailureSubmissionService failureSubmissionService;
+    private final StreamingFilterEvents streamingFilterEvents;
+    private final LookupKeyPrefetcher lookupKeyPrefetcher;
     private volatile Message currentMessage;
 
     @AssistedInject
@@ -73,7 +83,9 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
                                   MessageULIDGenerator messageULIDGenerator,
                                   @Assisted DecodingProcessor decodingProcessor,
                                   @DefaultStream Provider<Stream> defaultStreamProvider,
-                                  FailureSubmissionService failureSubmissionService) {
+                                  FailureSubmissionService failureSubmissionService,
+                                  StreamingFilterEvents streamingFilterEvents,
+                                  LookupKeyPrefetcher lookupKeyPrefetcher) {
         this.orderedMessageProcessors = orderedMessageProcessors;
         this.outputBuffer = outputBuffer;
         this.processingStatusRecorder = processingStatusRecorder;
@@ -82,6 +94,8 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
         this.decodingProcessor = decodingProcessor;
         this.defaultStreamProvider = defaultStreamProvider;
         this.failureSubmissionService = failureSubmissionService;
+        this.streamingFilterEvents = streamingFilterEvents;
+        this.lookupKeyPrefetcher = lookupKeyPrefetcher;
 
         incomingMessages = metricRegistry.meter(name(ProcessBufferProcessor.class, "incomingMessages"));
         outgoingMessages = metricRegistry.meter(name(ProcessBufferProcessor.class, "outgoingMessages"));
@@ -92,29 +106,41 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
     @Override
     public void onEvent(MessageEvent event) throws Exception {
         try {
-            // Decode the RawMessage to a Message object. The DecodingProcessor used to be a separate handler in the
-            // ProcessBuffer. Due to performance problems discovered during 1.0.0 testing, we decided to move this here.
-            // TODO The DecodingProcessor does not need to be a EventHandler. We decided to do it like this to keep the change as small as possible for 1.0.0.
-            decodingProcessor.onEvent(event, 0L, false);
-
-            if (event.isSingleMessage()) {
-                dispatchMessage(event.getMessage());
-            } else {
-                final Collection<Message> messageList = event.getMessages();
-                if (messageList == null) {
-                    // skip message events which could not be decoded properly
-                    return;
-                }
-
-                for (final Message message : messageList) {
-                    dispatchMessage(message);
-                }
+            for (final Message message : decode(event)) {
+                dispatchMessage(message);
             }
         } finally {
             event.clearMessages();
         }
     }
 
+    /**
+     * Creates a handler which processes every {@code numberOfShards}th event of the ring buffer, starting with
+     * {@code shard}. Unlike {@link #onEvent(MessageEvent)}, the handler collects the decoded messages of a whole
+     * Disruptor batch and prefetches their lookup keys at once before processing them.
+     *
+     * @param shard          the index of this processor, starting at 0
+     * @param numberOfShards the number of processors which share the ring buffer
+     * @return the event handler
+     */
+    public EventHandler<MessageEvent> prefetchingEventHandler(int shard, int numberOfShards) {
+        return new PrefetchingEventHandler(shard, numberOfShards);
+    }
+
+    private Collection<Message> decode(MessageEvent event) throws Exception {
+        // Decode the RawMessage to a Message object. The DecodingProcessor used to be a separate handler in the
+        // ProcessBuffer. Due to performance problems discovered during 1.0.0 testing, we decided to move this here.
+        // TODO The DecodingProcessor does not need to be a EventHandler. We decided to do it like this to keep the change as small as possible for 1.0.0.
+        decodingProcessor.onEvent(event, 0L, false);
+
+        if (event.isSingleMessage()) {
+            return Collections.singletonList(event.getMessage());
+        }
+        final Collection<Message> messageList = event.getMessages();
+        // skip message events which could not be decoded properly
+        return messageList == null ? Collections.emptyList() : messageList;
+    }
+
     public Optional<Message> getCurrentMessage() {
         return Optional.ofNullable(currentMessage);
     }
@@ -176,6 +202,10 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
             processingStatusRecorder.updatePostProcessingReceiveTime(message.getReceiveTime());
 
             if(failureSubmissionService.submitProcessingErrors(message)) {
+                // Evaluated once all message processors have finished, so dropped and re-routed messages are respected
+                if (streamingFilterEvents.isActive() && !message.getFilterOut()) {
+                    streamingFilterEvents.process(message);
+                }
                 outputBuffer.insertBlocking(message);
             }
         }
@@ -184,4 +214,47 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
     public interface Factory {
         ProcessBufferProcessor create(DecodingProcessor decodingProcessor);
     }
+
+    private class PrefetchingEventHandler implements EventHandler<MessageEvent> {
+        private final int shard;
+        private final int numberOfShards;
+        private final List<Message> pendingMessages = new ArrayList<>();
+
+        PrefetchingEventHandler(int shard, int numberOfShards) {
+            this.shard = shard;
+            this.numberOfShards = numberOfShards;
+        }
+
+        @Override
+        public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+            try {
+                if (sequence % numberOfShards == shard) {
+                    try {
+                        pendingMessages.addAll(decode(event));
+                    } finally {
+                        event.clearMessages();
+                    }
+                }
+            } finally {
+                // Other shards' events end batches as well, the collected messages must not wait for the next own event
+                if (endOfBatch || pendingMessages.size() >= MAX_PREFETCH_BATCH_SIZE) {
+                    processPendingMessages();
+                }
+            }
+        }
+
+        private void processPendingMessages() {
+            if (pendingMessages.isEmpty()) {
+                return;
+            }
+            try {
+                lookupKeyPrefetcher.prefetch(pendingMessages);
+                for (final Message message : pendingMessages) {
+                    dispatchMessage(message);
+                }
+            } finally {
+                pendingMessages.clear();
+            }
+        }
+    }
 }
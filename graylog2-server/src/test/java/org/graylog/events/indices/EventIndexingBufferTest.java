@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.indices;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.collect.ImmutableList;
+import org.graylog.events.event.Event;
+import org.graylog.events.event.EventWithContext;
+import org.graylog.events.event.TestEvent;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class EventIndexingBufferTest {
+    @Mock
+    private EventIndexer eventIndexer;
+
+    @Mock
+    private ServerStatus serverStatus;
+
+    @TempDir
+    Path journalDirectory;
+
+    private ScheduledExecutorService scheduler;
+    private EventIndexingBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (buffer != null) {
+            buffer.stopAsync().awaitTerminated();
+        }
+        scheduler.shutdownNow();
+    }
+
+    private EventIndexingBuffer startBuffer(boolean enabled, int maxPendingEvents) {
+        buffer = new EventIndexingBuffer(enabled, journalDirectory, Size.megabytes(10L), 100, maxPendingEvents,
+                eventIndexer, new ObjectMapperProvider().get(), scheduler, new MetricRegistry(), serverStatus);
+        buffer.startAsync().awaitRunning();
+        return buffer;
+    }
+
+    private static List<EventWithContext> events(int count) {
+        final ImmutableList.Builder<EventWithContext> events = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            events.add(EventWithContext.create(new TestEvent()));
+        }
+        return events.build();
+    }
+
+    private static List<String> ids(List<EventWithContext> eventsWithContext) {
+        return eventsWithContext.stream().map(eventWithContext -> eventWithContext.event().getId()).collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> indexedIds() {
+        final ArgumentCaptor<List<Event>> captor = ArgumentCaptor.forClass(List.class);
+        verify(eventIndexer, timeout(10_000).atLeastOnce()).index(captor.capture());
+        return captor.getAllValues().stream()
+                .flatMap(List::stream)
+                .map(Event::getId)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void indexesDirectlyIfDisabled() {
+        final List<EventWithContext> events = events(2);
+
+        startBuffer(false, 1000).write(events);
+
+        verify(eventIndexer).write(events);
+        verify(eventIndexer, never()).index(any());
+    }
+
+    @Test
+    void indexesEventsInTheBackground() {
+        final List<EventWithContext> events = events(3);
+
+        startBuffer(true, 1000).write(events);
+
+        verify(eventIndexer, never()).write(any());
+        assertThat(indexedIds()).containsExactlyElementsOf(ids(events));
+    }
+
+    @Test
+    void retriesFailedBatches() {
+        doThrow(new RuntimeException("Indexing failed")).doNothing().when(eventIndexer).index(any());
+        final List<EventWithContext> events = events(2);
+
+        startBuffer(true, 1000).write(events);
+
+        verify(eventIndexer, timeout(10_000).times(2)).index(any());
+        assertThat(indexedIds()).containsExactlyElementsOf(ids(events));
+    }
+
+    @Test
+    void indexesPendingEventsAfterRestart() {
+        // The first buffer never manages to index the events
+        doThrow(new RuntimeException("Indexing failed")).when(eventIndexer).index(any());
+        final List<EventWithContext> events = events(2);
+        startBuffer(true, 1000).write(events);
+        verify(eventIndexer, timeout(10_000).atLeastOnce()).index(any());
+        buffer.stopAsync().awaitTerminated();
+
+        doNothing().when(eventIndexer).index(any());
+        startBuffer(true, 1000);
+
+        assertThat(indexedIds()).containsExactlyElementsOf(ids(events));
+    }
+
+    @Test
+    void indexesDirectlyIfTooManyEventsArePending() {
+        final List<EventWithContext> events = events(3);
+
+        startBuffer(true, 2).write(events);
+
+        verify(eventIndexer).write(events);
+    }
+}
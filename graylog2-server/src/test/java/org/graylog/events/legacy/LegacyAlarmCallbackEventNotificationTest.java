@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.legacy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.events.event.EventDto;
+import org.graylog.events.notifications.EventNotificationContext;
+import org.graylog.events.notifications.EventNotificationService;
+import org.graylog.events.notifications.PermanentEventNotificationException;
+import org.graylog.events.processor.EventDefinitionDto;
+import org.graylog2.plugin.MessageSummary;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LegacyAlarmCallbackEventNotificationTest {
+    private static final DateTime NOW = DateTime.parse("2019-01-01T00:00:00.000Z");
+
+    @Mock
+    private EventNotificationService notificationCallbackService;
+    @Mock
+    private LegacyAlarmCallbackSender alarmCallbackSender;
+    @Mock
+    private EventDefinitionDto eventDefinition;
+
+    private LegacyAlarmCallbackEventNotificationConfig config;
+    private LegacyAlarmCallbackEventNotification notification;
+
+    @BeforeEach
+    void setUp() {
+        config = LegacyAlarmCallbackEventNotificationConfig.builder()
+                .callbackType("org.graylog2.alarmcallbacks.HTTPAlarmCallback")
+                .configuration(ImmutableMap.of())
+                .build();
+        notification = new LegacyAlarmCallbackEventNotification(notificationCallbackService, alarmCallbackSender);
+    }
+
+    @Test
+    void sendsEveryEventOfBatchWithItsOwnBacklog() throws Exception {
+        final EventDto first = event("event-1");
+        final EventDto second = event("event-2");
+        final ImmutableList<MessageSummary> firstBacklog = ImmutableList.of(mock(MessageSummary.class));
+        final ImmutableList<MessageSummary> secondBacklog = ImmutableList.of(mock(MessageSummary.class));
+        when(notificationCallbackService.getBacklogForEvent(any())).thenAnswer(invocation -> {
+            final EventNotificationContext ctx = invocation.getArgument(0);
+            assertThat(ctx.batchedEvents()).isEmpty();
+            return ctx.event().equals(first) ? firstBacklog : secondBacklog;
+        });
+
+        notification.execute(context(first, second));
+
+        verify(alarmCallbackSender).send(eq(config), eq(eventDefinition), eq(first), eq(firstBacklog));
+        verify(alarmCallbackSender).send(eq(config), eq(eventDefinition), eq(second), eq(secondBacklog));
+        verifyNoMoreInteractions(alarmCallbackSender);
+    }
+
+    @Test
+    void sendsSingleEvent() throws Exception {
+        final EventDto event = event("event-1");
+        when(notificationCallbackService.getBacklogForEvent(any())).thenReturn(ImmutableList.of());
+
+        notification.execute(context(event));
+
+        verify(alarmCallbackSender).send(config, eventDefinition, event, ImmutableList.of());
+        verifyNoMoreInteractions(alarmCallbackSender);
+    }
+
+    @Test
+    void failsPermanentlyIfEventDefinitionIsMissing() {
+        final EventNotificationContext ctx = context(event("event-1")).toBuilder()
+                .eventDefinition(null)
+                .build();
+
+        assertThatThrownBy(() -> notification.execute(ctx))
+                .isInstanceOf(PermanentEventNotificationException.class);
+    }
+
+    private EventNotificationContext context(EventDto event, EventDto... batchedEvents) {
+        return EventNotificationContext.builder()
+                .notificationId("notification-1")
+                .notificationConfig(config)
+                .event(event)
+                .batchedEvents(ImmutableList.copyOf(batchedEvents))
+                .eventDefinition(eventDefinition)
+                .build();
+    }
+
+    private static EventDto event(String id) {
+        return EventDto.builder()
+                .id(id)
+                .eventDefinitionType("aggregation-v1")
+                .eventDefinitionId("event-definition-1")
+                .originContext(null)
+                .eventTimestamp(NOW)
+                .processingTimestamp(NOW)
+                .timerangeStart(null)
+                .timerangeEnd(null)
+                .streams(ImmutableSet.of())
+                .message("Event " + id)
+                .source("source")
+                .keyTuple(ImmutableList.of())
+                .key("")
+                .priority(2)
+                .alert(false)
+                .fields(ImmutableMap.of())
+                .build();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.notifications;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.events.configuration.EventsConfigurationProvider;
+import org.graylog.events.event.EventDto;
+import org.graylog.events.notifications.types.HTTPEventNotificationConfig;
+import org.graylog.events.processor.DBEventDefinitionService;
+import org.graylog.events.processor.EventDefinitionDto;
+import org.graylog.scheduler.JobDefinitionDto;
+import org.graylog.scheduler.JobExecutionContext;
+import org.graylog.scheduler.JobTriggerDto;
+import org.graylog.scheduler.JobTriggerUpdate;
+import org.graylog.scheduler.JobTriggerUpdates;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventNotificationExecutionJobTest {
+    private static final String NOTIFICATION_ID = "notification-1";
+    private static final String EVENT_DEFINITION_ID = "event-definition-1";
+    private static final DateTime NOW = DateTime.parse("2019-01-01T00:00:00.000Z");
+    private static final long GRACE_PERIOD_MS = 60_000;
+
+    @Mock
+    private DBNotificationService notificationService;
+    @Mock
+    private DBEventDefinitionService eventDefinitionService;
+    @Mock
+    private DBNotificationGracePeriodService notificationGracePeriodService;
+    @Mock
+    private EventsConfigurationProvider configurationProvider;
+    @Mock
+    private EventNotificationExecutionMetrics metrics;
+    @Mock
+    private EventNotification eventNotification;
+    @Mock
+    private JobDefinitionDto jobDefinition;
+    @Mock
+    private EventDefinitionDto eventDefinition;
+    @Mock
+    private JobExecutionContext ctx;
+    @Mock
+    private JobTriggerDto trigger;
+    @Mock
+    private JobTriggerUpdates jobTriggerUpdates;
+
+    private NotificationDto notification;
+
+    @BeforeEach
+    void setUp() {
+        notification = NotificationDto.builder()
+                .id(NOTIFICATION_ID)
+                .title("Notification")
+                .description("")
+                .config(HTTPEventNotificationConfig.Builder.create().url("http://localhost").build())
+                .build();
+        when(notificationService.get(NOTIFICATION_ID)).thenReturn(Optional.of(notification));
+        when(eventDefinitionService.get(EVENT_DEFINITION_ID)).thenReturn(Optional.of(eventDefinition));
+        when(jobDefinition.config()).thenReturn(EventNotificationExecutionJob.Config.builder()
+                .notificationId(NOTIFICATION_ID)
+                .build());
+        when(ctx.trigger()).thenReturn(trigger);
+        when(ctx.jobTriggerUpdates()).thenReturn(jobTriggerUpdates);
+        when(jobTriggerUpdates.scheduleNextExecution()).thenReturn(JobTriggerUpdate.withoutNextTime());
+    }
+
+    @Test
+    void deliversBatchedEventsInOneExecution() throws Exception {
+        gracePeriod(0);
+        final EventDto first = event("event-1", "key-1", NOW);
+        final EventDto second = event("event-2", "key-1", NOW.plusSeconds(1));
+        final EventDto third = event("event-3", "key-2", NOW.plusSeconds(2));
+        triggerEvents(first, second, third);
+
+        job().execute(ctx);
+
+        final EventNotificationContext notificationContext = executedContext();
+        assertThat(notificationContext.event()).isEqualTo(first);
+        assertThat(notificationContext.batchedEvents()).containsExactly(second, third);
+        for (EventDto event : ImmutableList.of(first, second, third)) {
+            verify(notificationGracePeriodService).updateNotifiedStatus(NOTIFICATION_ID, event, 0);
+        }
+    }
+
+    @Test
+    void skipsBatchedEventsInGracePeriod() throws Exception {
+        gracePeriod(GRACE_PERIOD_MS);
+        final EventDto first = event("event-1", "key-1", NOW);
+        // Another event of the same key within the grace period of the first one
+        final EventDto sameKey = event("event-2", "key-1", NOW.plusSeconds(1));
+        // An event of a key which has been notified before
+        final EventDto notifiedKey = event("event-3", "key-2", NOW.plusSeconds(2));
+        final EventDto otherKey = event("event-4", "key-3", NOW.plusSeconds(3));
+        final EventDto sameKeyAfterGracePeriod = event("event-5", "key-1", NOW.plusMillis((int) GRACE_PERIOD_MS + 1));
+        triggerEvents(first, sameKey, notifiedKey, otherKey, sameKeyAfterGracePeriod);
+        when(notificationGracePeriodService.inGracePeriod(any(EventDto.class), eq(NOTIFICATION_ID), eq(GRACE_PERIOD_MS)))
+                .thenAnswer(invocation -> notifiedKey.equals(invocation.getArgument(0)));
+
+        job().execute(ctx);
+
+        final EventNotificationContext notificationContext = executedContext();
+        assertThat(notificationContext.event()).isEqualTo(first);
+        assertThat(notificationContext.batchedEvents()).containsExactly(otherKey, sameKeyAfterGracePeriod);
+        verify(notificationGracePeriodService, never()).updateNotifiedStatus(NOTIFICATION_ID, sameKey, GRACE_PERIOD_MS);
+        verify(notificationGracePeriodService, never()).updateNotifiedStatus(NOTIFICATION_ID, notifiedKey, GRACE_PERIOD_MS);
+        verify(notificationGracePeriodService).updateNotifiedStatus(NOTIFICATION_ID, otherKey, GRACE_PERIOD_MS);
+    }
+
+    @Test
+    void doesNotExecuteNotificationIfAllEventsAreInGracePeriod() throws Exception {
+        gracePeriod(GRACE_PERIOD_MS);
+        final EventDto first = event("event-1", "key-1", NOW);
+        final EventDto second = event("event-2", "key-1", NOW.plusSeconds(1));
+        triggerEvents(first, second);
+        when(notificationGracePeriodService.inGracePeriod(first, NOTIFICATION_ID, GRACE_PERIOD_MS)).thenReturn(true);
+        when(notificationGracePeriodService.inGracePeriod(second, NOTIFICATION_ID, GRACE_PERIOD_MS)).thenReturn(true);
+
+        job().execute(ctx);
+
+        verify(eventNotification, never()).execute(any());
+        verify(metrics).markInGrace(eventNotification, notification);
+    }
+
+    private EventNotificationExecutionJob job() {
+        final Map<String, EventNotification.Factory> factories = ImmutableMap.of(notification.config().type(), () -> eventNotification);
+        return new EventNotificationExecutionJob(jobDefinition, notificationService, eventDefinitionService,
+                notificationGracePeriodService, factories, configurationProvider, metrics);
+    }
+
+    private EventNotificationContext executedContext() throws EventNotificationException {
+        final ArgumentCaptor<EventNotificationContext> captor = ArgumentCaptor.forClass(EventNotificationContext.class);
+        verify(eventNotification).execute(captor.capture());
+        return captor.getValue();
+    }
+
+    private void gracePeriod(long gracePeriodMs) {
+        when(eventDefinition.notificationSettings()).thenReturn(EventNotificationSettings.withGracePeriod(gracePeriodMs));
+    }
+
+    private void triggerEvents(EventDto event, EventDto... batchedEvents) {
+        when(trigger.data()).thenReturn(Optional.of(EventNotificationExecutionJob.Data.builder()
+                .eventDto(event)
+                .batchedEvents(List.of(batchedEvents))
+                .build()));
+    }
+
+    private static EventDto event(String id, String key, DateTime timestamp) {
+        return EventDto.builder()
+                .id(id)
+                .eventDefinitionType("aggregation-v1")
+                .eventDefinitionId(EVENT_DEFINITION_ID)
+                .originContext(null)
+                .eventTimestamp(timestamp)
+                .processingTimestamp(timestamp)
+                .timerangeStart(null)
+                .timerangeEnd(null)
+                .streams(ImmutableSet.of())
+                .message("Event " + id)
+                .source("source")
+                .keyTuple(ImmutableList.of(key))
+                .key(key)
+                .priority(2)
+                .alert(false)
+                .fields(ImmutableMap.of())
+                .build();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.notifications;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.events.JobSchedulerTestClock;
+import org.graylog.events.event.Event;
+import org.graylog.events.event.EventDto;
+import org.graylog.events.event.EventWithContext;
+import org.graylog.events.notifications.types.HTTPEventNotificationConfig;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.scheduler.DBJobDefinitionService;
+import org.graylog.scheduler.DBJobTriggerService;
+import org.graylog.scheduler.JobDefinitionDto;
+import org.graylog.scheduler.JobTriggerDto;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventNotificationHandlerTest {
+    private static final String NOTIFICATION_ID = "notification-1";
+    private static final String JOB_DEFINITION_ID = "job-definition-1";
+    private static final DateTime NOW = new DateTime(2019, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    @Mock
+    private DBJobDefinitionService jobDefinitionService;
+    @Mock
+    private DBJobTriggerService jobTriggerService;
+    @Mock
+    private DBNotificationService notificationService;
+    @Mock
+    private NotificationGracePeriodService notificationGracePeriodService;
+    @Mock
+    private EventDefinition eventDefinition;
+    @Mock
+    private JobDefinitionDto jobDefinition;
+
+    private final JobSchedulerTestClock clock = new JobSchedulerTestClock(NOW);
+
+    @BeforeEach
+    void setUp() {
+        when(eventDefinition.notifications()).thenReturn(ImmutableList.of(EventNotificationHandler.Config.builder()
+                .notificationId(NOTIFICATION_ID)
+                .build()));
+        when(jobDefinition.id()).thenReturn(JOB_DEFINITION_ID);
+        when(jobDefinitionService.getByConfigField(anyString(), eq(NOTIFICATION_ID))).thenReturn(Optional.of(jobDefinition));
+        when(notificationService.get(NOTIFICATION_ID)).thenReturn(Optional.of(NotificationDto.builder()
+                .id(NOTIFICATION_ID)
+                .title("Notification")
+                .description("")
+                .config(HTTPEventNotificationConfig.Builder.create().url("http://localhost").build())
+                .build()));
+        lenient().when(jobTriggerService.create(any(JobTriggerDto.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void createsTriggerForEveryEventWithoutBatchWindow() {
+        final EventNotificationHandler handler = handler(Duration.seconds(0), 100);
+        final List<EventDto> events = events(3);
+
+        handler.handleEvents(eventDefinition, eventsWithContext(events));
+
+        final List<JobTriggerDto> triggers = createdTriggers(3);
+        for (int i = 0; i < triggers.size(); i++) {
+            assertThat(triggers.get(i).nextTime()).isEqualByComparingTo(NOW);
+            assertThat(triggerData(triggers.get(i)).allEvents()).containsExactly(events.get(i));
+        }
+        verify(jobTriggerService, never()).addToPendingTriggerData(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void batchesEventsWithinWindow() {
+        final EventNotificationHandler handler = handler(Duration.minutes(1), 100);
+        final List<EventDto> events = events(3);
+
+        handler.handleEvents(eventDefinition, eventsWithContext(events));
+
+        final JobTriggerDto trigger = createdTriggers(1).get(0);
+        assertThat(trigger.nextTime()).isEqualByComparingTo(NOW.plusMinutes(1));
+        assertThat(triggerData(trigger).eventDto()).isEqualTo(events.get(0));
+        assertThat(triggerData(trigger).batchedEvents()).containsExactly(events.get(1), events.get(2));
+    }
+
+    @Test
+    void addsEventsToPendingBatch() {
+        when(jobTriggerService.addToPendingTriggerData(eq(JOB_DEFINITION_ID), any(), eq(NOW.plusMinutes(1)),
+                eq(EventNotificationExecutionJob.Data.FIELD_BATCHED_EVENTS), any(EventDto.class))).thenReturn(true);
+        final EventNotificationHandler handler = handler(Duration.minutes(1), 100);
+        final List<EventDto> events = events(3);
+
+        handler.handleEvents(eventDefinition, eventsWithContext(events));
+
+        for (EventDto event : events) {
+            verify(jobTriggerService).addToPendingTriggerData(eq(JOB_DEFINITION_ID), any(), eq(NOW.plusMinutes(1)),
+                    eq(EventNotificationExecutionJob.Data.FIELD_BATCHED_EVENTS), eq(event));
+        }
+        verify(jobTriggerService, never()).create(any(JobTriggerDto.class));
+    }
+
+    @Test
+    void limitsNumberOfEventsPerBatch() {
+        final EventNotificationHandler handler = handler(Duration.minutes(1), 2);
+        final List<EventDto> events = events(5);
+
+        handler.handleEvents(eventDefinition, eventsWithContext(events));
+
+        final List<JobTriggerDto> triggers = createdTriggers(3);
+        assertThat(triggerData(triggers.get(0)).allEvents()).containsExactly(events.get(0), events.get(1));
+        assertThat(triggerData(triggers.get(1)).allEvents()).containsExactly(events.get(2), events.get(3));
+        assertThat(triggerData(triggers.get(2)).allEvents()).containsExactly(events.get(4));
+    }
+
+    @Test
+    void doesNotBatchEventsInGracePeriod() {
+        final EventNotificationHandler handler = handler(Duration.minutes(1), 100);
+        final List<EventDto> events = events(3);
+        final List<EventWithContext> eventsWithContext = eventsWithContext(events);
+        when(notificationGracePeriodService.inGracePeriod(eq(eventDefinition), eq(NOTIFICATION_ID), any(Event.class)))
+                .thenAnswer(invocation -> eventsWithContext.get(1).event().equals(invocation.getArgument(2)));
+
+        handler.handleEvents(eventDefinition, eventsWithContext);
+
+        final JobTriggerDto trigger = createdTriggers(1).get(0);
+        assertThat(triggerData(trigger).allEvents()).containsExactly(events.get(0), events.get(2));
+    }
+
+    private EventNotificationHandler handler(Duration batchWindow, int batchMaxEvents) {
+        return new EventNotificationHandler(jobDefinitionService, jobTriggerService, notificationService,
+                notificationGracePeriodService, clock, batchWindow, batchMaxEvents);
+    }
+
+    private List<JobTriggerDto> createdTriggers(int count) {
+        final ArgumentCaptor<JobTriggerDto> captor = ArgumentCaptor.forClass(JobTriggerDto.class);
+        verify(jobTriggerService, times(count)).create(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static EventNotificationExecutionJob.Data triggerData(JobTriggerDto trigger) {
+        assertThat(trigger.jobDefinitionId()).isEqualTo(JOB_DEFINITION_ID);
+        return (EventNotificationExecutionJob.Data) trigger.data().orElseThrow(IllegalStateException::new);
+    }
+
+    private static List<EventWithContext> eventsWithContext(List<EventDto> events) {
+        return events.stream()
+                .map(eventDto -> {
+                    final Event event = mock(Event.class);
+                    when(event.toDto()).thenReturn(eventDto);
+                    return EventWithContext.create(event);
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static List<EventDto> events(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> EventDto.builder()
+                        .id("event-" + i)
+                        .eventDefinitionType("aggregation-v1")
+                        .eventDefinitionId("event-definition-1")
+                        .originContext(null)
+                        .eventTimestamp(NOW.minusSeconds(count - i))
+                        .processingTimestamp(NOW)
+                        .timerangeStart(null)
+                        .timerangeEnd(null)
+                        .streams(ImmutableSet.of())
+                        .sourceStreams(ImmutableSet.of())
+                        .message("Event " + i)
+                        .source("source")
+                        .keyTuple(ImmutableList.of())
+                        .key(null)
+                        .priority(2)
+                        .alert(false)
+                        .fields(ImmutableMap.of())
+                        .build())
+                .collect(Collectors.toList());
+    }
+}
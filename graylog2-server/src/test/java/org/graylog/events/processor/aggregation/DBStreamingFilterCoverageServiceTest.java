@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.graylog.events.JobSchedulerTestClock;
+import org.graylog.events.processor.aggregation.StreamingFilterCoverageDto.Coverage;
+import org.graylog.testing.mongodb.MongoDBExtension;
+import org.graylog.testing.mongodb.MongoDBTestService;
+import org.graylog.testing.mongodb.MongoJackExtension;
+import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
+import org.graylog2.plugin.system.SimpleNodeId;
+import org.graylog2.system.processing.DBProcessingStatusService;
+import org.graylog2.system.processing.ProcessingStatusDto;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MongoDBExtension.class)
+@ExtendWith(MongoJackExtension.class)
+class DBStreamingFilterCoverageServiceTest {
+    private static final DateTime NOW = DateTime.parse("2019-01-01T00:00:00.000Z");
+
+    private final JobSchedulerTestClock clock = new JobSchedulerTestClock(NOW);
+    private final DBProcessingStatusService processingStatusService = mock(DBProcessingStatusService.class);
+
+    private DBStreamingFilterCoverageService nodeA;
+    private DBStreamingFilterCoverageService nodeB;
+
+    @BeforeEach
+    void setUp(MongoDBTestService mongodb, MongoJackObjectMapperProvider mapperProvider) {
+        nodeA = new DBStreamingFilterCoverageService(mongodb.mongoConnection(), mapperProvider, new SimpleNodeId("node-a"),
+                clock, Duration.minutes(1), processingStatusService);
+        nodeB = new DBStreamingFilterCoverageService(mongodb.mongoConnection(), mapperProvider, new SimpleNodeId("node-b"),
+                clock, Duration.minutes(1), processingStatusService);
+    }
+
+    @Test
+    void combinesCoverageOfAllProcessingNodes() {
+        processingNodes(processingStatus("node-a", NOW), processingStatus("node-b", NOW));
+
+        nodeA.save(ImmutableMap.of("definition-1", Coverage.create(NOW.minusMinutes(10), NOW.minusSeconds(1))));
+        nodeB.save(ImmutableMap.of("definition-1", Coverage.create(NOW.minusMinutes(5), NOW.minusSeconds(2))));
+
+        assertThat(nodeA.clusterCoverage("definition-1")).hasValueSatisfying(coverage -> {
+            assertThat(coverage.since()).isEqualByComparingTo(NOW.minusMinutes(5));
+            assertThat(coverage.coveredUntil()).isEqualByComparingTo(NOW.minusSeconds(2));
+        });
+    }
+
+    @Test
+    void replacesCoverageOfNode() {
+        processingNodes(processingStatus("node-a", NOW));
+
+        nodeA.save(ImmutableMap.of("definition-1", Coverage.create(NOW.minusMinutes(10), NOW.minusSeconds(2))));
+        nodeA.save(ImmutableMap.of("definition-1", Coverage.create(NOW.minusMinutes(10), NOW.minusSeconds(1))));
+
+        assertThat(nodeA.clusterCoverage("definition-1")).hasValueSatisfying(coverage -> {
+            assertThat(coverage.since()).isEqualByComparingTo(NOW.minusMinutes(10));
+            assertThat(coverage.coveredUntil()).isEqualByComparingTo(NOW.minusSeconds(1));
+        });
+    }
+
+    @Test
+    void returnsNoCoverageIfAnyProcessingNodeDoesNotEvaluateDefinition() {
+        processingNodes(processingStatus("node-a", NOW), processingStatus("node-b", NOW));
+
+        nodeA.save(ImmutableMap.of("definition-1", Coverage.create(NOW.minusMinutes(10), NOW.minusSeconds(1))));
+        nodeB.save(ImmutableMap.of("definition-2", Coverage.create(NOW.minusMinutes(10), NOW.minusSeconds(1))));
+
+        assertThat(nodeA.clusterCoverage("definition-1")).isEmpty();
+        assertThat(nodeA.clusterCoverage("definition-3")).isEmpty();
+    }
+
+    @Test
+    void returnsNoCoverageIfCoverageOfProcessingNodeIsOutdated() {
+        processingNodes(processingStatus("node-a", NOW.plusMinutes(2)), processingStatus("node-b", NOW.plusMinutes(2)));
+
+        nodeA.save(ImmutableMap.of("definition-1", Coverage.create(NOW.minusMinutes(10), NOW.minusSeconds(1))));
+        clock.plus(2, TimeUnit.MINUTES);
+        nodeB.save(ImmutableMap.of("definition-1", Coverage.create(NOW.minusMinutes(10), NOW.plusMinutes(2))));
+
+        assertThat(nodeB.clusterCoverage("definition-1")).isEmpty();
+    }
+
+    @Test
+    void ignoresNodesWhichStoppedProcessing() {
+        processingNodes(processingStatus("node-a", NOW), processingStatus("node-b", NOW.minusMinutes(5)));
+
+        nodeA.save(ImmutableMap.of("definition-1", Coverage.create(NOW.minusMinutes(10), NOW.minusSeconds(1))));
+
+        assertThat(nodeA.clusterCoverage("definition-1")).hasValueSatisfying(coverage -> {
+            assertThat(coverage.since()).isEqualByComparingTo(NOW.minusMinutes(10));
+            assertThat(coverage.coveredUntil()).isEqualByComparingTo(NOW.minusSeconds(1));
+        });
+    }
+
+    private void processingNodes(ProcessingStatusDto... processingStatus) {
+        when(processingStatusService.all()).thenReturn(ImmutableList.copyOf(processingStatus));
+    }
+
+    private static ProcessingStatusDto processingStatus(String nodeId, DateTime updatedAt) {
+        final ProcessingStatusDto processingStatus = mock(ProcessingStatusDto.class);
+        when(processingStatus.nodeId()).thenReturn(nodeId);
+        when(processingStatus.updatedAt()).thenReturn(updatedAt);
+        return processingStatus;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Parameter;
+import org.graylog.plugins.views.search.ValueParameter;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilterQueryMatcherTest {
+    private static AggregationEventProcessorConfig config(String query, Set<String> streams) {
+        return AggregationEventProcessorConfig.builder()
+                .query(query)
+                .streams(streams)
+                .groupBy(ImmutableList.of())
+                .series(ImmutableList.of())
+                .conditions(null)
+                .searchWithinMs(60_000)
+                .executeEveryMs(60_000)
+                .build();
+    }
+
+    private static FilterQueryMatcher matcher(String query) {
+        return FilterQueryMatcher.compile(config(query, ImmutableSet.of())).orElseThrow(AssertionError::new);
+    }
+
+    private static Message message() {
+        final Message message = new Message("a message", "source", DateTime.now(DateTimeZone.UTC));
+        message.addField("action", "login");
+        message.addField("user_name", "jane.doe");
+        message.addField("http_response_code", 503);
+        message.addField("tags", ImmutableList.of("auth", "web"));
+        message.addField("description", "failed login");
+        return message;
+    }
+
+    @Test
+    void matchesEverythingForEmptyQuery() {
+        assertThat(matcher("").test(message())).isTrue();
+        assertThat(matcher("*").test(message())).isTrue();
+    }
+
+    @Test
+    void matchesTerms() {
+        assertThat(matcher("action:login").test(message())).isTrue();
+        assertThat(matcher("action:logout").test(message())).isFalse();
+        assertThat(matcher("http_response_code:503").test(message())).isTrue();
+        assertThat(matcher("http_response_code:500").test(message())).isFalse();
+        assertThat(matcher("tags:web").test(message())).isTrue();
+        assertThat(matcher("description:\"failed login\"").test(message())).isTrue();
+        assertThat(matcher("missing_field:login").test(message())).isFalse();
+    }
+
+    @Test
+    void matchesWildcardsAndPrefixes() {
+        assertThat(matcher("user_name:jane*").test(message())).isTrue();
+        assertThat(matcher("user_name:j?ne.doe").test(message())).isTrue();
+        assertThat(matcher("user_name:john*").test(message())).isFalse();
+    }
+
+    @Test
+    void matchesExistingFields() {
+        assertThat(matcher("_exists_:user_name").test(message())).isTrue();
+        assertThat(matcher("_exists_:missing_field").test(message())).isFalse();
+    }
+
+    @Test
+    void matchesNumericRanges() {
+        assertThat(matcher("http_response_code:[500 TO 599]").test(message())).isTrue();
+        assertThat(matcher("http_response_code:{503 TO 599]").test(message())).isFalse();
+        assertThat(matcher("http_response_code:[400 TO 499]").test(message())).isFalse();
+    }
+
+    @Test
+    void matchesBooleanCombinations() {
+        assertThat(matcher("action:login AND user_name:jane.doe").test(message())).isTrue();
+        assertThat(matcher("action:login AND user_name:john.doe").test(message())).isFalse();
+        assertThat(matcher("action:logout OR user_name:jane.doe").test(message())).isTrue();
+        assertThat(matcher("action:login AND NOT user_name:jane.doe").test(message())).isFalse();
+        assertThat(matcher("NOT action:logout").test(message())).isTrue();
+        assertThat(matcher("(action:logout OR action:login) AND http_response_code:503").test(message())).isTrue();
+    }
+
+    @Test
+    void matchesConfiguredStreamsOnly() {
+        final FilterQueryMatcher matcher = FilterQueryMatcher.compile(config("action:login", ImmutableSet.of("stream-1")))
+                .orElseThrow(AssertionError::new);
+
+        final Message message = message();
+        assertThat(matcher.test(message)).isFalse();
+
+        message.addField(Message.FIELD_STREAMS, ImmutableList.of("stream-2"));
+        assertThat(matcher.test(message)).isFalse();
+
+        message.addField(Message.FIELD_STREAMS, ImmutableList.of("stream-1", "stream-2"));
+        assertThat(matcher.test(message)).isTrue();
+    }
+
+    @Test
+    void doesNotCompileQueriesOnlySupportedBySearch() {
+        assertThat(FilterQueryMatcher.compile(config("login", ImmutableSet.of()))).isEmpty();
+        assertThat(FilterQueryMatcher.compile(config("message:login", ImmutableSet.of()))).isEmpty();
+        assertThat(FilterQueryMatcher.compile(config("http_response_code:>=500", ImmutableSet.of()))).isEmpty();
+        assertThat(FilterQueryMatcher.compile(config("action:(login", ImmutableSet.of()))).isEmpty();
+    }
+
+    @Test
+    void doesNotCompileQueriesWithParameters() {
+        final Parameter parameter = ValueParameter.any("action");
+        final AggregationEventProcessorConfig config = config("action:$action$", ImmutableSet.of()).toBuilder()
+                .queryParameters(ImmutableSet.of(parameter))
+                .build();
+
+        assertThat(FilterQueryMatcher.compile(config)).isEmpty();
+    }
+}
@@ -57,6 +57,10 @@ public class PivotAggregationSearchTest {
     private MoreSearch moreSearch;
     @Mock
     private NotificationService notificationService;
+    @Mock
+    private SharedAggregationSearches sharedSearches;
+    @Mock
+    private RollingAggregationPartials rollingPartials;
 
     private final PermittedStreams permittedStreams = new PermittedStreams(Stream::of);
 
@@ -91,7 +95,9 @@ public class PivotAggregationSearchTest {
                 EventsConfigurationTestProvider.create(),
                 moreSearch,
                 permittedStreams,
-                notificationService);
+                notificationService,
+                sharedSearches,
+                rollingPartials);
 
         final String toString = timerange.getTo().toString();
         final PivotResult pivotResult = PivotResult.builder()
@@ -189,7 +195,9 @@ public class PivotAggregationSearchTest {
                 EventsConfigurationTestProvider.create(),
                 moreSearch,
                 permittedStreams,
-                notificationService);
+                notificationService,
+                sharedSearches,
+                rollingPartials);
 
         final PivotResult pivotResult = PivotResult.builder()
                 .id("test")
@@ -262,7 +270,9 @@ public class PivotAggregationSearchTest {
                 EventsConfigurationTestProvider.create(),
                 moreSearch,
                 permittedStreams,
-                notificationService);
+                notificationService,
+                sharedSearches,
+                rollingPartials);
 
         final PivotResult pivotResult = PivotResult.builder()
                 .id("test")
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.joda.time.DateTimeZone.UTC;
+
+class RollingAggregationPartialsTest {
+    private static final long INTERVAL_MS = 60_000;
+    private static final long WINDOW_MS = 3 * INTERVAL_MS;
+    private static final Set<String> STREAMS = ImmutableSet.of("stream-1");
+    private static final DateTime START = new DateTime(2022, 6, 13, 15, 0, UTC);
+    private static final AggregationSeries COUNT = AggregationSeries.create("count-1", AggregationFunction.COUNT, null);
+    private static final AggregationSeries SUM = AggregationSeries.create("sum-1", AggregationFunction.SUM, "bytes");
+    private static final AggregationSeries MIN = AggregationSeries.create("min-1", AggregationFunction.MIN, "bytes");
+    private static final AggregationSeries MAX = AggregationSeries.create("max-1", AggregationFunction.MAX, "bytes");
+
+    private RollingAggregationPartials partials;
+
+    @BeforeEach
+    void setUp() {
+        partials = new RollingAggregationPartials(true, new MetricRegistry());
+    }
+
+    private static AggregationEventProcessorConfig config(AggregationSeries... series) {
+        return AggregationEventProcessorConfig.builder()
+                .query("source:foo")
+                .streams(STREAMS)
+                .groupBy(ImmutableList.of("source"))
+                .series(ImmutableList.copyOf(series))
+                .conditions(null)
+                .searchWithinMs(WINDOW_MS)
+                .executeEveryMs(INTERVAL_MS)
+                .build();
+    }
+
+    private static AggregationEventProcessorParameters parameters(TimeRange timerange) {
+        return AggregationEventProcessorParameters.builder()
+                .streams(ImmutableSet.of())
+                .timerange(timerange)
+                .batchSize(500)
+                .build();
+    }
+
+    // The window ending with the given interval
+    private static AbsoluteRange window(int interval) {
+        final DateTime to = START.plus(interval * INTERVAL_MS);
+        return AbsoluteRange.create(to.minus(WINDOW_MS), to);
+    }
+
+    private static DateTime intervalEnd(int interval) {
+        return START.plus(interval * INTERVAL_MS);
+    }
+
+    private static AggregationKeyResult keyResult(int interval, String key, double count, double sum, double min, double max) {
+        final ImmutableList<String> groupKey = ImmutableList.of(key);
+        return AggregationKeyResult.builder()
+                .key(groupKey)
+                .timestamp(intervalEnd(interval))
+                .seriesValues(ImmutableList.of(
+                        AggregationSeriesValue.builder().series(COUNT).key(groupKey).value(count).build(),
+                        AggregationSeriesValue.builder().series(SUM).key(groupKey).value(sum).build(),
+                        AggregationSeriesValue.builder().series(MIN).key(groupKey).value(min).build(),
+                        AggregationSeriesValue.builder().series(MAX).key(groupKey).value(max).build()))
+                .build();
+    }
+
+    private static double value(AggregationResult result, String key, AggregationSeries series) {
+        return result.keyResults().stream()
+                .filter(keyResult -> keyResult.key().equals(ImmutableList.of(key)))
+                .flatMap(keyResult -> keyResult.seriesValues().stream())
+                .filter(seriesValue -> seriesValue.series().equals(series))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No value for " + key + "/" + series.id()))
+                .value();
+    }
+
+    @Test
+    void supportsOnlyDecomposableSlidingWindows() {
+        final AggregationEventProcessorConfig config = config(COUNT, SUM, MIN, MAX);
+
+        assertThat(partials.supports("def-1", config, parameters(window(3)))).isTrue();
+        assertThat(partials.supports(null, config, parameters(window(3)))).isFalse();
+        // Catch-up executions
+        assertThat(partials.supports("def-1", config, parameters(AbsoluteRange.create(START, intervalEnd(10))))).isFalse();
+        // Tumbling windows
+        assertThat(partials.supports("def-1", config.toBuilder().searchWithinMs(INTERVAL_MS).build(),
+                parameters(AbsoluteRange.create(START, intervalEnd(1))))).isFalse();
+        // Windows which aren't a multiple of the interval
+        assertThat(partials.supports("def-1", config.toBuilder().searchWithinMs(WINDOW_MS + 1000).build(),
+                parameters(AbsoluteRange.create(START, intervalEnd(3).plusSeconds(1))))).isFalse();
+        assertThat(partials.supports("def-1", config(COUNT, AggregationSeries.create("avg-1", AggregationFunction.AVG, "bytes")),
+                parameters(window(3)))).isFalse();
+        assertThat(partials.supports("def-1", config, parameters(window(3)).toBuilder().streams(STREAMS).build())).isFalse();
+        assertThat(new RollingAggregationPartials(false, new MetricRegistry()).supports("def-1", config, parameters(window(3)))).isFalse();
+    }
+
+    @Test
+    void combinesIntervalPartials() {
+        final AggregationEventProcessorConfig config = config(COUNT, SUM, MIN, MAX);
+
+        // The first execution has to search the whole window
+        assertThat(partials.missingRange("def-1", config, STREAMS, window(3))).contains(window(3));
+        partials.store("def-1", config, STREAMS, window(3), ImmutableList.of(
+                keyResult(1, "a", 1, 10, 10, 10),
+                keyResult(2, "a", 2, 30, 5, 25),
+                keyResult(2, "b", 1, 7, 7, 7),
+                keyResult(3, "a", 1, 2, 2, 2)
+        ), ImmutableMap.of(intervalEnd(1), ImmutableSet.of("stream-1"), intervalEnd(3), ImmutableSet.of("stream-2")));
+
+        final AggregationResult result = partials.combine("def-1", config, STREAMS, window(3), 42);
+        assertThat(result.keyResults()).extracting(AggregationKeyResult::key)
+                .containsExactlyInAnyOrder(ImmutableList.of("a"), ImmutableList.of("b"));
+        assertThat(result.keyResults()).allSatisfy(keyResult -> assertThat(keyResult.timestamp()).contains(intervalEnd(3)));
+        assertThat(value(result, "a", COUNT)).isEqualTo(4);
+        assertThat(value(result, "a", SUM)).isEqualTo(42);
+        assertThat(value(result, "a", MIN)).isEqualTo(2);
+        assertThat(value(result, "a", MAX)).isEqualTo(25);
+        assertThat(value(result, "b", COUNT)).isEqualTo(1);
+        assertThat(result.sourceStreams()).containsExactlyInAnyOrder("stream-1", "stream-2");
+        assertThat(result.effectiveTimerange()).isEqualTo(window(3));
+        assertThat(result.totalAggregatedMessages()).isEqualTo(42);
+
+        // The next execution only searches the newest interval, the oldest interval isn't part of the window anymore
+        final AbsoluteRange newInterval = AbsoluteRange.create(intervalEnd(3), intervalEnd(4));
+        assertThat(partials.missingRange("def-1", config, STREAMS, window(4))).contains(newInterval);
+        partials.store("def-1", config, STREAMS, newInterval, ImmutableList.of(keyResult(4, "a", 3, 3, 1, 1)),
+                ImmutableMap.of(intervalEnd(4), ImmutableSet.of("stream-2")));
+
+        final AggregationResult nextResult = partials.combine("def-1", config, STREAMS, window(4), 3);
+        assertThat(value(nextResult, "a", COUNT)).isEqualTo(6);
+        assertThat(value(nextResult, "a", SUM)).isEqualTo(35);
+        assertThat(value(nextResult, "a", MIN)).isEqualTo(1);
+        assertThat(value(nextResult, "a", MAX)).isEqualTo(25);
+        assertThat(value(nextResult, "b", COUNT)).isEqualTo(1);
+        assertThat(nextResult.sourceStreams()).containsExactly("stream-2");
+
+        assertThat(partials.searchedIntervals()).isEqualTo(4);
+        assertThat(partials.reusedIntervals()).isEqualTo(4);
+    }
+
+    @Test
+    void ignoresMissingMinAndMaxValues() {
+        final AggregationEventProcessorConfig config = config(COUNT, SUM, MIN, MAX);
+
+        partials.store("def-1", config, STREAMS, window(3), ImmutableList.of(
+                keyResult(1, "a", 1, 0, Double.NaN, Double.NaN),
+                keyResult(2, "a", 1, 5, 5, 5)
+        ), ImmutableMap.of());
+
+        final AggregationResult result = partials.combine("def-1", config, STREAMS, window(3), 2);
+        assertThat(value(result, "a", MIN)).isEqualTo(5);
+        assertThat(value(result, "a", MAX)).isEqualTo(5);
+    }
+
+    @Test
+    void changedDefinitionsDiscardPartials() {
+        final AggregationEventProcessorConfig config = config(COUNT, SUM, MIN, MAX);
+        partials.store("def-1", config, STREAMS, window(3), ImmutableList.of(keyResult(1, "a", 1, 1, 1, 1)), ImmutableMap.of());
+
+        assertThat(partials.missingRange("def-1", config, STREAMS, window(3))).isEmpty();
+        assertThat(partials.missingRange("def-1", config, ImmutableSet.of("stream-2"), window(3))).contains(window(3));
+        assertThat(partials.missingRange("def-1", config(COUNT), STREAMS, window(3))).contains(window(3));
+    }
+}
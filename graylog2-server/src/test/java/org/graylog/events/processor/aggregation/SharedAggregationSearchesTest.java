@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.events.EventsConfigurationTestProvider;
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.scheduler.DBJobDefinitionService;
+import org.graylog.scheduler.DBJobTriggerService;
+import org.graylog.scheduler.JobDefinitionDto;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.joda.time.DateTimeZone.UTC;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SharedAggregationSearchesTest {
+    private static final long WINDOW_MS = 60_000;
+    private static final Set<String> STREAMS = ImmutableSet.of("stream-1");
+    private static final DateTime START = new DateTime(2022, 6, 13, 15, 0, UTC);
+
+    private final List<Map<String, AggregationEventProcessorConfig>> executedPivots = new ArrayList<>();
+    // event definitions whose job triggers are locked by this node
+    private final Set<String> lockedDefinitions = new HashSet<>(ImmutableSet.of("a", "b"));
+    private final DBJobDefinitionService jobDefinitionService = mock(DBJobDefinitionService.class);
+    private final DBJobTriggerService jobTriggerService = mock(DBJobTriggerService.class);
+    private SharedAggregationSearches sharedSearches;
+
+    @BeforeEach
+    void setUp() {
+        final Map<String, JobDefinitionDto> jobDefinitions = ImmutableMap.of("a", jobDefinition("job-a"), "b", jobDefinition("job-b"));
+        when(jobDefinitionService.getAllByConfigField(anyString(), any())).thenAnswer(invocation -> {
+            final Collection<?> definitionIds = invocation.getArgument(1);
+            return definitionIds.stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.toMap(id -> id, id -> List.of(jobDefinitions.get(id))));
+        });
+        when(jobTriggerService.getJobDefinitionIdsLockedByThisNode(any())).thenAnswer(invocation -> {
+            final Collection<String> jobDefinitionIds = invocation.getArgument(0);
+            return jobDefinitionIds.stream()
+                    .filter(jobId -> lockedDefinitions.contains(jobId.substring("job-".length())))
+                    .collect(Collectors.toSet());
+        });
+        sharedSearches = sharedSearches(true);
+    }
+
+    private SharedAggregationSearches sharedSearches(boolean enabled) {
+        return new SharedAggregationSearches(enabled, EventsConfigurationTestProvider.create(), jobDefinitionService,
+                jobTriggerService, new MetricRegistry());
+    }
+
+    private static JobDefinitionDto jobDefinition(String id) {
+        final JobDefinitionDto jobDefinition = mock(JobDefinitionDto.class);
+        when(jobDefinition.id()).thenReturn(id);
+        return jobDefinition;
+    }
+
+    private static AggregationEventProcessorConfig config(String groupBy, AggregationFunction function) {
+        return AggregationEventProcessorConfig.builder()
+                .query("source:foo")
+                .streams(STREAMS)
+                .groupBy(ImmutableList.of(groupBy))
+                .series(ImmutableList.of(AggregationSeries.create("series-1", function, "bytes")))
+                .conditions(null)
+                .searchWithinMs(WINDOW_MS)
+                .executeEveryMs(WINDOW_MS)
+                .build();
+    }
+
+    private static TimeRange window(int index) {
+        final DateTime from = START.plus(index * WINDOW_MS);
+        return AbsoluteRange.create(from, from.plus(WINDOW_MS));
+    }
+
+    private Optional<SearchJob> search(SharedAggregationSearches sharedSearches, String definitionId,
+                                       AggregationEventProcessorConfig config, TimeRange timerange) throws EventProcessorException {
+        return sharedSearches.search(definitionId, config, STREAMS, timerange, pivots -> {
+            executedPivots.add(pivots);
+            return mock(SearchJob.class);
+        });
+    }
+
+    @Test
+    void runsOwnSearchWhenDisabled() throws Exception {
+        final SharedAggregationSearches disabled = sharedSearches(false);
+
+        assertThat(search(disabled, "a", config("source", AggregationFunction.COUNT), window(0))).isEmpty();
+        assertThat(executedPivots).isEmpty();
+    }
+
+    @Test
+    void sharesSearchOfDefinitionsDueForTheSameTimeRange() throws Exception {
+        final AggregationEventProcessorConfig configA = config("source", AggregationFunction.COUNT);
+        final AggregationEventProcessorConfig configB = config("user", AggregationFunction.MAX);
+
+        // Nothing is known about the definitions in the first window
+        assertThat(search(sharedSearches, "a", configA, window(0))).isPresent();
+        assertThat(search(sharedSearches, "b", configB, window(0))).isEmpty();
+        assertThat(executedPivots).containsExactly(ImmutableMap.of("pivot-a", configA));
+
+        final Optional<SearchJob> searchJobA = search(sharedSearches, "a", configA, window(1));
+        final Optional<SearchJob> searchJobB = search(sharedSearches, "b", configB, window(1));
+
+        assertThat(executedPivots).hasSize(2);
+        assertThat(executedPivots.get(1)).isEqualTo(ImmutableMap.of("pivot-a", configA, "pivot-b", configB));
+        assertThat(searchJobB).isPresent().isEqualTo(searchJobA);
+        assertThat(sharedSearches.executedSearches()).isEqualTo(2);
+        assertThat(sharedSearches.savedSearches()).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotShareSearchWithDefinitionsDueForOtherTimeRanges() throws Exception {
+        final AggregationEventProcessorConfig configA = config("source", AggregationFunction.COUNT);
+        final AggregationEventProcessorConfig configB = config("user", AggregationFunction.MAX);
+
+        search(sharedSearches, "a", configA, window(0));
+        search(sharedSearches, "b", configB, window(0));
+        // "b" is catching up, so it won't be due for the next window
+        search(sharedSearches, "b", configB, AbsoluteRange.create(window(1).getFrom(), window(3).getTo()));
+
+        search(sharedSearches, "a", configA, window(1));
+
+        assertThat(executedPivots.get(executedPivots.size() - 1)).isEqualTo(ImmutableMap.of("pivot-a", configA));
+    }
+
+    @Test
+    void doesNotComputeAggregationsOfDefinitionsRunningOnOtherNodes() throws Exception {
+        final AggregationEventProcessorConfig configA = config("source", AggregationFunction.COUNT);
+        final AggregationEventProcessorConfig configB = config("user", AggregationFunction.MAX);
+
+        search(sharedSearches, "a", configA, window(0));
+        search(sharedSearches, "b", configB, window(0));
+        // "b" is due for the next window as well, but its trigger has been locked by another node
+        lockedDefinitions.remove("b");
+
+        search(sharedSearches, "a", configA, window(1));
+
+        assertThat(executedPivots.get(executedPivots.size() - 1)).isEqualTo(ImmutableMap.of("pivot-a", configA));
+    }
+
+    @Test
+    void runsOwnSearchWhenDefinitionChanged() throws Exception {
+        final AggregationEventProcessorConfig configA = config("source", AggregationFunction.COUNT);
+        final AggregationEventProcessorConfig configB = config("user", AggregationFunction.MAX);
+
+        search(sharedSearches, "a", configA, window(0));
+        search(sharedSearches, "b", configB, window(0));
+        search(sharedSearches, "a", configA, window(1));
+
+        assertThat(search(sharedSearches, "b", config("user", AggregationFunction.MIN), window(1))).isEmpty();
+        assertThat(sharedSearches.savedSearches()).isZero();
+    }
+
+    @Test
+    void runsOwnSearchWhenSharedSearchFailed() throws Exception {
+        final AggregationEventProcessorConfig configA = config("source", AggregationFunction.COUNT);
+        final AggregationEventProcessorConfig configB = config("user", AggregationFunction.MAX);
+
+        search(sharedSearches, "a", configA, window(0));
+        search(sharedSearches, "b", configB, window(0));
+
+        final EventProcessorException failure = new EventProcessorException("failed", false, "a");
+        assertThatThrownBy(() -> sharedSearches.search("a", configA, STREAMS, window(1), pivots -> {
+            throw failure;
+        })).isSameAs(failure);
+
+        // The failed search has been dropped, so "b" runs its own search
+        assertThat(search(sharedSearches, "b", configB, window(1))).isPresent();
+        assertThat(executedPivots.get(executedPivots.size() - 1)).isEqualTo(ImmutableMap.of("pivot-b", configB));
+    }
+}
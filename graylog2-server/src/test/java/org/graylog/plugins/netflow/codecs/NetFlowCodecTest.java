@@ -16,12 +16,22 @@
  */
 package org.graylog.plugins.netflow.codecs;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Resources;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.pkts.Pcap;
+import io.pkts.packet.UDPPacket;
+import io.pkts.protocol.Protocol;
 import org.graylog.plugins.netflow.flows.FlowException;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
 import org.graylog2.plugin.journal.RawMessage;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,11 +39,17 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
@@ -49,7 +65,7 @@ public class NetFlowCodecTest {
     @Before
     public void setUp() throws Exception {
         codecAggregator = new NetflowV9CodecAggregator();
-        codec = new NetFlowCodec(Configuration.EMPTY_CONFIGURATION, codecAggregator);
+        codec = new NetFlowCodec(Configuration.EMPTY_CONFIGURATION, compactEncoding -> codecAggregator);
     }
 
     @Test
@@ -62,7 +78,7 @@ public class NetFlowCodecTest {
         final Configuration configuration = new Configuration(configMap);
 
         assertThatExceptionOfType(FileNotFoundException.class)
-                .isThrownBy(() -> new NetFlowCodec(configuration, codecAggregator))
+                .isThrownBy(() -> new NetFlowCodec(configuration, compactEncoding -> codecAggregator))
                 .withMessageEndingWith("(No such file or directory)");
     }
 
@@ -72,7 +88,7 @@ public class NetFlowCodecTest {
                 NetFlowCodec.CK_NETFLOW9_DEFINITION_PATH, "");
         final Configuration configuration = new Configuration(configMap);
 
-        assertThat(new NetFlowCodec(configuration, codecAggregator)).isNotNull();
+        assertThat(new NetFlowCodec(configuration, compactEncoding -> codecAggregator)).isNotNull();
     }
 
     @Test
@@ -81,7 +97,7 @@ public class NetFlowCodecTest {
                 NetFlowCodec.CK_NETFLOW9_DEFINITION_PATH, "   ");
         final Configuration configuration = new Configuration(configMap);
 
-        assertThat(new NetFlowCodec(configuration, codecAggregator)).isNotNull();
+        assertThat(new NetFlowCodec(configuration, compactEncoding -> codecAggregator)).isNotNull();
     }
 
     @Test
@@ -94,7 +110,7 @@ public class NetFlowCodecTest {
         final Configuration configuration = new Configuration(configMap);
 
         assertThatIllegalArgumentException()
-                .isThrownBy(() -> new NetFlowCodec(configuration, codecAggregator))
+                .isThrownBy(() -> new NetFlowCodec(configuration, compactEncoding -> codecAggregator))
                 .withMessageMatching("Unable to parse NetFlow 9 definitions");
     }
 
@@ -142,4 +158,141 @@ public class NetFlowCodecTest {
 
         assertThat(codec.decodeMessages(new RawMessage(b, source))).isNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void compactEncodingDecodesSameMessagesAsProtobufEncoding() throws Exception {
+        final NetFlowCodec compactCodec = new NetFlowCodec(
+                new Configuration(ImmutableMap.of(NetFlowCodec.CK_COMPACT_JOURNAL_ENCODING, true)), NetflowV9CodecAggregator::new);
+
+        for (String pcap : ImmutableList.of("netflow-data/nprobe-netflow9-2.pcap", "netflow-data/pmacctd-netflow9.pcap", "netflow-data/netflow5.pcap")) {
+            final List<Map<String, Object>> expected = decodePcapStream(codec, pcap);
+            final List<Map<String, Object>> actual = decodePcapStream(compactCodec, pcap);
+
+            assertThat(actual).isNotEmpty().containsExactlyInAnyOrderElementsOf(expected);
+        }
+    }
+
+    @Test
+    public void compactEncodingDecodesIpfix() throws Exception {
+        final NetFlowCodec compactCodec = new NetFlowCodec(
+                new Configuration(ImmutableMap.of(NetFlowCodec.CK_COMPACT_JOURNAL_ENCODING, true)), NetflowV9CodecAggregator::new);
+        final InetSocketAddress source = new InetSocketAddress(InetAddress.getLoopbackAddress(), 4739);
+        final ByteBuf packet = ipfixPacket(1, ipfixTemplateSet(), ipfixDataSet());
+
+        final CodecAggregator.Result result = ((RemoteAddressCodecAggregator) compactCodec.getAggregator()).addChunk(packet, source);
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.getMessage()).isNotNull();
+
+        final Collection<Message> messages = compactCodec.decodeMessages(new RawMessage(ByteBufUtil.getBytes(result.getMessage()), source));
+        assertThat(messages).hasSize(2);
+        final Message message = messages.iterator().next();
+        assertThat(message.getFields())
+                .containsEntry("nf_version", 10)
+                .containsEntry("nf_flow_packet_id", 1L)
+                .containsEntry("nf_src_address", "10.0.0.1")
+                .containsEntry("nf_dst_address", "10.0.0.2")
+                .containsEntry("nf_src_port", 443)
+                .containsEntry("nf_proto_name", "TCP")
+                .containsEntry("nf_field_29305_1", 42)
+                .containsEntry("nf_start", new DateTime(1501508283473L, DateTimeZone.UTC));
+    }
+
+    @Test
+    public void compactEncodingBuffersIpfixDataOfWithdrawnTemplates() throws Exception {
+        final NetFlowCodec compactCodec = new NetFlowCodec(
+                new Configuration(ImmutableMap.of(NetFlowCodec.CK_COMPACT_JOURNAL_ENCODING, true)), NetflowV9CodecAggregator::new);
+        final RemoteAddressCodecAggregator aggregator = (RemoteAddressCodecAggregator) compactCodec.getAggregator();
+        final InetSocketAddress source = new InetSocketAddress(InetAddress.getLoopbackAddress(), 4739);
+
+        assertThat(aggregator.addChunk(ipfixPacket(1, ipfixTemplateSet(), ipfixDataSet()), source).getMessage()).isNotNull();
+
+        final ByteBuf withdrawal = Unpooled.buffer()
+                .writeShort(2).writeShort(4 + 4)
+                .writeShort(256).writeShort(0);
+        final CodecAggregator.Result withdrawn = aggregator.addChunk(ipfixPacket(2, withdrawal, ipfixDataSet()), source);
+        assertThat(withdrawn.isValid()).isTrue();
+        assertThat(withdrawn.getMessage()).isNull();
+
+        final CodecAggregator.Result redefined = aggregator.addChunk(ipfixPacket(3, ipfixTemplateSet()), source);
+        assertThat(redefined.isValid()).isTrue();
+        assertThat(redefined.getMessage()).isNotNull();
+        final Collection<Message> messages = compactCodec.decodeMessages(new RawMessage(ByteBufUtil.getBytes(redefined.getMessage()), source));
+        assertThat(messages).hasSize(2);
+    }
+
+    @Test
+    public void compactEncodingWithdrawsAllIpfixTemplatesOfObservationDomain() throws Exception {
+        final NetFlowCodec compactCodec = new NetFlowCodec(
+                new Configuration(ImmutableMap.of(NetFlowCodec.CK_COMPACT_JOURNAL_ENCODING, true)), NetflowV9CodecAggregator::new);
+        final RemoteAddressCodecAggregator aggregator = (RemoteAddressCodecAggregator) compactCodec.getAggregator();
+        final InetSocketAddress source = new InetSocketAddress(InetAddress.getLoopbackAddress(), 4739);
+
+        assertThat(aggregator.addChunk(ipfixPacket(1, ipfixTemplateSet()), source).isValid()).isTrue();
+
+        final ByteBuf withdrawal = Unpooled.buffer()
+                .writeShort(2).writeShort(4 + 4)
+                .writeShort(2).writeShort(0);
+        final CodecAggregator.Result withdrawn = aggregator.addChunk(ipfixPacket(2, withdrawal, ipfixDataSet()), source);
+        assertThat(withdrawn.isValid()).isTrue();
+        assertThat(withdrawn.getMessage()).isNull();
+    }
+
+    private static ByteBuf ipfixTemplateSet() {
+        return Unpooled.buffer()
+                .writeShort(2).writeShort(4 + 4 + 5 * 4 + 8)
+                .writeShort(256).writeShort(6)
+                .writeShort(8).writeShort(4)    // sourceIPv4Address
+                .writeShort(12).writeShort(4)   // destinationIPv4Address
+                .writeShort(7).writeShort(2)    // sourceTransportPort
+                .writeShort(4).writeShort(1)    // protocolIdentifier
+                .writeShort(152).writeShort(8)  // flowStartMilliseconds
+                .writeShort(0x8000 | 1).writeShort(2).writeInt(29305); // enterprise specific element
+    }
+
+    private static ByteBuf ipfixDataSet() {
+        return Unpooled.buffer()
+                .writeShort(256).writeShort(4 + 2 * 21)
+                .writeBytes(new byte[]{10, 0, 0, 1}).writeBytes(new byte[]{10, 0, 0, 2}).writeShort(443).writeByte(6).writeLong(1501508283473L).writeShort(42)
+                .writeBytes(new byte[]{10, 0, 0, 3}).writeBytes(new byte[]{10, 0, 0, 4}).writeShort(53).writeByte(17).writeLong(1501508283491L).writeShort(23);
+    }
+
+    private static ByteBuf ipfixPacket(int sequenceNumber, ByteBuf... sets) {
+        int length = 16;
+        for (ByteBuf set : sets) {
+            length += set.readableBytes();
+        }
+        final ByteBuf packet = Unpooled.buffer()
+                .writeShort(10).writeShort(length).writeInt(1501508284).writeInt(sequenceNumber).writeInt(7);
+        for (ByteBuf set : sets) {
+            packet.writeBytes(set);
+        }
+        return packet;
+    }
+
+    private List<Map<String, Object>> decodePcapStream(NetFlowCodec codec, String resourceName) throws IOException {
+        final RemoteAddressCodecAggregator aggregator = (RemoteAddressCodecAggregator) codec.getAggregator();
+        final List<Map<String, Object>> allFields = new ArrayList<>();
+        try (InputStream inputStream = Resources.getResource(resourceName).openStream()) {
+            final Pcap pcap = Pcap.openStream(inputStream);
+            pcap.loop(packet -> {
+                if (packet.hasProtocol(Protocol.UDP)) {
+                    final UDPPacket udp = (UDPPacket) packet.getPacket(Protocol.UDP);
+                    final InetSocketAddress source = new InetSocketAddress(udp.getParentPacket().getSourceIP(), udp.getSourcePort());
+                    final CodecAggregator.Result result = aggregator.addChunk(Unpooled.copiedBuffer(udp.getPayload().getArray()), source);
+                    if (result.isValid() && result.getMessage() != null) {
+                        final Collection<Message> messages = codec.decodeMessages(new RawMessage(ByteBufUtil.getBytes(result.getMessage()), source));
+                        if (messages != null) {
+                            for (Message message : messages) {
+                                final Map<String, Object> fields = new HashMap<>(message.getFields());
+                                fields.remove(Message.FIELD_ID);
+                                allFields.add(fields);
+                            }
+                        }
+                    }
+                }
+                return true;
+            });
+        }
+        return allFields;
+    }
+}
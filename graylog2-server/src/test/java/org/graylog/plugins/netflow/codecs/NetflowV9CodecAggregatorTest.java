@@ -71,7 +71,7 @@ public class NetflowV9CodecAggregatorTest {
         // the codec aggregator creates "netflowv9"ish packets, that always contain all necessary templates before the data flows
         // this is not an RFC netflow packet, but greatly simplifies decoding
         codecAggregator = new NetflowV9CodecAggregator();
-        codec = new NetFlowCodec(Configuration.EMPTY_CONFIGURATION, codecAggregator);
+        codec = new NetFlowCodec(Configuration.EMPTY_CONFIGURATION, compactEncoding -> codecAggregator);
     }
 
 
@@ -19,6 +19,7 @@ package org.graylog.plugins.pipelineprocessor.functions;
 import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -88,6 +89,7 @@ import org.graylog.plugins.pipelineprocessor.functions.json.JsonParse;
 import org.graylog.plugins.pipelineprocessor.functions.json.SelectJsonPath;
 import org.graylog.plugins.pipelineprocessor.functions.lookup.LookupAddStringList;
 import org.graylog.plugins.pipelineprocessor.functions.lookup.LookupClearKey;
+import org.graylog.plugins.pipelineprocessor.functions.lookup.LookupMany;
 import org.graylog.plugins.pipelineprocessor.functions.lookup.LookupRemoveStringList;
 import org.graylog.plugins.pipelineprocessor.functions.lookup.LookupSetStringList;
 import org.graylog.plugins.pipelineprocessor.functions.lookup.LookupSetValue;
@@ -370,6 +372,7 @@ public class FunctionsSnippetsTest extends BaseParserTest {
 
         functions.put(LookupSetValue.NAME, new LookupSetValue(lookupTableService));
         functions.put(LookupClearKey.NAME, new LookupClearKey(lookupTableService));
+        functions.put(LookupMany.NAME, new LookupMany(lookupTableService));
         functions.put(LookupSetStringList.NAME, new LookupSetStringList(lookupTableService));
         functions.put(LookupAddStringList.NAME, new LookupAddStringList(lookupTableService));
         functions.put(LookupRemoveStringList.NAME, new LookupRemoveStringList(lookupTableService));
@@ -1207,6 +1210,22 @@ public class FunctionsSnippetsTest extends BaseParserTest {
         verifyNoMoreInteractions(lookupTable);
     }
 
+    @Test
+    public void lookupMany() {
+        doReturn(ImmutableMap.of("a", LookupResult.single("1"), "b", LookupResult.empty()))
+                .when(lookupTable).lookupAll(any());
+
+        final Rule rule = parser.parseRule(ruleForTest(), true);
+        final Message message = evaluateRule(rule);
+
+        verify(lookupTable).lookupAll(ImmutableList.of("a", "b"));
+        verifyNoMoreInteractions(lookupTable);
+
+        assertThat(message.getField("results")).isEqualTo(ImmutableMap.of(
+                "a", ImmutableMap.of("value", "1"),
+                "b", ImmutableMap.of("value", "none")));
+    }
+
     @Test
     public void lookupSetStringList() {
         final ImmutableList<String> testList = ImmutableList.of("foo", "bar");
@@ -166,6 +166,22 @@ public class SpamhausEDROPDataAdapterTest {
         assertLookupResultHasMultiValue(edropLookupResult2, entry("sbl_id", "SBL2342"), entry("subnet", "10.1.0.0/16"));
     }
 
+    @Test
+    public void matchesNetworkAndBroadcastAddressesOfListedSubnets() throws Exception {
+        when(httpFileRetriever.fetchFileIfNotModified("https://www.spamhaus.org/drop/drop.txt")).thenReturn(Optional.of("192.168.1.0/24 ; SBL0815\n"));
+        when(httpFileRetriever.fetchFileIfNotModified("https://www.spamhaus.org/drop/edrop.txt")).thenReturn(Optional.of("10.1.0.0/16 ; SBL2342\n"));
+
+        adapter.doStart();
+
+        assertLookupResultHasMultiValue(adapter.doGet("192.168.1.0"), entry("sbl_id", "SBL0815"), entry("subnet", "192.168.1.0/24"));
+        assertLookupResultHasMultiValue(adapter.doGet("192.168.1.255"), entry("sbl_id", "SBL0815"), entry("subnet", "192.168.1.0/24"));
+        assertLookupResultHasMultiValue(adapter.doGet("10.1.0.0"), entry("sbl_id", "SBL2342"), entry("subnet", "10.1.0.0/16"));
+        assertLookupResultHasMultiValue(adapter.doGet("10.1.255.255"), entry("sbl_id", "SBL2342"), entry("subnet", "10.1.0.0/16"));
+
+        assertNegativeLookupResult(adapter.doGet("192.168.0.255"));
+        assertNegativeLookupResult(adapter.doGet("192.168.2.0"));
+    }
+
     @Test
     public void verifyEmptyResultWithNullKey() throws Exception {
         when(httpFileRetriever.fetchFileIfNotModified("https://www.spamhaus.org/drop/drop.txt")).thenReturn(Optional.of(dropSnapshot));
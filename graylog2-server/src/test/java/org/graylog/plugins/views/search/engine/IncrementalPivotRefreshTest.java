@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.TimeUnitInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Average;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Percentile;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.InvalidRangeParametersException;
+import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.joda.time.DateTimeZone.UTC;
+
+class IncrementalPivotRefreshTest {
+    private static final DateTime FIRST_REFRESH = new DateTime(2020, 6, 1, 12, 2, 30, UTC);
+    private static final DateTime SECOND_REFRESH = new DateTime(2020, 6, 1, 12, 25, 0, UTC);
+    private static final Duration MAX_AGE = Duration.standardMinutes(30);
+
+    private IncrementalPivotRefresh incrementalRefresh;
+
+    @BeforeEach
+    void setUp() {
+        DateTimeUtils.setCurrentMillisFixed(FIRST_REFRESH.getMillis());
+        incrementalRefresh = new IncrementalPivotRefresh(true, 100, MAX_AGE, new ObjectMapperProvider().get(), new EventBus());
+    }
+
+    @AfterEach
+    void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    void doesNotPlanIfDisabled() throws InvalidRangeParametersException {
+        final IncrementalPivotRefresh disabled = new IncrementalPivotRefresh(false, 100, MAX_AGE, new ObjectMapperProvider().get(), new EventBus());
+        final Pivot pivot = pivot(Count.builder().build());
+
+        assertThat(disabled.planFor(search(), query(RelativeRange.create(3600), pivot), pivot)).isEmpty();
+    }
+
+    @Test
+    void doesNotPlanForAbsoluteRanges() {
+        final Pivot pivot = pivot(Count.builder().build());
+        final Query query = query(AbsoluteRange.create(FIRST_REFRESH.minusHours(1), FIRST_REFRESH), pivot);
+
+        assertThat(incrementalRefresh.planFor(search(), query, pivot)).isEmpty();
+    }
+
+    @Test
+    void doesNotPlanForSeriesWhichAreNotDecomposable() throws InvalidRangeParametersException {
+        final Pivot pivot = pivot(Count.builder().build(), Percentile.builder().field("took_ms").percentile(99.0).build());
+
+        assertThat(incrementalRefresh.planFor(search(), query(RelativeRange.create(3600), pivot), pivot)).isEmpty();
+    }
+
+    @Test
+    void firstExecutionRunsFullPivotWithHiddenSeries() throws InvalidRangeParametersException {
+        final Pivot pivot = pivot(Count.builder().build(), Average.builder().field("took_ms").build());
+
+        final Optional<IncrementalPivotRefresh.Plan> plan = incrementalRefresh.planFor(search(), query(RelativeRange.create(3600), pivot), pivot);
+
+        assertThat(plan).hasValueSatisfying(p -> {
+            assertThat(p.isIncremental()).isFalse();
+            assertThat(p.searchType().id()).isEqualTo("pivot-1");
+            assertThat(p.searchType().series())
+                    .extracting(series -> series.id())
+                    .containsExactly("count()", "avg(took_ms)", "incremental-count()", "incremental-sum(took_ms)", "incremental-count(took_ms)");
+        });
+    }
+
+    @Test
+    void completedResultDoesNotContainHiddenSeries() throws InvalidRangeParametersException {
+        final Pivot pivot = pivot(Count.builder().build(), Average.builder().field("took_ms").build());
+        final IncrementalPivotRefresh.Plan plan = incrementalRefresh.planFor(search(), query(RelativeRange.create(3600), pivot), pivot)
+                .orElseThrow(AssertionError::new);
+
+        final Optional<PivotResult> result = incrementalRefresh.complete(plan, ImmutableMap.of("pivot-1", fullResult()), true);
+
+        assertThat(result).hasValueSatisfying(r -> assertThat(r.rows())
+                .flatExtracting(PivotResult.Row::values)
+                .extracting(value -> value.key().get(0))
+                .containsOnly("count()", "avg(took_ms)"));
+    }
+
+    @Test
+    void refreshOnlyQueriesFirstAndLatestBuckets() throws InvalidRangeParametersException {
+        final Pivot pivot = pivot(Count.builder().build(), Average.builder().field("took_ms").build());
+        final Query query = query(RelativeRange.create(3600), pivot);
+        final IncrementalPivotRefresh.Plan firstPlan = incrementalRefresh.planFor(search(), query, pivot).orElseThrow(AssertionError::new);
+        incrementalRefresh.complete(firstPlan, ImmutableMap.of("pivot-1", fullResult()), true);
+
+        DateTimeUtils.setCurrentMillisFixed(SECOND_REFRESH.getMillis());
+        final IncrementalPivotRefresh.Plan plan = incrementalRefresh.planFor(search(), query, pivot).orElseThrow(AssertionError::new);
+
+        assertThat(plan.isIncremental()).isTrue();
+        final List<SearchType> slices = plan.sliceSearchTypes();
+        assertThat(slices).extracting(SearchType::id).containsExactly("pivot-1-incremental-head", "pivot-1-incremental-tail");
+        assertThat(slices.get(0).timerange()).hasValueSatisfying(range -> assertThat(range.effectiveTimeRange(query, slices.get(0)))
+                .isEqualTo(AbsoluteRange.create(at(11, 25), at(11, 30).minusMillis(1))));
+        assertThat(slices.get(1).timerange()).hasValueSatisfying(range -> assertThat(range.effectiveTimeRange(query, slices.get(1)))
+                .isEqualTo(AbsoluteRange.create(at(11, 50), SECOND_REFRESH)));
+    }
+
+    @Test
+    void refreshMergesSlicesIntoPreviousResult() throws InvalidRangeParametersException {
+        final Pivot pivot = pivot(Count.builder().build(), Average.builder().field("took_ms").build());
+        final Query query = query(RelativeRange.create(3600), pivot);
+        final IncrementalPivotRefresh.Plan firstPlan = incrementalRefresh.planFor(search(), query, pivot).orElseThrow(AssertionError::new);
+        incrementalRefresh.complete(firstPlan, ImmutableMap.of("pivot-1", fullResult()), true);
+
+        DateTimeUtils.setCurrentMillisFixed(SECOND_REFRESH.getMillis());
+        final IncrementalPivotRefresh.Plan plan = incrementalRefresh.planFor(search(), query, pivot).orElseThrow(AssertionError::new);
+        final PivotResult head = result("pivot-1-incremental-head", row(at(11, 20), 5, 50.0, 5));
+        final PivotResult tail = result("pivot-1-incremental-tail",
+                row(at(11, 50), 10, 100.0, 10),
+                row(at(12, 0), 20, 400.0, 20),
+                row(at(12, 10), 10, 100.0, 10),
+                row(at(12, 20), 5, 50.0, 5));
+
+        final PivotResult merged = incrementalRefresh.complete(plan, ImmutableMap.of(head.id(), head, tail.id(), tail), true)
+                .orElseThrow(AssertionError::new);
+
+        assertThat(merged.id()).isEqualTo("pivot-1");
+        assertThat(merged.rows()).extracting(PivotResult.Row::key).containsExactly(
+                key(at(11, 20)), key(at(11, 30)), key(at(11, 40)), key(at(11, 50)), key(at(12, 0)), key(at(12, 10)), key(at(12, 20)),
+                ImmutableList.of());
+        // 5 (head) + 2 * 1 (cached) + 45 (tail)
+        assertThat(merged.total()).isEqualTo(52L);
+        final Map<String, Object> rollup = valuesOf(merged.rows().get(merged.rows().size() - 1));
+        assertThat(rollup).containsEntry("count()", 52L);
+        assertThat(rollup).containsEntry("avg(took_ms)", (50.0 + 2 * 1.0 + 650.0) / 52);
+    }
+
+    @Test
+    void lateMessagesOlderThanOneIntervalAreReflectedAfterMaximumAge() throws InvalidRangeParametersException {
+        final Pivot pivot = pivot(Count.builder().build(), Average.builder().field("took_ms").build());
+        final Query query = query(RelativeRange.create(3600), pivot);
+        final IncrementalPivotRefresh.Plan firstPlan = incrementalRefresh.planFor(search(), query, pivot).orElseThrow(AssertionError::new);
+        incrementalRefresh.complete(firstPlan, ImmutableMap.of("pivot-1", fullResult()), true);
+
+        // a message for 11:35 arrives after the first refresh, the 11:30 bucket is not queried again incrementally
+        DateTimeUtils.setCurrentMillisFixed(SECOND_REFRESH.getMillis());
+        final IncrementalPivotRefresh.Plan secondPlan = incrementalRefresh.planFor(search(), query, pivot).orElseThrow(AssertionError::new);
+        assertThat(secondPlan.isIncremental()).isTrue();
+        final PivotResult head = result("pivot-1-incremental-head", row(at(11, 20), 1, 1.0, 1));
+        final PivotResult tail = result("pivot-1-incremental-tail", row(at(11, 50), 1, 1.0, 1), row(at(12, 0), 1, 1.0, 1));
+        final PivotResult incremental = incrementalRefresh.complete(secondPlan, ImmutableMap.of(head.id(), head, tail.id(), tail), true)
+                .orElseThrow(AssertionError::new);
+        assertThat(valuesOf(bucket(incremental, at(11, 30)))).containsEntry("count()", 1L);
+
+        DateTimeUtils.setCurrentMillisFixed(FIRST_REFRESH.plus(MAX_AGE).plusSeconds(1).getMillis());
+        final IncrementalPivotRefresh.Plan thirdPlan = incrementalRefresh.planFor(search(), query, pivot).orElseThrow(AssertionError::new);
+        assertThat(thirdPlan.isIncremental()).isFalse();
+        final PivotResult full = PivotResult.builder()
+                .id("pivot-1")
+                .effectiveTimerange(AbsoluteRange.create(thirdPlan.from(), thirdPlan.to()))
+                .total(4)
+                .addRow(row(at(11, 30), 2, 2.0, 2))
+                .addRow(row(at(11, 50), 1, 1.0, 1))
+                .addRow(row(at(12, 0), 1, 1.0, 1))
+                .build();
+        final PivotResult refreshed = incrementalRefresh.complete(thirdPlan, ImmutableMap.of("pivot-1", full), true)
+                .orElseThrow(AssertionError::new);
+        assertThat(valuesOf(bucket(refreshed, at(11, 30)))).containsEntry("count()", 2L);
+
+        // the full execution is the base for the following incremental refreshes
+        DateTimeUtils.setCurrentMillisFixed(thirdPlan.to().plusMinutes(5).getMillis());
+        assertThat(incrementalRefresh.planFor(search(), query, pivot))
+                .hasValueSatisfying(plan -> assertThat(plan.isIncremental()).isTrue());
+    }
+
+    private static PivotResult.Row bucket(PivotResult result, DateTime bucket) {
+        return result.rows().stream()
+                .filter(row -> row.key().equals(key(bucket)))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+    }
+
+    private static Map<String, Object> valuesOf(PivotResult.Row row) {
+        return row.values().stream().collect(Collectors.toMap(value -> value.key().get(0), PivotResult.Value::value));
+    }
+
+    private static PivotResult fullResult() {
+        final PivotResult.Builder builder = PivotResult.builder()
+                .id("pivot-1")
+                .effectiveTimerange(AbsoluteRange.create(FIRST_REFRESH.minusHours(1), FIRST_REFRESH))
+                .total(7);
+        for (DateTime bucket = at(11, 0); !bucket.isAfter(at(12, 0)); bucket = bucket.plusMinutes(10)) {
+            builder.addRow(row(bucket, 1, 1.0, 1));
+        }
+        return builder.build();
+    }
+
+    private static PivotResult result(String id, PivotResult.Row... rows) {
+        return PivotResult.builder()
+                .id(id)
+                .effectiveTimerange(AbsoluteRange.create(FIRST_REFRESH, SECOND_REFRESH))
+                .total(0)
+                .addAllRows(ImmutableList.copyOf(rows))
+                .build();
+    }
+
+    private static PivotResult.Row row(DateTime bucket, long count, double sum, long fieldCount) {
+        return PivotResult.Row.builder()
+                .key(key(bucket))
+                .source("leaf")
+                .addValue(value("count()", count))
+                .addValue(value("avg(took_ms)", sum / fieldCount))
+                .addValue(value("incremental-count()", count))
+                .addValue(value("incremental-sum(took_ms)", sum))
+                .addValue(value("incremental-count(took_ms)", fieldCount))
+                .build();
+    }
+
+    private static PivotResult.Value value(String seriesId, Object value) {
+        return PivotResult.Value.create(ImmutableList.of(seriesId), value, true, "row-leaf");
+    }
+
+    private static ImmutableList<String> key(DateTime bucket) {
+        return ImmutableList.of(bucket.toString());
+    }
+
+    private static DateTime at(int hour, int minute) {
+        return new DateTime(2020, 6, 1, hour, minute, UTC);
+    }
+
+    private static Pivot pivot(SeriesSpec... series) {
+        return Pivot.builder()
+                .id("pivot-1")
+                .rowGroups(Time.builder().field("timestamp").interval(TimeUnitInterval.Builder.builder().timeunit("10m").build()).build())
+                .series(series)
+                .rollup(true)
+                .build();
+    }
+
+    private static Query query(TimeRange timeRange, SearchType searchType) {
+        return Query.builder()
+                .id("query-1")
+                .timerange(timeRange)
+                .query(ElasticsearchQueryString.of("*"))
+                .searchTypes(ImmutableSet.of(searchType))
+                .build();
+    }
+
+    private static Search search() {
+        return Search.builder().id("search-1").build();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.AutoInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.DateInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Interval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.TimeUnitInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.joda.time.DateTimeZone.UTC;
+
+class PivotDownsamplingTest {
+    private static final DateTime FROM = new DateTime(2020, 6, 1, 0, 0, UTC);
+    private static final AbsoluteRange THIRTY_DAYS = AbsoluteRange.create(FROM, FROM.plusDays(30));
+
+    private final PivotDownsampling downsampling = new PivotDownsampling(true, 500);
+
+    @Test
+    void fixedIntervalIsTheSmallestOneWithinTarget() {
+        assertThat(PivotDownsampling.fixedIntervalFor(THIRTY_DAYS.getTo().getMillis() - FROM.getMillis(), 500))
+                .hasToString("2h");
+        assertThat(PivotDownsampling.fixedIntervalFor(3_600_000L, 500)).hasToString("10s");
+        assertThat(PivotDownsampling.fixedIntervalFor(365 * 86_400_000L, 10)).hasToString("37d");
+    }
+
+    @Test
+    void widensAutomaticIntervalsExceedingTarget() {
+        final Query query = query(pivot(AutoInterval.create(0.01), Count.builder().build()));
+
+        final Query downsampled = downsampling.downsample(query);
+
+        assertThat(intervalOf(downsampled)).isEqualTo(TimeUnitInterval.Builder.builder().timeunit("2h").build());
+    }
+
+    @Test
+    void keepsIntervalsWithinTarget() {
+        final Query query = query(pivot(AutoInterval.create(), Count.builder().build()));
+
+        assertThat(downsampling.downsample(query)).isSameAs(query);
+    }
+
+    @Test
+    void keepsFixedIntervals() {
+        final Query query = query(pivot(TimeUnitInterval.Builder.builder().timeunit("1m").build(), Count.builder().build()));
+
+        assertThat(downsampling.downsample(query)).isSameAs(query);
+    }
+
+    @Test
+    void doesNothingIfDisabled() {
+        final PivotDownsampling disabled = new PivotDownsampling(false, 500);
+        final Query query = query(pivot(AutoInterval.create(0.01), Count.builder().build()));
+        final QueryResult result = result(query, 1000);
+
+        assertThat(disabled.downsample(query)).isSameAs(query);
+        assertThat(disabled.reduce(query, result)).isSameAs(result);
+    }
+
+    @Test
+    void reducesRowsOfReducibleSeriesAndReportsInterval() {
+        final Query query = query(pivot(TimeUnitInterval.Builder.builder().timeunit("1m").build(), Max.builder().field("took_ms").build()));
+
+        final PivotResult result = (PivotResult) downsampling.reduce(query, result(query, 1000)).searchTypes().get("pivot-1");
+
+        assertThat(result.effectiveInterval()).isEqualTo("1m");
+        assertThat(result.rows()).hasSize(501);
+        assertThat(result.rows().get(0).key()).containsExactly(FROM.toString());
+        assertThat(result.rows().get(499).key()).containsExactly(FROM.plusMinutes(999).toString());
+        assertThat(result.rows()).extracting(PivotResult.Row::key).contains(ImmutableList.of(FROM.plusMinutes(500).toString()));
+        assertThat(result.rows().get(500).key()).isEmpty();
+        assertThat(result.total()).isEqualTo(1000L);
+    }
+
+    @Test
+    void doesNotReduceRowsOfCounts() {
+        final Query query = query(pivot(TimeUnitInterval.Builder.builder().timeunit("1m").build(), Count.builder().build()));
+
+        final PivotResult result = (PivotResult) downsampling.reduce(query, result(query, 1000)).searchTypes().get("pivot-1");
+
+        assertThat(result.effectiveInterval()).isEqualTo("1m");
+        assertThat(result.rows()).hasSize(1001);
+    }
+
+    @Test
+    void omitsUnknownIntervals() {
+        final Interval unknownInterval = new Interval() {
+            @Override
+            public String type() {
+                return "unknown";
+            }
+
+            @Override
+            public DateInterval toDateInterval(TimeRange timerange) {
+                return null;
+            }
+        };
+        final Query query = query(pivot(unknownInterval, Count.builder().build()));
+
+        final PivotResult result = (PivotResult) downsampling.reduce(query, result(query, 1000)).searchTypes().get("pivot-1");
+
+        assertThat(result.effectiveInterval()).isNull();
+        assertThat(result.rows()).hasSize(1001);
+    }
+
+    @Test
+    void largestTriangleThreeBucketsKeepsEndsAndPeaks() {
+        final double[] x = new double[100];
+        final double[] y = new double[100];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = i == 42 ? 100 : 1;
+        }
+
+        final int[] selected = PivotDownsampling.largestTriangleThreeBuckets(x, y, 10);
+
+        assertThat(selected).hasSize(10).startsWith(0).endsWith(99).contains(42);
+        assertThat(selected).isSorted();
+        assertThat(PivotDownsampling.largestTriangleThreeBuckets(Arrays.copyOf(x, 5), Arrays.copyOf(y, 5), 10))
+                .containsExactly(0, 1, 2, 3, 4);
+    }
+
+    private static Interval intervalOf(Query query) {
+        final Pivot pivot = (Pivot) query.searchTypes().iterator().next();
+        return ((Time) pivot.rowGroups().get(0)).interval();
+    }
+
+    private static QueryResult result(Query query, int buckets) {
+        final Pivot pivot = (Pivot) query.searchTypes().iterator().next();
+        final String seriesId = pivot.series().get(0).id();
+        final PivotResult.Builder builder = PivotResult.builder()
+                .id(pivot.id())
+                .effectiveTimerange(THIRTY_DAYS)
+                .total(buckets);
+        for (int i = 0; i < buckets; i++) {
+            // a single spike in the middle of an otherwise flat series
+            final long value = i == buckets / 2 ? 100 : 1;
+            builder.addRow(PivotResult.Row.builder()
+                    .key(ImmutableList.of(FROM.plusMinutes(i).toString()))
+                    .source("leaf")
+                    .addValue(PivotResult.Value.create(ImmutableList.of(seriesId), value, true, "row-leaf"))
+                    .build());
+        }
+        builder.addRow(PivotResult.Row.builder()
+                .key(ImmutableList.of())
+                .source("non-leaf")
+                .addValue(PivotResult.Value.create(ImmutableList.of(seriesId), 100, true, "row-inner"))
+                .build());
+        return QueryResult.builder()
+                .query(query)
+                .searchTypes(ImmutableMap.<String, SearchType.Result>of(pivot.id(), builder.build()))
+                .build();
+    }
+
+    private static Pivot pivot(Interval interval, SeriesSpec series) {
+        return Pivot.builder()
+                .id("pivot-1")
+                .rowGroups(Time.builder().field("timestamp").interval(interval).build())
+                .series(series)
+                .rollup(true)
+                .build();
+    }
+
+    private static Query query(SearchType searchType) {
+        return Query.builder()
+                .id("query-1")
+                .timerange(THIRTY_DAYS)
+                .query(ElasticsearchQueryString.of("*"))
+                .searchTypes(ImmutableSet.of(searchType))
+                .build();
+    }
+}
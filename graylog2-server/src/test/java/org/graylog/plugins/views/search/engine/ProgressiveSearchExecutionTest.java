@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.elasticsearch.IndexLookup;
+import org.graylog.plugins.views.search.filter.StreamFilter;
+import org.graylog.plugins.views.search.searchtypes.MessageList;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.AutoInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Interval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.TimeUnitInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.indexer.ranges.MongoIndexRange;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.rest.models.messages.responses.ResultMessageSummary;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.joda.time.DateTimeZone.UTC;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProgressiveSearchExecutionTest {
+    private static final DateTime FROM = new DateTime(2020, 6, 1, 0, 0, UTC);
+    private static final AbsoluteRange THIRTY_DAYS = AbsoluteRange.create(FROM, FROM.plusDays(30));
+    private static final Set<IndexRange> INDICES = ImmutableSet.of(
+            indexRange("graylog_0", FROM.minusDays(5), FROM.plusDays(10)),
+            indexRange("graylog_1", FROM.plusDays(10), FROM.plusDays(20)),
+            indexRange("graylog_2", FROM.plusDays(20), FROM.plusDays(25)),
+            indexRange("graylog_3", FROM.plusDays(25), FROM.plusDays(30)));
+
+    private final IndexLookup indexLookup = mock(IndexLookup.class);
+    private final ProgressiveSearchExecution progressiveExecution = new ProgressiveSearchExecution(true, 4, indexLookup);
+
+    @Test
+    void slicesAreAlignedToIndicesNewestFirst() {
+        assertThat(ProgressiveSearchExecution.slicesFor(THIRTY_DAYS, INDICES, 4)).containsExactly(
+                AbsoluteRange.create(FROM.plusDays(25), FROM.plusDays(30)),
+                AbsoluteRange.create(FROM.plusDays(20), FROM.plusDays(25).minusMillis(1)),
+                AbsoluteRange.create(FROM.plusDays(10), FROM.plusDays(20).minusMillis(1)),
+                AbsoluteRange.create(FROM, FROM.plusDays(10).minusMillis(1)));
+    }
+
+    @Test
+    void groupsIndicesIfThereAreMoreThanSlices() {
+        assertThat(ProgressiveSearchExecution.slicesFor(THIRTY_DAYS, INDICES, 2)).containsExactly(
+                AbsoluteRange.create(FROM.plusDays(20), FROM.plusDays(30)),
+                AbsoluteRange.create(FROM, FROM.plusDays(20).minusMillis(1)));
+    }
+
+    @Test
+    void doesNotSliceSingleIndex() {
+        final Set<IndexRange> singleIndex = ImmutableSet.of(indexRange("graylog_0", FROM.minusDays(5), FROM.plusDays(30)));
+
+        assertThat(ProgressiveSearchExecution.slicesFor(THIRTY_DAYS, singleIndex, 4)).containsExactly(THIRTY_DAYS);
+    }
+
+    @Test
+    void plansOnlyMergeableSearchTypes() {
+        when(indexLookup.indexRangesForStreamsInTimeRange(any(), any())).thenReturn(INDICES);
+
+        assertThat(progressiveExecution.planFor(query(messageList(0)))).hasValueSatisfying(slices -> assertThat(slices).hasSize(4));
+        assertThat(progressiveExecution.planFor(query(countPivot(TimeUnitInterval.Builder.builder().timeunit("1h").build())))).isPresent();
+        assertThat(progressiveExecution.planFor(query(messageList(100)))).isEmpty();
+        assertThat(progressiveExecution.planFor(query(countPivot(AutoInterval.create())))).isEmpty();
+    }
+
+    @Test
+    void doesNothingIfDisabled() {
+        when(indexLookup.indexRangesForStreamsInTimeRange(any(), any())).thenReturn(INDICES);
+        final ProgressiveSearchExecution disabled = new ProgressiveSearchExecution(false, 4, indexLookup);
+
+        assertThat(disabled.planFor(query(messageList(0)))).isEmpty();
+    }
+
+    @Test
+    void sliceQueryReplacesTimeRange() {
+        final AbsoluteRange slice = AbsoluteRange.create(FROM.plusDays(25), FROM.plusDays(30));
+
+        assertThat(progressiveExecution.sliceQuery(query(messageList(0)), slice).timerange()).isEqualTo(slice);
+    }
+
+    @Test
+    void mergesMessageListsNewestFirstUpToLimit() {
+        final Query query = query(messageList(0));
+        final QueryResult newer = result(query, messageListResult(FROM.plusDays(25), 2, "newer"));
+        final QueryResult older = result(query, messageListResult(FROM, 3, "older"));
+
+        final MessageList.Result merged = (MessageList.Result) progressiveExecution.merge(query, newer, older)
+                .searchTypes().get("messages-1");
+
+        assertThat(merged.messages()).extracting(message -> message.message().get("source"))
+                .containsExactly("newer", "newer", "older");
+        assertThat(merged.totalResults()).isEqualTo(5L);
+        assertThat(merged.effectiveTimerange()).isEqualTo(AbsoluteRange.create(FROM, FROM.plusDays(26)));
+    }
+
+    @Test
+    void mergesBucketsSplitBetweenSlices() {
+        final Pivot pivot = Pivot.builder()
+                .id("pivot-1")
+                .rowGroups(Time.builder().field("timestamp").interval(TimeUnitInterval.Builder.builder().timeunit("1d").build()).build())
+                .series(ImmutableList.of(Count.builder().id("count()").build(), Max.builder().id("max(took_ms)").field("took_ms").build()))
+                .rollup(true)
+                .build();
+        final Query query = query(pivot);
+        final QueryResult newer = result(query, pivotResult(FROM.plusDays(1), ImmutableList.of(
+                row(FROM.plusDays(1), 3, 10),
+                row(FROM.plusDays(2), 2, 30))));
+        final QueryResult older = result(query, pivotResult(FROM, ImmutableList.of(
+                row(FROM, 5, 20),
+                row(FROM.plusDays(1), 4, 40))));
+
+        final PivotResult merged = (PivotResult) progressiveExecution.merge(query, newer, older).searchTypes().get("pivot-1");
+
+        assertThat(merged.rows()).extracting(PivotResult.Row::key).containsExactly(
+                ImmutableList.of(FROM.toString()),
+                ImmutableList.of(FROM.plusDays(1).toString()),
+                ImmutableList.of(FROM.plusDays(2).toString()),
+                ImmutableList.of());
+        assertThat(merged.rows().get(1).values()).extracting(PivotResult.Value::value).containsExactly(7L, 40.0);
+        assertThat(merged.rows().get(3).values()).extracting(PivotResult.Value::value).containsExactly(14L, 40.0);
+        assertThat(merged.total()).isEqualTo(14L);
+    }
+
+    private static MessageList messageList(int offset) {
+        return MessageList.builder()
+                .id("messages-1")
+                .offset(offset)
+                .limit(3)
+                .build();
+    }
+
+    private static Pivot countPivot(Interval interval) {
+        return Pivot.builder()
+                .id("pivot-1")
+                .rowGroups(Time.builder().field("timestamp").interval(interval).build())
+                .series(Count.builder().build())
+                .rollup(true)
+                .build();
+    }
+
+    private static Query query(SearchType searchType) {
+        return Query.builder()
+                .id("query-1")
+                .timerange(THIRTY_DAYS)
+                .filter(StreamFilter.ofId("stream-1"))
+                .query(ElasticsearchQueryString.of("*"))
+                .searchTypes(ImmutableSet.of(searchType))
+                .build();
+    }
+
+    private static QueryResult result(Query query, SearchType.Result result) {
+        return QueryResult.builder()
+                .query(query)
+                .searchTypes(ImmutableMap.of(result.id(), result))
+                .build();
+    }
+
+    private static MessageList.Result messageListResult(DateTime from, int messages, String source) {
+        final ImmutableList.Builder<ResultMessageSummary> summaries = ImmutableList.builder();
+        for (int i = 0; i < messages; i++) {
+            summaries.add(ResultMessageSummary.create(null, ImmutableMap.of("source", source), "graylog_0"));
+        }
+        return MessageList.Result.result("messages-1")
+                .messages(summaries.build())
+                .totalResults(messages)
+                .effectiveTimerange(AbsoluteRange.create(from, from.plusDays(1)))
+                .build();
+    }
+
+    private static PivotResult pivotResult(DateTime from, List<PivotResult.Row> rows) {
+        final long count = rows.stream()
+                .mapToLong(row -> ((Number) row.values().get(0).value()).longValue())
+                .sum();
+        final double max = rows.stream()
+                .mapToDouble(row -> ((Number) row.values().get(1).value()).doubleValue())
+                .max()
+                .orElse(Double.NEGATIVE_INFINITY);
+        return PivotResult.builder()
+                .id("pivot-1")
+                .effectiveTimerange(AbsoluteRange.create(from, from.plusDays(2)))
+                .total(count)
+                .addAllRows(rows)
+                .addRow(PivotResult.Row.builder()
+                        .key(ImmutableList.of())
+                        .source("non-leaf")
+                        .addValue(PivotResult.Value.create(ImmutableList.of("count()"), count, true, "row-inner"))
+                        .addValue(PivotResult.Value.create(ImmutableList.of("max(took_ms)"), max, true, "row-inner"))
+                        .build())
+                .build();
+    }
+
+    private static PivotResult.Row row(DateTime bucket, long count, double max) {
+        return PivotResult.Row.builder()
+                .key(ImmutableList.of(bucket.toString()))
+                .source("leaf")
+                .addValue(PivotResult.Value.create(ImmutableList.of("count()"), count, true, "row-leaf"))
+                .addValue(PivotResult.Value.create(ImmutableList.of("max(took_ms)"), max, true, "row-leaf"))
+                .build();
+    }
+
+    private static IndexRange indexRange(String indexName, DateTime begin, DateTime end) {
+        return MongoIndexRange.create(indexName, begin, end, end, 0, Collections.emptyList());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryExecutionSchedulerTest {
+    private Queue<Runnable> workerRuns;
+    private MetricRegistry metricRegistry;
+    private QueryExecutionScheduler scheduler;
+    private List<String> executed;
+
+    @BeforeEach
+    void setUp() {
+        workerRuns = new ArrayDeque<>();
+        metricRegistry = new MetricRegistry();
+        scheduler = new QueryExecutionScheduler(3, workerRuns::add, metricRegistry);
+        executed = new ArrayList<>();
+    }
+
+    @Test
+    void executesInteractiveQueriesFirst() {
+        submit("alice", QueryExecutionPriority.BACKGROUND, "job-1", "background");
+        submit("bob", QueryExecutionPriority.INTERACTIVE, "job-2", "interactive");
+
+        runWorkers();
+
+        assertThat(executed).containsExactly("interactive", "background");
+    }
+
+    @Test
+    void servesUsersInTurn() {
+        submit("alice", QueryExecutionPriority.INTERACTIVE, "job-1", "alice-1");
+        submit("alice", QueryExecutionPriority.INTERACTIVE, "job-1", "alice-2");
+        submit("bob", QueryExecutionPriority.INTERACTIVE, "job-2", "bob-1");
+
+        runWorkers();
+
+        assertThat(executed).containsExactly("alice-1", "bob-1", "alice-2");
+    }
+
+    @Test
+    void rejectsQueriesIfQueueIsFull() {
+        submit("alice", QueryExecutionPriority.INTERACTIVE, "job-1", "query-1");
+        submit("alice", QueryExecutionPriority.INTERACTIVE, "job-1", "query-2");
+        submit("alice", QueryExecutionPriority.INTERACTIVE, "job-1", "query-3");
+
+        final CompletableFuture<String> rejected = submit("bob", QueryExecutionPriority.INTERACTIVE, "job-2", "query-4");
+
+        assertThatThrownBy(rejected::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(QueryExecutionRejectedException.class);
+        assertThat(metricRegistry.meter(MetricRegistry.name(QueryExecutionScheduler.class, "rejected")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelsQueuedQueriesOfSupersededSearchJobs() {
+        final CompletableFuture<String> superseded = scheduler.submit("alice", QueryExecutionPriority.INTERACTIVE, "job-1", null, () -> record("old"));
+        scheduler.submit("alice", QueryExecutionPriority.INTERACTIVE, "job-2", "job-1", () -> record("new"));
+
+        runWorkers();
+
+        assertThat(executed).containsExactly("new");
+        assertThatThrownBy(superseded::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(CancellationException.class);
+        assertThat(scheduler.queueSize()).isZero();
+    }
+
+    @Test
+    void completesConcurrentSearchJobsOfTheSameSearch() {
+        // e.g. the same dashboard opened in two browser tabs
+        final CompletableFuture<String> first = scheduler.submit("alice", QueryExecutionPriority.INTERACTIVE, "job-1", null, () -> record("first"));
+        final CompletableFuture<String> second = scheduler.submit("alice", QueryExecutionPriority.INTERACTIVE, "job-2", null, () -> record("second"));
+
+        runWorkers();
+
+        assertThat(first.join()).isEqualTo("first");
+        assertThat(second.join()).isEqualTo("second");
+        assertThat(executed).containsExactly("first", "second");
+        assertThat(metricRegistry.meter(MetricRegistry.name(QueryExecutionScheduler.class, "superseded")).getCount()).isZero();
+    }
+
+    @Test
+    void doesNotCancelQueriesOfOtherUsers() {
+        final CompletableFuture<String> other = scheduler.submit("bob", QueryExecutionPriority.INTERACTIVE, "job-1", null, () -> record("bob"));
+        scheduler.submit("alice", QueryExecutionPriority.INTERACTIVE, "job-2", "job-1", () -> record("alice"));
+
+        runWorkers();
+
+        assertThat(other.join()).isEqualTo("bob");
+        assertThat(executed).containsExactly("bob", "alice");
+    }
+
+    @Test
+    void completesFutureExceptionallyIfQueryFails() {
+        final CompletableFuture<String> failed = scheduler.submit("alice", QueryExecutionPriority.INTERACTIVE, "job-1", null, () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        runWorkers();
+
+        assertThatThrownBy(failed::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    private CompletableFuture<String> submit(String user, QueryExecutionPriority priority, String searchJobId, String name) {
+        return scheduler.submit(user, priority, searchJobId, null, () -> record(name));
+    }
+
+    private String record(String name) {
+        executed.add(name);
+        return name;
+    }
+
+    private void runWorkers() {
+        while (!workerRuns.isEmpty()) {
+            workerRuns.poll().run();
+        }
+    }
+}
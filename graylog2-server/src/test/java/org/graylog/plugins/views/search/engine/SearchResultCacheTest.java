@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.EventBus;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.searchtypes.MessageList;
+import org.graylog2.indexer.indices.events.IndicesDeletedEvent;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.indexer.ranges.IndexRangeService;
+import org.graylog2.indexer.ranges.MongoIndexRange;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.InvalidRangeParametersException;
+import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.SortedSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.joda.time.DateTimeZone.UTC;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SearchResultCacheTest {
+    private static final DateTime NOW = new DateTime(2020, 6, 1, 12, 0, UTC);
+
+    private EventBus eventBus;
+    private MetricRegistry metricRegistry;
+    private IndexRangeService indexRangeService;
+    private SearchResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        DateTimeUtils.setCurrentMillisFixed(NOW.getMillis());
+        eventBus = new EventBus();
+        metricRegistry = new MetricRegistry();
+        indexRangeService = mock(IndexRangeService.class);
+        cache = new SearchResultCache(true, Duration.standardSeconds(10), 100, metricRegistry, new ObjectMapperProvider().get(), indexRangeService, eventBus);
+    }
+
+    @AfterEach
+    void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    void returnsNoKeyIfDisabled() {
+        final SearchResultCache disabledCache = new SearchResultCache(false, Duration.standardSeconds(10), 100, metricRegistry, new ObjectMapperProvider().get(), indexRangeService, eventBus);
+        final SearchType messageList = messageList("messages");
+
+        assertThat(disabledCache.keyFor(search(), query(AbsoluteRange.create(NOW.minusHours(1), NOW.minusMinutes(1)), messageList), messageList)).isEmpty();
+    }
+
+    @Test
+    void keysOfEqualQueriesAreEqual() {
+        final SearchType messageList = messageList("messages");
+        final Query query = query(AbsoluteRange.create(NOW.minusHours(1), NOW.minusMinutes(1)), messageList);
+
+        final Optional<SearchResultCache.Key> first = cache.keyFor(search(), query, messageList);
+        final Optional<SearchResultCache.Key> second = cache.keyFor(search(), query.toBuilder().build(), messageList);
+
+        assertThat(first).isPresent();
+        assertThat(second).isPresent();
+        assertThat(first.get().digest()).isEqualTo(second.get().digest());
+    }
+
+    @Test
+    void keysDifferForDifferentStreams() {
+        final SearchType messageList = messageList("messages");
+        final Query query = query(AbsoluteRange.create(NOW.minusHours(1), NOW.minusMinutes(1)), messageList);
+        final SearchType otherStreams = ((MessageList) messageList).toBuilder().streams(ImmutableSet.of("other-stream")).build();
+
+        final String digest = cache.keyFor(search(), query, messageList).map(SearchResultCache.Key::digest).orElseThrow(AssertionError::new);
+        final String otherDigest = cache.keyFor(search(), query, otherStreams).map(SearchResultCache.Key::digest).orElseThrow(AssertionError::new);
+
+        assertThat(digest).isNotEqualTo(otherDigest);
+    }
+
+    @Test
+    void absoluteRangesInThePastAreClosed() {
+        final SearchType messageList = messageList("messages");
+        final Query query = query(AbsoluteRange.create(NOW.minusHours(1), NOW.minusMinutes(1)), messageList);
+
+        assertThat(SearchResultCache.isClosedTimeRange(query, messageList, NOW)).isTrue();
+    }
+
+    @Test
+    void rangesRelativeToNowAreLive() throws InvalidRangeParametersException {
+        final SearchType messageList = messageList("messages");
+
+        assertThat(SearchResultCache.isClosedTimeRange(query(RelativeRange.create(300), messageList), messageList, NOW)).isFalse();
+        assertThat(SearchResultCache.isClosedTimeRange(query(AbsoluteRange.create(NOW.minusHours(1), NOW.plusMinutes(1)), messageList), messageList, NOW)).isFalse();
+    }
+
+    @Test
+    void liveRangesUseTimeBuckets() throws InvalidRangeParametersException {
+        final SearchType messageList = messageList("messages");
+        final Query query = query(RelativeRange.create(300), messageList);
+
+        final String digest = cache.keyFor(search(), query, messageList).map(SearchResultCache.Key::digest).orElseThrow(AssertionError::new);
+        DateTimeUtils.setCurrentMillisFixed(NOW.plusSeconds(5).getMillis());
+        final String sameBucketDigest = cache.keyFor(search(), query, messageList).map(SearchResultCache.Key::digest).orElseThrow(AssertionError::new);
+        DateTimeUtils.setCurrentMillisFixed(NOW.plusSeconds(15).getMillis());
+        final String nextBucketDigest = cache.keyFor(search(), query, messageList).map(SearchResultCache.Key::digest).orElseThrow(AssertionError::new);
+
+        assertThat(sameBucketDigest).isEqualTo(digest);
+        assertThat(nextBucketDigest).isNotEqualTo(digest);
+    }
+
+    @Test
+    void cachedResultsAreReturnedAndCounted() {
+        final SearchType messageList = messageList("messages");
+        final SearchResultCache.Key key = cache.keyFor(search(), query(AbsoluteRange.create(NOW.minusHours(1), NOW.minusMinutes(1)), messageList), messageList)
+                .orElseThrow(AssertionError::new);
+        final SearchType.Result result = mock(SearchType.Result.class);
+
+        assertThat(cache.get(key)).isEmpty();
+        cache.put(key, result);
+        assertThat(cache.get(key)).contains(result);
+
+        assertThat(metricRegistry.meter(MetricRegistry.name(SearchResultCache.class, MessageList.NAME, "hits")).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter(MetricRegistry.name(SearchResultCache.class, MessageList.NAME, "misses")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void indexRangeUpdatesInvalidateCache() {
+        when(indexRangeService.find(any(), any())).thenReturn(ranges(range("graylog_0", NOW.minusDays(1), NOW)));
+        final SearchType messageList = messageList("messages");
+        final SearchResultCache.Key key = cache.keyFor(search(), query(AbsoluteRange.create(NOW.minusHours(1), NOW.minusMinutes(1)), messageList), messageList)
+                .orElseThrow(AssertionError::new);
+        cache.put(key, mock(SearchType.Result.class));
+
+        eventBus.post(IndexRangesUpdatedEvent.create("graylog_0"));
+
+        assertThat(cache.get(key)).isEmpty();
+    }
+
+    @Test
+    void updatesOfUnrelatedIndicesKeepCache() throws Exception {
+        when(indexRangeService.find(any(), any())).thenReturn(ranges(range("graylog_0", NOW.minusDays(1), NOW)));
+        when(indexRangeService.get("graylog_1")).thenReturn(range("graylog_1", NOW.minusDays(3), NOW.minusDays(2)));
+        final SearchType messageList = messageList("messages");
+        final SearchResultCache.Key key = cache.keyFor(search(), query(AbsoluteRange.create(NOW.minusHours(1), NOW.minusMinutes(1)), messageList), messageList)
+                .orElseThrow(AssertionError::new);
+        cache.put(key, mock(SearchType.Result.class));
+
+        eventBus.post(IndexRangesUpdatedEvent.create("graylog_1"));
+        eventBus.post(IndicesDeletedEvent.create("graylog_2"));
+
+        assertThat(cache.get(key)).isPresent();
+    }
+
+    @Test
+    void newIndexRangesOverlappingTheTimeRangeInvalidateCache() throws Exception {
+        when(indexRangeService.find(any(), any())).thenReturn(ranges(range("graylog_0", NOW.minusDays(1), NOW)));
+        // e. g. messages with old timestamps in a new index
+        when(indexRangeService.get("graylog_1")).thenReturn(range("graylog_1", NOW.minusMinutes(30), NOW));
+        final SearchType messageList = messageList("messages");
+        final SearchResultCache.Key key = cache.keyFor(search(), query(AbsoluteRange.create(NOW.minusHours(1), NOW.minusMinutes(1)), messageList), messageList)
+                .orElseThrow(AssertionError::new);
+        cache.put(key, mock(SearchType.Result.class));
+
+        eventBus.post(IndexRangesUpdatedEvent.create("graylog_1"));
+
+        assertThat(cache.get(key)).isEmpty();
+    }
+
+    @Test
+    void deletedIndicesInvalidateCache() {
+        when(indexRangeService.find(any(), any())).thenReturn(ranges(range("graylog_0", NOW.minusDays(1), NOW)));
+        final SearchType messageList = messageList("messages");
+        final SearchResultCache.Key key = cache.keyFor(search(), query(AbsoluteRange.create(NOW.minusHours(1), NOW.minusMinutes(1)), messageList), messageList)
+                .orElseThrow(AssertionError::new);
+        cache.put(key, mock(SearchType.Result.class));
+
+        eventBus.post(IndicesDeletedEvent.create("graylog_0"));
+
+        assertThat(cache.get(key)).isEmpty();
+    }
+
+    private static IndexRange range(String index, DateTime begin, DateTime end) {
+        return MongoIndexRange.create(index, begin, end, end, 0);
+    }
+
+    private static SortedSet<IndexRange> ranges(IndexRange... ranges) {
+        return ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR).add(ranges).build();
+    }
+
+    private static SearchType messageList(String id) {
+        return MessageList.builder().id(id).streams(ImmutableSet.of("stream-1")).build();
+    }
+
+    private static Query query(TimeRange timeRange, SearchType searchType) {
+        return Query.builder()
+                .id("query-1")
+                .timerange(timeRange)
+                .query(ElasticsearchQueryString.of("source:example"))
+                .searchTypes(ImmutableSet.of(searchType))
+                .build();
+    }
+
+    private static Search search() {
+        return Search.builder().id("search-1").queries(ImmutableSet.of()).build();
+    }
+}
@@ -16,11 +16,13 @@
  */
 package org.graylog.plugins.views.search.export;
 
+import org.graylog2.decorators.Decorator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -29,6 +31,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 class MessagesExporterImplTest {
@@ -46,7 +49,7 @@ class MessagesExporterImplTest {
 
     @Test
     void appliesDecorators() {
-        ExportMessagesCommand command = ExportMessagesCommand.withDefaults();
+        ExportMessagesCommand command = ExportMessagesCommand.builder().decorators(List.of(mock(Decorator.class))).build();
 
         SimpleMessageChunk undecoratedChunk = SimpleMessageChunk.from(linkedHashSetOf("field-1"), linkedHashSetOf());
         SimpleMessageChunk decoratedChunk = SimpleMessageChunk.from(linkedHashSetOf("field-1", "field-2"), linkedHashSetOf());
@@ -58,6 +61,18 @@ class MessagesExporterImplTest {
         assertThat(results).containsExactly(decoratedChunk);
     }
 
+    @Test
+    void forwardsChunksUnchangedWithoutDecorators() {
+        ExportMessagesCommand command = ExportMessagesCommand.withDefaults();
+
+        SimpleMessageChunk chunk = SimpleMessageChunk.from(linkedHashSetOf("field-1"), linkedHashSetOf());
+
+        ArrayList<SimpleMessageChunk> results = exportWithStubbedSingleChunkFromBackend(command, chunk);
+
+        assertThat(results).containsExactly(chunk);
+        verifyNoInteractions(chunkDecorator);
+    }
+
     private ArrayList<SimpleMessageChunk> exportWithStubbedSingleChunkFromBackend(ExportMessagesCommand command, SimpleMessageChunk chunkFromBackend) {
         @SuppressWarnings("unchecked")
         ArgumentCaptor<Consumer<SimpleMessageChunk>> captor = ArgumentCaptor.forClass(Consumer.class);
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.export;
+
+import org.graylog2.rest.MoreMediaTypes;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.graylog.plugins.views.search.export.LinkedHashSetUtil.linkedHashSetOf;
+import static org.graylog.plugins.views.search.export.TestData.simpleMessage;
+
+class SimpleMessageChunkNdjsonWriterTest {
+    private SimpleMessageChunkNdjsonWriter sut;
+
+    @BeforeEach
+    void setUp() {
+        sut = new SimpleMessageChunkNdjsonWriter(new ObjectMapperProvider().get());
+    }
+
+    @Test
+    void isWritableForNdjsonOnly() {
+        assertThat(sut.isWriteable(SimpleMessageChunk.class, null, null, MoreMediaTypes.APPLICATION_NDJSON_TYPE)).isTrue();
+        assertThat(sut.isWriteable(SimpleMessageChunk.class, null, null, MoreMediaTypes.TEXT_CSV_TYPE)).isFalse();
+    }
+
+    @Test
+    void writesOneObjectPerLineWithFieldsInOrder() {
+        SimpleMessageChunk chunk = SimpleMessageChunk.from(
+                linkedHashSetOf("timestamp", "source", "message"),
+                simpleMessage("message,source,timestamp", new Object[]{"some text", "source-1", "2015-01-01 01:00:00.000"}),
+                simpleMessage("timestamp,message,count", new Object[]{"2015-01-02 01:00:00.000", "more text", 42}));
+
+        String result = write(chunk);
+
+        assertThat(result.split("\n"))
+                .containsExactly(
+                        "{\"timestamp\":\"2015-01-01 01:00:00.000\",\"source\":\"source-1\",\"message\":\"some text\"}",
+                        "{\"timestamp\":\"2015-01-02 01:00:00.000\",\"message\":\"more text\"}");
+    }
+
+    private String write(SimpleMessageChunk chunk) {
+        ByteArrayOutputStream entityStream = new ByteArrayOutputStream();
+        try {
+            sut.writeTo(chunk, SimpleMessageChunk.class, null, null, null, null, entityStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new String(entityStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -59,6 +59,7 @@ import static org.mockito.Mockito.when;
 public class DBJobTriggerServiceTest {
     private static final String NODE_ID = "node-1";
     private static final Duration EXPIRATION_DURATION = Duration.minutes(5);
+    private static final int BATCH_SIZE = 10;
 
     @Rule
     public final MongoDBInstance mongodb = MongoDBInstance.createForClass();
@@ -85,7 +86,7 @@ public class DBJobTriggerServiceTest {
         objectMapper.registerSubtypes(new NamedType(TestJobTriggerData.class, TestJobTriggerData.TYPE_NAME));
 
         mapperProvider = new MongoJackObjectMapperProvider(objectMapper);
-        this.dbJobTriggerService = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerCapabilitiesService, EXPIRATION_DURATION);
+        this.dbJobTriggerService = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerCapabilitiesService, EXPIRATION_DURATION, BATCH_SIZE);
     }
 
     @Test
@@ -255,6 +256,17 @@ public class DBJobTriggerServiceTest {
                 .hasMessageContaining("54e3deadbeefdeadbeefaff3");
     }
 
+    @Test
+    @MongoDBFixtures("job-triggers.json")
+    public void getJobDefinitionIdsLockedByThisNode() {
+        assertThat(dbJobTriggerService.getJobDefinitionIdsLockedByThisNode(Collections.emptySet())).isEmpty();
+        assertThat(dbJobTriggerService.getJobDefinitionIdsLockedByThisNode(ImmutableSet.of("54e3deadbeefdeadbeefaff3", "54e3deadbeefdeadbeefaff4", "54e3deadbeefdeadbeefaff5")))
+                .containsExactly("54e3deadbeefdeadbeefaff4");
+
+        final DBJobTriggerService otherNode = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, new SimpleNodeId("node-2"), clock, schedulerCapabilitiesService, EXPIRATION_DURATION, BATCH_SIZE);
+        assertThat(otherNode.getJobDefinitionIdsLockedByThisNode(ImmutableSet.of("54e3deadbeefdeadbeefaff4"))).isEmpty();
+    }
+
     @Test
     public void createTrigger() {
         final JobTriggerDto trigger = dbJobTriggerService.create(JobTriggerDto.Builder.create(clock)
@@ -353,6 +365,39 @@ public class DBJobTriggerServiceTest {
                 .hasMessageContaining("trigger cannot be null");
     }
 
+    @Test
+    public void addToPendingTriggerData() {
+        final DateTime nextTime = clock.nowUTC().plusMinutes(1);
+        final JobTriggerDto trigger = dbJobTriggerService.create(JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .jobDefinitionType("event-processor-execution-v1")
+                .schedule(OnceJobSchedule.create())
+                .nextTime(nextTime)
+                .data(TestJobTriggerData.create(Collections.singletonMap("values", ImmutableList.of("a"))))
+                .build());
+
+        assertThat(dbJobTriggerService.addToPendingTriggerData("abc-123", DBQuery.empty(), nextTime, "map.values", "b")).isTrue();
+        assertThat(dbJobTriggerService.get(trigger.id()))
+                .isPresent()
+                .get()
+                .satisfies(dto -> assertThat(dto.data()).isPresent().get()
+                        .isEqualTo(TestJobTriggerData.create(Collections.singletonMap("values", ImmutableList.of("a", "b")))));
+
+        // Not due until the given time
+        assertThat(dbJobTriggerService.addToPendingTriggerData("abc-123", DBQuery.empty(), nextTime.minusSeconds(1), "map.values", "c")).isFalse();
+        // Different job definition
+        assertThat(dbJobTriggerService.addToPendingTriggerData("xyz-123", DBQuery.empty(), nextTime, "map.values", "c")).isFalse();
+        // Not matching the additional query
+        assertThat(dbJobTriggerService.addToPendingTriggerData("abc-123", DBQuery.exists("data.map.values.2"), nextTime, "map.values", "c")).isFalse();
+        // Unknown array field
+        assertThat(dbJobTriggerService.addToPendingTriggerData("abc-123", DBQuery.empty(), nextTime, "map.other", "c")).isFalse();
+
+        // Locked triggers must not be modified anymore
+        clock.plus(2, TimeUnit.MINUTES);
+        assertThat(dbJobTriggerService.nextRunnableTrigger()).isPresent();
+        assertThat(dbJobTriggerService.addToPendingTriggerData("abc-123", DBQuery.empty(), nextTime, "map.values", "c")).isFalse();
+    }
+
     @Test
     public void nextRunnableTriggerWithPausedCompletedAndErrorStatus() {
         // No triggers yet
@@ -533,12 +578,86 @@ public class DBJobTriggerServiceTest {
         assertThat(dbJobTriggerService.nextRunnableTrigger()).isEmpty();
     }
 
+    @Test
+    public void nextRunnableTriggers() {
+        // No triggers yet
+        assertThat(dbJobTriggerService.nextRunnableTriggers(5)).isEmpty();
+
+        final JobTriggerDto.Builder triggerBuilder = JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .jobDefinitionType("event-processor-execution-v1")
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.SECONDS)
+                        .build());
+        final JobTriggerDto trigger1 = dbJobTriggerService.create(triggerBuilder.nextTime(clock.nowUTC().minusSeconds(10)).build());
+        final JobTriggerDto trigger2 = dbJobTriggerService.create(triggerBuilder.nextTime(clock.nowUTC().minusSeconds(30)).build());
+        final JobTriggerDto trigger3 = dbJobTriggerService.create(triggerBuilder.nextTime(clock.nowUTC().minusSeconds(20)).build());
+        dbJobTriggerService.create(triggerBuilder.nextTime(clock.nowUTC().plusSeconds(30)).build());
+
+        // The oldest triggers are locked first, at most as many as requested
+        assertThat(dbJobTriggerService.nextRunnableTriggers(2))
+                .extracting(JobTriggerDto::id)
+                .containsExactly(trigger2.id(), trigger3.id());
+
+        assertThat(dbJobTriggerService.nextRunnableTriggers(5))
+                .hasSize(1)
+                .allSatisfy(trigger -> {
+                    assertThat(trigger.id()).isEqualTo(trigger1.id());
+                    assertThat(trigger.status()).isEqualTo(JobTriggerStatus.RUNNING);
+                    assertThat(trigger.triggeredAt()).isPresent().get().isEqualTo(clock.nowUTC());
+                    assertThat(trigger.lock().owner()).isEqualTo(NODE_ID);
+                    assertThat(trigger.lock().lastLockTime()).isEqualTo(clock.nowUTC());
+                });
+
+        // The remaining trigger is not due yet
+        assertThat(dbJobTriggerService.nextRunnableTriggers(5)).isEmpty();
+        assertThat(dbJobTriggerService.nextRunnableTrigger()).isEmpty();
+    }
+
+    @Test
+    public void nextRunnableTriggersForJobTypes() {
+        final JobTriggerDto.Builder triggerBuilder = JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.SECONDS)
+                        .build())
+                .nextTime(clock.nowUTC().minusSeconds(10));
+        final JobTriggerDto trigger1 = dbJobTriggerService.create(triggerBuilder.jobDefinitionType("event-processor-execution-v1").build());
+        final JobTriggerDto trigger2 = dbJobTriggerService.create(triggerBuilder.jobDefinitionType("notification-execution-v1").build());
+        final JobTriggerDto trigger3 = dbJobTriggerService.create(triggerBuilder.jobDefinitionType("other-v1").build());
+
+        // Triggers of excluded job types are left for the lanes of these types
+        assertThat(dbJobTriggerService.nextRunnableTriggers(5, ImmutableSet.of(), ImmutableSet.of("notification-execution-v1")))
+                .extracting(JobTriggerDto::id)
+                .containsExactlyInAnyOrder(trigger1.id(), trigger3.id());
+
+        assertThat(dbJobTriggerService.nextRunnableTriggers(5, ImmutableSet.of("event-processor-execution-v1"), ImmutableSet.of())).isEmpty();
+
+        assertThat(dbJobTriggerService.nextRunnableTriggers(1, ImmutableSet.of("notification-execution-v1"), ImmutableSet.of()))
+                .extracting(JobTriggerDto::id)
+                .containsExactly(trigger2.id());
+    }
+
+    @Test
+    @MongoDBFixtures("stale-job-triggers-with-expired-lock.json")
+    public void nextRunnableTriggersIncludesStaleTriggers() {
+        final JobSchedulerTestClock clock = new JobSchedulerTestClock(DateTime.parse("2019-01-01T02:00:00.000Z"));
+        final DBJobTriggerService service = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerCapabilitiesService, EXPIRATION_DURATION, BATCH_SIZE);
+
+        // Triggers locked by this node or with a lock that isn't expired yet must not be locked again
+        assertThat(service.nextRunnableTriggers(10))
+                .extracting(JobTriggerDto::id)
+                .containsExactly("54e3deadbeefdeadbeef0002", "54e3deadbeefdeadbeef0000");
+    }
+
     @Test
     @MongoDBFixtures("job-triggers.json")
     public void nextRunnableTriggerWithEndTime() {
         // Set clock to base date used in the fixture file
         final JobSchedulerTestClock clock = new JobSchedulerTestClock(DateTime.parse("2019-01-01T00:00:00.000Z"));
-        final DBJobTriggerService service = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerCapabilitiesService, EXPIRATION_DURATION);
+        final DBJobTriggerService service = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerCapabilitiesService, EXPIRATION_DURATION, BATCH_SIZE);
 
         // No triggers yet because 54e3deadbeefdeadbeef0002 is already locked and RUNNING
         assertThat(service.nextRunnableTrigger()).isEmpty();
@@ -783,7 +902,7 @@ public class DBJobTriggerServiceTest {
     @MongoDBFixtures("stale-job-triggers-with-expired-lock.json")
     public void nextStaleTrigger() {
         final JobSchedulerTestClock clock = new JobSchedulerTestClock(DateTime.parse("2019-01-01T02:00:00.000Z"));
-        final DBJobTriggerService service = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerCapabilitiesService, EXPIRATION_DURATION);
+        final DBJobTriggerService service = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerCapabilitiesService, EXPIRATION_DURATION, BATCH_SIZE);
 
         assertThat(service.nextRunnableTrigger())
                 .isNotEmpty()
@@ -796,7 +915,7 @@ public class DBJobTriggerServiceTest {
     public void updateLockedJobTriggers() {
         DateTime newLockTime = DateTime.parse("2019-01-01T02:00:00.000Z");
         final JobSchedulerTestClock clock = new JobSchedulerTestClock(newLockTime);
-        final DBJobTriggerService service = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerCapabilitiesService, EXPIRATION_DURATION);
+        final DBJobTriggerService service = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerCapabilitiesService, EXPIRATION_DURATION, BATCH_SIZE);
 
         service.updateLockedJobTriggers();
 
@@ -17,18 +17,33 @@
 package org.graylog.scheduler;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.events.JobSchedulerTestClock;
 import org.graylog.scheduler.eventbus.JobSchedulerEventBus;
+import org.graylog.scheduler.schedule.IntervalJobSchedule;
+import org.graylog.scheduler.worker.JobWorkerLane;
 import org.graylog.scheduler.worker.JobWorkerPool;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -49,12 +64,25 @@ class JobExecutionEngineTest {
     private Map<String, Job.Factory> jobFactory;
     @Mock
     private JobWorkerPool workerPool;
+    @Mock
+    private JobWorkerPool laneWorkerPool;
     @Spy
     private MetricRegistry metricRegistry = new MetricRegistry();
 
-    @InjectMocks
+    private final JobSchedulerTestClock clock = new JobSchedulerTestClock(DateTime.now(DateTimeZone.UTC));
+
     private JobExecutionEngine underTest;
 
+    @BeforeEach
+    void setUp() {
+        underTest = createEngine(ImmutableMap.of());
+    }
+
+    private JobExecutionEngine createEngine(Map<JobWorkerLane, JobWorkerPool> lanePools) {
+        return new JobExecutionEngine(jobTriggerService, jobDefinitionService, eventBus, scheduleStrategies,
+                jobTriggerUpdatesFactory, jobFactory, workerPool, lanePools, clock, metricRegistry);
+    }
+
     @Test
     void updateLockedJobsOnlyIfSomeJobWorkersRun() {
         underTest.updateLockedJobs();
@@ -63,4 +91,125 @@ class JobExecutionEngineTest {
 
         verify(jobTriggerService, times(1)).updateLockedJobTriggers();
     }
+
+    @Test
+    void executeLocksTriggersForFreeSlots() {
+        final JobTriggerDto trigger1 = trigger(clock, "54e3deadbeefdeadbeef0001");
+        final JobTriggerDto trigger2 = trigger(clock, "54e3deadbeefdeadbeef0002");
+        given(workerPool.hasFreeSlots()).willReturn(true);
+        given(workerPool.freeSlots()).willReturn(2);
+        given(jobTriggerService.nextRunnableTriggers(2, ImmutableSet.of(), ImmutableSet.of())).willReturn(ImmutableList.of(trigger1, trigger2));
+        given(workerPool.execute(any(), anyLong())).willReturn(true);
+
+        assertThat(underTest.execute()).isTrue();
+
+        verify(workerPool, times(2)).execute(any());
+        verify(jobTriggerService, never()).releaseTrigger(any(), any());
+        assertThat(metricRegistry.getTimers()).containsKey(MetricRegistry.name(JobExecutionEngine.class, "lag", "event-processor-execution-v1"));
+    }
+
+    @Test
+    void executeRecordsLagFromSchedulerClock() {
+        final JobTriggerDto trigger1 = trigger(clock, "54e3deadbeefdeadbeef0001");
+        given(workerPool.hasFreeSlots()).willReturn(true);
+        given(workerPool.freeSlots()).willReturn(1);
+        given(jobTriggerService.nextRunnableTriggers(1, ImmutableSet.of(), ImmutableSet.of())).willReturn(ImmutableList.of(trigger1));
+        given(workerPool.execute(any(), anyLong())).willReturn(true);
+        clock.plus(5, TimeUnit.SECONDS);
+
+        assertThat(underTest.execute()).isTrue();
+
+        // The trigger was due 10 seconds before it got created, the clock moved another 5 seconds since
+        verify(workerPool, times(1)).execute(any(), eq(15000L));
+        assertThat(metricRegistry.timer(MetricRegistry.name(JobExecutionEngine.class, "lag", "event-processor-execution-v1")).getSnapshot().getMax())
+                .isEqualTo(TimeUnit.SECONDS.toNanos(15));
+    }
+
+    @Test
+    void executeReleasesTriggersThePoolCannotRun() {
+        final JobTriggerDto trigger1 = trigger(clock, "54e3deadbeefdeadbeef0001");
+        final JobTriggerDto trigger2 = trigger(clock, "54e3deadbeefdeadbeef0002");
+        given(workerPool.hasFreeSlots()).willReturn(true);
+        given(workerPool.freeSlots()).willReturn(2);
+        given(jobTriggerService.nextRunnableTriggers(2, ImmutableSet.of(), ImmutableSet.of())).willReturn(ImmutableList.of(trigger1, trigger2));
+        given(workerPool.execute(any(), anyLong())).willReturn(true, false);
+
+        assertThat(underTest.execute()).isFalse();
+
+        verify(jobTriggerService, times(1)).releaseTrigger(trigger2, JobTriggerUpdate.withNextTime(trigger2.nextTime()));
+        verify(jobTriggerService, never()).releaseTrigger(trigger1, JobTriggerUpdate.withNextTime(trigger1.nextTime()));
+    }
+
+    @Test
+    void executeLocksTriggersPerLane() {
+        final JobTriggerDto trigger1 = trigger(clock, "54e3deadbeefdeadbeef0001");
+        final JobTriggerDto trigger2 = trigger(clock, "54e3deadbeefdeadbeef0002", "notification-execution-v1");
+        final JobWorkerLane lane = JobWorkerLane.create("notifications", 1, ImmutableSet.of("notification-execution-v1"));
+        underTest = createEngine(ImmutableMap.of(lane, laneWorkerPool));
+
+        given(workerPool.hasFreeSlots()).willReturn(true);
+        given(workerPool.freeSlots()).willReturn(2);
+        given(laneWorkerPool.hasFreeSlots()).willReturn(true);
+        given(laneWorkerPool.freeSlots()).willReturn(1);
+        given(jobTriggerService.nextRunnableTriggers(2, ImmutableSet.of(), ImmutableSet.of("notification-execution-v1")))
+                .willReturn(ImmutableList.of(trigger1));
+        given(jobTriggerService.nextRunnableTriggers(1, ImmutableSet.of("notification-execution-v1"), ImmutableSet.of()))
+                .willReturn(ImmutableList.of(trigger2));
+        given(workerPool.execute(any(), anyLong())).willReturn(true);
+        given(laneWorkerPool.execute(any(), anyLong())).willReturn(true);
+
+        assertThat(underTest.execute()).isTrue();
+
+        verify(workerPool, times(1)).execute(any(), anyLong());
+        verify(laneWorkerPool, times(1)).execute(any(), anyLong());
+        verify(jobTriggerService, never()).releaseTrigger(any(), any());
+    }
+
+    @Test
+    void executeSkipsLanesWithoutFreeSlots() {
+        final JobTriggerDto trigger1 = trigger(clock, "54e3deadbeefdeadbeef0001");
+        final JobWorkerLane lane = JobWorkerLane.create("notifications", 1, ImmutableSet.of("notification-execution-v1"));
+        underTest = createEngine(ImmutableMap.of(lane, laneWorkerPool));
+
+        given(workerPool.hasFreeSlots()).willReturn(true);
+        given(workerPool.freeSlots()).willReturn(1);
+        given(laneWorkerPool.hasFreeSlots()).willReturn(false);
+        given(jobTriggerService.nextRunnableTriggers(1, ImmutableSet.of(), ImmutableSet.of("notification-execution-v1")))
+                .willReturn(ImmutableList.of(trigger1));
+        given(workerPool.execute(any(), anyLong())).willReturn(true);
+
+        assertThat(underTest.execute()).isTrue();
+
+        // The lane pool is busy, so the database must not be queried for its triggers
+        verify(jobTriggerService, times(1)).nextRunnableTriggers(anyInt(), any(), any());
+        verify(laneWorkerPool, never()).execute(any(), anyLong());
+    }
+
+    @Test
+    void updateLockedJobsIfLaneWorkersRun() {
+        final JobWorkerLane lane = JobWorkerLane.create("notifications", 1, ImmutableSet.of("notification-execution-v1"));
+        underTest = createEngine(ImmutableMap.of(lane, laneWorkerPool));
+        given(laneWorkerPool.anySlotsUsed()).willReturn(true);
+
+        underTest.updateLockedJobs();
+
+        verify(jobTriggerService, times(1)).updateLockedJobTriggers();
+    }
+
+    private static JobTriggerDto trigger(JobSchedulerTestClock clock, String id) {
+        return trigger(clock, id, "event-processor-execution-v1");
+    }
+
+    private static JobTriggerDto trigger(JobSchedulerTestClock clock, String id, String jobDefinitionType) {
+        return JobTriggerDto.Builder.create(clock)
+                .id(id)
+                .jobDefinitionId("abc-123")
+                .jobDefinitionType(jobDefinitionType)
+                .nextTime(clock.nowUTC().minusSeconds(10))
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.SECONDS)
+                        .build())
+                .build();
+    }
 }
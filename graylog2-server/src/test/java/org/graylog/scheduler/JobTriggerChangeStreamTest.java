@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.scheduler;
+
+import org.bson.Document;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.graylog.scheduler.JobTriggerChangeStream.dueTime;
+import static org.joda.time.DateTimeZone.UTC;
+
+class JobTriggerChangeStreamTest {
+    private static final DateTime NOW = new DateTime(2022, 6, 13, 15, 0, UTC);
+
+    private static Document trigger(String status) {
+        return new Document("status", status)
+                .append("next_time", NOW.toDate())
+                .append("start_time", NOW.minusHours(1).toDate())
+                .append("lock", new Document("owner", null).append("last_lock_time", null));
+    }
+
+    @Test
+    void runnableTriggerIsDueAtNextTime() {
+        assertThat(dueTime(trigger("runnable"))).contains(NOW);
+    }
+
+    @Test
+    void runnableTriggerIsNotDueBeforeStartTime() {
+        final Document trigger = trigger("runnable").append("start_time", NOW.plusMinutes(5).toDate());
+
+        assertThat(dueTime(trigger)).contains(NOW.plusMinutes(5));
+    }
+
+    @Test
+    void lockedOrNonRunnableTriggersAreNotDue() {
+        final Document locked = trigger("runnable").append("lock", new Document("owner", "node-1"));
+
+        assertThat(dueTime(locked)).isEmpty();
+        assertThat(dueTime(trigger("running"))).isEmpty();
+        assertThat(dueTime(trigger("complete"))).isEmpty();
+        assertThat(dueTime(trigger("paused"))).isEmpty();
+    }
+
+    @Test
+    void deletedTriggerIsNotDue() {
+        assertThat(dueTime(null)).isEmpty();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.scheduler;
+
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.joda.time.DateTimeZone.UTC;
+
+class UpcomingJobTriggersTest {
+    private static final DateTime NOW = new DateTime(2022, 6, 13, 15, 0, UTC);
+
+    @Test
+    void nextReturnsEarliestDueTime() {
+        final UpcomingJobTriggers triggers = new UpcomingJobTriggers();
+        triggers.update("a", Optional.of(NOW.plusMinutes(5)));
+        triggers.update("b", Optional.of(NOW.plusMinutes(1)));
+        triggers.update("c", Optional.of(NOW.plusMinutes(3)));
+
+        assertThat(triggers.next()).contains(NOW.plusMinutes(1));
+        assertThat(triggers.size()).isEqualTo(3);
+    }
+
+    @Test
+    void nextIsEmptyWithoutTriggers() {
+        assertThat(new UpcomingJobTriggers().next()).isEmpty();
+    }
+
+    @Test
+    void nextSkipsChangedAndRemovedTriggers() {
+        final UpcomingJobTriggers triggers = new UpcomingJobTriggers();
+        triggers.update("a", Optional.of(NOW.plusMinutes(1)));
+        triggers.update("b", Optional.of(NOW.plusMinutes(2)));
+        triggers.update("c", Optional.of(NOW.plusMinutes(3)));
+
+        // "a" has been locked by a node, "b" has been rescheduled
+        triggers.update("a", Optional.empty());
+        triggers.update("b", Optional.of(NOW.plusMinutes(4)));
+
+        assertThat(triggers.next()).contains(NOW.plusMinutes(3));
+        assertThat(triggers.size()).isEqualTo(2);
+
+        triggers.update("c", Optional.empty());
+
+        assertThat(triggers.next()).contains(NOW.plusMinutes(4));
+
+        // Released again with the original due time
+        triggers.update("a", Optional.of(NOW.plusMinutes(1)));
+
+        assertThat(triggers.next()).contains(NOW.plusMinutes(1));
+    }
+
+    @Test
+    void replaceAllDropsPreviousTriggers() {
+        final UpcomingJobTriggers triggers = new UpcomingJobTriggers();
+        triggers.update("a", Optional.of(NOW.plusMinutes(1)));
+
+        triggers.replaceAll(ImmutableMap.of("b", NOW.plusMinutes(2), "c", NOW.plusMinutes(3)));
+
+        assertThat(triggers.next()).contains(NOW.plusMinutes(2));
+        assertThat(triggers.size()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.scheduler.worker;
+
+import com.github.joschi.jadconfig.ParameterException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JobWorkerLaneTest {
+    private final JobWorkerLane.Converter converter = new JobWorkerLane.Converter();
+
+    @Test
+    void convertFrom() {
+        final List<JobWorkerLane> lanes = converter.convertFrom(
+                "notifications:2:notification-execution-v1; cleanup : 1 : type-a, type-b;");
+
+        assertThat(lanes).containsExactly(
+                JobWorkerLane.create("notifications", 2, ImmutableSet.of("notification-execution-v1")),
+                JobWorkerLane.create("cleanup", 1, ImmutableSet.of("type-a", "type-b")));
+        assertThat(converter.convertFrom("")).isEmpty();
+    }
+
+    @Test
+    void convertTo() {
+        final List<JobWorkerLane> lanes = ImmutableList.of(
+                JobWorkerLane.create("notifications", 2, ImmutableSet.of("notification-execution-v1")),
+                JobWorkerLane.create("cleanup", 1, ImmutableSet.of("type-a", "type-b")));
+
+        assertThat(converter.convertTo(lanes)).isEqualTo("notifications:2:notification-execution-v1;cleanup:1:type-a,type-b");
+        assertThat(converter.convertFrom(converter.convertTo(lanes))).isEqualTo(lanes);
+    }
+
+    @Test
+    void convertFromRejectsInvalidLanes() {
+        assertThatThrownBy(() -> converter.convertFrom("notifications:2")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("notifications:two:type-a")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("notifications:0:type-a")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("notifications:1:")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("notifi_cations:1:type-a")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("system:1:type-a")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("a:1:type-a;a:1:type-b")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("a:1:type-a;b:1:type-a")).isInstanceOf(ParameterException.class);
+    }
+}
@@ -88,6 +88,44 @@ public class JobWorkerPoolTest {
         verify(shutdownCallback, times(1)).run();
     }
 
+    @Test
+    public void testMetricsPerPool() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final JobWorkerPool pool = new JobWorkerPool("test", 2, shutdownCallback, new GracefulShutdownService(), metricRegistry);
+        // Pools of different worker lanes share the metric registry
+        new JobWorkerPool("lane", 1, shutdownCallback, new GracefulShutdownService(), metricRegistry);
+
+        final CountDownLatch taskLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(1);
+        assertThat(pool.execute(() -> {
+            Uninterruptibles.awaitUninterruptibly(taskLatch, 60, TimeUnit.SECONDS);
+            doneLatch.countDown();
+        }, 500)).isTrue();
+
+        assertThat(metricRegistry.getGauges().get(MetricRegistry.name(JobWorkerPool.class, "test", "utilization")).getValue()).isEqualTo(0.5);
+        assertThat(metricRegistry.getGauges().get(MetricRegistry.name(JobWorkerPool.class, "lane", "free_slots")).getValue()).isEqualTo(1);
+        assertThat(metricRegistry.timer(MetricRegistry.name(JobWorkerPool.class, "test", "queue_delay")).getSnapshot().getMax())
+                .isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+
+        taskLatch.countDown();
+        assertThat(doneLatch.await(60, TimeUnit.SECONDS)).isTrue();
+        pool.doGracefulShutdown();
+
+        assertThat(metricRegistry.timer(MetricRegistry.name(JobWorkerPool.class, "test", "execution_time")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDefaultPoolKeepsMetricNames() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        new JobWorkerPool(JobWorkerLane.DEFAULT_LANE, 2, shutdownCallback, new GracefulShutdownService(), metricRegistry);
+
+        assertThat(metricRegistry.getGauges()).containsKeys(
+                MetricRegistry.name(JobWorkerPool.class, "waiting_for_slots"),
+                MetricRegistry.name(JobWorkerPool.class, "free_slots"),
+                MetricRegistry.name(JobWorkerPool.class, "total_slots"));
+        assertThat(metricRegistry.getGauges().get(MetricRegistry.name(JobWorkerPool.class, "free_slots")).getValue()).isEqualTo(2);
+    }
+
     @Test
     public void testPoolNames() {
         assertName("a").doesNotThrowAnyException();
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.filters;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.inputs.extractors.CopyInputExtractor;
+import org.graylog2.inputs.extractors.SubstringExtractor;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.inputs.Extractor;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompiledExtractorChainTest {
+    private MetricRegistry metricRegistry;
+    private List<Extractor> failed;
+
+    @BeforeEach
+    void setUp() {
+        metricRegistry = new MetricRegistry();
+        failed = new ArrayList<>();
+    }
+
+    @Test
+    void extractorsSeeModificationsOfPreviousExtractors() throws Exception {
+        final Extractor cut = new SubstringExtractor(metricRegistry, "1", "cut", 1, Extractor.CursorStrategy.CUT,
+                "message", "first", ImmutableMap.of("begin_index", 0, "end_index", 4), "admin",
+                Collections.emptyList(), Extractor.ConditionType.NONE, null);
+        final Extractor copy = copyExtractor("2", "message", "copy", Extractor.ConditionType.NONE, null);
+
+        final Message message = message("foo bar");
+        CompiledExtractorChain.compile(ImmutableList.of(cut, copy)).run(message, (extractor, e) -> failed.add(extractor));
+
+        assertThat(message.getField("first")).isEqualTo("foo ");
+        assertThat(message.getField("copy")).isEqualTo("bar");
+        assertThat(failed).isEmpty();
+    }
+
+    @Test
+    void conditionsAreEvaluatedAndReported() throws Exception {
+        final Extractor regexHit = copyExtractor("1", "message", "regex_hit", Extractor.ConditionType.REGEX, "^foo");
+        final Extractor regexMiss = copyExtractor("2", "message", "regex_miss", Extractor.ConditionType.REGEX, "^bar");
+        final Extractor sameRegex = copyExtractor("3", "message", "same_regex", Extractor.ConditionType.REGEX, "^foo");
+        final Extractor stringMiss = copyExtractor("4", "message", "string_miss", Extractor.ConditionType.STRING, "baz");
+        final Extractor otherField = copyExtractor("5", "source", "other_field", Extractor.ConditionType.NONE, null);
+        final Extractor missingField = copyExtractor("6", "missing", "missing_field", Extractor.ConditionType.NONE, null);
+
+        final Message message = message("foo bar");
+        CompiledExtractorChain.compile(ImmutableList.of(regexHit, regexMiss, sameRegex, stringMiss, otherField, missingField))
+                .run(message, (extractor, e) -> failed.add(extractor));
+
+        assertThat(message.getField("regex_hit")).isEqualTo("foo bar");
+        assertThat(message.hasField("regex_miss")).isFalse();
+        assertThat(message.getField("same_regex")).isEqualTo("foo bar");
+        assertThat(message.hasField("string_miss")).isFalse();
+        assertThat(message.getField("other_field")).isEqualTo("source");
+        assertThat(message.hasField("missing_field")).isFalse();
+
+        assertThat(metricRegistry.counter(regexHit.getConditionHitsCounterName()).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.counter(regexMiss.getConditionMissesCounterName()).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.counter(sameRegex.getConditionHitsCounterName()).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.counter(stringMiss.getConditionMissesCounterName()).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.counter(missingField.getConditionMissesCounterName()).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer(regexHit.getCompleteTimerName()).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer(regexMiss.getCompleteTimerName()).getCount()).isEqualTo(0);
+    }
+
+    private Extractor copyExtractor(String id, String sourceField, String targetField,
+                                    Extractor.ConditionType conditionType, String conditionValue) throws Exception {
+        return new CopyInputExtractor(metricRegistry, id, id, Long.parseLong(id), Extractor.CursorStrategy.COPY,
+                sourceField, targetField, Collections.emptyMap(), "admin", Collections.emptyList(),
+                conditionType, conditionValue);
+    }
+
+    private static Message message(String text) {
+        return new Message(text, "source", new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC));
+    }
+}
@@ -35,6 +35,7 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -84,7 +85,9 @@ class ExtractorFilterTest {
     private Extractor buildExceptionalExtractor() {
         final Extractor extractor = mock(Extractor.class);
         lenient().when(extractor.getOrder()).thenReturn(1L);
-        lenient().doThrow(new RuntimeException("EIEIO!")).when(extractor).runExtractor(any());
+        lenient().when(extractor.getSourceField()).thenReturn("message");
+        lenient().when(extractor.getConditionType()).thenReturn(Extractor.ConditionType.NONE);
+        lenient().doThrow(new RuntimeException("EIEIO!")).when(extractor).runExtractor(any(), anyString());
         return extractor;
     }
 }
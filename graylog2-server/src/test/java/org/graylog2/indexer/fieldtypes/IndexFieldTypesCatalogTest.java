@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.fieldtypes;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexFieldTypesCatalogTest {
+    private IndexFieldTypesDTO dto(String indexName, String indexSetId, String... fieldNames) {
+        final ImmutableSet.Builder<FieldTypeDTO> fields = ImmutableSet.builder();
+        for (String fieldName : fieldNames) {
+            fields.add(FieldTypeDTO.create(fieldName, "keyword"));
+        }
+        return IndexFieldTypesDTO.builder()
+                .indexName(indexName)
+                .indexSetId(indexSetId)
+                .fields(fields.build())
+                .build();
+    }
+
+    @Test
+    void looksUpByIndexSetAndFieldName() {
+        final IndexFieldTypesDTO graylog0 = dto("graylog_0", "abc", "message", "source");
+        final IndexFieldTypesDTO graylog1 = dto("graylog_1", "xyz", "message");
+        final IndexFieldTypesDTO graylog2 = dto("graylog_2", "xyz", "message", "action");
+        final IndexFieldTypesCatalog catalog = IndexFieldTypesCatalog.of(1L, List.of(graylog0, graylog1, graylog2));
+
+        assertThat(catalog.all()).containsExactly(graylog0, graylog1, graylog2);
+        assertThat(catalog.forIndexSets(Set.of("xyz"))).containsExactly(graylog1, graylog2);
+        assertThat(catalog.forIndexSets(List.of("abc", "xyz"))).containsExactly(graylog0, graylog1, graylog2);
+        assertThat(catalog.forIndexSets(Set.of("unknown"))).isEmpty();
+        assertThat(catalog.forFieldNames(List.of("message", "source"))).containsExactly(graylog0, graylog1, graylog2);
+        assertThat(catalog.forFieldNames(List.of("action"))).containsExactly(graylog2);
+        assertThat(catalog.forFieldNamesAndIndices(List.of("source", "action"), List.of("graylog_1", "graylog_2", "graylog_0")))
+                .containsExactly(graylog2, graylog0);
+    }
+
+    @Test
+    void updateReplacesAndRemovesEntriesOfGivenIndices() {
+        final IndexFieldTypesDTO graylog0 = dto("graylog_0", "abc", "message");
+        final IndexFieldTypesDTO graylog1 = dto("graylog_1", "abc", "message");
+        final IndexFieldTypesCatalog catalog = IndexFieldTypesCatalog.of(1L, List.of(graylog0, graylog1));
+
+        final IndexFieldTypesDTO newGraylog0 = dto("graylog_0", "abc", "message", "action");
+        final IndexFieldTypesCatalog updated = catalog.update(Set.of("graylog_0", "graylog_1"), List.of(newGraylog0));
+
+        assertThat(updated.version()).isEqualTo(2L);
+        assertThat(updated.all()).containsExactly(newGraylog0);
+        assertThat(updated.forFieldNames(List.of("action"))).containsExactly(newGraylog0);
+        assertThat(catalog.all()).containsExactly(graylog0, graylog1);
+    }
+
+    @Test
+    void updateWithoutChangesReturnsSameCatalog() {
+        final IndexFieldTypesDTO graylog0 = dto("graylog_0", "abc", "message");
+        final IndexFieldTypesCatalog catalog = IndexFieldTypesCatalog.of(1L, List.of(graylog0));
+
+        assertThat(catalog.update(Set.of("graylog_0"), List.of(dto("graylog_0", "abc", "message")))).isSameAs(catalog);
+        assertThat(catalog.update(Set.of("graylog_1"), List.of())).isSameAs(catalog);
+    }
+}
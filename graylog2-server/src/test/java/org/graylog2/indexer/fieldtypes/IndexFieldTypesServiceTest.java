@@ -18,8 +18,11 @@ package org.graylog2.indexer.fieldtypes;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
 import org.graylog.testing.mongodb.MongoDBInstance;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
+import org.graylog2.events.ClusterEventBus;
+import org.graylog2.indexer.fieldtypes.events.IndexFieldTypesUpdatedEvent;
 import org.graylog2.streams.StreamService;
 import org.junit.After;
 import org.junit.Before;
@@ -38,12 +41,14 @@ public class IndexFieldTypesServiceTest {
     public final MongoDBInstance mongodb = MongoDBInstance.createForClass();
 
     private IndexFieldTypesService dbService;
+    private IndexFieldTypesService otherNodeDbService;
 
     @Before
     public void setUp() throws Exception {
         final MongoJackObjectMapperProvider objectMapperProvider = new MongoJackObjectMapperProvider(new ObjectMapper());
         final StreamService streamService = mock(StreamService.class);
-        this.dbService = new IndexFieldTypesService(mongodb.mongoConnection(), streamService, objectMapperProvider);
+        this.dbService = new IndexFieldTypesService(mongodb.mongoConnection(), streamService, objectMapperProvider, new EventBus(), new ClusterEventBus());
+        this.otherNodeDbService = new IndexFieldTypesService(mongodb.mongoConnection(), streamService, objectMapperProvider, new EventBus(), new ClusterEventBus());
     }
 
     @After
@@ -194,4 +199,26 @@ public class IndexFieldTypesServiceTest {
                 of("graylog_1", "graylog_3", "graylog_0")
         ).size()).isEqualTo(3);
     }
+
+    @Test
+    public void picksUpChangesOfOtherNodes() {
+        dbService.save(createDto("graylog_0", "abc", Collections.emptySet()));
+        assertThat(otherNodeDbService.findForIndexSet("abc")).hasSize(1);
+
+        dbService.save(createDto("graylog_1", "abc", Collections.emptySet()));
+        assertThat(otherNodeDbService.findForIndexSet("abc"))
+                .as("changes are only visible after the update event has been received")
+                .hasSize(1);
+
+        otherNodeDbService.handleIndexFieldTypesUpdated(IndexFieldTypesUpdatedEvent.create("graylog_1"));
+        assertThat(otherNodeDbService.findForIndexSet("abc"))
+                .extracting(IndexFieldTypesDTO::indexName)
+                .containsExactly("graylog_0", "graylog_1");
+
+        dbService.delete("graylog_0");
+        otherNodeDbService.handleIndexFieldTypesUpdated(IndexFieldTypesUpdatedEvent.create("graylog_0"));
+        assertThat(otherNodeDbService.findForIndexSet("abc"))
+                .extracting(IndexFieldTypesDTO::indexName)
+                .containsExactly("graylog_1");
+    }
 }
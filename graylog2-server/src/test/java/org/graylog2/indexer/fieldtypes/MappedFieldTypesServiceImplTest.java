@@ -193,6 +193,59 @@ public class MappedFieldTypesServiceImplTest {
         assertThat(timeRangeCaptor.getValue()).isEqualTo(AbsoluteRange.create("2010-05-17T23:28:14.000+02:00", "2021-05-05T12:09:23.213+02:00"));
     }
 
+    @Test
+    public void reusesMergedFieldTypesUntilCatalogChanges() {
+        final List<IndexFieldTypesDTO> fieldTypes = ImmutableList.of(
+                createIndexTypes(
+                        "deadbeef",
+                        "testIndex",
+                        FieldTypeDTO.builder().fieldName("field1").physicalType("long").streams(Set.of("stream1")).build()
+                ),
+                createIndexTypes(
+                        "affeaffe",
+                        "testIndex2",
+                        FieldTypeDTO.builder().fieldName("field1").physicalType("text").streams(Set.of("stream1")).build()
+                )
+        );
+        when(indexFieldTypesService.catalogVersion()).thenReturn(1L);
+        when(indexFieldTypesService.findForIndexSets(Collections.singleton("indexSetId"))).thenReturn(fieldTypes);
+        when(indexLookup.indexNamesForStreamsInTimeRange(Collections.singleton("stream1"), RelativeRange.allTime())).thenReturn(ImmutableSet.of("testIndex", "testIndex2"));
+
+        final Set<MappedFieldTypeDTO> first = this.mappedFieldTypesService.fieldTypesByStreamIds(Collections.singleton("stream1"), RelativeRange.allTime());
+        final Set<MappedFieldTypeDTO> second = this.mappedFieldTypesService.fieldTypesByStreamIds(Collections.singleton("stream1"), RelativeRange.allTime());
+
+        assertThat(second).isEqualTo(first);
+        verify(indexFieldTypesService, times(1)).findForIndexSets(Collections.singleton("indexSetId"));
+
+        when(indexFieldTypesService.catalogVersion()).thenReturn(2L);
+        when(indexFieldTypesService.findForIndexSets(Collections.singleton("indexSetId"))).thenReturn(fieldTypes.subList(0, 1));
+
+        final Set<MappedFieldTypeDTO> afterChange = this.mappedFieldTypesService.fieldTypesByStreamIds(Collections.singleton("stream1"), RelativeRange.allTime());
+
+        assertThat(afterChange).containsExactly(
+                MappedFieldTypeDTO.create("field1", FieldTypes.Type.createType("long", ImmutableSet.of("numeric", "enumerable")))
+        );
+        verify(indexFieldTypesService, times(2)).findForIndexSets(Collections.singleton("indexSetId"));
+    }
+
+    @Test
+    public void doesNotReuseMergedFieldTypesForOtherIndices() {
+        when(indexFieldTypesService.findForIndexSets(Collections.singleton("indexSetId"))).thenReturn(ImmutableList.of(
+                createIndexTypes("deadbeef", "testIndex", FieldTypeDTO.builder().fieldName("field1").physicalType("long").streams(Set.of("stream1")).build()),
+                createIndexTypes("affeaffe", "testIndex2", FieldTypeDTO.builder().fieldName("field2").physicalType("long").streams(Set.of("stream1")).build())
+        ));
+        final AbsoluteRange lastYear = AbsoluteRange.create("2020-01-01T00:00:00.000Z", "2020-12-31T23:59:59.999Z");
+        when(indexLookup.indexNamesForStreamsInTimeRange(Collections.singleton("stream1"), RelativeRange.allTime())).thenReturn(ImmutableSet.of("testIndex", "testIndex2"));
+        when(indexLookup.indexNamesForStreamsInTimeRange(Collections.singleton("stream1"), lastYear)).thenReturn(ImmutableSet.of("testIndex"));
+
+        assertThat(this.mappedFieldTypesService.fieldTypesByStreamIds(Collections.singleton("stream1"), RelativeRange.allTime()))
+                .extracting(MappedFieldTypeDTO::name)
+                .containsExactlyInAnyOrder("field1", "field2");
+        assertThat(this.mappedFieldTypesService.fieldTypesByStreamIds(Collections.singleton("stream1"), lastYear))
+                .extracting(MappedFieldTypeDTO::name)
+                .containsExactly("field1");
+    }
+
     private IndexFieldTypesDTO createIndexTypes(String indexId, String indexName, FieldTypeDTO... fieldTypes) {
         return IndexFieldTypesDTO.create(indexId, indexName, java.util.stream.Stream.of(fieldTypes).collect(Collectors.toSet()));
     }
@@ -18,8 +18,10 @@ package org.graylog2.indexer.fieldtypes;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
 import org.graylog.testing.mongodb.MongoDBInstance;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.streams.StreamService;
 import org.junit.After;
 import org.junit.Before;
@@ -45,7 +47,7 @@ public class MongoFieldTypeLookupTest {
     public void setUp() throws Exception {
         final MongoJackObjectMapperProvider objectMapperProvider = new MongoJackObjectMapperProvider(new ObjectMapper());
         final StreamService streamService = mock(StreamService.class);
-        this.dbService = new IndexFieldTypesService(mongodb.mongoConnection(), streamService, objectMapperProvider);
+        this.dbService = new IndexFieldTypesService(mongodb.mongoConnection(), streamService, objectMapperProvider, new EventBus(), new ClusterEventBus());
         this.lookup = new MongoFieldTypeLookup(dbService, new FieldTypeMapper());
     }
 
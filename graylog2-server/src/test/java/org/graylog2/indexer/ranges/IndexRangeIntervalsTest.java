@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableSortedSet;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexRangeIntervalsTest {
+    private static final DateTime NOW = new DateTime(2015, 1, 10, 0, 0, DateTimeZone.UTC);
+
+    @Test
+    void findsOverlappingRangesInclusively() {
+        final IndexRangeIntervals intervals = IndexRangeIntervals.of(List.of(
+                range("graylog_1", 1, 2),
+                range("graylog_2", 2, 3),
+                range("graylog_3", 3, 4),
+                range("graylog_4", 4, 5)));
+
+        assertThat(overlapping(intervals, 2, 3)).containsExactly("graylog_1", "graylog_2", "graylog_3");
+        assertThat(overlapping(intervals, 5, 6)).containsExactly("graylog_4");
+        assertThat(overlapping(intervals, 6, 7)).isEmpty();
+    }
+
+    @Test
+    void findsLongRangesStartingBeforeShortOnes() {
+        final IndexRangeIntervals intervals = IndexRangeIntervals.of(List.of(
+                range("long", 1, 9),
+                range("short_1", 2, 3),
+                range("short_2", 4, 5)));
+
+        assertThat(overlapping(intervals, 7, 8)).containsExactly("long");
+        assertThat(overlapping(intervals, 4, 4)).containsExactly("short_2", "long");
+    }
+
+    @Test
+    void emptyIntervalsFindNothing() {
+        assertThat(overlapping(IndexRangeIntervals.EMPTY, 0, 10)).isEmpty();
+    }
+
+    private static List<String> overlapping(IndexRangeIntervals intervals, int beginDay, int endDay) {
+        final ImmutableSortedSet.Builder<IndexRange> result = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
+        intervals.addOverlapping(day(beginDay).getMillis(), day(endDay).getMillis(), result);
+        return result.build().stream().map(IndexRange::indexName).toList();
+    }
+
+    private static IndexRange range(String index, int beginDay, int endDay) {
+        return MongoIndexRange.create(index, day(beginDay), day(endDay), NOW, 0);
+    }
+
+    private static DateTime day(int day) {
+        return new DateTime(2015, 1, day, 0, 0, DateTimeZone.UTC);
+    }
+}
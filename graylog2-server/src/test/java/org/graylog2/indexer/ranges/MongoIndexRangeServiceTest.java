@@ -18,6 +18,7 @@ package org.graylog2.indexer.ranges;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import org.assertj.jodatime.api.Assertions;
 import org.bson.types.ObjectId;
 import org.graylog.testing.mongodb.MongoDBFixtures;
@@ -25,6 +26,7 @@ import org.graylog.testing.mongodb.MongoDBInstance;
 import org.graylog2.audit.NullAuditEventSender;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.indexer.ElasticsearchException;
 import org.graylog2.indexer.IndexSetRegistry;
 import org.graylog2.indexer.indices.HealthStatus;
@@ -32,6 +34,7 @@ import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.indices.events.IndicesClosedEvent;
 import org.graylog2.indexer.indices.events.IndicesDeletedEvent;
 import org.graylog2.indexer.indices.events.IndicesReopenedEvent;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
 import org.graylog2.indexer.searches.IndexRangeStats;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.system.SimpleNodeId;
@@ -45,7 +48,9 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 
@@ -73,7 +78,7 @@ public class MongoIndexRangeServiceTest {
     @Before
     public void setUp() throws Exception {
         localEventBus = new EventBus("local-event-bus");
-        indexRangeService = new MongoIndexRangeService(mongodb.mongoConnection(), objectMapperProvider, indices, indexSetRegistry, new NullAuditEventSender(), new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000000"), localEventBus);
+        indexRangeService = new MongoIndexRangeService(mongodb.mongoConnection(), objectMapperProvider, indices, indexSetRegistry, new NullAuditEventSender(), new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000000"), localEventBus, new ClusterEventBus());
     }
 
     @Test
@@ -243,6 +248,26 @@ public class MongoIndexRangeServiceTest {
         assertThat(after.calculationDuration()).isEqualTo(2);
     }
 
+    @Test
+    @MongoDBFixtures("MongoIndexRangeServiceTest.json")
+    public void savePostsSingleIndexRangesUpdatedEvent() throws Exception {
+        final List<IndexRangesUpdatedEvent> events = new ArrayList<>();
+        final ClusterEventBus clusterEventBus = new ClusterEventBus();
+        clusterEventBus.registerClusterEventSubscriber(new Object() {
+            @Subscribe
+            public void handle(IndexRangesUpdatedEvent event) {
+                events.add(event);
+            }
+        });
+        final MongoIndexRangeService service = new MongoIndexRangeService(mongodb.mongoConnection(), objectMapperProvider, indices, indexSetRegistry, new NullAuditEventSender(), new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000000"), new EventBus(), clusterEventBus);
+        final DateTime begin = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+
+        // graylog_1 already has a range which gets replaced
+        service.save(MongoIndexRange.create("graylog_1", begin, begin.plusDays(2), begin.plusDays(2), 42));
+
+        assertThat(events).containsExactly(IndexRangesUpdatedEvent.create("graylog_1"));
+    }
+
     @Test
     @MongoDBFixtures("MongoIndexRangeServiceTest.json")
     public void remove() throws Exception {
@@ -309,4 +334,35 @@ public class MongoIndexRangeServiceTest {
         final SortedSet<IndexRange> indexRanges = indexRangeService.find(begin, end);
         assertThat(indexRanges).isEmpty();
     }
+
+    @Test
+    @MongoDBFixtures("MongoIndexRangeServiceTest.json")
+    public void findReflectsRemovedIndexRanges() throws Exception {
+        final DateTime begin = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2015, 1, 3, 0, 0, DateTimeZone.UTC);
+        assertThat(indexRangeService.find(begin, end)).extracting(IndexRange::indexName)
+                .containsExactly("graylog_1", "graylog_2");
+
+        indexRangeService.remove("graylog_1");
+
+        assertThat(indexRangeService.find(begin, end)).extracting(IndexRange::indexName)
+                .containsExactly("graylog_2");
+    }
+
+    @Test
+    @MongoDBFixtures("MongoIndexRangeServiceTest.json")
+    public void findReflectsIndexRangesUpdatedByOtherNodes() throws Exception {
+        final MongoIndexRangeService otherNode = new MongoIndexRangeService(mongodb.mongoConnection(), objectMapperProvider, indices, indexSetRegistry, new NullAuditEventSender(), new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000001"), new EventBus(), new ClusterEventBus());
+        final DateTime begin = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2016, 1, 15, 0, 0, DateTimeZone.UTC);
+        assertThat(indexRangeService.find(begin, end)).isEmpty();
+
+        otherNode.save(MongoIndexRange.create("graylog_3", begin, end, end, 42));
+        assertThat(indexRangeService.find(begin, end)).isEmpty();
+
+        localEventBus.post(IndexRangesUpdatedEvent.create("graylog_3"));
+
+        assertThat(indexRangeService.find(begin, end)).extracting(IndexRange::indexName)
+                .containsExactly("graylog_3");
+    }
 }
@@ -34,7 +34,6 @@ import org.junit.Test;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -259,44 +258,106 @@ public class GelfChunkAggregatorTest {
     }
 
     @Test
-    public void testChunkEntryCompareTo() throws Exception {
-        // Test if the ChunkEntry#compareTo() method can handle ChunkEntry objects which have the same timestamp.
-        // See: https://github.com/Graylog2/graylog2-server/issues/1462
+    public void evictionKeepsRecentChunks() {
+        final DateTime initialTime = new DateTime(2014, 1, 1, 1, 59, 59, 0, DateTimeZone.UTC);
+        final InstantMillisProvider clock = new InstantMillisProvider(initialTime);
+        DateTimeUtils.setCurrentMillisProvider(clock);
+
+        poolExecutor = mock(ScheduledThreadPoolExecutor.class);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        aggregator = new GelfChunkAggregator(poolExecutor, metricRegistry);
+        final GelfChunkAggregator.ChunkEvictionTask evictionTask = aggregator.new ChunkEvictionTask();
+
+        final ByteBuf[] chunks = createChunkedMessage(4096 + 512, 1024); // creates 5 chunks
+        assertNull(aggregator.addChunk(chunks[0]).getMessage());
+
+        // still within the validity period
+        clock.tick(Period.seconds(4));
+        evictionTask.run();
+
+        assertEquals(1, counterValueNamed(metricRegistry, WAITING_MESSAGES));
+        assertEquals(0, counterValueNamed(metricRegistry, EXPIRED_MESSAGES));
+
+        for (int i = 1; i < chunks.length; i++) {
+            final CodecAggregator.Result result = aggregator.addChunk(chunks[i]);
+            if (i == chunks.length - 1) {
+                assertNotNull("message should be complete", result.getMessage());
+            }
+        }
+        assertEquals(1, counterValueNamed(metricRegistry, COMPLETE_MESSAGES));
+        assertEquals(0, counterValueNamed(metricRegistry, WAITING_MESSAGES));
+    }
+
+    @Test
+    public void chunksAreReleasedAfterExpiry() {
+        final DateTime initialTime = new DateTime(2014, 1, 1, 1, 59, 59, 0, DateTimeZone.UTC);
+        final InstantMillisProvider clock = new InstantMillisProvider(initialTime);
+        DateTimeUtils.setCurrentMillisProvider(clock);
+
+        poolExecutor = mock(ScheduledThreadPoolExecutor.class);
+        aggregator = new GelfChunkAggregator(poolExecutor, new MetricRegistry());
+        final GelfChunkAggregator.ChunkEvictionTask evictionTask = aggregator.new ChunkEvictionTask();
+
+        final ByteBuf[] chunks = createChunkedMessage(4096 + 512, 1024); // creates 5 chunks
+        aggregator.addChunk(chunks[1]);
+        assertEquals("chunk is retained while waiting", 2, chunks[1].refCnt());
 
-        final ConcurrentSkipListSet<GelfChunkAggregator.ChunkEntry> sortedEvictionSet = new ConcurrentSkipListSet<>();
-        final long currentTime = System.currentTimeMillis();
+        clock.tick(Period.seconds(10));
+        evictionTask.run();
+
+        assertEquals("chunk is released after expiry", 1, chunks[1].refCnt());
+    }
 
-        for (int i = 0; i < 10; i++) {
-            sortedEvictionSet.add(new GelfChunkAggregator.ChunkEntry(1, currentTime, "a" + i));
+    @Test
+    public void completeMessageIsComposedOfChunks() {
+        final ByteBuf[] chunks = createChunkedMessage(2048 + 512, 1024); // creates 3 chunks
+        ByteBuf message = null;
+        for (final ByteBuf chunk : chunks) {
+            message = aggregator.addChunk(chunk).getMessage();
         }
 
-        final int size = sortedEvictionSet.size();
+        assertNotNull(message);
+        assertEquals(2048 + 512, message.readableBytes());
 
-        for (int i = 0; i < size; i++) {
-            sortedEvictionSet.remove(sortedEvictionSet.first());
+        message.release();
+        for (final ByteBuf chunk : chunks) {
+            assertEquals("chunk is released together with the message", 1, chunk.refCnt());
         }
+    }
 
-        assertTrue("eviction set should be empty", sortedEvictionSet.isEmpty());
+    @Test
+    public void chunksOfLargeBuffersAreCopied() {
+        final ByteBuf[] chunks = createChunkedMessage(2048 + 512, 1024); // creates 3 chunks
+        final ByteBuf receiveBuffer = Unpooled.buffer(65536).writeBytes(chunks[0]);
+        aggregator.addChunk(receiveBuffer);
+        assertEquals("buffer is not retained while waiting", 1, receiveBuffer.refCnt());
+
+        aggregator.addChunk(chunks[1]);
+        final ByteBuf message = aggregator.addChunk(chunks[2]).getMessage();
+
+        assertNotNull(message);
+        assertEquals(2048 + 512, message.readableBytes());
+        message.release();
     }
 
     @Test
     public void testChunkEntryEquals() throws Exception {
-        final GelfChunkAggregator.ChunkEntry entry = new ChunkEntry(1, 0L, "id");
+        final GelfChunkAggregator.ChunkEntry entry = new ChunkEntry(1, 0L, 1L);
 
-        assertThat(entry).isEqualTo(new ChunkEntry(1, 0L, "id"));
-        assertThat(entry).isEqualTo(new ChunkEntry(2, 0L, "id"));
-        assertThat(entry).isNotEqualTo(new ChunkEntry(1, 1L, "id"));
-        assertThat(entry).isNotEqualTo(new ChunkEntry(1, 0L, "foo"));
+        assertThat(entry).isEqualTo(new ChunkEntry(1, 0L, 1L));
+        assertThat(entry).isEqualTo(new ChunkEntry(2, 0L, 1L));
+        assertThat(entry).isNotEqualTo(new ChunkEntry(1, 1L, 1L));
+        assertThat(entry).isNotEqualTo(new ChunkEntry(1, 0L, 2L));
     }
 
     @Test
     public void testChunkEntryHashCode() throws Exception {
-        final GelfChunkAggregator.ChunkEntry entry = new ChunkEntry(1, 0L, "id");
+        final GelfChunkAggregator.ChunkEntry entry = new ChunkEntry(1, 0L, 1L);
 
-        assertThat(entry.hashCode()).isEqualTo(new ChunkEntry(1, 0L, "id").hashCode());
-        assertThat(entry.hashCode()).isEqualTo(new ChunkEntry(2, 0L, "id").hashCode());
-        assertThat(entry.hashCode()).isNotEqualTo(new ChunkEntry(1, 1L, "id").hashCode());
-        assertThat(entry.hashCode()).isNotEqualTo(new ChunkEntry(1, 0L, "foo").hashCode());
+        assertThat(entry.hashCode()).isEqualTo(new ChunkEntry(1, 0L, 1L).hashCode());
+        assertThat(entry.hashCode()).isEqualTo(new ChunkEntry(2, 0L, 1L).hashCode());
+        assertThat(entry.hashCode()).isNotEqualTo(new ChunkEntry(1, 1L, 1L).hashCode());
+        assertThat(entry.hashCode()).isNotEqualTo(new ChunkEntry(1, 0L, 2L).hashCode());
     }
 
     private ByteBuf[] createChunkedMessage(int messageSize, int maxChunkSize) {
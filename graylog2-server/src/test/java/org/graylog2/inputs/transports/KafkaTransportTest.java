@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.buffers.JournallingMessageHandler;
+import org.graylog2.shared.buffers.RawMessageEncoderHandler;
+import org.graylog2.shared.buffers.RawMessageEvent;
+import org.graylog2.shared.messageq.MessageQueueWriter;
+import org.graylog2.system.processing.ProcessingStatusRecorder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+class KafkaTransportTest {
+    private static final TopicPartition PARTITION = new TopicPartition("logs", 0);
+
+    private KafkaTransport.AcknowledgedOffsets acknowledgedOffsets;
+    private RawMessageEncoderHandler encoderHandler;
+    private JournallingMessageHandler journallingHandler;
+
+    @BeforeEach
+    void setUp() {
+        acknowledgedOffsets = new KafkaTransport.AcknowledgedOffsets();
+        encoderHandler = new RawMessageEncoderHandler(new MetricRegistry());
+        journallingHandler = new JournallingMessageHandler(new MetricRegistry(), mock(MessageQueueWriter.class), mock(ProcessingStatusRecorder.class));
+    }
+
+    @Test
+    void commitsOffsetAfterAllRecordsWereJournalled() throws Exception {
+        final RawMessageEvent first = event(rawMessage(10));
+        final RawMessageEvent second = event(rawMessage(11));
+
+        journallingHandler.onEvent(first, 0, false);
+        journallingHandler.onEvent(second, 1, true);
+
+        assertThat(acknowledgedOffsets.poll()).isEqualTo(Collections.singletonMap(PARTITION, new OffsetAndMetadata(12)));
+        assertThat(acknowledgedOffsets.pollFailed()).isEmpty();
+    }
+
+    @Test
+    void doesNotCommitOffsetOfRecordWhichFailedToEncode() throws Exception {
+        final RawMessageEvent first = event(rawMessage(10));
+
+        final RawMessage failing = spy(rawMessage(11));
+        doThrow(new IllegalStateException("boom")).when(failing).encode();
+        final RawMessageEvent second = new RawMessageEvent();
+        second.setRawMessage(failing);
+        // the input buffer's exception handler only logs the failure and the event moves on to the journal writer
+        assertThatThrownBy(() -> encoderHandler.onEvent(second)).isInstanceOf(IllegalStateException.class);
+        final RawMessageEvent third = event(rawMessage(12));
+
+        journallingHandler.onEvent(first, 0, false);
+        journallingHandler.onEvent(second, 1, false);
+        journallingHandler.onEvent(third, 2, true);
+
+        assertThat(acknowledgedOffsets.poll()).isEqualTo(Collections.singletonMap(PARTITION, new OffsetAndMetadata(11)));
+        assertThat(acknowledgedOffsets.pollFailed()).isEqualTo(Collections.singletonMap(PARTITION, 11L));
+        // the partition is consumed again from the failed record on
+        assertThat(acknowledgedOffsets.poll()).isEmpty();
+    }
+
+    @Test
+    void waitsForOldestRecordBeforeCommitting() {
+        final RawMessage.JournalAckCallback first = acknowledgedOffsets.track(record(10));
+        final RawMessage.JournalAckCallback second = acknowledgedOffsets.track(record(11));
+
+        second.acknowledge();
+        assertThat(acknowledgedOffsets.poll()).isEmpty();
+
+        first.acknowledge();
+        assertThat(acknowledgedOffsets.poll()).isEqualTo(Collections.singletonMap(PARTITION, new OffsetAndMetadata(12)));
+    }
+
+    @Test
+    void forgetsRevokedPartitions() {
+        acknowledgedOffsets.track(record(10)).fail();
+
+        acknowledgedOffsets.remove(Collections.singleton(PARTITION));
+
+        assertThat(acknowledgedOffsets.pollFailed()).isEmpty();
+    }
+
+    private RawMessage rawMessage(long offset) {
+        final RawMessage rawMessage = new RawMessage("test".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setJournalAckCallback(acknowledgedOffsets.track(record(offset)));
+        return rawMessage;
+    }
+
+    private RawMessageEvent event(RawMessage rawMessage) throws Exception {
+        final RawMessageEvent event = new RawMessageEvent();
+        event.setRawMessage(rawMessage);
+        encoderHandler.onEvent(event);
+        return event;
+    }
+
+    private static ConsumerRecord<byte[], byte[]> record(long offset) {
+        return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, null, "test".getBytes(StandardCharsets.UTF_8));
+    }
+}
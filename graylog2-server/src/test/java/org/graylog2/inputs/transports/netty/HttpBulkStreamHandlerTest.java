@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class HttpBulkStreamHandlerTest {
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new HttpBulkStreamHandler(true, 16));
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void recordsAreEmittedWhileTheBodyIsReceived() {
+        channel.writeInbound(request(HttpMethod.POST, "/gelf"));
+        channel.writeInbound(content("first\nsec"));
+
+        assertThat(readRecord()).isEqualTo("first");
+        assertThat((Object) channel.readInbound()).isNull();
+        assertThat((Object) channel.readOutbound()).isNull();
+
+        channel.writeInbound(content("ond\r\nthi"));
+        assertThat(readRecord()).isEqualTo("second");
+
+        channel.writeInbound(lastContent("rd"));
+        assertThat(readRecord()).isEqualTo("third");
+
+        final HttpResponse response = channel.readOutbound();
+        assertThat(response.status()).isEqualTo(HttpResponseStatus.ACCEPTED);
+        assertThat(response.headers().get(HttpHeaderNames.CONNECTION)).isEqualTo(HttpHeaderValues.KEEP_ALIVE.toString());
+    }
+
+    @Test
+    public void keepAliveRequestsAreHandledInOrder() {
+        channel.writeInbound(request(HttpMethod.POST, "/gelf"), lastContent("one\n\ntwo"));
+        channel.writeInbound(request(HttpMethod.GET, "/gelf"), LastHttpContent.EMPTY_LAST_CONTENT);
+        channel.writeInbound(request(HttpMethod.POST, "/gelf"), lastContent("three\n"));
+
+        assertThat(readRecord()).isEqualTo("one");
+        assertThat(readRecord()).isEqualTo("two");
+        assertThat(readRecord()).isEqualTo("three");
+        assertThat((Object) channel.readInbound()).isNull();
+
+        assertThat(((HttpResponse) channel.readOutbound()).status()).isEqualTo(HttpResponseStatus.ACCEPTED);
+        assertThat(((HttpResponse) channel.readOutbound()).status()).isEqualTo(HttpResponseStatus.METHOD_NOT_ALLOWED);
+        assertThat(((HttpResponse) channel.readOutbound()).status()).isEqualTo(HttpResponseStatus.ACCEPTED);
+    }
+
+    @Test
+    public void wrongPathIsNotForwarded() {
+        channel.writeInbound(request(HttpMethod.POST, "/foo"), lastContent("message\n"));
+
+        assertThat((Object) channel.readInbound()).isNull();
+        assertThat(((HttpResponse) channel.readOutbound()).status()).isEqualTo(HttpResponseStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void continueIsSentForExpectingClients() {
+        final HttpRequest request = request(HttpMethod.POST, "/gelf");
+        request.headers().set(HttpHeaderNames.EXPECT, HttpHeaderValues.CONTINUE);
+        channel.writeInbound(request);
+
+        assertThat(((HttpResponse) channel.readOutbound()).status()).isEqualTo(HttpResponseStatus.CONTINUE);
+    }
+
+    @Test
+    public void tooLongRecordsAreDiscarded() {
+        channel.writeInbound(request(HttpMethod.POST, "/gelf"));
+        assertThatThrownBy(() -> channel.writeInbound(content("0123456789abcdef-too-long")))
+                .isInstanceOf(TooLongFrameException.class);
+        channel.writeInbound(lastContent("-still-too-long\nok"));
+
+        assertThat(readRecord()).isEqualTo("ok");
+        assertThat(((HttpResponse) channel.readOutbound()).status()).isEqualTo(HttpResponseStatus.ACCEPTED);
+    }
+
+    private String readRecord() {
+        final ByteBuf record = channel.readInbound();
+        assertThat(record).isNotNull();
+        try {
+            return record.toString(StandardCharsets.UTF_8);
+        } finally {
+            record.release();
+        }
+    }
+
+    private static HttpRequest request(HttpMethod method, String uri) {
+        final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+        request.headers().add(HttpHeaderNames.HOST, "localhost");
+        return request;
+    }
+
+    private static DefaultHttpContent content(String body) {
+        return new DefaultHttpContent(Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+    }
+
+    private static DefaultLastHttpContent lastContent(String body) {
+        return new DefaultLastHttpContent(Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+    }
+}
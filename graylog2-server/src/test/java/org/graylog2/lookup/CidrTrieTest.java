@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup;
+
+import com.google.common.net.InetAddresses;
+import org.apache.commons.net.util.SubnetUtils;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CidrTrieTest {
+    private static final Logger LOG = LoggerFactory.getLogger(CidrTrieTest.class);
+
+    @Test
+    void findsLongestPrefixMatch() {
+        final CidrTrie<String> trie = new CidrTrie<>();
+        trie.put("10.0.0.0/8", "a");
+        trie.put("10.1.0.0/16", "b");
+        trie.put("10.1.2.0/24", "c");
+        trie.put("192.168.0.0/16", "d");
+
+        assertThat(trie.size()).isEqualTo(4);
+        assertThat(trie.longestPrefixMatch("10.1.2.3")).contains(CidrTrie.Match.create("10.1.2.0/24", "c"));
+        assertThat(trie.longestPrefixMatch("10.1.3.3")).contains(CidrTrie.Match.create("10.1.0.0/16", "b"));
+        assertThat(trie.longestPrefixMatch("10.2.3.3")).contains(CidrTrie.Match.create("10.0.0.0/8", "a"));
+        assertThat(trie.longestPrefixMatch("192.168.255.255")).contains(CidrTrie.Match.create("192.168.0.0/16", "d"));
+        assertThat(trie.longestPrefixMatch("11.0.0.1")).isEmpty();
+        assertThat(trie.longestPrefixMatch("192.169.0.0")).isEmpty();
+    }
+
+    @Test
+    void findsLongestPrefixMatchIndependentOfInsertionOrder() {
+        final CidrTrie<String> trie = new CidrTrie<>();
+        trie.put("10.1.2.0/24", "c");
+        trie.put("10.1.0.0/16", "b");
+        trie.put("10.0.0.0/8", "a");
+
+        assertThat(trie.size()).isEqualTo(3);
+        assertThat(trie.longestPrefixMatch("10.1.2.3")).contains(CidrTrie.Match.create("10.1.2.0/24", "c"));
+        assertThat(trie.longestPrefixMatch("10.1.3.3")).contains(CidrTrie.Match.create("10.1.0.0/16", "b"));
+        assertThat(trie.longestPrefixMatch("10.2.3.3")).contains(CidrTrie.Match.create("10.0.0.0/8", "a"));
+    }
+
+    @Test
+    void supportsIPv6() {
+        final CidrTrie<String> trie = new CidrTrie<>();
+        trie.put("2001:db8::/32", "a");
+        trie.put("2001:db8:1:2::/64", "b");
+        trie.put("::/0", "default");
+
+        assertThat(trie.longestPrefixMatch("2001:db8:1:2::1")).contains(CidrTrie.Match.create("2001:db8:1:2::/64", "b"));
+        assertThat(trie.longestPrefixMatch("2001:db8:1:3::1")).contains(CidrTrie.Match.create("2001:db8::/32", "a"));
+        assertThat(trie.longestPrefixMatch("2001:db9::1")).contains(CidrTrie.Match.create("::/0", "default"));
+    }
+
+    @Test
+    void separatesIPv4AndIPv6() {
+        final CidrTrie<String> trie = new CidrTrie<>();
+        trie.put("0.0.0.0/0", "ipv4");
+
+        assertThat(trie.longestPrefixMatch("1.2.3.4")).contains(CidrTrie.Match.create("0.0.0.0/0", "ipv4"));
+        assertThat(trie.longestPrefixMatch("::1")).isEmpty();
+    }
+
+    @Test
+    void masksHostBitsAndAcceptsSingleAddresses() {
+        final CidrTrie<String> trie = new CidrTrie<>();
+        trie.put("10.1.2.3/16", "network");
+        trie.put("10.1.2.3", "host");
+
+        assertThat(trie.longestPrefixMatch("10.1.2.3")).contains(CidrTrie.Match.create("10.1.2.3/32", "host"));
+        assertThat(trie.longestPrefixMatch("10.1.2.4")).contains(CidrTrie.Match.create("10.1.0.0/16", "network"));
+    }
+
+    @Test
+    void replacesValuesOfExistingPrefixes() {
+        final CidrTrie<String> trie = new CidrTrie<>();
+        trie.put("10.0.0.0/8", "a");
+        trie.put("10.0.0.0/8", "b");
+
+        assertThat(trie.size()).isEqualTo(1);
+        assertThat(trie.longestPrefixMatch("10.0.0.1")).contains(CidrTrie.Match.create("10.0.0.0/8", "b"));
+    }
+
+    @Test
+    void rejectsInvalidInput() {
+        final CidrTrie<String> trie = new CidrTrie<>();
+
+        assertThatThrownBy(() -> trie.put("10.0.0.0/33", "a")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> trie.put("10.0.0.0/a", "a")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> trie.put("foo/8", "a")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> trie.longestPrefixMatch("foo")).isInstanceOf(IllegalArgumentException.class);
+        assertThat(trie.isEmpty()).isTrue();
+    }
+
+    @Test
+    void matchesLinearScan() {
+        final Random random = new Random(42);
+        final CidrTrie<String> trie = new CidrTrie<>();
+        final List<SubnetUtils.SubnetInfo> subnets = randomSubnets(random, 1_000, trie);
+
+        for (int i = 0; i < 10_000; i++) {
+            final String ip = randomIp(random);
+            final String expected = subnets.stream()
+                    .filter(subnet -> subnet.isInRange(ip))
+                    .max((a, b) -> Integer.compare(prefixLength(a), prefixLength(b)))
+                    .map(SubnetUtils.SubnetInfo::getCidrSignature)
+                    .orElse(null);
+
+            assertThat(trie.longestPrefixMatch(ip).map(CidrTrie.Match::cidr).orElse(null))
+                    .as("Longest prefix of %s", ip)
+                    .isEqualTo(expected);
+        }
+    }
+
+    /**
+     * Compares the lookup latency of the trie with a linear scan over all subnets, like the Spamhaus (E)DROP adapter
+     * used to do. Run manually to get the numbers for a change.
+     */
+    @Test
+    @Disabled("Not enabled by default")
+    void lookupLatency() {
+        final Random random = new Random(42);
+        final int lookups = 100_000;
+
+        for (int size : new int[]{1_000, 10_000, 100_000}) {
+            final CidrTrie<String> trie = new CidrTrie<>();
+            final List<SubnetUtils.SubnetInfo> subnets = randomSubnets(random, size, trie);
+            final List<String> ips = new ArrayList<>(lookups);
+            for (int i = 0; i < lookups; i++) {
+                ips.add(randomIp(random));
+            }
+
+            // Warm up
+            ips.forEach(trie::longestPrefixMatch);
+
+            long start = System.nanoTime();
+            int trieMatches = 0;
+            for (String ip : ips) {
+                if (trie.longestPrefixMatch(ip).isPresent()) {
+                    trieMatches++;
+                }
+            }
+            final long trieNanos = System.nanoTime() - start;
+
+            final List<String> scanIps = ips.subList(0, lookups / 100);
+            start = System.nanoTime();
+            for (String ip : scanIps) {
+                subnets.stream().anyMatch(subnet -> subnet.isInRange(ip));
+            }
+            final long scanNanos = System.nanoTime() - start;
+
+            LOG.info("{} subnets: trie {} ns/lookup ({} matches), linear scan {} ns/lookup", size,
+                    trieNanos / lookups, trieMatches, scanNanos / scanIps.size());
+            assertThat(TimeUnit.NANOSECONDS.toMicros(trieNanos / lookups)).isLessThan(100);
+        }
+    }
+
+    private static List<SubnetUtils.SubnetInfo> randomSubnets(Random random, int count, CidrTrie<String> trie) {
+        final List<SubnetUtils.SubnetInfo> subnets = new ArrayList<>(count);
+        while (subnets.size() < count) {
+            final int prefixLength = 8 + random.nextInt(25);
+            final SubnetUtils subnetUtils = new SubnetUtils(randomIp(random) + "/" + prefixLength);
+            // Network and broadcast addresses are part of the network prefix as well
+            subnetUtils.setInclusiveHostCount(true);
+            final SubnetUtils.SubnetInfo subnet = subnetUtils.getInfo();
+            if (trie.longestPrefixMatch(subnet.getNetworkAddress())
+                    .filter(match -> match.cidr().equals(subnet.getCidrSignature()))
+                    .isPresent()) {
+                continue;
+            }
+            trie.put(subnet.getCidrSignature(), subnet.getCidrSignature());
+            subnets.add(subnet);
+        }
+        return subnets;
+    }
+
+    private static String randomIp(Random random) {
+        return InetAddresses.fromInteger(random.nextInt()).getHostAddress();
+    }
+
+    private static int prefixLength(SubnetUtils.SubnetInfo subnet) {
+        final String cidr = subnet.getCidrSignature();
+        return Integer.parseInt(cidr.substring(cidr.indexOf('/') + 1));
+    }
+}
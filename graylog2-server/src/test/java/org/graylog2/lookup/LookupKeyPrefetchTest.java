@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup;
+
+import com.github.joschi.jadconfig.ParameterException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LookupKeyPrefetchTest {
+    private final LookupKeyPrefetch.Converter converter = new LookupKeyPrefetch.Converter();
+
+    @Test
+    void convertFrom() {
+        final List<LookupKeyPrefetch> prefetches = converter.convertFrom("assets:src_ip,dst_ip; departments : user ;");
+
+        assertThat(prefetches).containsExactly(
+                LookupKeyPrefetch.create("assets", ImmutableSet.of("src_ip", "dst_ip")),
+                LookupKeyPrefetch.create("departments", ImmutableSet.of("user")));
+        assertThat(converter.convertFrom("")).isEmpty();
+    }
+
+    @Test
+    void convertTo() {
+        final List<LookupKeyPrefetch> prefetches = ImmutableList.of(
+                LookupKeyPrefetch.create("assets", ImmutableSet.of("src_ip", "dst_ip")),
+                LookupKeyPrefetch.create("departments", ImmutableSet.of("user")));
+
+        assertThat(converter.convertTo(prefetches)).isEqualTo("assets:src_ip,dst_ip;departments:user");
+        assertThat(converter.convertFrom(converter.convertTo(prefetches))).isEqualTo(prefetches);
+    }
+
+    @Test
+    void convertFromRejectsInvalidPrefetches() {
+        assertThatThrownBy(() -> converter.convertFrom("assets")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom(":src_ip")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("assets:")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("assets:a:b")).isInstanceOf(ParameterException.class);
+        assertThatThrownBy(() -> converter.convertFrom("assets:src_ip;assets:dst_ip")).isInstanceOf(ParameterException.class);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LookupKeyPrefetcherTest {
+    @Mock
+    private LookupTableService lookupTableService;
+
+    @Mock
+    private LookupTable lookupTable;
+
+    @Test
+    void prefetchesDistinctFieldValuesOfAllMessages() {
+        when(lookupTableService.getTable("assets")).thenReturn(lookupTable);
+        final LookupKeyPrefetcher prefetcher = prefetcher(LookupKeyPrefetch.create("assets", ImmutableSet.of("src_ip", "dst_ip")));
+
+        prefetcher.prefetch(ImmutableList.of(
+                message("10.0.0.1", "10.0.0.2"),
+                message("10.0.0.2", "10.0.0.3"),
+                message("", null)));
+
+        verify(lookupTable).lookupAll(ImmutableSet.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+    }
+
+    @Test
+    void skipsMissingTablesAndIgnoresErrors() {
+        when(lookupTableService.getTable("assets")).thenReturn(null);
+        when(lookupTableService.getTable("departments")).thenReturn(lookupTable);
+        when(lookupTable.lookupAll(any())).thenThrow(new IllegalStateException("boom"));
+        final LookupKeyPrefetcher prefetcher = prefetcher(
+                LookupKeyPrefetch.create("assets", ImmutableSet.of("src_ip")),
+                LookupKeyPrefetch.create("departments", ImmutableSet.of("dst_ip")));
+
+        prefetcher.prefetch(ImmutableList.of(message("10.0.0.1", "10.0.0.2")));
+
+        verify(lookupTable).lookupAll(ImmutableSet.of("10.0.0.2"));
+    }
+
+    @Test
+    void disabledWithoutPrefetches() {
+        final LookupKeyPrefetcher prefetcher = new LookupKeyPrefetcher(Collections.emptyList(), lookupTableService, new MetricRegistry());
+
+        prefetcher.prefetch(ImmutableList.of(message("10.0.0.1", "10.0.0.2")));
+
+        assertThat(prefetcher.isEnabled()).isFalse();
+        verifyNoInteractions(lookupTableService);
+    }
+
+    private LookupKeyPrefetcher prefetcher(LookupKeyPrefetch... prefetches) {
+        return new LookupKeyPrefetcher(ImmutableList.copyOf(prefetches), lookupTableService, new MetricRegistry());
+    }
+
+    private static Message message(String srcIp, String dstIp) {
+        final Message message = new Message("message", "source", DateTime.now(DateTimeZone.UTC));
+        message.addField("src_ip", srcIp);
+        message.addField("dst_ip", dstIp);
+        return message;
+    }
+}
@@ -17,6 +17,8 @@
 package org.graylog2.lookup;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.lookup.LookupResult;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -26,8 +28,11 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
 import java.util.Arrays;
+import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -130,4 +135,30 @@ public class LookupTableServiceTest {
         verify(table, times(1)).clearKey("key");
         verify(table, never()).clearKey(null);
     }
+
+    @Test
+    public void functionLookupAll() {
+        final LookupResult errorResult = LookupResult.withError();
+        when(table.lookupAll(ImmutableList.of("a", "b", "c"))).thenReturn(ImmutableMap.of(
+                "a", LookupResult.single("value"),
+                "b", LookupResult.withoutTTL().build(),
+                "c", errorResult));
+
+        final Map<Object, LookupResult> results = function.lookupAll(ImmutableList.of("a", "b", "c"));
+
+        assertThat(results).containsExactly(
+                entry("a", LookupResult.single("value")),
+                entry("b", LookupResult.empty()),
+                entry("c", errorResult));
+    }
+
+    @Test
+    public void functionLookupAllWithMissingTable() {
+        when(service.getTable("table")).thenReturn(null);
+
+        final Map<Object, LookupResult> results = function.lookupAll(ImmutableList.of("a"));
+
+        assertThat(results).containsOnlyKeys("a");
+        assertThat(results.get("a").hasError()).isTrue();
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.graylog2.lookup.caches.CaffeineLookupCache;
+import org.graylog2.lookup.caches.NullCache;
+import org.graylog2.plugin.lookup.LookupCache;
+import org.graylog2.plugin.lookup.LookupCachePurge;
+import org.graylog2.plugin.lookup.LookupDataAdapter;
+import org.graylog2.plugin.lookup.LookupDataAdapterConfiguration;
+import org.graylog2.plugin.lookup.LookupResult;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class LookupTableTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private BatchRecordingDataAdapter dataAdapter;
+
+    @BeforeEach
+    void setUp() {
+        dataAdapter = new BatchRecordingDataAdapter(metricRegistry);
+        dataAdapter.startAsync().awaitRunning();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataAdapter.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    void lookupAllLoadsMissingKeysWithOneAdapterCall() {
+        final LookupCache cache = new CaffeineLookupCache("cache-id", "cache", new CaffeineLookupCache.Descriptor().defaultConfiguration(), 1, metricRegistry);
+        final LookupTable lookupTable = lookupTable(cache);
+
+        assertThat(lookupTable.lookup("a")).isEqualTo(LookupResult.single("a-value"));
+
+        final Map<Object, LookupResult> results = lookupTable.lookupAll(ImmutableList.of("a", "b", "c", "unknown"));
+
+        assertThat(results).containsOnlyKeys("a", "b", "c", "unknown");
+        assertThat(results.get("a")).isEqualTo(LookupResult.single("a-value"));
+        assertThat(results.get("b")).isEqualTo(LookupResult.single("b-value"));
+        assertThat(results.get("c")).isEqualTo(LookupResult.single("c-value"));
+        assertThat(results.get("unknown").singleValue()).isEqualTo("none");
+        assertThat(dataAdapter.batches).containsExactly(ImmutableList.of("b", "c", "unknown"));
+
+        // All keys are cached now
+        assertThat(lookupTable.lookupAll(ImmutableList.of("a", "b"))).containsOnlyKeys("a", "b");
+        assertThat(dataAdapter.batches).hasSize(1);
+    }
+
+    @Test
+    void lookupAllWithoutCacheLoadsAllKeysWithOneAdapterCall() {
+        final LookupCache cache = new NullCache("cache-id", "cache", new NullCache.Descriptor().defaultConfiguration(), metricRegistry);
+        final LookupTable lookupTable = lookupTable(cache);
+
+        final Map<Object, LookupResult> results = lookupTable.lookupAll(ImmutableList.of("a", "b"));
+
+        assertThat(results.get("a")).isEqualTo(LookupResult.single("a-value"));
+        assertThat(results.get("b")).isEqualTo(LookupResult.single("b-value"));
+        assertThat(dataAdapter.batches).containsExactly(ImmutableList.of("a", "b"));
+    }
+
+    private LookupTable lookupTable(LookupCache cache) {
+        return LookupTable.builder()
+                .id("table-id")
+                .title("Table")
+                .description("Table")
+                .name("table")
+                .cache(cache)
+                .dataAdapter(dataAdapter)
+                .defaultSingleValue(LookupDefaultSingleValue.create("none", LookupDefaultValue.Type.STRING))
+                .defaultMultiValue(LookupDefaultMultiValue.create("", LookupDefaultValue.Type.NULL))
+                .build();
+    }
+
+    private static class BatchRecordingDataAdapter extends LookupDataAdapter {
+        private final List<List<Object>> batches = new ArrayList<>();
+
+        BatchRecordingDataAdapter(MetricRegistry metricRegistry) {
+            super("adapter-id", "adapter", mock(LookupDataAdapterConfiguration.class), metricRegistry);
+        }
+
+        @Override
+        protected void doStart() {
+        }
+
+        @Override
+        protected void doStop() {
+        }
+
+        @Override
+        public Duration refreshInterval() {
+            return Duration.ZERO;
+        }
+
+        @Override
+        protected void doRefresh(LookupCachePurge cachePurge) {
+        }
+
+        @Override
+        protected LookupResult doGet(Object key) {
+            return "unknown".equals(key) ? LookupResult.empty() : LookupResult.single(key + "-value");
+        }
+
+        @Override
+        protected Map<Object, LookupResult> doGetAll(Collection<?> keys) {
+            batches.add(ImmutableList.copyOf(keys));
+            return super.doGetAll(keys);
+        }
+
+        @Override
+        public void set(Object key, Object value) {
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.adapters;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+import org.graylog2.lookup.AllowedAuxiliaryPathChecker;
+import org.graylog2.plugin.lookup.LookupCachePurge;
+import org.graylog2.plugin.lookup.LookupResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.graylog2.lookup.adapters.CIDRFileDataAdapter.Config;
+import static org.graylog2.lookup.adapters.CIDRFileDataAdapter.NAME;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CIDRFileDataAdapterTest {
+    @Mock
+    private AllowedAuxiliaryPathChecker pathChecker;
+
+    @Mock
+    private LookupCachePurge cachePurge;
+
+    private Path cidrFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cidrFile = Paths.get(Resources.getResource("org/graylog2/lookup/adapters/CIDRFileDataAdapterTest.csv").toURI());
+    }
+
+    @Test
+    void doGetReturnsValueOfLongestPrefix() throws Exception {
+        final CIDRFileDataAdapter adapter = startedAdapter(cidrFile);
+
+        assertThat(adapter.doGet("10.1.2.3")).isEqualTo(result("office", "10.1.0.0/16"));
+        assertThat(adapter.doGet("10.2.3.4")).isEqualTo(result("internal", "10.0.0.0/8"));
+        assertThat(adapter.doGet("192.168.1.255")).isEqualTo(result("lab", "192.168.1.0/24"));
+        assertThat(adapter.doGet("2001:db8::1")).isEqualTo(result("documentation", "2001:db8::/32"));
+    }
+
+    @Test
+    void doGetReturnsEmptyResultForUnknownAndInvalidAddresses() throws Exception {
+        final CIDRFileDataAdapter adapter = startedAdapter(cidrFile);
+
+        assertThat(adapter.doGet("192.168.2.1")).isEqualTo(LookupResult.empty());
+        assertThat(adapter.doGet("foo")).isEqualTo(LookupResult.empty());
+        assertThat(adapter.doGet(null)).isEqualTo(LookupResult.empty());
+    }
+
+    @Test
+    void startFailsForDisallowedPath() {
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(false);
+        final CIDRFileDataAdapter adapter = new CIDRFileDataAdapter("id", "name", config(cidrFile), new MetricRegistry(), pathChecker);
+
+        assertThatThrownBy(adapter::doStart)
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith(CIDRFileDataAdapter.ALLOWED_PATH_ERROR);
+    }
+
+    @Test
+    void startFailsForInvalidCidr(@TempDir Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("invalid.csv");
+        Files.write(file, "cidr,value\n10.0.0.0/8,internal\n10.0.0.0/33,invalid\n".getBytes(StandardCharsets.UTF_8));
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        final CIDRFileDataAdapter adapter = new CIDRFileDataAdapter("id", "name", config(file), new MetricRegistry(), pathChecker);
+
+        assertThatThrownBy(adapter::doStart)
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("10.0.0.0/33");
+    }
+
+    @Test
+    void refreshReloadsChangedFile(@TempDir Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("ranges.csv");
+        Files.write(file, "cidr,value\n10.0.0.0/8,internal\n".getBytes(StandardCharsets.UTF_8));
+        final CIDRFileDataAdapter adapter = startedAdapter(file);
+        assertThat(adapter.doGet("10.1.2.3")).isEqualTo(result("internal", "10.0.0.0/8"));
+
+        Files.write(file, "cidr,value\n10.0.0.0/8,internal\n10.1.0.0/16,office\n".getBytes(StandardCharsets.UTF_8));
+        adapter.doRefresh(cachePurge);
+
+        assertThat(adapter.getError()).isEmpty();
+        assertThat(adapter.doGet("10.1.2.3")).isEqualTo(result("office", "10.1.0.0/16"));
+        verify(cachePurge).purgeAll();
+    }
+
+    private CIDRFileDataAdapter startedAdapter(Path file) throws Exception {
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        final CIDRFileDataAdapter adapter = new CIDRFileDataAdapter("id", "name", config(file), new MetricRegistry(), pathChecker);
+        adapter.doStart();
+        return adapter;
+    }
+
+    private static LookupResult result(String value, String cidr) {
+        return LookupResult.multi(value, ImmutableMap.of(
+                CIDRFileDataAdapter.RESULT_FIELD_VALUE, value,
+                CIDRFileDataAdapter.RESULT_FIELD_CIDR, cidr));
+    }
+
+    private static Config config(Path file) {
+        return Config.builder()
+                .type(NAME)
+                .path(file.toString())
+                .separator(",")
+                .quotechar("\"")
+                .cidrColumn("cidr")
+                .valueColumn("value")
+                .checkInterval(60)
+                .build();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.messageq.MessageQueueException;
+import org.graylog2.shared.messageq.MessageQueueWriter;
+import org.graylog2.system.processing.ProcessingStatusRecorder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class JournallingMessageHandlerTest {
+    private MessageQueueWriter messageQueueWriter;
+    private JournallingMessageHandler handler;
+
+    @Before
+    public void setUp() {
+        messageQueueWriter = mock(MessageQueueWriter.class);
+        handler = new JournallingMessageHandler(new MetricRegistry(), messageQueueWriter, mock(ProcessingStatusRecorder.class));
+    }
+
+    @Test
+    public void acknowledgesMessagesAfterBatchWasWritten() throws Exception {
+        final CountingAckCallback callback = new CountingAckCallback();
+
+        handler.onEvent(event(callback), 0, false);
+        assertThat(callback.acks).hasValue(0);
+
+        handler.onEvent(event(callback), 1, true);
+        assertThat(callback.acks).hasValue(2);
+        assertThat(callback.failures).hasValue(0);
+    }
+
+    @Test
+    public void failsMessagesIfWriteFailed() throws Exception {
+        final CountingAckCallback callback = new CountingAckCallback();
+        doThrow(new MessageQueueException("boom")).when(messageQueueWriter).write(anyList());
+
+        final RawMessageEvent event = event(callback);
+        assertThatThrownBy(() -> handler.onEvent(event, 0, true)).isInstanceOf(MessageQueueException.class);
+
+        assertThat(callback.acks).hasValue(0);
+        assertThat(callback.failures).hasValue(1);
+    }
+
+    @Test
+    public void failsMessagesWhichCouldNotBeEncoded() throws Exception {
+        final CountingAckCallback callback = new CountingAckCallback();
+        final RawMessageEvent event = event(callback);
+        event.setEncodedRawMessage(null);
+
+        handler.onEvent(event, 0, true);
+
+        assertThat(callback.acks).hasValue(0);
+        assertThat(callback.failures).hasValue(1);
+    }
+
+    private RawMessageEvent event(RawMessage.JournalAckCallback ackCallback) throws Exception {
+        final RawMessage rawMessage = new RawMessage("test".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setJournalAckCallback(ackCallback);
+
+        final RawMessageEvent event = new RawMessageEvent();
+        event.setRawMessage(rawMessage);
+        new RawMessageEncoderHandler(new MetricRegistry()).onEvent(event);
+        return event;
+    }
+
+    private static class CountingAckCallback implements RawMessage.JournalAckCallback {
+        private final AtomicInteger acks = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public void acknowledge() {
+            acks.incrementAndGet();
+        }
+
+        @Override
+        public void fail() {
+            failures.incrementAndGet();
+        }
+    }
+}
@@ -43,6 +43,13 @@ Timerange End:        \${event.timerange_end}
 Fields:
 \${foreach event.fields field}  \${field.key}: \${field.value}
 \${end}
+\${if batched_events}
+--- [Batched Events] -----------------------------
+Further events delivered with this notification:
+\${foreach batched_events batched_event}
+\${batched_event.timestamp}: \${batched_event.message} (Key: \${batched_event.key})
+\${end}
+\${end}
 \${if backlog}
 --- [Backlog] ------------------------------------
 Last messages accounting for this alert:
@@ -72,6 +79,14 @@ const DEFAULT_HTML_BODY_TEMPLATE = `<table width="100%" border="0" cellpadding="
 <tr><td>Source Streams</td><td>\${event.source_streams}</td></tr>
 <tr><td>Fields</td><td><ul style="list-style-type:square;">\${foreach event.fields field}<li>\${field.key}:\${field.value}</li>\${end}<ul></td></tr>
 </tbody></table>
+\${if batched_events}
+<br /><table width="100%" border="0" cellpadding="10" cellspacing="0" style="background-color:#f9f9f9;border:none;line-height:1.2"><tbody>
+<tr><th colspan="3" style="background-color:#e6e6e6;line-height:1.5">Batched Events (Further events delivered with this notification)</th></tr>
+\${foreach batched_events batched_event}
+<tr><td width="200px">\${batched_event.timestamp}</td><td>\${batched_event.message}</td><td>\${batched_event.key}</td></tr>
+\${end}
+</tbody></table>
+\${end}
 \${if backlog}
 <br /><table width="100%" border="0" cellpadding="10" cellspacing="0" style="background-color:#f9f9f9;border:none;line-height:1.2"><tbody>
 <tr><th style="background-color:#e6e6e6;line-height:1.5">Backlog (Last messages accounting for this alert)</th></tr>
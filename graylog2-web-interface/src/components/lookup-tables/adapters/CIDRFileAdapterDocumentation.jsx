@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+/* eslint-disable react/no-unescaped-entities */
+import React from 'react';
+
+import { Alert } from 'components/bootstrap';
+
+class CIDRFileAdapterDocumentation extends React.Component {
+  render() {
+    const csvFile = `"cidr","network"
+"10.0.0.0/8","internal"
+"10.1.0.0/16","office"
+"10.1.2.0/24","lab"
+"2001:db8::/32","documentation"`;
+
+    return (
+      <div>
+        <p>
+          The CIDR data adapter looks up IP addresses in a CSV file of IPv4 and IPv6 network ranges in CIDR notation.
+          If several ranges contain an IP address, the value of the most specific range is returned.
+        </p>
+        <p>
+          The single value of the lookup result is the value of the range, the multi value also contains
+          the <code>cidr</code> of the matching range.
+        </p>
+
+        <Alert style={{ marginBottom: 10 }} bsStyle="info">
+          <h4 style={{ marginBottom: 10 }}>CSV file requirements:</h4>
+          <ul className="no-padding">
+            <li>The first line in the CSV file needs to be a list of field/column names</li>
+            <li>The CIDR column only contains valid ranges like <code>10.0.0.0/8</code> or single IP addresses</li>
+            <li>The file uses <strong>utf-8</strong> encoding</li>
+            <li>The file is readable by <strong>every</strong> Graylog server node</li>
+          </ul>
+        </Alert>
+
+        <hr />
+
+        <h3 style={{ marginBottom: 10 }}>Example</h3>
+
+        <h5 style={{ marginBottom: 10 }}>Configuration</h5>
+        <p style={{ marginBottom: 10, padding: 0 }}>
+          Separator: <code>,</code><br />
+          Quote character: <code>"</code><br />
+          CIDR column: <code>cidr</code><br />
+          Value column: <code>network</code>
+        </p>
+
+        <h5 style={{ marginBottom: 10 }}>CSV File</h5>
+        <pre>{csvFile}</pre>
+
+        <p>
+          Looking up <code>10.1.2.3</code> returns <code>lab</code>, <code>10.1.3.4</code> returns <code>office</code>
+          and <code>10.2.0.1</code> returns <code>internal</code>.
+        </p>
+      </div>
+    );
+  }
+}
+
+export default CIDRFileAdapterDocumentation;
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+import PropTypes from 'prop-types';
+import React from 'react';
+
+import { Input } from 'components/bootstrap';
+
+class CIDRFileAdapterFieldSet extends React.Component {
+  static propTypes = {
+    config: PropTypes.object.isRequired,
+    // eslint-disable-next-line react/no-unused-prop-types
+    updateConfig: PropTypes.func.isRequired,
+    handleFormEvent: PropTypes.func.isRequired,
+    validationState: PropTypes.func.isRequired,
+    validationMessage: PropTypes.func.isRequired,
+  };
+
+  render() {
+    const { config } = this.props;
+
+    return (
+      <fieldset>
+        <Input type="text"
+               id="path"
+               name="path"
+               label="File path"
+               autoFocus
+               required
+               onChange={this.props.handleFormEvent}
+               help={this.props.validationMessage('path', 'The path to the CSV file with the CIDR ranges.')}
+               bsStyle={this.props.validationState('path')}
+               value={config.path}
+               labelClassName="col-sm-3"
+               wrapperClassName="col-sm-9" />
+        <Input type="number"
+               id="check_interval"
+               name="check_interval"
+               label="Check interval"
+               required
+               onChange={this.props.handleFormEvent}
+               help="The interval to check if the CSV file needs a reload. (in seconds)"
+               value={config.check_interval}
+               labelClassName="col-sm-3"
+               wrapperClassName="col-sm-9" />
+        <Input type="text"
+               id="separator"
+               name="separator"
+               label="Separator"
+               required
+               onChange={this.props.handleFormEvent}
+               help="The delimiter to use for separating entries."
+               value={config.separator}
+               labelClassName="col-sm-3"
+               wrapperClassName="col-sm-9" />
+        <Input type="text"
+               id="quotechar"
+               name="quotechar"
+               label="Quote character"
+               required
+               onChange={this.props.handleFormEvent}
+               help="The character to use for quoted elements."
+               value={config.quotechar}
+               labelClassName="col-sm-3"
+               wrapperClassName="col-sm-9" />
+        <Input type="text"
+               id="cidr_column"
+               name="cidr_column"
+               label="CIDR column"
+               required
+               onChange={this.props.handleFormEvent}
+               help="The column name that contains the IPv4 or IPv6 ranges in CIDR notation."
+               value={config.cidr_column}
+               labelClassName="col-sm-3"
+               wrapperClassName="col-sm-9" />
+        <Input type="text"
+               id="value_column"
+               name="value_column"
+               label="Value column"
+               required
+               onChange={this.props.handleFormEvent}
+               help="The column name that should be used as the value for a range."
+               value={config.value_column}
+               labelClassName="col-sm-3"
+               wrapperClassName="col-sm-9" />
+      </fieldset>
+    );
+  }
+}
+
+export default CIDRFileAdapterFieldSet;
@@ -17,6 +17,9 @@
 import { PluginManifest, PluginStore } from 'graylog-web-plugin/plugin';
 
 import 'components/maps/adapter';
+import CIDRFileAdapterFieldSet from './CIDRFileAdapterFieldSet';
+import CIDRFileAdapterSummary from './CIDRFileAdapterSummary';
+import CIDRFileAdapterDocumentation from './CIDRFileAdapterDocumentation';
 import CSVFileAdapterFieldSet from './CSVFileAdapterFieldSet';
 import CSVFileAdapterSummary from './CSVFileAdapterSummary';
 import CSVFileAdapterDocumentation from './CSVFileAdapterDocumentation';
@@ -32,6 +35,13 @@ import HTTPJSONPathAdapterDocumentation from './HTTPJSONPathAdapterDocumentation
 
 PluginStore.register(new PluginManifest({}, {
   lookupTableAdapters: [
+    {
+      type: 'cidrfile',
+      displayName: 'CIDR File',
+      formComponent: CIDRFileAdapterFieldSet,
+      summaryComponent: CIDRFileAdapterSummary,
+      documentationComponent: CIDRFileAdapterDocumentation,
+    },
     {
       type: 'csvfile',
       displayName: 'CSV File',